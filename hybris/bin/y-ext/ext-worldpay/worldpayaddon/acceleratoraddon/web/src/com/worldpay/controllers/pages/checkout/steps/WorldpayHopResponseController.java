@@ -16,8 +16,10 @@ import de.hybris.platform.core.model.order.AbstractOrderModel;
 import de.hybris.platform.core.model.order.OrderModel;
 import de.hybris.platform.order.InvalidCartException;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.dto.converter.Converter;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -50,6 +52,10 @@ public class WorldpayHopResponseController extends WorldpayChoosePaymentMethodCh
     private static final String CHECKOUT_PLACE_ORDER_FAILED = "checkout.placeOrder.failed";
     private static final String PAYMENT_STATUS_PARAMETER_NAME = "paymentStatus";
     private static final String BILLING_ADDRESS_FORM = "wpBillingAddressForm";
+    private static final String REDIRECT_URL_HOP_RESPONSE = REDIRECT_PREFIX + "/checkout/multi/worldpay/hop-response";
+    private static final String INQUIRY_ATTEMPT_PARAMETER_NAME = "inquiryAttempt";
+    private static final String WORLDPAYAPI_INQUIRY_HOP_MAX_REDIRECTS = "worldpayapi.inquiry.hop.max.redirects";
+    private static final int DEFAULT_INQUIRY_HOP_MAX_REDIRECTS = 5;
 
     @Resource
     private Converter<Map<String, String>, RedirectAuthoriseResult> redirectAuthoriseResultConverter;
@@ -61,6 +67,8 @@ public class WorldpayHopResponseController extends WorldpayChoosePaymentMethodCh
     private WorldpayAddonEndpointService worldpayAddonEndpointService;
     @Resource
     private Set<AuthorisedStatus> apmErrorResponseStatuses;
+    @Resource
+    private ConfigurationService configurationService;
 
     /**
      * Handles a successful HOP response
@@ -81,6 +89,9 @@ public class WorldpayHopResponseController extends WorldpayChoosePaymentMethodCh
             }
             try {
                 final RedirectAuthoriseResult redirectAuthoriseResult = getWorldpayHostedOrderFacade().inquiryPaymentStatus();
+                if (Boolean.TRUE.equals(redirectAuthoriseResult.getInquiryInProgress())) {
+                    return redirectWhileInquiryInProgress(requestParameterMap, redirectAttributes);
+                }
                 return processResponse(model, redirectAttributes, redirectAuthoriseResult, redirectAuthoriseResult.getPaymentStatus());
             } catch (WorldpayException e) {
                 LOG.error("Error inquiring order in Worldpay", e);
@@ -107,6 +118,22 @@ public class WorldpayHopResponseController extends WorldpayChoosePaymentMethodCh
         }
     }
 
+    /**
+     * Reloads the HOP response page instead of holding the request thread while the order status inquiry is retried, giving up after
+     * the configured number of reloads.
+     */
+    private String redirectWhileInquiryInProgress(final Map<String, String> requestParameterMap, final RedirectAttributes redirectAttributes) {
+        final int inquiryAttempt = NumberUtils.toInt(requestParameterMap.get(INQUIRY_ATTEMPT_PARAMETER_NAME)) + 1;
+        final int maxRedirects = configurationService.getConfiguration().getInt(WORLDPAYAPI_INQUIRY_HOP_MAX_REDIRECTS, DEFAULT_INQUIRY_HOP_MAX_REDIRECTS);
+        if (inquiryAttempt > maxRedirects) {
+            LOG.error(format("Order status inquiry still in progress after {0} reloads of the hop-response (/hop-response)", maxRedirects));
+            return doHostedOrderPageError(ERROR.name(), redirectAttributes);
+        }
+        requestParameterMap.forEach(redirectAttributes::addAttribute);
+        redirectAttributes.addAttribute(INQUIRY_ATTEMPT_PARAMETER_NAME, inquiryAttempt);
+        return REDIRECT_URL_HOP_RESPONSE;
+    }
+
     private String checkCart(RedirectAuthoriseResult response) {
         final PaymentTransactionModel paymentTransactionFromCode = worldpayPaymentTransactionService.getPaymentTransactionFromCode(response.getOrderCode());
         if (paymentTransactionFromCode != null && paymentTransactionFromCode.getOrder() instanceof OrderModel) {
@@ -21,6 +21,7 @@ import de.hybris.platform.core.model.order.CartModel;
 import de.hybris.platform.core.model.order.OrderModel;
 import de.hybris.platform.order.InvalidCartException;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.dto.converter.Converter;
 import org.junit.Before;
 import org.junit.Test;
@@ -67,6 +68,10 @@ public class WorldpayHopResponseControllerTest {
     private static final String REDIRECT_URL_ADD_DELIVERY_ADDRESS = REDIRECT_PREFIX + "/checkout/multi/delivery-address/add";
     private static final String REDIRECT_URL_CHOOSE_DELIVERY_METHOD = REDIRECT_PREFIX + "/checkout/multi/delivery-method/choose";
     private static final String BILLING_ADDRESS_FORM = "wpBillingAddressForm";
+    private static final String HOP_RESPONSE_REDIRECT_URL = REDIRECT_PREFIX + "/checkout/multi/worldpay/hop-response";
+    private static final String INQUIRY_ATTEMPT_PARAMETER_NAME = "inquiryAttempt";
+    private static final String WORLDPAYAPI_INQUIRY_HOP_MAX_REDIRECTS = "worldpayapi.inquiry.hop.max.redirects";
+    private static final int MAX_REDIRECTS = 5;
 
     @Spy
     @InjectMocks
@@ -114,6 +119,8 @@ public class WorldpayHopResponseControllerTest {
     private Converter<AbstractOrderModel, OrderData> orderConverterMock;
     @Mock
     private WorldpayAddonEndpointService worldpayAddonEndpointServiceMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
 
     @Before
     public void setUp() {
@@ -127,6 +134,7 @@ public class WorldpayHopResponseControllerTest {
         when(worldpayHostedOrderFacadeMock.validateRedirectResponse(anyMapOf(String.class, String.class))).thenReturn(true);
         when(worldpayAddonEndpointServiceMock.getHostedOrderPostPage()).thenReturn("hostedOrderPostPage");
         mockHttpServletRequest.setParameter(PAYMENT_STATUS_PARAMETER_NAME, ERROR.name());
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAYAPI_INQUIRY_HOP_MAX_REDIRECTS, MAX_REDIRECTS)).thenReturn(MAX_REDIRECTS);
     }
 
     @Test
@@ -406,4 +414,34 @@ public class WorldpayHopResponseControllerTest {
         assertEquals(format(CHOOSE_PAYMENT_REDIRECT_URL, ERROR.name()), result);
 
     }
+
+    @Test
+    public void shouldReloadHopResponseWhenInquiryIsStillInProgress() throws Exception {
+        mockHttpServletRequest.removeParameter(PAYMENT_STATUS_PARAMETER_NAME);
+        mockHttpServletRequest.setParameter(ORDER_CODE, WORLDPAY_ORDER_CODE);
+        when(worldpayHostedOrderFacadeMock.inquiryPaymentStatus()).thenReturn(redirectAuthoriseResultFromInquiryMock);
+        when(redirectAuthoriseResultFromInquiryMock.getInquiryInProgress()).thenReturn(Boolean.TRUE);
+
+        final String result = testObj.doHandleHopResponse(mockHttpServletRequest, modelMock, redirectAttributesMock);
+
+        verify(redirectAttributesMock).addAttribute(ORDER_CODE, WORLDPAY_ORDER_CODE);
+        verify(redirectAttributesMock).addAttribute(INQUIRY_ATTEMPT_PARAMETER_NAME, 1);
+        verify(worldpayHostedOrderFacadeMock, never()).completeRedirectAuthorise(redirectAuthoriseResultFromInquiryMock);
+        verify(checkoutFacadeMock, never()).placeOrder();
+        assertEquals(HOP_RESPONSE_REDIRECT_URL, result);
+    }
+
+    @Test
+    public void shouldRedirectToErrorPageWhenInquiryIsStillInProgressAfterTheMaximumReloads() throws Exception {
+        mockHttpServletRequest.removeParameter(PAYMENT_STATUS_PARAMETER_NAME);
+        mockHttpServletRequest.setParameter(INQUIRY_ATTEMPT_PARAMETER_NAME, String.valueOf(MAX_REDIRECTS));
+        when(worldpayHostedOrderFacadeMock.inquiryPaymentStatus()).thenReturn(redirectAuthoriseResultFromInquiryMock);
+        when(redirectAuthoriseResultFromInquiryMock.getInquiryInProgress()).thenReturn(Boolean.TRUE);
+
+        final String result = testObj.doHandleHopResponse(mockHttpServletRequest, modelMock, redirectAttributesMock);
+
+        verify(redirectAttributesMock, never()).addAttribute(eq(INQUIRY_ATTEMPT_PARAMETER_NAME), any());
+        verify(checkoutFacadeMock, never()).placeOrder();
+        assertEquals(format(CHOOSE_PAYMENT_REDIRECT_URL, ERROR.name()), result);
+    }
 }
@@ -0,0 +1,20 @@
+package com.worldpay.core.dao;
+
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+
+import java.util.List;
+
+/**
+ * Callback receiving the pages of {@link PaymentTransactionModel} read by the paged queries of {@link WorldpayPaymentTransactionDao}
+ */
+@FunctionalInterface
+public interface PaymentTransactionPageProcessor {
+
+    /**
+     * Processes a page of payment transactions. The models are detached once the method returns, so they should not be kept.
+     *
+     * @param paymentTransactions the payment transactions of the page, ordered by PK
+     * @return true to read the next page, false to stop
+     */
+    boolean process(final List<PaymentTransactionModel> paymentTransactions);
+}
@@ -3,6 +3,7 @@ package com.worldpay.core.dao;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.servicelayer.internal.dao.Dao;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -22,6 +23,18 @@ public interface WorldpayPaymentTransactionDao extends Dao {
      */
     List<PaymentTransactionModel> findPendingPaymentTransactions(final int waitTimeInMinutes);
 
+    /**
+     * Pages through the PaymentTransactions returned by {@link #findPendingPaymentTransactions(int)} in PK order. Each page is read with
+     * its own query starting after the last PK of the previous page, and its transactions are detached once processed together with
+     * their orders, so memory use does not grow with the number of pending transactions.
+     *
+     * @param waitTimeInMinutes wait time in minutes
+     * @param afterPk           only PaymentTransactions with a greater PK are returned, 0 to start from the first one
+     * @param pageSize          maximum number of PaymentTransactions in a page
+     * @param pageProcessor     called with every page until it returns false or there are no more PaymentTransactions
+     */
+    void processPendingPaymentTransactions(final int waitTimeInMinutes, final long afterPk, final int pageSize, final PaymentTransactionPageProcessor pageProcessor);
+
     /**
      * Find PaymentTransactions by the Request Id (Worldpay order code). Only search for Payment Transactions that belong to Orders
      *
@@ -38,10 +51,28 @@ public interface WorldpayPaymentTransactionDao extends Dao {
      */
     PaymentTransactionModel findPaymentTransactionByRequestId(final String requestId);
 
+    /**
+     * Find PaymentTransactions by their Request Ids (Worldpay order codes) with a single query. Search for Payment Transactions that
+     * belong to Orders or Carts, as {@link #findPaymentTransactionByRequestId(String)}
+     *
+     * @param requestIds Worldpay order codes
+     * @return list of {@link PaymentTransactionModel}, possibly more than one for the same Request Id
+     */
+    List<PaymentTransactionModel> findPaymentTransactionsByRequestIds(final Collection<String> requestIds);
+
     /**
      * Find PaymentTransactions with APM PaymentInfo with set timeoutDate older than the current date.
      *
      * @return list of {@link PaymentTransactionModel}
      */
     List<PaymentTransactionModel> findCancellablePendingAPMPaymentTransactions();
+
+    /**
+     * Pages through the PaymentTransactions returned by {@link #findCancellablePendingAPMPaymentTransactions()} in PK order, detaching
+     * the transactions of each page, with their orders, once processed.
+     *
+     * @param pageSize      maximum number of PaymentTransactions in a page
+     * @param pageProcessor called with every page until it returns false or there are no more PaymentTransactions
+     */
+    void processCancellablePendingAPMPaymentTransactions(final int pageSize, final PaymentTransactionPageProcessor pageProcessor);
 }
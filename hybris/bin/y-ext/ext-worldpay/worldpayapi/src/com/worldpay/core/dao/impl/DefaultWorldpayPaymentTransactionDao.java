@@ -1,7 +1,9 @@
 package com.worldpay.core.dao.impl;
 
+import com.worldpay.core.dao.PaymentTransactionPageProcessor;
 import com.worldpay.core.dao.WorldpayPaymentTransactionDao;
 import de.hybris.platform.core.enums.OrderStatus;
+import de.hybris.platform.core.model.order.AbstractOrderModel;
 import de.hybris.platform.core.model.order.CartModel;
 import de.hybris.platform.core.model.order.OrderModel;
 import de.hybris.platform.core.model.order.payment.PaymentInfoModel;
@@ -15,8 +17,12 @@ import org.apache.commons.lang.time.DateUtils;
 import org.springframework.beans.factory.annotation.Required;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static de.hybris.platform.core.enums.OrderStatus.PAYMENT_PENDING;
 
@@ -27,8 +33,10 @@ public class DefaultWorldpayPaymentTransactionDao extends AbstractItemDao implem
 
     protected static final String TIMEOUT_DATE_PARAMETER = "timeoutDate";
     protected static final String REQUESTID = "requestid";
+    protected static final String REQUESTIDS = "requestids";
     protected static final String ORDER_STATUS_PARAMETER = "orderStatus";
     protected static final String CREATION_TIME_PARAMETER = "creationTime";
+    protected static final String LAST_PK_PARAMETER = "lastPk";
 
     protected static final String QUERY_TRANSACTION_BY_REQUESTID_IN_ORDERS = "" +
             "SELECT {pk} " +
@@ -61,6 +69,27 @@ public class DefaultWorldpayPaymentTransactionDao extends AbstractItemDao implem
             "AND {pt." + PaymentTransactionModel.ORDER + "} = {c.pk}\n" +
             "}}) x\n";
 
+    protected static final String QUERY_TRANSACTIONS_BY_REQUESTIDS = "" +
+            "SELECT x.PK FROM\n" +
+            "({{\n" +
+            "SELECT {pt.PK}\n" +
+            "FROM \n" +
+            "  {" + PaymentTransactionModel._TYPECODE + " AS pt},\n" +
+            "  {" + OrderModel._TYPECODE + " AS o}\n" +
+            "WHERE {pt." + REQUESTID + "} IN (?" + REQUESTIDS + ")\n" +
+            "AND {pt." + PaymentTransactionModel.ORDER + "} = {o.pk}\n" +
+            "AND {o." + OrderModel.VERSIONID + "} IS NULL\n" +
+            "}}\n" +
+            "UNION\n" +
+            "{{\n" +
+            "SELECT {pt.PK}\n" +
+            "FROM \n" +
+            "  {" + PaymentTransactionModel._TYPECODE + " AS pt},\n" +
+            "  {" + CartModel._TYPECODE + " AS c}\n" +
+            "WHERE {pt." + REQUESTID + "} IN (?" + REQUESTIDS + ")\n" +
+            "AND {pt." + PaymentTransactionModel.ORDER + "} = {c.pk}\n" +
+            "}}) x\n";
+
     protected static final String PENDING_PAYMENT_TRANSACTION_QUERY = "" +
             "SELECT {pt." + PaymentTransactionModel.PK + "} " +
             "FROM { " + PaymentTransactionModel._TYPECODE + " AS pt " +
@@ -86,6 +115,10 @@ public class DefaultWorldpayPaymentTransactionDao extends AbstractItemDao implem
             "AND {os.code} = ?" + ORDER_STATUS_PARAMETER + " " +
             "AND {pi." + WorldpayAPMPaymentInfoModel.TIMEOUTDATE + "} <= ?" + TIMEOUT_DATE_PARAMETER;
 
+    protected static final String PAGE_CONDITION = "" +
+            " AND {pt." + PaymentTransactionModel.PK + "} > ?" + LAST_PK_PARAMETER + " " +
+            "ORDER BY {pt." + PaymentTransactionModel.PK + "} ASC";
+
     private FlexibleSearchService flexibleSearchService;
 
     /**
@@ -103,6 +136,18 @@ public class DefaultWorldpayPaymentTransactionDao extends AbstractItemDao implem
         return result.getResult();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPendingPaymentTransactions(final int waitTimeInMinutes, final long afterPk, final int pageSize, final PaymentTransactionPageProcessor pageProcessor) {
+        final Map<String, Object> queryParameters = new HashMap<>();
+        queryParameters.put(CREATION_TIME_PARAMETER, DateUtils.addMinutes(Date.from(Instant.now()), -waitTimeInMinutes));
+        queryParameters.put(ORDER_STATUS_PARAMETER, PAYMENT_PENDING);
+
+        processPages(PENDING_PAYMENT_TRANSACTION_QUERY, queryParameters, afterPk, pageSize, pageProcessor);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -123,6 +168,20 @@ public class DefaultWorldpayPaymentTransactionDao extends AbstractItemDao implem
         return flexibleSearchService.searchUnique(query);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PaymentTransactionModel> findPaymentTransactionsByRequestIds(final Collection<String> requestIds) {
+        if (requestIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(QUERY_TRANSACTIONS_BY_REQUESTIDS);
+        query.addQueryParameter(REQUESTIDS, requestIds);
+        final SearchResult<PaymentTransactionModel> result = flexibleSearchService.search(query);
+        return result.getResult();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -137,6 +196,70 @@ public class DefaultWorldpayPaymentTransactionDao extends AbstractItemDao implem
         return result.getResult();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processCancellablePendingAPMPaymentTransactions(final int pageSize, final PaymentTransactionPageProcessor pageProcessor) {
+        final Map<String, Object> queryParameters = new HashMap<>();
+        queryParameters.put(TIMEOUT_DATE_PARAMETER, Date.from(Instant.now()));
+        queryParameters.put(ORDER_STATUS_PARAMETER, PAYMENT_PENDING.getCode());
+
+        processPages(CANCELLABLE_APM_PAYMENT_TRANSACTION_QUERY, queryParameters, 0L, pageSize, pageProcessor);
+    }
+
+    /**
+     * Runs the query once per page, seeking past the last PK of the previous page instead of using an offset, so every page costs the
+     * same whatever its position and transactions updated by the processor do not shift the following pages.
+     * The parameters are computed once, so all the pages see the same cut-off dates.
+     */
+    protected void processPages(final String query, final Map<String, Object> queryParameters, final long afterPk, final int pageSize,
+                                final PaymentTransactionPageProcessor pageProcessor) {
+        long lastPk = afterPk;
+        List<PaymentTransactionModel> page;
+        do {
+            page = findPage(query, queryParameters, lastPk, pageSize);
+            if (page.isEmpty()) {
+                return;
+            }
+            lastPk = page.get(page.size() - 1).getPk().getLongValue();
+            final boolean readNextPage;
+            try {
+                readNextPage = pageProcessor.process(page);
+            } finally {
+                detachPage(page);
+            }
+            if (!readNextPage) {
+                return;
+            }
+        } while (page.size() == pageSize);
+    }
+
+    /**
+     * Detaches the payment transactions of a page and their orders, so the models of the pages already processed do not pile up in
+     * the model context of a long running job. The processors read the order of every transaction, so detaching it loads nothing; the
+     * entries, payment infos and other transactions of the order are not walked, as reading them would load the ones never used.
+     */
+    protected void detachPage(final List<PaymentTransactionModel> page) {
+        for (final PaymentTransactionModel paymentTransaction : page) {
+            final AbstractOrderModel order = paymentTransaction.getOrder();
+            if (order != null) {
+                modelService.detach(order);
+            }
+            modelService.detach(paymentTransaction);
+        }
+    }
+
+    protected List<PaymentTransactionModel> findPage(final String query, final Map<String, Object> queryParameters, final long lastPk, final int pageSize) {
+        final FlexibleSearchQuery pageQuery = new FlexibleSearchQuery(query + PAGE_CONDITION, queryParameters);
+        pageQuery.addQueryParameter(LAST_PK_PARAMETER, lastPk);
+        pageQuery.setCount(pageSize);
+        pageQuery.setNeedTotal(false);
+
+        final SearchResult<PaymentTransactionModel> result = flexibleSearchService.search(pageQuery);
+        return result.getResult();
+    }
+
     @Override
     public FlexibleSearchService getFlexibleSearchService() {
         return flexibleSearchService;
@@ -0,0 +1,67 @@
+package com.worldpay.core.event;
+
+import com.worldpay.service.notification.OrderNotificationMessage;
+import de.hybris.platform.servicelayer.event.ClusterAwareEvent;
+import de.hybris.platform.servicelayer.event.PublishEventContext;
+
+/**
+ * {@link OrderModificationEvent} sent through the cluster, so it is handled by another node than the one that received the
+ * notification from Worldpay.
+ * <p>
+ * The event is handled by a single node, identified by its {@code cluster.id}. When a node group, set with {@code cluster.node.groups},
+ * is given too, the node only handles the event if it belongs to the group, so the notification is never saved by several nodes.
+ * </p>
+ */
+public class ClusterAwareOrderModificationEvent extends OrderModificationEvent implements ClusterAwareEvent {
+
+    private final Integer targetNodeId;
+    private final String targetNodeGroup;
+
+    private ClusterAwareOrderModificationEvent(final OrderNotificationMessage orderNotificationMessage, final Integer targetNodeId, final String targetNodeGroup) {
+        super(orderNotificationMessage);
+        this.targetNodeId = targetNodeId;
+        this.targetNodeGroup = targetNodeGroup;
+    }
+
+    /**
+     * Creates an event handled by a single node
+     *
+     * @param orderNotificationMessage the {@link OrderNotificationMessage} received from Worldpay
+     * @param targetNodeId             the cluster id of the node handling the event
+     * @return the event
+     */
+    public static ClusterAwareOrderModificationEvent forNode(final OrderNotificationMessage orderNotificationMessage, final int targetNodeId) {
+        return new ClusterAwareOrderModificationEvent(orderNotificationMessage, targetNodeId, null);
+    }
+
+    /**
+     * Creates an event handled by a single node of a node group
+     *
+     * @param orderNotificationMessage the {@link OrderNotificationMessage} received from Worldpay
+     * @param targetNodeGroup          the node group the node handling the event belongs to
+     * @param targetNodeId             the cluster id of the node handling the event
+     * @return the event
+     */
+    public static ClusterAwareOrderModificationEvent forNodeGroup(final OrderNotificationMessage orderNotificationMessage, final String targetNodeGroup, final int targetNodeId) {
+        return new ClusterAwareOrderModificationEvent(orderNotificationMessage, targetNodeId, targetNodeGroup);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canPublish(final PublishEventContext publishEventContext) {
+        if (targetNodeGroup != null && (publishEventContext.getTargetNodeGroups() == null || !publishEventContext.getTargetNodeGroups().contains(targetNodeGroup))) {
+            return false;
+        }
+        return targetNodeId != null && targetNodeId == publishEventContext.getTargetNodeId();
+    }
+
+    public Integer getTargetNodeId() {
+        return targetNodeId;
+    }
+
+    public String getTargetNodeGroup() {
+        return targetNodeGroup;
+    }
+}
@@ -5,6 +5,9 @@ import com.worldpay.service.model.MerchantInfo;
 import com.worldpay.service.response.OrderInquiryServiceResponse;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Order Inquiry Service interface. The service is responsible for sending Order Inquiries to Worldpay and processing the responses.
  */
@@ -20,6 +23,17 @@ public interface OrderInquiryService {
      */
     OrderInquiryServiceResponse inquirePaymentTransaction(final MerchantInfo merchantConfig, final PaymentTransactionModel paymentTransactionModel) throws WorldpayException;
 
+    /**
+     * Carries out the Order Inquiry for the Worldpay Order Code of a payment transaction and returns the response. Only the values
+     * read from the payment transaction are passed, so the inquiry can be sent from another thread than the one holding the model.
+     *
+     * @param merchantConfig    The {@link MerchantInfo} object to be used with this call to Worldpay
+     * @param worldpayOrderCode The Worldpay Order Code of the payment transaction
+     * @return The {@link OrderInquiryServiceResponse} object with the response from Worldpay
+     * @throws WorldpayException
+     */
+    OrderInquiryServiceResponse inquirePaymentTransaction(final MerchantInfo merchantConfig, final String worldpayOrderCode) throws WorldpayException;
+
     /**
      * Updates the payment transaction with the information from the Order Inquiry Service Response from Worldpay.
      *
@@ -37,5 +51,27 @@ public interface OrderInquiryService {
      */
     OrderInquiryServiceResponse inquireOrder(final MerchantInfo merchantInfo, final String worldpayOrderCode) throws WorldpayException;
 
+    /**
+     * Inquires the payment status of an order without blocking the calling thread
+     *
+     * @param merchantInfo      The {@link MerchantInfo} object to be used with this call to Worldpay
+     * @param worldpayOrderCode The Worldpay order code
+     * @return future completed with the response, or exceptionally when the inquiry failed after all its retries
+     */
+    CompletableFuture<OrderInquiryServiceResponse> inquireOrderAsync(final MerchantInfo merchantInfo, final String worldpayOrderCode);
+
+    /**
+     * Inquires the payment status of an order, waiting at most the given time for the response. The inquiry carries on after the
+     * wait, so calling again later waits for the same inquiry, and returns its response until {@code worldpayapi.inquiry.response.ttl}
+     * milliseconds after it was received. A call made after that, or after the inquiry failed, starts a new inquiry.
+     *
+     * @param merchantInfo      The {@link MerchantInfo} object to be used with this call to Worldpay
+     * @param worldpayOrderCode The Worldpay order code
+     * @param maxWaitMillis     The maximum time to wait for the response in milliseconds
+     * @return the response, or empty when the inquiry is still in progress
+     * @throws WorldpayException when the inquiry failed after all its retries
+     */
+    Optional<OrderInquiryServiceResponse> inquireOrder(final MerchantInfo merchantInfo, final String worldpayOrderCode, final long maxWaitMillis) throws WorldpayException;
+
     OrderInquiryServiceResponse inquiryKlarnaOrder(MerchantInfo merchantInfo, String worldpayOrderCode) throws WorldpayException;
 }
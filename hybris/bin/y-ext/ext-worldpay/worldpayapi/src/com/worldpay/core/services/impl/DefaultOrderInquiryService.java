@@ -1,28 +1,27 @@
 package com.worldpay.core.services.impl;
 
-import com.evanlennick.retry4j.CallExecutor;
-import com.evanlennick.retry4j.CallResults;
-import com.evanlennick.retry4j.config.RetryConfig;
-import com.evanlennick.retry4j.config.RetryConfigBuilder;
-import com.evanlennick.retry4j.exception.RetriesExhaustedException;
-import com.evanlennick.retry4j.exception.UnexpectedException;
 import com.worldpay.core.services.OrderInquiryService;
 import com.worldpay.core.services.WorldpayPaymentInfoService;
 import com.worldpay.exception.WorldpayException;
+import com.worldpay.service.WorldpayAsyncServiceGateway;
 import com.worldpay.service.WorldpayServiceGateway;
 import com.worldpay.service.model.MerchantInfo;
 import com.worldpay.service.request.AbstractServiceRequest;
 import com.worldpay.service.request.KlarnaOrderInquiryServiceRequest;
 import com.worldpay.service.request.OrderInquiryServiceRequest;
 import com.worldpay.service.response.OrderInquiryServiceResponse;
+import com.worldpay.service.retry.WorldpayRetryPolicy;
+import com.worldpay.service.retry.WorldpayRetryScheduler;
 import de.hybris.platform.core.model.order.payment.WorldpayAPMPaymentInfoModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
 
-import java.time.temporal.ChronoUnit;
-import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
 
 import static java.text.MessageFormat.format;
 
@@ -32,6 +31,10 @@ import static java.text.MessageFormat.format;
  * Saves payment type depending on the method code retrieved from the {@link OrderInquiryServiceResponse}
  * and creates the {@link WorldpayAPMPaymentInfoModel} if it is an APM.
  * </p>
+ * <p>
+ * Inquiries that fail are retried by the {@link WorldpayRetryScheduler} with exponential backoff and jitter, within an overall deadline,
+ * so no thread sleeps between the tries. The retries and latency of the inquiries are published by merchant code.
+ * </p>
  */
 public class DefaultOrderInquiryService implements OrderInquiryService {
     private static final Logger LOG = Logger.getLogger(DefaultOrderInquiryService.class);
@@ -40,10 +43,24 @@ public class DefaultOrderInquiryService implements OrderInquiryService {
     private static final int DEFAULT_WORLDPAYAPI_INQUIRY_MAX_NUMBER_OF_RETRIES_VALUE = 3;
     private static final String WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES = "worldpayapi.inquiry.delay.between.retries";
     private static final int DEFAULT_WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES_VALUE = 3;
+    private static final String WORLDPAYAPI_INQUIRY_BACKOFF_MULTIPLIER = "worldpayapi.inquiry.backoff.multiplier";
+    private static final String WORLDPAYAPI_INQUIRY_BACKOFF_MAX_DELAY = "worldpayapi.inquiry.backoff.max.delay";
+    private static final String WORLDPAYAPI_INQUIRY_BACKOFF_JITTER = "worldpayapi.inquiry.backoff.jitter";
+    private static final String WORLDPAYAPI_INQUIRY_DEADLINE = "worldpayapi.inquiry.deadline";
+    private static final String WORLDPAYAPI_INQUIRY_RESPONSE_TTL = "worldpayapi.inquiry.response.ttl";
+    private static final double DEFAULT_BACKOFF_MULTIPLIER = 2d;
+    private static final long DEFAULT_BACKOFF_MAX_DELAY = 10000L;
+    private static final double DEFAULT_BACKOFF_JITTER = 0.2d;
+    private static final long DEFAULT_DEADLINE = 20000L;
+    private static final long DEFAULT_RESPONSE_TTL = 30000L;
+
+    private final Map<String, Inquiry> inquiries = new ConcurrentHashMap<>();
 
     private WorldpayPaymentInfoService worldpayPaymentInfoService;
     private ConfigurationService configurationService;
     private WorldpayServiceGateway worldpayServiceGateway;
+    private WorldpayAsyncServiceGateway worldpayAsyncServiceGateway;
+    private WorldpayRetryScheduler worldpayRetryScheduler;
 
     /**
      * {@inheritDoc}
@@ -52,8 +69,17 @@ public class DefaultOrderInquiryService implements OrderInquiryService {
      */
     @Override
     public OrderInquiryServiceResponse inquirePaymentTransaction(final MerchantInfo merchantConfig, final PaymentTransactionModel paymentTransactionModel) throws WorldpayException {
-        final String orderCode = paymentTransactionModel.getRequestId();
-        final OrderInquiryServiceRequest orderInquiryServiceRequest = createOrderInquiryServiceRequest(merchantConfig, orderCode);
+        return inquirePaymentTransaction(merchantConfig, paymentTransactionModel.getRequestId());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderInquiryService#inquirePaymentTransaction(MerchantInfo, String)
+     */
+    @Override
+    public OrderInquiryServiceResponse inquirePaymentTransaction(final MerchantInfo merchantConfig, final String worldpayOrderCode) throws WorldpayException {
+        final OrderInquiryServiceRequest orderInquiryServiceRequest = createOrderInquiryServiceRequest(merchantConfig, worldpayOrderCode);
         return worldpayServiceGateway.orderInquiry(orderInquiryServiceRequest);
     }
 
@@ -79,51 +105,105 @@ public class DefaultOrderInquiryService implements OrderInquiryService {
 
     @Override
     public OrderInquiryServiceResponse inquireOrder(final MerchantInfo merchantInfo, final String worldpayOrderCode) throws WorldpayException {
-        final OrderInquiryServiceRequest orderInquiryServiceRequest = createOrderInquiryServiceRequest(merchantInfo, worldpayOrderCode);
-        return getOrderInquiryServiceResponse(orderInquiryServiceRequest);
+        return waitFor(inquireOrderAsync(merchantInfo, worldpayOrderCode));
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderInquiryService#inquireOrderAsync(MerchantInfo, String)
+     */
     @Override
-    public OrderInquiryServiceResponse inquiryKlarnaOrder(final MerchantInfo merchantInfo, final String worldpayOrderCode) throws WorldpayException {
-        final KlarnaOrderInquiryServiceRequest klarnaOrderInquiryServiceRequest = createKlarnaOrderInquiryServiceRequest(merchantInfo, worldpayOrderCode);
-        return getOrderInquiryServiceResponse(klarnaOrderInquiryServiceRequest);
+    public CompletableFuture<OrderInquiryServiceResponse> inquireOrderAsync(final MerchantInfo merchantInfo, final String worldpayOrderCode) {
+        final OrderInquiryServiceRequest orderInquiryServiceRequest = createOrderInquiryServiceRequest(merchantInfo, worldpayOrderCode);
+        return executeInquiry(merchantInfo, orderInquiryServiceRequest);
     }
 
-    private OrderInquiryServiceResponse getOrderInquiryServiceResponse(final AbstractServiceRequest orderInquiryServiceRequest) throws WorldpayException {
-        final Callable<OrderInquiryServiceResponse> callable = getOrderInquiryServiceResponseCallable(orderInquiryServiceRequest);
-        final RetryConfig config = buildRetryConfig();
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Concurrent calls for the same merchant and order share the inquiry in progress, so a shopper refreshing the page while the
+     * inquiry is retried does not start another one. Its response is kept for {@code worldpayapi.inquiry.response.ttl} milliseconds
+     * once received, and a failed inquiry is started again by the next call.
+     * </p>
+     *
+     * @see OrderInquiryService#inquireOrder(MerchantInfo, String, long)
+     */
+    @Override
+    public Optional<OrderInquiryServiceResponse> inquireOrder(final MerchantInfo merchantInfo, final String worldpayOrderCode, final long maxWaitMillis) throws WorldpayException {
+        final String key = merchantInfo.getMerchantCode() + ":" + worldpayOrderCode;
+        final long responseTtl = configurationService.getConfiguration().getLong(WORLDPAYAPI_INQUIRY_RESPONSE_TTL, DEFAULT_RESPONSE_TTL);
+        final long now = System.currentTimeMillis();
+        final Inquiry newInquiry = new Inquiry();
+        final Inquiry inquiry = inquiries.compute(key, (inquiryKey, current) -> current == null || current.isExpired(now, responseTtl) ? newInquiry : current);
+        if (inquiry == newInquiry) {
+            removeExpiredInquiries(now, responseTtl);
+            inquireOrderAsync(merchantInfo, worldpayOrderCode).whenComplete(newInquiry::complete);
+        }
 
         try {
-            final CallResults<OrderInquiryServiceResponse> results = executeInquiryCallable(callable, config);
-            return results.getResult();
-        } catch (RetriesExhaustedException | UnexpectedException e) {
-            throw new WorldpayException("Unable to retrieve order status", e);
+            return Optional.of(inquiry.response.get(Math.max(0L, maxWaitMillis), TimeUnit.MILLISECONDS));
+        } catch (final TimeoutException e) {
+            LOG.debug(format("Order inquiry for order [{0}] still in progress after {1} ms", worldpayOrderCode, maxWaitMillis));
+            return Optional.empty();
+        } catch (final ExecutionException e) {
+            throw toWorldpayException(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WorldpayException("Interrupted while waiting for the order status", e);
         }
     }
 
-    private Callable<OrderInquiryServiceResponse> getOrderInquiryServiceResponseCallable(final AbstractServiceRequest orderInquiryServiceRequest) {
-        return () -> {
-            final OrderInquiryServiceResponse response = worldpayServiceGateway.orderInquiry(orderInquiryServiceRequest);
+    /**
+     * Drops the responses kept longer than their time to live, when an inquiry is started, so orders not inquired again do not
+     * pile up
+     */
+    private void removeExpiredInquiries(final long now, final long responseTtl) {
+        inquiries.values().removeIf(inquiry -> inquiry.isExpired(now, responseTtl));
+    }
+
+    @Override
+    public OrderInquiryServiceResponse inquiryKlarnaOrder(final MerchantInfo merchantInfo, final String worldpayOrderCode) throws WorldpayException {
+        final KlarnaOrderInquiryServiceRequest klarnaOrderInquiryServiceRequest = createKlarnaOrderInquiryServiceRequest(merchantInfo, worldpayOrderCode);
+        return waitFor(executeInquiry(merchantInfo, klarnaOrderInquiryServiceRequest));
+    }
 
-            if (response.getErrorDetail() != null) {
-                throw new WorldpayException(response.getErrorDetail().getMessage());
-            }
+    protected CompletableFuture<OrderInquiryServiceResponse> executeInquiry(final MerchantInfo merchantInfo, final AbstractServiceRequest orderInquiryServiceRequest) {
+        return worldpayRetryScheduler.execute(merchantInfo.getMerchantCode(), buildRetryPolicy(),
+                () -> worldpayAsyncServiceGateway.orderInquiry(orderInquiryServiceRequest).thenApply(this::failOnErrorDetail));
+    }
 
-            return response;
-        };
+    protected WorldpayRetryPolicy buildRetryPolicy() {
+        final Configuration configuration = configurationService.getConfiguration();
+        return new WorldpayRetryPolicy(
+                configuration.getInt(WORLDPAYAPI_INQUIRY_MAX_NUMBER_OF_RETRIES, DEFAULT_WORLDPAYAPI_INQUIRY_MAX_NUMBER_OF_RETRIES_VALUE),
+                TimeUnit.SECONDS.toMillis(configuration.getInt(WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES, DEFAULT_WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES_VALUE)),
+                configuration.getDouble(WORLDPAYAPI_INQUIRY_BACKOFF_MULTIPLIER, DEFAULT_BACKOFF_MULTIPLIER),
+                configuration.getLong(WORLDPAYAPI_INQUIRY_BACKOFF_MAX_DELAY, DEFAULT_BACKOFF_MAX_DELAY),
+                configuration.getDouble(WORLDPAYAPI_INQUIRY_BACKOFF_JITTER, DEFAULT_BACKOFF_JITTER),
+                configuration.getLong(WORLDPAYAPI_INQUIRY_DEADLINE, DEFAULT_DEADLINE));
     }
 
-    private RetryConfig buildRetryConfig() {
-        return new RetryConfigBuilder()
-                .retryOnSpecificExceptions(WorldpayException.class)
-                .withMaxNumberOfTries(configurationService.getConfiguration().getInt(WORLDPAYAPI_INQUIRY_MAX_NUMBER_OF_RETRIES, DEFAULT_WORLDPAYAPI_INQUIRY_MAX_NUMBER_OF_RETRIES_VALUE))
-                .withDelayBetweenTries(configurationService.getConfiguration().getInt(WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES, DEFAULT_WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES_VALUE), ChronoUnit.SECONDS)
-                .withFixedBackoff()
-                .build();
+    private OrderInquiryServiceResponse failOnErrorDetail(final OrderInquiryServiceResponse response) {
+        if (response.getErrorDetail() != null) {
+            throw new CompletionException(new WorldpayException(response.getErrorDetail().getMessage()));
+        }
+        return response;
     }
 
-    protected CallResults<OrderInquiryServiceResponse> executeInquiryCallable(final Callable<OrderInquiryServiceResponse> callable, final RetryConfig config) {
-        return new CallExecutor<OrderInquiryServiceResponse>(config).execute(callable);
+    private OrderInquiryServiceResponse waitFor(final CompletableFuture<OrderInquiryServiceResponse> inquiry) throws WorldpayException {
+        try {
+            return inquiry.get();
+        } catch (final ExecutionException e) {
+            throw toWorldpayException(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WorldpayException("Interrupted while waiting for the order status", e);
+        }
+    }
+
+    private WorldpayException toWorldpayException(final ExecutionException e) {
+        return new WorldpayException("Unable to retrieve order status", e.getCause() != null ? e.getCause() : e);
     }
 
     protected OrderInquiryServiceRequest createOrderInquiryServiceRequest(MerchantInfo merchantInfo, String orderCode) {
@@ -144,8 +224,39 @@ public class DefaultOrderInquiryService implements OrderInquiryService {
         this.worldpayServiceGateway = worldpayServiceGateway;
     }
 
+    @Required
+    public void setWorldpayAsyncServiceGateway(final WorldpayAsyncServiceGateway worldpayAsyncServiceGateway) {
+        this.worldpayAsyncServiceGateway = worldpayAsyncServiceGateway;
+    }
+
+    @Required
+    public void setWorldpayRetryScheduler(final WorldpayRetryScheduler worldpayRetryScheduler) {
+        this.worldpayRetryScheduler = worldpayRetryScheduler;
+    }
+
     @Required
     public void setConfigurationService(final ConfigurationService configurationService) {
         this.configurationService = configurationService;
     }
+
+    /**
+     * An order inquiry shared by the calls for the same merchant and order, with the time its response was received
+     */
+    private static final class Inquiry {
+        private final CompletableFuture<OrderInquiryServiceResponse> response = new CompletableFuture<>();
+        private volatile long completedAt;
+
+        private void complete(final OrderInquiryServiceResponse orderInquiryServiceResponse, final Throwable throwable) {
+            completedAt = System.currentTimeMillis();
+            if (throwable == null) {
+                response.complete(orderInquiryServiceResponse);
+            } else {
+                response.completeExceptionally(throwable);
+            }
+        }
+
+        private boolean isExpired(final long now, final long responseTtl) {
+            return response.isDone() && (response.isCompletedExceptionally() || now - completedAt >= responseTtl);
+        }
+    }
 }
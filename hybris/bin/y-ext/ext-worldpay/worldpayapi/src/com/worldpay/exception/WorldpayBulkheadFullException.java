@@ -0,0 +1,21 @@
+package com.worldpay.exception;
+
+import com.worldpay.service.http.WorldpayBulkhead;
+
+/**
+ * Exception thrown without contacting Worldpay when the {@link WorldpayBulkhead} of the merchant and request type has no room left
+ * for another request in flight
+ */
+public class WorldpayBulkheadFullException extends WorldpayCommunicationException {
+
+    private static final long serialVersionUID = -3186492650743215877L;
+
+    /**
+     * Default constructor setting a message
+     *
+     * @param message
+     */
+    public WorldpayBulkheadFullException(String message) {
+        super(message);
+    }
+}
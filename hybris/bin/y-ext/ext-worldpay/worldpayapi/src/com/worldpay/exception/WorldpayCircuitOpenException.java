@@ -0,0 +1,21 @@
+package com.worldpay.exception;
+
+import com.worldpay.service.http.WorldpayCircuitBreaker;
+
+/**
+ * Exception thrown without contacting Worldpay when the {@link WorldpayCircuitBreaker} of the merchant and request type is open,
+ * because too many of the latest requests failed to communicate with Worldpay
+ */
+public class WorldpayCircuitOpenException extends WorldpayCommunicationException {
+
+    private static final long serialVersionUID = 2754158840371032190L;
+
+    /**
+     * Default constructor setting a message
+     *
+     * @param message
+     */
+    public WorldpayCircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -41,7 +41,8 @@ public interface WorldpayHostedOrderFacade {
     boolean validateRedirectResponse(Map<String, String> worldpayResponse);
 
     /**
-     * Inquiries the payment status of an order in Worldpay
+     * Inquiries the payment status of an order in Worldpay. Waits at most {@code worldpayapi.inquiry.hop.max.wait} milliseconds for
+     * the status: when the inquiry is still in progress after that, the result is pending and has {@code inquiryInProgress} set.
      * @return String representing the Authorisation status of the order in Worldpay
      */
     RedirectAuthoriseResult inquiryPaymentStatus() throws WorldpayException;
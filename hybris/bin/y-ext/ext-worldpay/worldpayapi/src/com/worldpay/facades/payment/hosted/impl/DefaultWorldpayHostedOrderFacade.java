@@ -18,6 +18,7 @@ import com.worldpay.service.response.OrderInquiryServiceResponse;
 import de.hybris.platform.acceleratorservices.payment.data.PaymentData;
 import de.hybris.platform.core.model.order.CartModel;
 import de.hybris.platform.order.CartService;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.session.SessionService;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
@@ -25,6 +26,7 @@ import org.springframework.beans.factory.annotation.Required;
 import java.math.BigDecimal;
 import java.text.MessageFormat;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  */
@@ -32,6 +34,8 @@ public class DefaultWorldpayHostedOrderFacade implements WorldpayHostedOrderFaca
 
     private static final Logger LOG = Logger.getLogger(DefaultWorldpayHostedOrderFacade.class);
     protected static final String WORLDPAY_MERCHANT_CODE = "worldpayMerchantCode";
+    protected static final String WORLDPAYAPI_INQUIRY_HOP_MAX_WAIT = "worldpayapi.inquiry.hop.max.wait";
+    private static final long DEFAULT_INQUIRY_HOP_MAX_WAIT = 2000L;
 
     private SessionService sessionService;
     private WorldpayRedirectOrderService worldpayRedirectOrderService;
@@ -41,6 +45,7 @@ public class DefaultWorldpayHostedOrderFacade implements WorldpayHostedOrderFaca
     private WorldpayMerchantConfigDataFacade worldpayMerchantConfigDataFacade;
     private OrderInquiryService orderInquiryService;
     private APMConfigurationLookupService apmConfigurationLookupService;
+    private ConfigurationService configurationService;
 
     /**
      * {@inheritDoc}
@@ -89,9 +94,16 @@ public class DefaultWorldpayHostedOrderFacade implements WorldpayHostedOrderFaca
     public RedirectAuthoriseResult inquiryPaymentStatus() throws WorldpayException {
         final String worldpayOrderCode = cartService.getSessionCart().getWorldpayOrderCode();
         final MerchantInfo merchantInfo = worldpayMerchantInfoService.getCurrentSiteMerchant();
-        final OrderInquiryServiceResponse inquiryResponse = orderInquiryService.inquireOrder(merchantInfo, worldpayOrderCode);
-        final PaymentReply paymentReply = inquiryResponse.getPaymentReply();
+        final long maxWait = configurationService.getConfiguration().getLong(WORLDPAYAPI_INQUIRY_HOP_MAX_WAIT, DEFAULT_INQUIRY_HOP_MAX_WAIT);
+        final Optional<OrderInquiryServiceResponse> inquiryResponse = orderInquiryService.inquireOrder(merchantInfo, worldpayOrderCode, maxWait);
         final RedirectAuthoriseResult redirectAuthoriseResult = new RedirectAuthoriseResult();
+        if (!inquiryResponse.isPresent()) {
+            redirectAuthoriseResult.setOrderCode(worldpayOrderCode);
+            redirectAuthoriseResult.setPending(Boolean.TRUE);
+            redirectAuthoriseResult.setInquiryInProgress(Boolean.TRUE);
+            return redirectAuthoriseResult;
+        }
+        final PaymentReply paymentReply = inquiryResponse.get().getPaymentReply();
         redirectAuthoriseResult.setPaymentStatus(paymentReply.getAuthStatus());
         final int paymentExponent = Integer.parseInt(paymentReply.getAmount().getExponent());
         final BigDecimal paymentAmount = new BigDecimal(paymentReply.getAmount().getValue()).movePointLeft(paymentExponent);
@@ -152,4 +164,9 @@ public class DefaultWorldpayHostedOrderFacade implements WorldpayHostedOrderFaca
     public void setApmConfigurationLookupService(final APMConfigurationLookupService apmConfigurationLookupService) {
         this.apmConfigurationLookupService = apmConfigurationLookupService;
     }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
 }
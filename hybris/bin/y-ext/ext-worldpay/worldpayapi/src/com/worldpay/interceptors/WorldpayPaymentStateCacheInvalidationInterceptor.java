@@ -0,0 +1,67 @@
+package com.worldpay.interceptors;
+
+import com.worldpay.transaction.WorldpayPaymentStateCache;
+import de.hybris.platform.core.model.ItemModel;
+import de.hybris.platform.core.model.order.AbstractOrderModel;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.interceptor.InterceptorContext;
+import de.hybris.platform.servicelayer.interceptor.PrepareInterceptor;
+import de.hybris.platform.servicelayer.interceptor.RemoveInterceptor;
+import org.springframework.beans.factory.annotation.Required;
+
+
+/**
+ * Removes the payment state of an order from the {@link WorldpayPaymentStateCache} when one of its payment transactions or payment
+ * transaction entries is saved or removed using the {@link de.hybris.platform.servicelayer.model.ModelService}. The change is not
+ * committed yet, so it is invalidated again once committed by
+ * {@link com.worldpay.transaction.impl.WorldpayPaymentStateCacheAfterSaveListener}.
+ */
+public class WorldpayPaymentStateCacheInvalidationInterceptor implements PrepareInterceptor<ItemModel>, RemoveInterceptor<ItemModel> {
+
+    private WorldpayPaymentStateCache worldpayPaymentStateCache;
+
+    /**
+     * Invalidates the payment state of the order of the payment transaction or entry to be saved
+     *
+     * @param itemModel          Item model to be saved
+     * @param interceptorContext Interceptor context
+     */
+    @Override
+    public void onPrepare(final ItemModel itemModel, final InterceptorContext interceptorContext) {
+        invalidate(itemModel);
+    }
+
+    /**
+     * Invalidates the payment state of the order of the payment transaction or entry to be removed
+     *
+     * @param itemModel          Item model to be removed
+     * @param interceptorContext Interceptor context
+     */
+    @Override
+    public void onRemove(final ItemModel itemModel, final InterceptorContext interceptorContext) {
+        invalidate(itemModel);
+    }
+
+    protected void invalidate(final ItemModel itemModel) {
+        final AbstractOrderModel order = getOrder(itemModel);
+        if (order != null) {
+            worldpayPaymentStateCache.invalidate(order);
+        }
+    }
+
+    protected AbstractOrderModel getOrder(final ItemModel itemModel) {
+        PaymentTransactionModel paymentTransaction = null;
+        if (itemModel instanceof PaymentTransactionEntryModel) {
+            paymentTransaction = ((PaymentTransactionEntryModel) itemModel).getPaymentTransaction();
+        } else if (itemModel instanceof PaymentTransactionModel) {
+            paymentTransaction = (PaymentTransactionModel) itemModel;
+        }
+        return paymentTransaction == null ? null : paymentTransaction.getOrder();
+    }
+
+    @Required
+    public void setWorldpayPaymentStateCache(final WorldpayPaymentStateCache worldpayPaymentStateCache) {
+        this.worldpayPaymentStateCache = worldpayPaymentStateCache;
+    }
+}
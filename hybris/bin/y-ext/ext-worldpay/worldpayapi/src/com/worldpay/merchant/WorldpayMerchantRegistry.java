@@ -0,0 +1,45 @@
+package com.worldpay.merchant;
+
+import com.worldpay.config.merchant.WorldpayMerchantConfigData;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Index of the configured Worldpay merchants by site and channel (web, asm, replenishment) and by merchant code.
+ * <p>
+ * The index is immutable: {@link #invalidate()} replaces it as a whole, so lookups never see a partially rebuilt index.
+ * </p>
+ */
+public interface WorldpayMerchantRegistry {
+
+    /**
+     * Returns the merchants configured for the current site
+     *
+     * @return the merchants of the current site by channel
+     */
+    Map<String, WorldpayMerchantConfigData> getCurrentSiteMerchants();
+
+    /**
+     * Returns the merchant with the given code
+     *
+     * @param merchantCode the merchant code
+     * @return the merchant, or {@code null} when no merchant has this code
+     */
+    WorldpayMerchantConfigData getMerchantByCode(final String merchantCode);
+
+    /**
+     * @return every configured merchant
+     */
+    Collection<WorldpayMerchantConfigData> getMerchants();
+
+    /**
+     * @return the merchants by channel of every site resolved since the index was built, by site uid
+     */
+    Map<String, Map<String, WorldpayMerchantConfigData>> getSiteMerchants();
+
+    /**
+     * Rebuilds the index from the current merchant configuration
+     */
+    void invalidate();
+}
@@ -3,6 +3,7 @@ package com.worldpay.merchant.impl;
 import com.worldpay.config.merchant.WorldpayMerchantConfigData;
 import com.worldpay.exception.WorldpayConfigurationException;
 import com.worldpay.merchant.WorldpayMerchantInfoService;
+import com.worldpay.merchant.WorldpayMerchantRegistry;
 import com.worldpay.service.model.MerchantInfo;
 import com.worldpay.strategy.WorldpayMerchantStrategy;
 import de.hybris.platform.acceleratorservices.config.SiteConfigService;
@@ -22,6 +23,7 @@ import java.util.List;
 public class DefaultWorldpayMerchantInfoService implements WorldpayMerchantInfoService {
 
     private WorldpayMerchantStrategy worldpayMerchantStrategy;
+    private WorldpayMerchantRegistry worldpayMerchantRegistry;
 
     @Autowired
     private List<WorldpayMerchantConfigData> configuredMerchants;
@@ -51,10 +53,10 @@ public class DefaultWorldpayMerchantInfoService implements WorldpayMerchantInfoS
      */
     @Override
     public MerchantInfo getMerchantInfoByCode(final String merchantCode) throws WorldpayConfigurationException {
-        final WorldpayMerchantConfigData worldpayMerchantConfigData = configuredMerchants.stream()
-                .filter(config -> config.getCode().equals(merchantCode))
-                .findAny()
-                .orElseThrow(() -> new WorldpayConfigurationException(MessageFormat.format("No merchant configuration found for merchant code {0}", merchantCode)));
+        final WorldpayMerchantConfigData worldpayMerchantConfigData = worldpayMerchantRegistry.getMerchantByCode(merchantCode);
+        if (worldpayMerchantConfigData == null) {
+            throw new WorldpayConfigurationException(MessageFormat.format("No merchant configuration found for merchant code {0}", merchantCode));
+        }
         return createMerchantInfo(worldpayMerchantConfigData);
     }
 
@@ -81,6 +83,11 @@ public class DefaultWorldpayMerchantInfoService implements WorldpayMerchantInfoS
         this.worldpayMerchantStrategy = worldpayMerchantStrategy;
     }
 
+    @Required
+    public void setWorldpayMerchantRegistry(final WorldpayMerchantRegistry worldpayMerchantRegistry) {
+        this.worldpayMerchantRegistry = worldpayMerchantRegistry;
+    }
+
     public void setConfiguredMerchants(final List<WorldpayMerchantConfigData> configuredMerchants) {
         this.configuredMerchants = configuredMerchants;
     }
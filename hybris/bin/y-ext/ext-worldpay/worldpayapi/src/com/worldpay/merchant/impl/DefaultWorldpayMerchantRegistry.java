@@ -0,0 +1,176 @@
+package com.worldpay.merchant.impl;
+
+import com.worldpay.config.merchant.WorldpayMerchantConfigData;
+import com.worldpay.merchant.WorldpayMerchantRegistry;
+import de.hybris.platform.acceleratorservices.config.SiteConfigService;
+import de.hybris.platform.basecommerce.model.site.BaseSiteModel;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.site.BaseSiteService;
+import de.hybris.platform.util.config.ConfigIntf;
+import org.apache.log4j.Logger;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@inheritDoc}
+ * <p/>
+ * <p>Merchant codes are indexed when the index is built, from the {@link WorldpayMerchantConfigData} beans of the application context.
+ * The merchants of a site are resolved once per index, the first time they are needed, from the merchant configuration bean named by
+ * the {@code worldpaymerchantconfig} site property. The index is rebuilt when a {@code worldpaymerchantconfig} property changes.</p>
+ */
+public class DefaultWorldpayMerchantRegistry implements WorldpayMerchantRegistry, ApplicationContextAware, InitializingBean, DisposableBean {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayMerchantRegistry.class);
+
+    protected static final String WORLDPAY_MERCHANT_CONFIG = "worldpaymerchantconfig";
+
+    private static final String NO_SITE = "";
+
+    private final ConfigIntf.ConfigChangeListener configChangeListener = (key, value) -> {
+        if (key != null && key.startsWith(WORLDPAY_MERCHANT_CONFIG)) {
+            invalidate();
+        }
+    };
+
+    private volatile MerchantIndex merchantIndex;
+
+    private SiteConfigService siteConfigService;
+    private BaseSiteService baseSiteService;
+    private ApplicationContext applicationContext;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, WorldpayMerchantConfigData> getCurrentSiteMerchants() {
+        final BaseSiteModel currentSite = baseSiteService.getCurrentBaseSite();
+        final String siteUid = currentSite != null ? currentSite.getUid() : NO_SITE;
+        return getMerchantIndex().siteMerchants.computeIfAbsent(siteUid, uid -> resolveCurrentSiteMerchants());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WorldpayMerchantConfigData getMerchantByCode(final String merchantCode) {
+        return merchantCode == null ? null : getMerchantIndex().merchantsByCode.get(merchantCode);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<WorldpayMerchantConfigData> getMerchants() {
+        return getMerchantIndex().merchantsByCode.values();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Map<String, WorldpayMerchantConfigData>> getSiteMerchants() {
+        return Collections.unmodifiableMap(new TreeMap<>(getMerchantIndex().siteMerchants));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidate() {
+        merchantIndex = buildMerchantIndex();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        getConfig().registerConfigChangeListener(configChangeListener);
+    }
+
+    @Override
+    public void destroy() {
+        getConfig().unregisterConfigChangeListener(configChangeListener);
+    }
+
+    protected ConfigIntf getConfig() {
+        return Registry.getCurrentTenant().getConfig();
+    }
+
+    protected MerchantIndex getMerchantIndex() {
+        MerchantIndex index = merchantIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = merchantIndex;
+                if (index == null) {
+                    index = buildMerchantIndex();
+                    merchantIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    protected MerchantIndex buildMerchantIndex() {
+        final Map<String, WorldpayMerchantConfigData> merchantsByCode = new HashMap<>();
+        for (final WorldpayMerchantConfigData merchant : getConfiguredMerchants()) {
+            final WorldpayMerchantConfigData indexedMerchant = merchantsByCode.putIfAbsent(merchant.getCode(), merchant);
+            if (indexedMerchant != null && indexedMerchant != merchant) {
+                LOG.warn(format("More than one merchant configuration has the merchant code [{0}], using the first one", merchant.getCode()));
+            }
+        }
+        LOG.info(format("Indexed [{0}] Worldpay merchants", merchantsByCode.size()));
+        return new MerchantIndex(Collections.unmodifiableMap(merchantsByCode));
+    }
+
+    protected Collection<WorldpayMerchantConfigData> getConfiguredMerchants() {
+        return BeanFactoryUtils.beansOfTypeIncludingAncestors(applicationContext, WorldpayMerchantConfigData.class).values();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Map<String, WorldpayMerchantConfigData> resolveCurrentSiteMerchants() {
+        final String merchantConfigurationBeanName = siteConfigService.getProperty(WORLDPAY_MERCHANT_CONFIG);
+        final Map<String, WorldpayMerchantConfigData> merchants = (Map<String, WorldpayMerchantConfigData>) applicationContext.getBean(merchantConfigurationBeanName);
+        return Collections.unmodifiableMap(new LinkedHashMap<>(merchants));
+    }
+
+    @Override
+    public void setApplicationContext(final ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Required
+    public void setSiteConfigService(final SiteConfigService siteConfigService) {
+        this.siteConfigService = siteConfigService;
+    }
+
+    @Required
+    public void setBaseSiteService(final BaseSiteService baseSiteService) {
+        this.baseSiteService = baseSiteService;
+    }
+
+    /**
+     * Merchants indexed by code, and by channel for every site resolved so far.
+     */
+    protected static class MerchantIndex {
+
+        private final Map<String, WorldpayMerchantConfigData> merchantsByCode;
+        private final Map<String, Map<String, WorldpayMerchantConfigData>> siteMerchants = new ConcurrentHashMap<>();
+
+        protected MerchantIndex(final Map<String, WorldpayMerchantConfigData> merchantsByCode) {
+            this.merchantsByCode = merchantsByCode;
+        }
+    }
+}
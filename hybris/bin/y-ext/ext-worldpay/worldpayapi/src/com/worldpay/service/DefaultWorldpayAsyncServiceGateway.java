@@ -0,0 +1,274 @@
+package com.worldpay.service;
+
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.exception.WorldpayException;
+import com.worldpay.service.request.*;
+import com.worldpay.service.response.*;
+import com.worldpay.util.WorldpayThreadFactory;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.configuration.Configuration;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@inheritDoc}
+ * <p/>
+ * <p>Runs the calls of the {@link WorldpayServiceGateway} on a dedicated bounded thread pool. Each operation has its own bulkhead, limiting how many
+ * calls of that operation can be queued or in flight, and its own timeout. Both fall back to a default value:</p>
+ * <ul>
+ * <li>{@code worldpay.gateway.async.timeout[.operation]} - milliseconds before the future is completed exceptionally</li>
+ * <li>{@code worldpay.gateway.async.bulkhead[.operation]} - maximum number of concurrent calls of the operation</li>
+ * </ul>
+ * <p>A call that times out keeps its bulkhead permit until the underlying request finishes, as it is still using a connection to Worldpay.
+ * A call that times out while still queued is not sent.</p>
+ */
+public class DefaultWorldpayAsyncServiceGateway implements WorldpayAsyncServiceGateway, DisposableBean {
+
+    protected static final String WORLDPAY_GATEWAY_ASYNC_THREADS = "worldpay.gateway.async.threads";
+    protected static final String WORLDPAY_GATEWAY_ASYNC_QUEUE_CAPACITY = "worldpay.gateway.async.queue.capacity";
+    protected static final String WORLDPAY_GATEWAY_ASYNC_TIMEOUT = "worldpay.gateway.async.timeout";
+    protected static final String WORLDPAY_GATEWAY_ASYNC_BULKHEAD = "worldpay.gateway.async.bulkhead";
+
+    protected static final String DIRECT_AUTHORISE = "directAuthorise";
+    protected static final String REDIRECT_AUTHORISE = "redirectAuthorise";
+    protected static final String CREATE_TOKEN = "createToken";
+    protected static final String UPDATE_TOKEN = "updateToken";
+    protected static final String DELETE_TOKEN = "deleteToken";
+    protected static final String CAPTURE = "capture";
+    protected static final String CANCEL = "cancel";
+    protected static final String REFUND = "refund";
+    protected static final String ADD_BACK_OFFICE_CODE = "addBackOfficeCode";
+    protected static final String AUTHORISATION_CODE = "authorisationCode";
+    protected static final String ORDER_INQUIRY = "orderInquiry";
+
+    private static final int DEFAULT_THREADS = 20;
+    private static final int DEFAULT_QUEUE_CAPACITY = 200;
+    private static final int DEFAULT_TIMEOUT = 20000;
+    private static final int DEFAULT_BULKHEAD = 20;
+
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+    private volatile ExecutorService executor;
+    private volatile ScheduledExecutorService timeoutScheduler;
+
+    private WorldpayServiceGateway worldpayServiceGateway;
+    private ConfigurationService configurationService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<DirectAuthoriseServiceResponse> directAuthorise(final DirectAuthoriseServiceRequest request) {
+        return submit(DIRECT_AUTHORISE, () -> worldpayServiceGateway.directAuthorise(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<RedirectAuthoriseServiceResponse> redirectAuthorise(final RedirectAuthoriseServiceRequest request) {
+        return submit(REDIRECT_AUTHORISE, () -> worldpayServiceGateway.redirectAuthorise(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<CreateTokenResponse> createToken(final CreateTokenServiceRequest request) {
+        return submit(CREATE_TOKEN, () -> worldpayServiceGateway.createToken(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<UpdateTokenResponse> updateToken(final UpdateTokenServiceRequest request) {
+        return submit(UPDATE_TOKEN, () -> worldpayServiceGateway.updateToken(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<DeleteTokenResponse> deleteToken(final DeleteTokenServiceRequest request) {
+        return submit(DELETE_TOKEN, () -> worldpayServiceGateway.deleteToken(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<CaptureServiceResponse> capture(final CaptureServiceRequest request) {
+        return submit(CAPTURE, () -> worldpayServiceGateway.capture(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<CancelServiceResponse> cancel(final CancelServiceRequest request) {
+        return submit(CANCEL, () -> worldpayServiceGateway.cancel(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<RefundServiceResponse> refund(final RefundServiceRequest request) {
+        return submit(REFUND, () -> worldpayServiceGateway.refund(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<AddBackOfficeCodeServiceResponse> addBackOfficeCode(final AddBackOfficeCodeServiceRequest request) {
+        return submit(ADD_BACK_OFFICE_CODE, () -> worldpayServiceGateway.addBackOfficeCode(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<AuthorisationCodeServiceResponse> authorisationCode(final AuthorisationCodeServiceRequest request) {
+        return submit(AUTHORISATION_CODE, () -> worldpayServiceGateway.authorisationCode(request));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<OrderInquiryServiceResponse> orderInquiry(final AbstractServiceRequest request) {
+        return submit(ORDER_INQUIRY, () -> worldpayServiceGateway.orderInquiry(request));
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (timeoutScheduler != null) {
+            timeoutScheduler.shutdownNow();
+        }
+    }
+
+    protected <T extends ServiceResponse> CompletableFuture<T> submit(final String operation, final WorldpayCall<T> call) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Semaphore bulkhead = getBulkhead(operation);
+        if (!bulkhead.tryAcquire()) {
+            future.completeExceptionally(new WorldpayCommunicationException(format("Too many {0} requests to Worldpay in progress, rejecting the request", operation)));
+            return future;
+        }
+
+        final AtomicBoolean started = new AtomicBoolean();
+        final Future<?> task;
+        try {
+            task = getExecutor().submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    future.complete(call.call());
+                } catch (final WorldpayException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            bulkhead.release();
+            future.completeExceptionally(new WorldpayCommunicationException(format("Worldpay request queue is full, rejecting the {0} request", operation), e));
+            return future;
+        }
+
+        final long timeout = getConfiguredValue(WORLDPAY_GATEWAY_ASYNC_TIMEOUT, operation, DEFAULT_TIMEOUT);
+        final ScheduledFuture<?> timeoutTask = getTimeoutScheduler().schedule(() -> {
+            if (future.completeExceptionally(new WorldpayCommunicationException(format("The {0} request to Worldpay did not complete within {1} ms", operation, timeout)))
+                    && started.compareAndSet(false, true)) {
+                task.cancel(false);
+                bulkhead.release();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, throwable) -> timeoutTask.cancel(false));
+        return future;
+    }
+
+    protected Semaphore getBulkhead(final String operation) {
+        return bulkheads.computeIfAbsent(operation, key -> new Semaphore(Math.max(1, getConfiguredValue(WORLDPAY_GATEWAY_ASYNC_BULKHEAD, key, DEFAULT_BULKHEAD))));
+    }
+
+    protected int getConfiguredValue(final String key, final String operation, final int defaultValue) {
+        final Configuration configuration = configurationService.getConfiguration();
+        return configuration.getInt(key + "." + operation, configuration.getInt(key, defaultValue));
+    }
+
+    protected ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = createExecutor();
+                }
+            }
+        }
+        return executor;
+    }
+
+    protected ScheduledExecutorService getTimeoutScheduler() {
+        if (timeoutScheduler == null) {
+            synchronized (this) {
+                if (timeoutScheduler == null) {
+                    timeoutScheduler = createTimeoutScheduler();
+                }
+            }
+        }
+        return timeoutScheduler;
+    }
+
+    /**
+     * Creates the single thread scheduler of the timeouts. Timeouts are cancelled as soon as their call completes, and are then removed
+     * from the queue so it only holds the timeouts of the calls in progress.
+     */
+    protected ScheduledExecutorService createTimeoutScheduler() {
+        final ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1, createThreadFactory("worldpay-gateway-timeout"));
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        return scheduledExecutor;
+    }
+
+    /**
+     * Creates the bounded pool running the calls to Worldpay. Calls submitted while all threads are busy and the queue is full are rejected.
+     */
+    protected ExecutorService createExecutor() {
+        final Configuration configuration = configurationService.getConfiguration();
+        final int threads = Math.max(1, configuration.getInt(WORLDPAY_GATEWAY_ASYNC_THREADS, DEFAULT_THREADS));
+        final int queueCapacity = Math.max(1, configuration.getInt(WORLDPAY_GATEWAY_ASYNC_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY));
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                createThreadFactory("worldpay-gateway"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Threads are bound to the tenant of the caller, so the gateway and its transformers can use the platform services.
+     */
+    protected ThreadFactory createThreadFactory(final String namePrefix) {
+        return new WorldpayThreadFactory(namePrefix);
+    }
+
+    @FunctionalInterface
+    protected interface WorldpayCall<T> {
+        T call() throws WorldpayException;
+    }
+
+    @Required
+    public void setWorldpayServiceGateway(final WorldpayServiceGateway worldpayServiceGateway) {
+        this.worldpayServiceGateway = worldpayServiceGateway;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+}
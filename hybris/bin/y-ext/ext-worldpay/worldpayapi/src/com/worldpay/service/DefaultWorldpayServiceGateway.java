@@ -1,40 +1,94 @@
 package com.worldpay.service;
 
-import com.worldpay.config.Environment;
+import com.worldpay.exception.WorldpayConfigurationException;
 import com.worldpay.exception.WorldpayException;
 import com.worldpay.exception.WorldpayValidationException;
 import com.worldpay.internal.model.PaymentService;
 import com.worldpay.service.http.ServiceReply;
 import com.worldpay.service.http.WorldpayConnector;
+import com.worldpay.service.marshalling.PaymentServiceMarshaller;
+import com.worldpay.service.marshalling.PaymentServiceXMLLogger;
+import com.worldpay.service.metrics.WorldpayGatewayMetricsRegistry;
+import com.worldpay.service.metrics.WorldpayGatewayStage;
+import com.worldpay.service.metrics.WorldpayGatewayTimer;
 import com.worldpay.service.request.*;
 import com.worldpay.service.request.transform.ServiceRequestTransformer;
 import com.worldpay.service.request.validation.WorldpayXMLValidator;
 import com.worldpay.service.response.*;
 import com.worldpay.service.response.transform.ServiceResponseTransformer;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Required;
+import org.springframework.util.ClassUtils;
 
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
-import static com.worldpay.config.Environment.PROD;
-import static com.worldpay.util.WorldpayConstants.JAXB_CONTEXT;
-import static java.lang.Boolean.TRUE;
-import static javax.xml.bind.Marshaller.JAXB_FRAGMENT;
+import static java.text.MessageFormat.format;
 
 /**
  * {@inheritDoc}
+ * <p/>
+ * <p>The transformer maps are keyed by request class name. On startup every request class is bound to its request and response
+ * transformers in a table keyed by class identity, so that a request is dispatched without hashing its class name, and a mapping
+ * that is missing on one side fails the startup instead of the first request.</p>
  */
-public class DefaultWorldpayServiceGateway implements WorldpayServiceGateway {
+public class DefaultWorldpayServiceGateway implements WorldpayServiceGateway, InitializingBean {
 
-    private static final String WORLDPAY_CONFIG_ENVIRONMENT = "worldpay.config.environment";
+    private static final String XML_OUT = "XML OUT";
+    private static final String XML_IN = "XML IN";
 
     private WorldpayConnector worldpayConnector;
     private WorldpayXMLValidator woldpayXmlValidator;
-    private ConfigurationService configurationService;
+    private PaymentServiceXMLLogger paymentServiceXMLLogger;
     private Map<String, ServiceResponseTransformer> responseTransformerStrategyMap;
     private Map<String, ServiceRequestTransformer> requestTransformerStrategyMap;
+    private WorldpayGatewayMetricsRegistry worldpayGatewayMetricsRegistry;
+    private Map<Class<?>, ServiceTransformers> serviceTransformers = Collections.emptyMap();
+
+    /**
+     * Binds every request class of the transformer maps to its transformers
+     *
+     * @throws WorldpayConfigurationException when a request class can not be loaded, is not a {@link ServiceRequest}, is missing from
+     *                                        one of the maps, or when a method of the gateway accepts none of the mapped request classes
+     */
+    @Override
+    public void afterPropertiesSet() throws WorldpayConfigurationException {
+        final Set<String> requestClassNames = new TreeSet<>(requestTransformerStrategyMap.keySet());
+        requestClassNames.addAll(responseTransformerStrategyMap.keySet());
+
+        final List<String> errors = new ArrayList<>();
+        final Map<Class<?>, ServiceTransformers> transformers = new IdentityHashMap<>();
+        for (final String requestClassName : requestClassNames) {
+            final ServiceRequestTransformer requestTransformer = requestTransformerStrategyMap.get(requestClassName);
+            final ServiceResponseTransformer responseTransformer = responseTransformerStrategyMap.get(requestClassName);
+            final Class<?> requestClass = loadRequestClass(requestClassName, errors);
+            if (requestTransformer == null) {
+                errors.add(format("[{0}] has no request transformer", requestClassName));
+            } else if (responseTransformer == null) {
+                errors.add(format("[{0}] has no response transformer", requestClassName));
+            } else if (requestClass != null) {
+                transformers.put(requestClass, new ServiceTransformers(requestTransformer, responseTransformer));
+            }
+        }
+        for (final Method method : WorldpayServiceGateway.class.getMethods()) {
+            for (final Class<?> parameterType : method.getParameterTypes()) {
+                if (ServiceRequest.class.isAssignableFrom(parameterType) && transformers.keySet().stream().noneMatch(parameterType::isAssignableFrom)) {
+                    errors.add(format("no request accepted by [{0}] has transformers", method.getName()));
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new WorldpayConfigurationException("Invalid Worldpay service gateway transformers: " + String.join(", ", errors));
+        }
+        serviceTransformers = transformers;
+    }
 
     /**
      * {@inheritDoc}
@@ -125,33 +179,61 @@ public class DefaultWorldpayServiceGateway implements WorldpayServiceGateway {
     }
 
     private ServiceResponse service(final ServiceRequest request) throws WorldpayException {
-        final ServiceRequestTransformer requestTransformer = requestTransformerStrategyMap.get(request.getClass().getName());
-        final PaymentService paymentService = requestTransformer.transform(request);
+        final WorldpayGatewayTimer timer = worldpayGatewayMetricsRegistry.startTimer(request);
+        try {
+            final ServiceResponse response = service(request, timer);
+            timer.recordResponse(response);
+            return response;
+        } catch (final WorldpayException | RuntimeException e) {
+            timer.recordFailure(e);
+            throw e;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private ServiceResponse service(final ServiceRequest request, final WorldpayGatewayTimer timer) throws WorldpayException {
+        final ServiceTransformers transformers = serviceTransformers.get(request.getClass());
+        if (transformers == null) {
+            throw new WorldpayConfigurationException(format("No transformers configured for request [{0}]", request.getClass().getName()));
+        }
+        final PaymentService paymentService = transformers.getRequestTransformer().transform(request);
+        timer.record(WorldpayGatewayStage.REQUEST_TRANSFORM);
+        final boolean logXML = paymentServiceXMLLogger.isLoggable(paymentService);
+        if (logXML) {
+            paymentServiceXMLLogger.log(XML_OUT, paymentService);
+        }
+        timer.mark();
         try {
-            logPaymentServiceXML(paymentService);
             woldpayXmlValidator.validate(paymentService);
         } catch (final WorldpayValidationException e) {
             throw new WorldpayValidationException("Error validating XML: " + e.getMessage(), e);
         }
+        timer.record(WorldpayGatewayStage.VALIDATION);
 
         final ServiceReply reply = worldpayConnector.send(paymentService, request.getMerchantInfo(), request.getCookie());
+        timer.record(WorldpayGatewayStage.NETWORK);
 
-        final ServiceResponseTransformer responseTransformer = responseTransformerStrategyMap.get(request.getClass().getName());
-        logPaymentServiceXML(reply.getPaymentService());
-        return responseTransformer.transform(reply);
+        if (logXML) {
+            paymentServiceXMLLogger.log(XML_IN, reply.getPaymentService());
+        }
+        timer.mark();
+        final ServiceResponse response = transformers.getResponseTransformer().transform(reply);
+        timer.record(WorldpayGatewayStage.RESPONSE_TRANSFORM);
+        return response;
     }
 
-    private void logPaymentServiceXML(PaymentService paymentService) throws WorldpayValidationException {
-        final String environment = configurationService.getConfiguration().getString(WORLDPAY_CONFIG_ENVIRONMENT);
-        if (PROD != Environment.valueOf(environment)) {
-            try {
-                final Marshaller marshaller = JAXB_CONTEXT.createMarshaller();
-                marshaller.setProperty(JAXB_FRAGMENT, TRUE);
-                worldpayConnector.logXMLOut(marshaller, paymentService);
-            } catch (final JAXBException jaxbException) {
-                throw new WorldpayValidationException(jaxbException.getMessage(), jaxbException);
+    private static Class<?> loadRequestClass(final String requestClassName, final List<String> errors) {
+        try {
+            final Class<?> requestClass = ClassUtils.forName(requestClassName, ClassUtils.getDefaultClassLoader());
+            if (ServiceRequest.class.isAssignableFrom(requestClass)) {
+                return requestClass;
             }
+            errors.add(format("[{0}] is not a service request", requestClassName));
+        } catch (final ClassNotFoundException | LinkageError e) {
+            errors.add(format("[{0}] can not be loaded", requestClassName));
         }
+        return null;
     }
 
     @Required
@@ -175,7 +257,54 @@ public class DefaultWorldpayServiceGateway implements WorldpayServiceGateway {
     }
 
     @Required
+    public void setPaymentServiceXMLLogger(final PaymentServiceXMLLogger paymentServiceXMLLogger) {
+        this.paymentServiceXMLLogger = paymentServiceXMLLogger;
+    }
+
+    /**
+     * The gateway no longer reads the configuration, the environment is checked by the {@link PaymentServiceXMLLogger}.
+     *
+     * @deprecated not used, kept for the bean definitions that still set it. It will be removed in a future release.
+     */
+    @Deprecated
     public void setConfigurationService(final ConfigurationService configurationService) {
-        this.configurationService = configurationService;
+        // not used, the XML is logged by the paymentServiceXMLLogger
+    }
+
+    /**
+     * The gateway no longer marshals the PaymentService, it is logged by the {@link PaymentServiceXMLLogger}.
+     *
+     * @deprecated not used, kept for the bean definitions that still set it. It will be removed in a future release.
+     */
+    @Deprecated
+    public void setPaymentServiceMarshaller(final PaymentServiceMarshaller paymentServiceMarshaller) {
+        // not used, the XML is logged by the paymentServiceXMLLogger
+    }
+
+    @Required
+    public void setWorldpayGatewayMetricsRegistry(final WorldpayGatewayMetricsRegistry worldpayGatewayMetricsRegistry) {
+        this.worldpayGatewayMetricsRegistry = worldpayGatewayMetricsRegistry;
+    }
+
+    /**
+     * Request and response transformers of a request class
+     */
+    private static class ServiceTransformers {
+
+        private final ServiceRequestTransformer requestTransformer;
+        private final ServiceResponseTransformer responseTransformer;
+
+        private ServiceTransformers(final ServiceRequestTransformer requestTransformer, final ServiceResponseTransformer responseTransformer) {
+            this.requestTransformer = requestTransformer;
+            this.responseTransformer = responseTransformer;
+        }
+
+        private ServiceRequestTransformer getRequestTransformer() {
+            return requestTransformer;
+        }
+
+        private ServiceResponseTransformer getResponseTransformer() {
+            return responseTransformer;
+        }
     }
 }
@@ -0,0 +1,109 @@
+package com.worldpay.service;
+
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.exception.WorldpayException;
+import com.worldpay.service.request.*;
+import com.worldpay.service.response.*;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of the {@link WorldpayServiceGateway}.
+ * <p/>
+ * <p>Every call returns immediately with a {@link CompletableFuture} that is completed with the same response the {@link WorldpayServiceGateway}
+ * would have returned, or exceptionally with the {@link WorldpayException} it would have thrown. The future is also completed exceptionally with a
+ * {@link WorldpayCommunicationException} when the operation does not complete within its timeout, or when too many calls of the same operation
+ * are already in progress.</p>
+ * <p/>
+ * <p>Allows batch jobs and fulfilment actions to have several calls to Worldpay in flight at the same time instead of waiting for each round-trip.</p>
+ */
+public interface WorldpayAsyncServiceGateway {
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#directAuthorise(DirectAuthoriseServiceRequest)}
+     *
+     * @param request the direct authorise request
+     * @return future completed with the {@link DirectAuthoriseServiceResponse}
+     */
+    CompletableFuture<DirectAuthoriseServiceResponse> directAuthorise(DirectAuthoriseServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#redirectAuthorise(RedirectAuthoriseServiceRequest)}
+     *
+     * @param request the redirect authorise request
+     * @return future completed with the {@link RedirectAuthoriseServiceResponse}
+     */
+    CompletableFuture<RedirectAuthoriseServiceResponse> redirectAuthorise(RedirectAuthoriseServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#createToken(CreateTokenServiceRequest)}
+     *
+     * @param request the create token request
+     * @return future completed with the {@link CreateTokenResponse}
+     */
+    CompletableFuture<CreateTokenResponse> createToken(CreateTokenServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#updateToken(UpdateTokenServiceRequest)}
+     *
+     * @param request the update token request
+     * @return future completed with the {@link UpdateTokenResponse}
+     */
+    CompletableFuture<UpdateTokenResponse> updateToken(UpdateTokenServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#deleteToken(DeleteTokenServiceRequest)}
+     *
+     * @param request the delete token request
+     * @return future completed with the {@link DeleteTokenResponse}
+     */
+    CompletableFuture<DeleteTokenResponse> deleteToken(DeleteTokenServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#capture(CaptureServiceRequest)}
+     *
+     * @param request the capture request
+     * @return future completed with the {@link CaptureServiceResponse}
+     */
+    CompletableFuture<CaptureServiceResponse> capture(CaptureServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#cancel(CancelServiceRequest)}
+     *
+     * @param request the cancel request
+     * @return future completed with the {@link CancelServiceResponse}
+     */
+    CompletableFuture<CancelServiceResponse> cancel(CancelServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#refund(RefundServiceRequest)}
+     *
+     * @param request the refund request
+     * @return future completed with the {@link RefundServiceResponse}
+     */
+    CompletableFuture<RefundServiceResponse> refund(RefundServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#addBackOfficeCode(AddBackOfficeCodeServiceRequest)}
+     *
+     * @param request the add back office code request
+     * @return future completed with the {@link AddBackOfficeCodeServiceResponse}
+     */
+    CompletableFuture<AddBackOfficeCodeServiceResponse> addBackOfficeCode(AddBackOfficeCodeServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#authorisationCode(AuthorisationCodeServiceRequest)}
+     *
+     * @param request the authorisation code request
+     * @return future completed with the {@link AuthorisationCodeServiceResponse}
+     */
+    CompletableFuture<AuthorisationCodeServiceResponse> authorisationCode(AuthorisationCodeServiceRequest request);
+
+    /**
+     * Asynchronous version of {@link WorldpayServiceGateway#orderInquiry(AbstractServiceRequest)}
+     *
+     * @param request the order inquiry request
+     * @return future completed with the {@link OrderInquiryServiceResponse}
+     */
+    CompletableFuture<OrderInquiryServiceResponse> orderInquiry(AbstractServiceRequest request);
+}
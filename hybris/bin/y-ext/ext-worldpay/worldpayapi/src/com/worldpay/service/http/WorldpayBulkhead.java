@@ -0,0 +1,74 @@
+package com.worldpay.service.http;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of requests of one kind in flight to Worldpay for one merchant, so that a slow kind of request cannot take all the
+ * connections and threads needed by the others.
+ */
+public class WorldpayBulkhead {
+
+    private final String merchantCode;
+    private final String requestType;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    /**
+     * @param merchantCode       the merchant code
+     * @param requestType        the request type, see {@link com.worldpay.util.WorldpayUtil#getRequestType}
+     * @param maxConcurrentCalls the maximum number of requests in flight
+     * @param maxWaitMillis      how long a request waits for room before being rejected, in milliseconds
+     */
+    public WorldpayBulkhead(final String merchantCode, final String requestType, final int maxConcurrentCalls, final long maxWaitMillis) {
+        this.merchantCode = merchantCode;
+        this.requestType = requestType;
+        this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+        this.maxWaitMillis = Math.max(0L, maxWaitMillis);
+        this.permits = new Semaphore(this.maxConcurrentCalls);
+    }
+
+    /**
+     * @return {@code true} when the request can be sent, in which case {@link #release()} must be called once it completes
+     */
+    public boolean tryAcquire() {
+        boolean acquired;
+        try {
+            acquired = maxWaitMillis == 0L ? permits.tryAcquire() : permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedCalls.increment();
+        }
+        return acquired;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getMerchantCode() {
+        return merchantCode;
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getCallsInFlight() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+}
@@ -0,0 +1,276 @@
+package com.worldpay.service.http;
+
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Circuit breaker of the requests of one kind sent to Worldpay for one merchant.
+ * <p>
+ * While {@link State#CLOSED}, the outcome of the latest requests is kept in a sliding window. Once the window holds at least the minimum
+ * number of requests and the rate of failed ones reaches the threshold, the breaker opens and rejects every request for the open
+ * duration. It then lets a few trial requests through ({@link State#HALF_OPEN}): the breaker closes again when they all succeed and opens
+ * again as soon as one fails.
+ * </p>
+ * <p>
+ * A permission is a generation number: the outcome of a request is ignored when the breaker changed state since it was permitted, so
+ * requests started before the breaker opened do not count as trial requests.
+ * </p>
+ */
+public class WorldpayCircuitBreaker {
+
+    /**
+     * Returned by {@link #tryAcquirePermission()} when the request is not permitted
+     */
+    public static final long NOT_PERMITTED = -1L;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String merchantCode;
+    private final String requestType;
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+    private final Consumer<StateTransition> transitionListener;
+
+    private final boolean[] window;
+    private final LongAdder successfulCalls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder notPermittedCalls = new LongAdder();
+
+    private State state = State.CLOSED;
+    private long generation;
+    private int windowCalls;
+    private int windowFailures;
+    private int windowIndex;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    /**
+     * @param merchantCode         the merchant code
+     * @param requestType          the request type, see {@link com.worldpay.util.WorldpayUtil#getRequestType}
+     * @param failureRateThreshold the percentage of failed requests in the window that opens the breaker
+     * @param windowSize           the number of latest requests the failure rate is computed on
+     * @param minimumCalls         the minimum number of requests in the window before the failure rate is considered
+     * @param openDurationMillis   how long the breaker stays open before letting trial requests through, in milliseconds
+     * @param halfOpenCalls        the number of trial requests that must succeed to close the breaker
+     * @param transitionListener   notified of every state transition
+     */
+    public WorldpayCircuitBreaker(final String merchantCode, final String requestType, final int failureRateThreshold, final int windowSize,
+                                  final int minimumCalls, final long openDurationMillis, final int halfOpenCalls,
+                                  final Consumer<StateTransition> transitionListener) {
+        this.merchantCode = merchantCode;
+        this.requestType = requestType;
+        this.failureRateThreshold = Math.max(1, failureRateThreshold);
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.min(Math.max(1, minimumCalls), window.length);
+        this.openDurationMillis = Math.max(0L, openDurationMillis);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.transitionListener = transitionListener;
+    }
+
+    /**
+     * @return the permission to pass to {@link #onSuccess(long)}, {@link #onFailure(long)} or {@link #onIgnored(long)} once the request
+     * completes, or {@link #NOT_PERMITTED} when the breaker rejects the request
+     */
+    public synchronized long tryAcquirePermission() {
+        if (state == State.OPEN && currentTimeMillis() - openedAt >= openDurationMillis) {
+            transitionTo(State.HALF_OPEN, "open duration elapsed");
+        }
+        if (state == State.CLOSED) {
+            return generation;
+        }
+        if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+            halfOpenPermits++;
+            return generation;
+        }
+        notPermittedCalls.increment();
+        return NOT_PERMITTED;
+    }
+
+    /**
+     * Records a request that got its reply from Worldpay
+     *
+     * @param permission the permission of the request
+     */
+    public synchronized void onSuccess(final long permission) {
+        successfulCalls.increment();
+        if (permission != generation) {
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(false);
+            openIfFailureRateReached();
+        } else if (state == State.HALF_OPEN && ++halfOpenSuccesses >= halfOpenCalls) {
+            transitionTo(State.CLOSED, "trial requests succeeded");
+        }
+    }
+
+    /**
+     * Records a request that failed to communicate with Worldpay
+     *
+     * @param permission the permission of the request
+     */
+    public synchronized void onFailure(final long permission) {
+        failedCalls.increment();
+        if (permission != generation) {
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+            openIfFailureRateReached();
+        } else if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN, "trial request failed");
+        }
+    }
+
+    /**
+     * Releases the permission of a request whose outcome says nothing about the availability of Worldpay
+     *
+     * @param permission the permission of the request
+     */
+    public synchronized void onIgnored(final long permission) {
+        if (permission == generation && state == State.HALF_OPEN) {
+            halfOpenPermits--;
+        }
+    }
+
+    /**
+     * Closes the breaker and clears its window
+     */
+    public synchronized void reset() {
+        if (state == State.CLOSED) {
+            clearWindow();
+        } else {
+            transitionTo(State.CLOSED, "reset");
+        }
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void record(final boolean failure) {
+        if (windowCalls == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void openIfFailureRateReached() {
+        if (windowCalls >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCalls) {
+            transitionTo(State.OPEN, windowFailures + " of the last " + windowCalls + " requests failed");
+        }
+    }
+
+    private void clearWindow() {
+        windowCalls = 0;
+        windowFailures = 0;
+        windowIndex = 0;
+    }
+
+    private void transitionTo(final State newState, final String reason) {
+        final State oldState = state;
+        state = newState;
+        generation++;
+        clearWindow();
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (newState == State.OPEN) {
+            openedAt = currentTimeMillis();
+        }
+        if (transitionListener != null) {
+            transitionListener.accept(new StateTransition(merchantCode, requestType, oldState, newState, reason, new Date()));
+        }
+    }
+
+    public String getMerchantCode() {
+        return merchantCode;
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the percentage of failed requests in the current window, -1 while it holds fewer requests than the minimum
+     */
+    public synchronized int getFailureRate() {
+        return windowCalls < minimumCalls ? -1 : windowFailures * 100 / windowCalls;
+    }
+
+    public long getSuccessfulCalls() {
+        return successfulCalls.sum();
+    }
+
+    public long getFailedCalls() {
+        return failedCalls.sum();
+    }
+
+    public long getNotPermittedCalls() {
+        return notPermittedCalls.sum();
+    }
+
+    /**
+     * State transition of a {@link WorldpayCircuitBreaker}
+     */
+    public static class StateTransition {
+
+        private final String merchantCode;
+        private final String requestType;
+        private final State fromState;
+        private final State toState;
+        private final String reason;
+        private final Date time;
+
+        public StateTransition(final String merchantCode, final String requestType, final State fromState, final State toState,
+                               final String reason, final Date time) {
+            this.merchantCode = merchantCode;
+            this.requestType = requestType;
+            this.fromState = fromState;
+            this.toState = toState;
+            this.reason = reason;
+            this.time = time;
+        }
+
+        public String getMerchantCode() {
+            return merchantCode;
+        }
+
+        public String getRequestType() {
+            return requestType;
+        }
+
+        public State getFromState() {
+            return fromState;
+        }
+
+        public State getToState() {
+            return toState;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public Date getTime() {
+            return time;
+        }
+    }
+}
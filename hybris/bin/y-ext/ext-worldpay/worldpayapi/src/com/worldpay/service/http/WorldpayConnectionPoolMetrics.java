@@ -0,0 +1,97 @@
+package com.worldpay.service.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters collected for the pooled HTTP connections opened towards Worldpay for a single merchant.
+ * <p>
+ * All counters are cumulative since the pool was created and are safe to update from concurrent request threads.
+ * </p>
+ */
+public class WorldpayConnectionPoolMetrics {
+
+    private final String merchantCode;
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder leaseTimeNanos = new LongAdder();
+    private final LongAdder poolExhaustions = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+
+    /**
+     * Creates the metrics holder for the pool of the given merchant
+     *
+     * @param merchantCode the merchant code owning the pool
+     */
+    public WorldpayConnectionPoolMetrics(final String merchantCode) {
+        this.merchantCode = merchantCode;
+    }
+
+    /**
+     * Records a successful lease of a connection from the pool.
+     *
+     * @param nanos time spent waiting for the connection
+     */
+    public void recordLease(final long nanos) {
+        leases.increment();
+        leaseTimeNanos.add(nanos);
+    }
+
+    /**
+     * Records a request that could not obtain a connection within the pool-acquire timeout.
+     */
+    public void recordPoolExhaustion() {
+        poolExhaustions.increment();
+    }
+
+    /**
+     * Records a new physical connection (and therefore a new TLS handshake) being opened.
+     */
+    public void recordConnectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public String getMerchantCode() {
+        return merchantCode;
+    }
+
+    public long getLeases() {
+        return leases.sum();
+    }
+
+    public long getPoolExhaustions() {
+        return poolExhaustions.sum();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * Every lease served by an already open connection saved a TCP connect and TLS handshake.
+     *
+     * @return the number of handshakes avoided by reusing kept-alive connections
+     */
+    public long getHandshakesAvoided() {
+        return Math.max(0L, getLeases() - getConnectionsOpened());
+    }
+
+    /**
+     * @return the average time in milliseconds spent waiting for a connection from the pool
+     */
+    public double getAverageLeaseTimeMillis() {
+        final long count = getLeases();
+        return count == 0 ? 0d : (double) TimeUnit.NANOSECONDS.toMicros(leaseTimeNanos.sum()) / count / 1000d;
+    }
+
+    @Override
+    public String toString() {
+        return "WorldpayConnectionPoolMetrics{" +
+                "merchantCode='" + merchantCode + '\'' +
+                ", leases=" + getLeases() +
+                ", averageLeaseTimeMillis=" + getAverageLeaseTimeMillis() +
+                ", poolExhaustions=" + getPoolExhaustions() +
+                ", connectionsOpened=" + getConnectionsOpened() +
+                ", handshakesAvoided=" + getHandshakesAvoided() +
+                '}';
+    }
+}
@@ -25,5 +25,15 @@ public interface WorldpayConnector {
      */
     ServiceReply send(PaymentService paymentService, MerchantInfo merchantInfo, String cookie) throws WorldpayCommunicationException, WorldpayModelTransformationException;
 
+    /**
+     * Logs the XML that represents the PaymentService at INFO level.
+     *
+     * @param marshaller     the marshaller writing the XML
+     * @param paymentService the PaymentService to log
+     * @deprecated the gateway no longer calls this method and logs the XML exchanged with Worldpay through
+     * {@link com.worldpay.service.marshalling.PaymentServiceXMLLogger}, which masks the sensitive fields. It will be removed in a
+     * future release.
+     */
+    @Deprecated
     void logXMLOut(Marshaller marshaller, PaymentService paymentService);
 }
@@ -0,0 +1,49 @@
+package com.worldpay.service.http;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Holds the {@link WorldpayCircuitBreaker} and the {@link WorldpayBulkhead} of every merchant and request type sent to Worldpay.
+ */
+public interface WorldpayResilienceRegistry {
+
+    /**
+     * Returns the circuit breaker of the merchant and request type, creating it from the configuration on first use
+     *
+     * @param merchantCode the merchant code
+     * @param requestType  the request type
+     * @return the circuit breaker
+     */
+    WorldpayCircuitBreaker getCircuitBreaker(final String merchantCode, final String requestType);
+
+    /**
+     * Returns the bulkhead of the merchant and request type, creating it from the configuration on first use
+     *
+     * @param merchantCode the merchant code
+     * @param requestType  the request type
+     * @return the bulkhead
+     */
+    WorldpayBulkhead getBulkhead(final String merchantCode, final String requestType);
+
+    /**
+     * @return the circuit breakers created so far
+     */
+    Collection<WorldpayCircuitBreaker> getCircuitBreakers();
+
+    /**
+     * @return the bulkheads created so far
+     */
+    Collection<WorldpayBulkhead> getBulkheads();
+
+    /**
+     * @return the latest state transitions of the circuit breakers, the most recent first
+     */
+    List<WorldpayCircuitBreaker.StateTransition> getStateTransitions();
+
+    /**
+     * Closes all the circuit breakers and drops the bulkheads idle at the moment, so they are created again from the current
+     * configuration
+     */
+    void reset();
+}
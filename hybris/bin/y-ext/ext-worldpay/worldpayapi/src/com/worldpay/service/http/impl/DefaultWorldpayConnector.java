@@ -7,9 +7,7 @@ import com.worldpay.service.http.ServiceReply;
 import com.worldpay.service.http.WorldpayConnector;
 import com.worldpay.service.marshalling.PaymentServiceMarshaller;
 import com.worldpay.service.model.MerchantInfo;
-import com.worldpay.util.WorldpayConstants;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
-import org.apache.commons.io.output.XmlStreamWriter;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
 import reactor.util.CollectionUtils;
@@ -18,6 +16,7 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -89,23 +88,24 @@ public class DefaultWorldpayConnector implements WorldpayConnector {
                     httpCon.setRequestProperty("Cookie", cookie);
                 }
             }
-            try (final XmlStreamWriter streamWriter = new XmlStreamWriter(con.getOutputStream(), StandardCharsets.UTF_8.name())) {
-                final Marshaller marshaller = WorldpayConstants.JAXB_CONTEXT.createMarshaller();
-                marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
-                streamWriter.write(WorldpayConstants.XML_HEADER);
-                marshaller.marshal(paymentService, streamWriter);
+            try (final OutputStream outputStream = con.getOutputStream()) {
+                paymentServiceMarshaller.marshalAsRequest(paymentService, outputStream);
             }
         } catch (MalformedURLException e) {
             throw new WorldpayCommunicationException("Worldpay URL is incorrect", e);
         } catch (IOException e) {
             throw new WorldpayCommunicationException("Unable to initiate communication with Worldpay", e);
-        } catch (JAXBException e) {
-            throw new WorldpayModelTransformationException("XML context or marshalling failure while sending message to Worldpay", e);
         }
         return con;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @deprecated use {@link com.worldpay.service.marshalling.PaymentServiceXMLLogger}
+     */
     @Override
+    @Deprecated
     public void logXMLOut(final Marshaller marshaller, final PaymentService paymentService) {
         try {
             LOG.info("*** XML OUT ***");
@@ -118,11 +118,19 @@ public class DefaultWorldpayConnector implements WorldpayConnector {
         }
     }
 
+    protected PaymentServiceMarshaller getPaymentServiceMarshaller() {
+        return paymentServiceMarshaller;
+    }
+
     @Required
     public void setPaymentServiceMarshaller(final PaymentServiceMarshaller paymentServiceMarshaller) {
         this.paymentServiceMarshaller = paymentServiceMarshaller;
     }
 
+    protected ConfigurationService getConfigurationService() {
+        return configurationService;
+    }
+
     @Required
     public void setConfigurationService(final ConfigurationService configurationService) {
         this.configurationService = configurationService;
@@ -0,0 +1,158 @@
+package com.worldpay.service.http.impl;
+
+import com.worldpay.service.http.WorldpayBulkhead;
+import com.worldpay.service.http.WorldpayCircuitBreaker;
+import com.worldpay.service.http.WorldpayResilienceRegistry;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@inheritDoc}
+ * <p/>
+ * <p>Every setting can be given for a request type, falling back to the setting for all the request types and then to a default:</p>
+ * <ul>
+ * <li>{@code worldpay.connector.circuitbreaker.failure.rate[.requestType]} - percentage of failed requests that opens the breaker</li>
+ * <li>{@code worldpay.connector.circuitbreaker.window[.requestType]} - number of latest requests the failure rate is computed on</li>
+ * <li>{@code worldpay.connector.circuitbreaker.minimum.calls[.requestType]} - requests needed in the window before the breaker can open</li>
+ * <li>{@code worldpay.connector.circuitbreaker.open.duration[.requestType]} - milliseconds the breaker stays open</li>
+ * <li>{@code worldpay.connector.circuitbreaker.halfopen.calls[.requestType]} - trial requests that must succeed to close the breaker</li>
+ * <li>{@code worldpay.connector.bulkhead[.requestType]} - maximum number of requests in flight per merchant</li>
+ * <li>{@code worldpay.connector.bulkhead.wait[.requestType]} - milliseconds a request waits for room in the bulkhead</li>
+ * </ul>
+ * <p>The latest {@code worldpay.connector.circuitbreaker.transitions.kept} state transitions are kept for the HAC.</p>
+ */
+public class DefaultWorldpayResilienceRegistry implements WorldpayResilienceRegistry {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayResilienceRegistry.class);
+
+    protected static final String WORLDPAY_CONNECTOR_CIRCUITBREAKER_FAILURE_RATE = "worldpay.connector.circuitbreaker.failure.rate";
+    protected static final String WORLDPAY_CONNECTOR_CIRCUITBREAKER_WINDOW = "worldpay.connector.circuitbreaker.window";
+    protected static final String WORLDPAY_CONNECTOR_CIRCUITBREAKER_MINIMUM_CALLS = "worldpay.connector.circuitbreaker.minimum.calls";
+    protected static final String WORLDPAY_CONNECTOR_CIRCUITBREAKER_OPEN_DURATION = "worldpay.connector.circuitbreaker.open.duration";
+    protected static final String WORLDPAY_CONNECTOR_CIRCUITBREAKER_HALFOPEN_CALLS = "worldpay.connector.circuitbreaker.halfopen.calls";
+    protected static final String WORLDPAY_CONNECTOR_CIRCUITBREAKER_TRANSITIONS_KEPT = "worldpay.connector.circuitbreaker.transitions.kept";
+    protected static final String WORLDPAY_CONNECTOR_BULKHEAD = "worldpay.connector.bulkhead";
+    protected static final String WORLDPAY_CONNECTOR_BULKHEAD_WAIT = "worldpay.connector.bulkhead.wait";
+
+    private static final int DEFAULT_FAILURE_RATE = 50;
+    private static final int DEFAULT_WINDOW = 20;
+    private static final int DEFAULT_MINIMUM_CALLS = 10;
+    private static final int DEFAULT_OPEN_DURATION = 30000;
+    private static final int DEFAULT_HALFOPEN_CALLS = 3;
+    private static final int DEFAULT_TRANSITIONS_KEPT = 100;
+    private static final int DEFAULT_BULKHEAD = 20;
+    private static final int DEFAULT_BULKHEAD_WAIT = 2000;
+    private static final String KEY_SEPARATOR = ":";
+
+    private final Map<String, WorldpayCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, WorldpayBulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final Deque<WorldpayCircuitBreaker.StateTransition> stateTransitions = new ConcurrentLinkedDeque<>();
+
+    private ConfigurationService configurationService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WorldpayCircuitBreaker getCircuitBreaker(final String merchantCode, final String requestType) {
+        return circuitBreakers.computeIfAbsent(merchantCode + KEY_SEPARATOR + requestType, key -> createCircuitBreaker(merchantCode, requestType));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WorldpayBulkhead getBulkhead(final String merchantCode, final String requestType) {
+        return bulkheads.computeIfAbsent(merchantCode + KEY_SEPARATOR + requestType, key -> createBulkhead(merchantCode, requestType));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<WorldpayCircuitBreaker> getCircuitBreakers() {
+        return new ArrayList<>(circuitBreakers.values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<WorldpayBulkhead> getBulkheads() {
+        return new ArrayList<>(bulkheads.values());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<WorldpayCircuitBreaker.StateTransition> getStateTransitions() {
+        return Collections.unmodifiableList(new ArrayList<>(stateTransitions));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * <p>Bulkheads with requests in flight are kept, as dropping them would let more requests through than configured.</p>
+     */
+    @Override
+    public void reset() {
+        circuitBreakers.values().forEach(WorldpayCircuitBreaker::reset);
+        circuitBreakers.clear();
+        bulkheads.values().removeIf(bulkhead -> bulkhead.getCallsInFlight() == 0);
+    }
+
+    protected WorldpayCircuitBreaker createCircuitBreaker(final String merchantCode, final String requestType) {
+        return new WorldpayCircuitBreaker(merchantCode, requestType,
+                getConfiguredValue(WORLDPAY_CONNECTOR_CIRCUITBREAKER_FAILURE_RATE, requestType, DEFAULT_FAILURE_RATE),
+                getConfiguredValue(WORLDPAY_CONNECTOR_CIRCUITBREAKER_WINDOW, requestType, DEFAULT_WINDOW),
+                getConfiguredValue(WORLDPAY_CONNECTOR_CIRCUITBREAKER_MINIMUM_CALLS, requestType, DEFAULT_MINIMUM_CALLS),
+                getConfiguredValue(WORLDPAY_CONNECTOR_CIRCUITBREAKER_OPEN_DURATION, requestType, DEFAULT_OPEN_DURATION),
+                getConfiguredValue(WORLDPAY_CONNECTOR_CIRCUITBREAKER_HALFOPEN_CALLS, requestType, DEFAULT_HALFOPEN_CALLS),
+                this::recordStateTransition);
+    }
+
+    protected WorldpayBulkhead createBulkhead(final String merchantCode, final String requestType) {
+        return new WorldpayBulkhead(merchantCode, requestType,
+                getConfiguredValue(WORLDPAY_CONNECTOR_BULKHEAD, requestType, DEFAULT_BULKHEAD),
+                getConfiguredValue(WORLDPAY_CONNECTOR_BULKHEAD_WAIT, requestType, DEFAULT_BULKHEAD_WAIT));
+    }
+
+    protected void recordStateTransition(final WorldpayCircuitBreaker.StateTransition transition) {
+        final String message = format("Circuit breaker of [{0}] requests to Worldpay for merchant [{1}] went from {2} to {3}: {4}",
+                transition.getRequestType(), transition.getMerchantCode(), transition.getFromState(), transition.getToState(), transition.getReason());
+        if (transition.getToState() == WorldpayCircuitBreaker.State.OPEN) {
+            LOG.warn(message);
+        } else {
+            LOG.info(message);
+        }
+        stateTransitions.addFirst(transition);
+        final int transitionsKept = Math.max(1, configurationService.getConfiguration().getInt(WORLDPAY_CONNECTOR_CIRCUITBREAKER_TRANSITIONS_KEPT, DEFAULT_TRANSITIONS_KEPT));
+        while (stateTransitions.size() > transitionsKept) {
+            stateTransitions.pollLast();
+        }
+    }
+
+    protected int getConfiguredValue(final String key, final String requestType, final int defaultValue) {
+        final Configuration configuration = configurationService.getConfiguration();
+        return configuration.getInt(key + "." + requestType, configuration.getInt(key, defaultValue));
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+}
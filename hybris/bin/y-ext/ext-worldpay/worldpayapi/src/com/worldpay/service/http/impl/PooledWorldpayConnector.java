@@ -0,0 +1,411 @@
+package com.worldpay.service.http.impl;
+
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.http.ServiceReply;
+import com.worldpay.service.http.WorldpayConnectionPoolMetrics;
+import com.worldpay.service.http.WorldpayConnector;
+import com.worldpay.service.model.MerchantInfo;
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link WorldpayConnector} that keeps a bounded pool of kept-alive HTTP connections per merchant.
+ * <p>
+ * The Worldpay endpoint is resolved once from the configuration and the Basic authorization header is computed once per merchant,
+ * so a request to Worldpay only pays for a TCP connect and TLS handshake when no idle connection is available in the pool of
+ * the merchant. Connect, read and pool-acquire timeouts are configurable and the pools expose {@link WorldpayConnectionPoolMetrics},
+ * which are also published over JMX.
+ * </p>
+ */
+@ManagedResource(description = "Pooled HTTP connections to Worldpay, per merchant")
+public class PooledWorldpayConnector extends DefaultWorldpayConnector implements DisposableBean {
+
+    private static final Logger LOG = Logger.getLogger(PooledWorldpayConnector.class);
+
+    protected static final String WORLDPAY_CONNECTOR_POOL_MAX_CONNECTIONS = "worldpay.connector.pool.max.connections";
+    protected static final String WORLDPAY_CONNECTOR_TIMEOUT_CONNECT = "worldpay.connector.timeout.connect";
+    protected static final String WORLDPAY_CONNECTOR_TIMEOUT_READ = "worldpay.connector.timeout.read";
+    protected static final String WORLDPAY_CONNECTOR_TIMEOUT_POOL_ACQUIRE = "worldpay.connector.timeout.pool.acquire";
+    protected static final String WORLDPAY_CONNECTOR_KEEP_ALIVE = "worldpay.connector.keepalive";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_READ_TIMEOUT = 30000;
+    private static final int DEFAULT_POOL_ACQUIRE_TIMEOUT = 2000;
+    private static final int DEFAULT_KEEP_ALIVE = 30000;
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+    private static final String SET_COOKIE = "Set-Cookie";
+    private static final String COOKIE = "Cookie";
+
+    private final Map<String, MerchantConnectionPool> merchantConnectionPools = new ConcurrentHashMap<>();
+    private final Map<String, MerchantAuthorization> authorizations = new ConcurrentHashMap<>();
+    private volatile String endpoint;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ServiceReply send(final PaymentService paymentService, final MerchantInfo merchantInfo, final String cookie) throws WorldpayCommunicationException, WorldpayModelTransformationException {
+        final MerchantConnectionPool connectionPool = leaseMerchantConnectionPool(merchantInfo.getMerchantCode());
+        try {
+            return send(connectionPool, paymentService, merchantInfo, cookie);
+        } finally {
+            connectionPool.release();
+        }
+    }
+
+    protected ServiceReply send(final MerchantConnectionPool connectionPool, final PaymentService paymentService, final MerchantInfo merchantInfo,
+                                final String cookie) throws WorldpayCommunicationException, WorldpayModelTransformationException {
+        final HttpPost post = new HttpPost(getEndpoint());
+        post.setHeader(HttpHeaders.AUTHORIZATION, getAuthorizationHeader(merchantInfo));
+        if (cookie != null) {
+            post.setHeader(COOKIE, cookie);
+        }
+        post.setEntity(createRequestEntity(paymentService));
+
+        try (final CloseableHttpResponse response = connectionPool.getHttpClient().execute(post)) {
+            final int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode >= 400) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                throw new WorldpayCommunicationException(format("Worldpay replied with HTTP status [{0}]", statusCode));
+            }
+            return receiveXML(response);
+        } catch (final ConnectionPoolTimeoutException e) {
+            throw new WorldpayCommunicationException(format("No pooled connection to Worldpay available for merchant [{0}]", merchantInfo.getMerchantCode()), e);
+        } catch (final IOException e) {
+            throw new WorldpayCommunicationException("Unable to communicate with Worldpay", e);
+        }
+    }
+
+    protected ServiceReply receiveXML(final CloseableHttpResponse response) throws IOException, WorldpayModelTransformationException {
+        final ServiceReply reply = new ServiceReply();
+        final Header setCookie = response.getFirstHeader(SET_COOKIE);
+        if (setCookie != null) {
+            reply.setCookie(setCookie.getValue());
+        }
+        try (final InputStream in = response.getEntity().getContent()) {
+            reply.setPaymentService(getPaymentServiceMarshaller().unmarshal(in));
+        }
+        return reply;
+    }
+
+    protected HttpEntity createRequestEntity(final PaymentService paymentService) throws WorldpayModelTransformationException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        getPaymentServiceMarshaller().marshalAsRequest(paymentService, outputStream);
+        return new ByteArrayEntity(outputStream.toByteArray(), ContentType.create("text/xml", StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the Worldpay endpoint for the configured environment. The endpoint is resolved on first use and kept until
+     * {@link #resetConfiguration()} is called.
+     *
+     * @return the Worldpay XML endpoint
+     */
+    protected String getEndpoint() {
+        String resolvedEndpoint = endpoint;
+        if (resolvedEndpoint == null) {
+            final Configuration configuration = getConfigurationService().getConfiguration();
+            final String environment = configuration.getString(WORLDPAY_CONFIG_ENVIRONMENT);
+            resolvedEndpoint = configuration.getString(WORLDPAY_CONFIG_ENDPOINT + "." + environment);
+            endpoint = resolvedEndpoint;
+        }
+        return resolvedEndpoint;
+    }
+
+    /**
+     * Returns the Basic authorization header of the merchant. The header is computed once per merchant code, and again when the
+     * password of the merchant changes.
+     *
+     * @param merchantInfo the merchant sending the request
+     * @return the value of the authorization header
+     */
+    protected String getAuthorizationHeader(final MerchantInfo merchantInfo) {
+        final String merchantCode = merchantInfo.getMerchantCode();
+        final String merchantPassword = merchantInfo.getMerchantPassword();
+        final MerchantAuthorization authorization = authorizations.get(merchantCode);
+        if (authorization != null && authorization.hasPassword(merchantPassword)) {
+            return authorization.getHeader();
+        }
+        final MerchantAuthorization newAuthorization = new MerchantAuthorization(merchantCode, merchantPassword);
+        authorizations.put(merchantCode, newAuthorization);
+        return newAuthorization.getHeader();
+    }
+
+    protected MerchantConnectionPool getMerchantConnectionPool(final String merchantCode) {
+        return merchantConnectionPools.computeIfAbsent(merchantCode, this::createMerchantConnectionPool);
+    }
+
+    /**
+     * Returns the connection pool of the merchant, leased for one request. A pool retired by {@link #resetConfiguration()} while it is
+     * being leased is skipped in favour of the pool that replaces it.
+     *
+     * @param merchantCode the merchant code
+     * @return the leased pool, to be released when the request completes
+     */
+    protected MerchantConnectionPool leaseMerchantConnectionPool(final String merchantCode) {
+        MerchantConnectionPool connectionPool = getMerchantConnectionPool(merchantCode);
+        while (!connectionPool.lease()) {
+            connectionPool = getMerchantConnectionPool(merchantCode);
+        }
+        return connectionPool;
+    }
+
+    protected MerchantConnectionPool createMerchantConnectionPool(final String merchantCode) {
+        final Configuration configuration = getConfigurationService().getConfiguration();
+        final int maxConnections = configuration.getInt(WORLDPAY_CONNECTOR_POOL_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        final long keepAlive = configuration.getLong(WORLDPAY_CONNECTOR_KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+        final WorldpayConnectionPoolMetrics metrics = new WorldpayConnectionPoolMetrics(merchantCode);
+
+        final MeteredConnectionManager connectionManager = new MeteredConnectionManager(metrics);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(configuration.getInt(WORLDPAY_CONNECTOR_TIMEOUT_CONNECT, DEFAULT_CONNECT_TIMEOUT))
+                .setSocketTimeout(configuration.getInt(WORLDPAY_CONNECTOR_TIMEOUT_READ, DEFAULT_READ_TIMEOUT))
+                .setConnectionRequestTimeout(configuration.getInt(WORLDPAY_CONNECTOR_TIMEOUT_POOL_ACQUIRE, DEFAULT_POOL_ACQUIRE_TIMEOUT))
+                .build();
+
+        final CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    final long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+
+        LOG.info(format("Created Worldpay connection pool for merchant [{0}] with [{1}] connections", merchantCode, maxConnections));
+        return new MerchantConnectionPool(httpClient, metrics);
+    }
+
+    /**
+     * @return the metrics of every merchant connection pool created so far
+     */
+    public Collection<WorldpayConnectionPoolMetrics> getConnectionPoolMetrics() {
+        final Collection<WorldpayConnectionPoolMetrics> metrics = new ArrayList<>();
+        merchantConnectionPools.values().forEach(pool -> metrics.add(pool.getMetrics()));
+        return metrics;
+    }
+
+    @ManagedAttribute(description = "Leases, average lease time, pool exhaustions, connections opened and handshakes avoided, per merchant")
+    public String[] getConnectionPools() {
+        return getConnectionPoolMetrics().stream()
+                .sorted(Comparator.comparing(WorldpayConnectionPoolMetrics::getMerchantCode))
+                .map(metrics -> format("{0} leases={1} avgLeaseMillis={2,number,0.000} poolExhaustions={3} connectionsOpened={4} handshakesAvoided={5}",
+                        metrics.getMerchantCode(), metrics.getLeases(), metrics.getAverageLeaseTimeMillis(), metrics.getPoolExhaustions(),
+                        metrics.getConnectionsOpened(), metrics.getHandshakesAvoided()))
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Drops the cached endpoint, authorization headers and connection pools so that they are rebuilt from the current
+     * configuration on the next request. A pool still used by requests in progress is closed when the last of them completes.
+     */
+    @ManagedOperation(description = "Rebuilds the endpoint, authorization headers and connection pools from the current configuration")
+    public void resetConfiguration() {
+        endpoint = null;
+        authorizations.clear();
+        merchantConnectionPools.keySet().forEach(merchantCode -> retire(merchantConnectionPools.remove(merchantCode)));
+    }
+
+    @Override
+    public void destroy() {
+        resetConfiguration();
+    }
+
+    private void retire(final MerchantConnectionPool connectionPool) {
+        if (connectionPool != null) {
+            connectionPool.retire();
+        }
+    }
+
+    /**
+     * Basic authorization header of a merchant, with the password it was computed from.
+     */
+    protected static class MerchantAuthorization {
+
+        private final String password;
+        private final String header;
+
+        protected MerchantAuthorization(final String merchantCode, final String password) {
+            this.password = password;
+            this.header = "Basic " + Base64.getEncoder().encodeToString((merchantCode + ":" + password).getBytes(StandardCharsets.UTF_8));
+        }
+
+        protected boolean hasPassword(final String merchantPassword) {
+            return password == null ? merchantPassword == null : password.equals(merchantPassword);
+        }
+
+        public String getHeader() {
+            return header;
+        }
+    }
+
+    /**
+     * HTTP client and metrics of the connection pool of a merchant.
+     * <p>
+     * Requests lease the pool while they use it. Once retired, the pool cannot be leased anymore and its HTTP client is closed as soon as
+     * no request uses it.
+     * </p>
+     */
+    protected static class MerchantConnectionPool {
+
+        private final CloseableHttpClient httpClient;
+        private final WorldpayConnectionPoolMetrics metrics;
+        private final AtomicInteger leases = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean retired;
+
+        protected MerchantConnectionPool(final CloseableHttpClient httpClient, final WorldpayConnectionPoolMetrics metrics) {
+            this.httpClient = httpClient;
+            this.metrics = metrics;
+        }
+
+        /**
+         * @return true when the pool was leased, false when it is retired
+         */
+        protected boolean lease() {
+            leases.incrementAndGet();
+            if (retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        protected void release() {
+            if (leases.decrementAndGet() == 0 && retired) {
+                close();
+            }
+        }
+
+        protected void retire() {
+            retired = true;
+            if (leases.get() == 0) {
+                close();
+            }
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    httpClient.close();
+                } catch (final IOException e) {
+                    LOG.warn(format("Error closing Worldpay connection pool for merchant [{0}]", metrics.getMerchantCode()), e);
+                }
+            }
+        }
+
+        public CloseableHttpClient getHttpClient() {
+            return httpClient;
+        }
+
+        public WorldpayConnectionPoolMetrics getMetrics() {
+            return metrics;
+        }
+    }
+
+    /**
+     * Pooling connection manager that records lease times, pool exhaustion and the physical connections opened.
+     */
+    protected static class MeteredConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private final WorldpayConnectionPoolMetrics metrics;
+
+        protected MeteredConnectionManager(final WorldpayConnectionPoolMetrics metrics) {
+            super(createSocketFactoryRegistry(), createConnectionFactory(metrics));
+            this.metrics = metrics;
+        }
+
+        private static Registry<ConnectionSocketFactory> createSocketFactoryRegistry() {
+            return RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                    .build();
+        }
+
+        private static HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> createConnectionFactory(final WorldpayConnectionPoolMetrics metrics) {
+            return (route, config) -> {
+                metrics.recordConnectionOpened();
+                return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+            };
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+            final ConnectionRequest connectionRequest = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(final long timeout, final TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    final long start = System.nanoTime();
+                    try {
+                        final HttpClientConnection connection = connectionRequest.get(timeout, timeUnit);
+                        metrics.recordLease(System.nanoTime() - start);
+                        return connection;
+                    } catch (final ConnectionPoolTimeoutException e) {
+                        metrics.recordPoolExhaustion();
+                        throw e;
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return connectionRequest.cancel();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.worldpay.service.http.impl;
+
+import com.worldpay.exception.WorldpayBulkheadFullException;
+import com.worldpay.exception.WorldpayCircuitOpenException;
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.http.ServiceReply;
+import com.worldpay.service.http.WorldpayBulkhead;
+import com.worldpay.service.http.WorldpayCircuitBreaker;
+import com.worldpay.service.http.WorldpayConnector;
+import com.worldpay.service.http.WorldpayResilienceRegistry;
+import com.worldpay.service.model.MerchantInfo;
+import com.worldpay.util.WorldpayUtil;
+import org.springframework.beans.factory.annotation.Required;
+
+import javax.xml.bind.Marshaller;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link WorldpayConnector} that guards the requests sent by another connector with a {@link WorldpayCircuitBreaker} and a
+ * {@link WorldpayBulkhead} per merchant and request type.
+ * <p>
+ * When Worldpay degrades, requests of the affected kind fail fast with a {@link WorldpayCircuitOpenException} or a
+ * {@link WorldpayBulkheadFullException} instead of holding connections and threads, while the other kinds of requests keep going
+ * through. Only {@link WorldpayCommunicationException}s count as failures: a request that cannot be transformed says nothing about the
+ * availability of Worldpay.
+ * </p>
+ */
+public class ResilientWorldpayConnector implements WorldpayConnector {
+
+    private WorldpayConnector worldpayConnector;
+    private WorldpayResilienceRegistry worldpayResilienceRegistry;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ServiceReply send(final PaymentService paymentService, final MerchantInfo merchantInfo, final String cookie) throws WorldpayCommunicationException, WorldpayModelTransformationException {
+        final String merchantCode = merchantInfo.getMerchantCode();
+        final String requestType = WorldpayUtil.getRequestType(paymentService);
+
+        final WorldpayBulkhead bulkhead = worldpayResilienceRegistry.getBulkhead(merchantCode, requestType);
+        if (!bulkhead.tryAcquire()) {
+            throw new WorldpayBulkheadFullException(format("Too many [{0}] requests to Worldpay in flight for merchant [{1}], rejecting the request", requestType, merchantCode));
+        }
+        try {
+            final WorldpayCircuitBreaker circuitBreaker = worldpayResilienceRegistry.getCircuitBreaker(merchantCode, requestType);
+            final long permission = circuitBreaker.tryAcquirePermission();
+            if (permission == WorldpayCircuitBreaker.NOT_PERMITTED) {
+                throw new WorldpayCircuitOpenException(format("Circuit breaker of [{0}] requests to Worldpay for merchant [{1}] is open, rejecting the request", requestType, merchantCode));
+            }
+            return send(paymentService, merchantInfo, cookie, circuitBreaker, permission);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @deprecated use {@link com.worldpay.service.marshalling.PaymentServiceXMLLogger}
+     */
+    @Override
+    @Deprecated
+    public void logXMLOut(final Marshaller marshaller, final PaymentService paymentService) {
+        worldpayConnector.logXMLOut(marshaller, paymentService);
+    }
+
+    protected ServiceReply send(final PaymentService paymentService, final MerchantInfo merchantInfo, final String cookie,
+                                final WorldpayCircuitBreaker circuitBreaker, final long permission) throws WorldpayCommunicationException, WorldpayModelTransformationException {
+        boolean recorded = false;
+        try {
+            final ServiceReply reply = worldpayConnector.send(paymentService, merchantInfo, cookie);
+            circuitBreaker.onSuccess(permission);
+            recorded = true;
+            return reply;
+        } catch (final WorldpayCommunicationException e) {
+            circuitBreaker.onFailure(permission);
+            recorded = true;
+            throw e;
+        } finally {
+            if (!recorded) {
+                circuitBreaker.onIgnored(permission);
+            }
+        }
+    }
+
+    @Required
+    public void setWorldpayConnector(final WorldpayConnector worldpayConnector) {
+        this.worldpayConnector = worldpayConnector;
+    }
+
+    @Required
+    public void setWorldpayResilienceRegistry(final WorldpayResilienceRegistry worldpayResilienceRegistry) {
+        this.worldpayResilienceRegistry = worldpayResilienceRegistry;
+    }
+}
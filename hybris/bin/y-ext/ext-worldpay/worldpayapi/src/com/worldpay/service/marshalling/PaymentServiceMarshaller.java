@@ -4,7 +4,10 @@ import com.worldpay.exception.WorldpayException;
 import com.worldpay.exception.WorldpayModelTransformationException;
 import com.worldpay.internal.model.PaymentService;
 
+import org.xml.sax.ContentHandler;
+
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Interface that expose the methods to transform the PaymentService {@link PaymentService} into an XML that represents it and vice-versa.
@@ -25,4 +28,23 @@ public interface PaymentServiceMarshaller {
      * @return
      */
     String marshal(final PaymentService paymentService) throws WorldpayException;
+
+    /**
+     * Writes the Worldpay XML header followed by the XML that represents the PaymentService into the given stream, ready
+     * to be posted to Worldpay. The stream is flushed but not closed.
+     *
+     * @param paymentService the PaymentService to send
+     * @param outputStream   the stream to write the request to
+     * @throws WorldpayModelTransformationException if the PaymentService can not be marshalled
+     */
+    void marshalAsRequest(final PaymentService paymentService, final OutputStream outputStream) throws WorldpayModelTransformationException;
+
+    /**
+     * Writes the XML that represents the PaymentService, without the XML declaration, as SAX events to the given handler.
+     *
+     * @param paymentService the PaymentService to write
+     * @param contentHandler the handler receiving the XML
+     * @throws WorldpayModelTransformationException if the PaymentService can not be marshalled
+     */
+    void marshalFragment(final PaymentService paymentService, final ContentHandler contentHandler) throws WorldpayModelTransformationException;
 }
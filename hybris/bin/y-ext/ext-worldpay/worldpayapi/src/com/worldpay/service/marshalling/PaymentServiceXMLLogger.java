@@ -0,0 +1,28 @@
+package com.worldpay.service.marshalling;
+
+import com.worldpay.internal.model.PaymentService;
+
+/**
+ * Writes the XML exchanged with Worldpay to the log.
+ * <p>
+ * Implementations must be cheap when the log is disabled, as they are called for every request and reply.
+ * </p>
+ */
+public interface PaymentServiceXMLLogger {
+
+    /**
+     * Decides whether the exchange started by the given request, and its reply, should be logged.
+     *
+     * @param request the PaymentService about to be sent to Worldpay
+     * @return true if the request and its reply should be passed to {@link #log(String, PaymentService)}
+     */
+    boolean isLoggable(final PaymentService request);
+
+    /**
+     * Logs the XML that represents the PaymentService, with sensitive fields masked.
+     *
+     * @param label          label written before and after the XML, e.g. XML OUT
+     * @param paymentService the PaymentService to log
+     */
+    void log(final String label, final PaymentService paymentService);
+}
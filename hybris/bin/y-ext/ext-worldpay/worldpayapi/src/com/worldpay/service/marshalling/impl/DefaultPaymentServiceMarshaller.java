@@ -15,13 +15,30 @@ import javax.xml.bind.Unmarshaller;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.Optional;
 
+/**
+ * Default implementation of {@link PaymentServiceMarshaller}.
+ * <p>
+ * JAXB marshallers and unmarshallers and SAX readers are not thread safe and are expensive to create, so each thread keeps
+ * its own instances and reuses them for every message it processes.
+ * </p>
+ */
 public class DefaultPaymentServiceMarshaller implements PaymentServiceMarshaller {
 
+    private static final ThreadLocal<Unmarshaller> UNMARSHALLER = new ThreadLocal<>();
+    private static final ThreadLocal<Marshaller> MARSHALLER = new ThreadLocal<>();
+    private static final ThreadLocal<Marshaller> FRAGMENT_MARSHALLER = new ThreadLocal<>();
+    private static final ThreadLocal<XMLReader> XML_READER = new ThreadLocal<>();
+
     /**
      * {@inheritDoc}
      *
@@ -62,12 +79,70 @@ public class DefaultPaymentServiceMarshaller implements PaymentServiceMarshaller
         return sw.toString();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void marshalAsRequest(final PaymentService paymentService, final OutputStream outputStream) throws WorldpayModelTransformationException {
+        try {
+            final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            writer.write(WorldpayConstants.XML_HEADER);
+            getFragmentMarshaller().marshal(paymentService, writer);
+            writer.flush();
+        } catch (JAXBException | IOException e) {
+            throw new WorldpayModelTransformationException("XML context or marshalling failure while sending message to Worldpay", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void marshalFragment(final PaymentService paymentService, final ContentHandler contentHandler) throws WorldpayModelTransformationException {
+        try {
+            getFragmentMarshaller().marshal(paymentService, contentHandler);
+        } catch (JAXBException e) {
+            throw new WorldpayModelTransformationException("XML context or marshalling failure while writing the paymentService", e);
+        }
+    }
+
+    /**
+     * Returns the marshaller of the calling thread writing the PaymentService as an XML fragment. It must not be handed over to
+     * other threads.
+     */
+    protected Marshaller getFragmentMarshaller() throws WorldpayModelTransformationException {
+        Marshaller marshaller = FRAGMENT_MARSHALLER.get();
+        if (marshaller == null) {
+            try {
+                marshaller = WorldpayConstants.JAXB_CONTEXT.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            } catch (JAXBException e) {
+                throw new WorldpayModelTransformationException("XML context failure while creating the fragment marshaller", e);
+            }
+            FRAGMENT_MARSHALLER.set(marshaller);
+        }
+        return marshaller;
+    }
+
     private SAXSource getSAXSourceFromInputStream(InputStream in) throws WorldpayModelTransformationException {
+        final InputSource inputSource = new InputSource(in);
+        return new SAXSource(getXMLReader(), inputSource);
+    }
+
+    protected XMLReader getXMLReader() throws WorldpayModelTransformationException {
+        XMLReader xmlReader = XML_READER.get();
+        if (xmlReader == null) {
+            xmlReader = createXMLReader();
+            XML_READER.set(xmlReader);
+        }
+        return xmlReader;
+    }
+
+    private XMLReader createXMLReader() throws WorldpayModelTransformationException {
         final SAXParserFactory spf = SAXParserFactory.newInstance();
-        XMLReader xmlReader;
         try {
             spf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, false);
-            xmlReader = spf.newSAXParser().getXMLReader();
+            return spf.newSAXParser().getXMLReader();
         } catch (SAXNotRecognizedException e) {
             throw new WorldpayModelTransformationException(MessageFormat.format("Tried to set an unrecognized feature ({0}) on the saxParserFactory", XMLConstants.FEATURE_SECURE_PROCESSING), e);
         } catch (SAXNotSupportedException e) {
@@ -77,17 +152,24 @@ public class DefaultPaymentServiceMarshaller implements PaymentServiceMarshaller
         } catch (SAXException e) {
             throw new WorldpayModelTransformationException("General SAX error occurred during processing xml", e);
         }
-
-        final InputSource inputSource = new InputSource(in);
-        return new SAXSource(xmlReader, inputSource);
     }
 
     protected Unmarshaller getUnmarshaller() throws JAXBException {
-        return WorldpayConstants.JAXB_CONTEXT.createUnmarshaller();
+        Unmarshaller unmarshaller = UNMARSHALLER.get();
+        if (unmarshaller == null) {
+            unmarshaller = WorldpayConstants.JAXB_CONTEXT.createUnmarshaller();
+            UNMARSHALLER.set(unmarshaller);
+        }
+        return unmarshaller;
     }
 
     protected Marshaller getMarshaller() throws JAXBException {
-        return WorldpayConstants.JAXB_CONTEXT.createMarshaller();
+        Marshaller marshaller = MARSHALLER.get();
+        if (marshaller == null) {
+            marshaller = WorldpayConstants.JAXB_CONTEXT.createMarshaller();
+            MARSHALLER.set(marshaller);
+        }
+        return marshaller;
     }
 
     private void validate(PaymentService paymentService) throws WorldpayValidationException {
@@ -0,0 +1,101 @@
+package com.worldpay.service.marshalling.impl;
+
+import com.worldpay.config.Environment;
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.marshalling.PaymentServiceMarshaller;
+import com.worldpay.service.marshalling.PaymentServiceXMLLogger;
+import com.worldpay.util.WorldpayUtil;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.worldpay.config.Environment.PROD;
+
+/**
+ * Default implementation of {@link PaymentServiceXMLLogger}.
+ * <p>
+ * The XML is logged at {@code worldpay.xml.logging.level}, INFO by default as before, and never in the PROD environment. Nothing
+ * is marshalled unless that level is enabled for this class. The PaymentService is marshalled straight into the log one element per line, with the configured masked elements and
+ * attributes (card number, cvc, passwords...) replaced. Exchanges can be sampled with {@code worldpay.xml.logging.sample.rate},
+ * which can be overridden per request type, e.g. {@code worldpay.xml.logging.sample.rate.modify/capture=0} to never log captures.
+ * </p>
+ */
+public class DefaultPaymentServiceXMLLogger implements PaymentServiceXMLLogger {
+
+    private static final Logger LOG = Logger.getLogger(DefaultPaymentServiceXMLLogger.class);
+
+    protected static final String WORLDPAY_CONFIG_ENVIRONMENT = "worldpay.config.environment";
+    protected static final String WORLDPAY_XML_LOGGING_SAMPLE_RATE = "worldpay.xml.logging.sample.rate";
+    protected static final String WORLDPAY_XML_LOGGING_LEVEL = "worldpay.xml.logging.level";
+
+    private static final int DEFAULT_SAMPLE_RATE = 1;
+
+    private final Map<String, AtomicLong> exchangeCounters = new ConcurrentHashMap<>();
+
+    private PaymentServiceMarshaller paymentServiceMarshaller;
+    private ConfigurationService configurationService;
+    private Set<String> maskedNames;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLoggable(final PaymentService request) {
+        final Configuration configuration = configurationService.getConfiguration();
+        if (!LOG.isEnabledFor(getLevel(configuration))) {
+            return false;
+        }
+        if (PROD == Environment.valueOf(configuration.getString(WORLDPAY_CONFIG_ENVIRONMENT))) {
+            return false;
+        }
+        final String requestType = WorldpayUtil.getRequestType(request);
+        final int sampleRate = configuration.getInt(WORLDPAY_XML_LOGGING_SAMPLE_RATE + "." + requestType,
+                configuration.getInt(WORLDPAY_XML_LOGGING_SAMPLE_RATE, DEFAULT_SAMPLE_RATE));
+        if (sampleRate <= 0) {
+            return false;
+        }
+        return sampleRate == 1 || exchangeCounters.computeIfAbsent(requestType, key -> new AtomicLong()).getAndIncrement() % sampleRate == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void log(final String label, final PaymentService paymentService) {
+        final Level level = getLevel(configurationService.getConfiguration());
+        try {
+            LOG.log(level, "*** " + label + " ***");
+            paymentServiceMarshaller.marshalFragment(paymentService, new MaskingXMLLogContentHandler(line -> LOG.log(level, line), maskedNames));
+            LOG.log(level, "*** " + label + " END ***");
+        } catch (WorldpayModelTransformationException e) {
+            LOG.debug("There was an error marshalling the paymentService for debug logging", e);
+        }
+    }
+
+    protected Level getLevel(final Configuration configuration) {
+        return Level.toLevel(configuration.getString(WORLDPAY_XML_LOGGING_LEVEL), Level.INFO);
+    }
+
+    @Required
+    public void setPaymentServiceMarshaller(final PaymentServiceMarshaller paymentServiceMarshaller) {
+        this.paymentServiceMarshaller = paymentServiceMarshaller;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setMaskedNames(final Set<String> maskedNames) {
+        this.maskedNames = maskedNames;
+    }
+}
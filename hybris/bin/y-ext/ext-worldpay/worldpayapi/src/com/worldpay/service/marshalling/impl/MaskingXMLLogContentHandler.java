@@ -0,0 +1,158 @@
+package com.worldpay.service.marshalling.impl;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * SAX handler that prints the events it receives as indented XML, one element per line, and hands every line to a consumer
+ * as soon as it is complete. The text and attributes of the masked elements are replaced by {@link #MASK}.
+ * <p>
+ * Used to stream a marshalled PaymentService into the log without building the whole document in memory. Not thread safe.
+ * </p>
+ */
+class MaskingXMLLogContentHandler extends DefaultHandler {
+
+    static final String MASK = "****";
+    private static final String INDENT = "    ";
+
+    private final Consumer<String> lineConsumer;
+    private final Set<String> maskedNames;
+    private final StringBuilder line = new StringBuilder();
+    private int depth;
+    private int maskedDepth;
+    private boolean openTagPending;
+    private boolean textWritten;
+
+    MaskingXMLLogContentHandler(final Consumer<String> lineConsumer, final Set<String> maskedNames) {
+        this.lineConsumer = lineConsumer;
+        this.maskedNames = maskedNames;
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+        if (openTagPending) {
+            line.append('>');
+            emitLine();
+        } else if (line.length() > 0) {
+            emitLine();
+        }
+        final String name = elementName(localName, qName);
+        if (maskedDepth > 0 || maskedNames.contains(name)) {
+            maskedDepth++;
+        }
+        indent();
+        line.append('<').append(name);
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final String attributeName = elementName(attributes.getLocalName(i), attributes.getQName(i));
+            line.append(' ').append(attributeName).append("=\"");
+            if (maskedDepth > 0 || maskedNames.contains(attributeName)) {
+                line.append(MASK);
+            } else {
+                escape(attributes.getValue(i));
+            }
+            line.append('"');
+        }
+        openTagPending = true;
+        textWritten = false;
+        depth++;
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        if (isWhitespace(ch, start, length)) {
+            return;
+        }
+        if (openTagPending) {
+            line.append('>');
+            openTagPending = false;
+        }
+        if (maskedDepth > 0) {
+            if (!textWritten) {
+                line.append(MASK);
+            }
+        } else {
+            for (int i = start; i < start + length; i++) {
+                escape(ch[i]);
+            }
+        }
+        textWritten = true;
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) {
+        depth--;
+        if (openTagPending) {
+            line.append("/>");
+            openTagPending = false;
+        } else {
+            if (line.length() == 0) {
+                indent();
+            }
+            line.append("</").append(elementName(localName, qName)).append('>');
+        }
+        emitLine();
+        if (maskedDepth > 0) {
+            maskedDepth--;
+        }
+        textWritten = false;
+    }
+
+    @Override
+    public void endDocument() {
+        if (line.length() > 0) {
+            emitLine();
+        }
+    }
+
+    private void emitLine() {
+        lineConsumer.accept(line.toString());
+        line.setLength(0);
+    }
+
+    private void indent() {
+        for (int i = 0; i < depth; i++) {
+            line.append(INDENT);
+        }
+    }
+
+    private void escape(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            escape(value.charAt(i));
+        }
+    }
+
+    private void escape(final char c) {
+        switch (c) {
+            case '&':
+                line.append("&amp;");
+                break;
+            case '<':
+                line.append("&lt;");
+                break;
+            case '>':
+                line.append("&gt;");
+                break;
+            case '"':
+                line.append("&quot;");
+                break;
+            default:
+                line.append(c);
+        }
+    }
+
+    private static boolean isWhitespace(final char[] ch, final int start, final int length) {
+        for (int i = start; i < start + length; i++) {
+            if (!Character.isWhitespace(ch[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String elementName(final String localName, final String qName) {
+        return localName == null || localName.isEmpty() ? qName : localName;
+    }
+}
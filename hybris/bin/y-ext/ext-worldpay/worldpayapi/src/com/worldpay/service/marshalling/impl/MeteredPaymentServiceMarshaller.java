@@ -0,0 +1,83 @@
+package com.worldpay.service.marshalling.impl;
+
+import com.worldpay.exception.WorldpayException;
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.marshalling.PaymentServiceMarshaller;
+import com.worldpay.service.metrics.WorldpayGatewayMetricsRegistry;
+import com.worldpay.service.metrics.WorldpayGatewayStage;
+import com.worldpay.service.metrics.WorldpayGatewayTimer;
+import org.springframework.beans.factory.annotation.Required;
+import org.xml.sax.ContentHandler;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link PaymentServiceMarshaller} used by the connectors, that records the time spent marshalling the request and unmarshalling the
+ * reply as nested stages of the request being sent through the gateway by the current thread.
+ */
+public class MeteredPaymentServiceMarshaller implements PaymentServiceMarshaller {
+
+    private PaymentServiceMarshaller paymentServiceMarshaller;
+    private WorldpayGatewayMetricsRegistry worldpayGatewayMetricsRegistry;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PaymentService unmarshal(final InputStream in) throws WorldpayModelTransformationException {
+        final long start = System.nanoTime();
+        try {
+            return paymentServiceMarshaller.unmarshal(in);
+        } finally {
+            recordNested(WorldpayGatewayStage.UNMARSHAL, start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String marshal(final PaymentService paymentService) throws WorldpayException {
+        return paymentServiceMarshaller.marshal(paymentService);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void marshalAsRequest(final PaymentService paymentService, final OutputStream outputStream) throws WorldpayModelTransformationException {
+        final long start = System.nanoTime();
+        try {
+            paymentServiceMarshaller.marshalAsRequest(paymentService, outputStream);
+        } finally {
+            recordNested(WorldpayGatewayStage.MARSHAL, start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void marshalFragment(final PaymentService paymentService, final ContentHandler contentHandler) throws WorldpayModelTransformationException {
+        paymentServiceMarshaller.marshalFragment(paymentService, contentHandler);
+    }
+
+    protected void recordNested(final WorldpayGatewayStage stage, final long start) {
+        final WorldpayGatewayTimer timer = worldpayGatewayMetricsRegistry.getCurrentTimer();
+        if (timer != null) {
+            timer.recordNested(stage, System.nanoTime() - start);
+        }
+    }
+
+    @Required
+    public void setPaymentServiceMarshaller(final PaymentServiceMarshaller paymentServiceMarshaller) {
+        this.paymentServiceMarshaller = paymentServiceMarshaller;
+    }
+
+    @Required
+    public void setWorldpayGatewayMetricsRegistry(final WorldpayGatewayMetricsRegistry worldpayGatewayMetricsRegistry) {
+        this.worldpayGatewayMetricsRegistry = worldpayGatewayMetricsRegistry;
+    }
+}
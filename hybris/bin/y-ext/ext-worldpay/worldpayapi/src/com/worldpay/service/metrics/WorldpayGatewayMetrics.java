@@ -0,0 +1,142 @@
+package com.worldpay.service.metrics;
+
+import com.worldpay.service.model.ErrorDetail;
+import com.worldpay.service.response.ServiceResponse;
+import com.worldpay.util.WorldpayLatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency per {@link WorldpayGatewayStage} and outcome of the requests of one class sent through the gateway for one merchant.
+ * <p>
+ * Responses reporting an error are counted by {@link ErrorDetail} code and requests that failed with an exception are counted by
+ * exception class.
+ * </p>
+ * <p>
+ * Stages like the validation or the transformations mostly take less than a millisecond, so the latencies are recorded in
+ * microseconds.
+ * </p>
+ */
+public class WorldpayGatewayMetrics {
+
+    /**
+     * Bucket upper bounds of the stage latencies in microseconds, from 10 microseconds to 1 minute
+     */
+    public static final long[] STAGE_BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2000, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+            1000000, 2500000, 5000000, 10000000, 30000000, 60000000};
+
+    private final String requestType;
+    private final String merchantCode;
+    private final Map<WorldpayGatewayStage, WorldpayLatencyHistogram> latencyHistograms = new EnumMap<>(WorldpayGatewayStage.class);
+    private final LongAdder errorResponses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Map<String, LongAdder> errorCodes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> exceptions = new ConcurrentHashMap<>();
+
+    /**
+     * @param requestType  the simple name of the service request class
+     * @param merchantCode the merchant code
+     */
+    public WorldpayGatewayMetrics(final String requestType, final String merchantCode) {
+        this.requestType = requestType;
+        this.merchantCode = merchantCode;
+        for (final WorldpayGatewayStage stage : WorldpayGatewayStage.values()) {
+            latencyHistograms.put(stage, new WorldpayLatencyHistogram(stage.name(), STAGE_BUCKETS, TimeUnit.MICROSECONDS));
+        }
+    }
+
+    protected void recordStage(final WorldpayGatewayStage stage, final long micros) {
+        latencyHistograms.get(stage).record(micros);
+    }
+
+    protected void recordResponse(final ServiceResponse response) {
+        if (response != null && response.isError()) {
+            errorResponses.increment();
+            final ErrorDetail errorDetail = response.getErrorDetail();
+            increment(errorCodes, errorDetail != null ? errorDetail.getCode() : null);
+        }
+    }
+
+    protected void recordFailure(final Exception exception) {
+        failures.increment();
+        increment(exceptions, exception.getClass().getSimpleName());
+    }
+
+    private static void increment(final Map<String, LongAdder> counters, final String key) {
+        counters.computeIfAbsent(String.valueOf(key), k -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> snapshot(final Map<String, LongAdder> counters) {
+        final Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((key, counter) -> snapshot.put(key, counter.sum()));
+        return snapshot;
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public String getMerchantCode() {
+        return merchantCode;
+    }
+
+    public WorldpayLatencyHistogram getLatencyHistogram(final WorldpayGatewayStage stage) {
+        return latencyHistograms.get(stage);
+    }
+
+    /**
+     * @return the latency histogram of every stage, in the order of the stages
+     */
+    public List<WorldpayLatencyHistogram> getLatencyHistograms() {
+        return new ArrayList<>(latencyHistograms.values());
+    }
+
+    /**
+     * @return the number of requests that completed, successfully or not
+     */
+    public long getCalls() {
+        return latencyHistograms.get(WorldpayGatewayStage.TOTAL).getCount();
+    }
+
+    public long getErrorResponses() {
+        return errorResponses.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of responses reporting an error, by error code
+     */
+    public Map<String, Long> getErrorCodes() {
+        return snapshot(errorCodes);
+    }
+
+    /**
+     * @return the number of requests that failed with an exception, by simple name of the exception class
+     */
+    public Map<String, Long> getExceptions() {
+        return snapshot(exceptions);
+    }
+
+    @Override
+    public String toString() {
+        return "WorldpayGatewayMetrics{" +
+                "requestType='" + requestType + '\'' +
+                ", merchantCode='" + merchantCode + '\'' +
+                ", calls=" + getCalls() +
+                ", errorResponses=" + getErrorResponses() +
+                ", failures=" + getFailures() +
+                ", errorCodes=" + getErrorCodes() +
+                ", exceptions=" + getExceptions() +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package com.worldpay.service.metrics;
+
+import com.worldpay.service.request.ServiceRequest;
+
+import java.util.Collection;
+
+/**
+ * Keeps the {@link WorldpayGatewayMetrics} of the requests sent through the gateway, per request class and merchant.
+ */
+public interface WorldpayGatewayMetricsRegistry {
+
+    /**
+     * Starts timing a request and binds the timer to the current thread until it is stopped
+     *
+     * @param request the service request
+     * @return the timer of the request
+     */
+    WorldpayGatewayTimer startTimer(final ServiceRequest request);
+
+    /**
+     * @return the timer of the request being sent by the current thread, or {@code null} when it is not sending any
+     */
+    WorldpayGatewayTimer getCurrentTimer();
+
+    /**
+     * @return the metrics of every request class and merchant seen so far, sorted by request class and merchant code
+     */
+    Collection<WorldpayGatewayMetrics> getGatewayMetrics();
+
+    /**
+     * Drops the metrics recorded so far
+     */
+    void reset();
+}
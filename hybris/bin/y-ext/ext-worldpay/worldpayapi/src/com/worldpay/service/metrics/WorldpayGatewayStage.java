@@ -0,0 +1,36 @@
+package com.worldpay.service.metrics;
+
+/**
+ * Stages of a request sent through the {@link com.worldpay.service.WorldpayServiceGateway}
+ */
+public enum WorldpayGatewayStage {
+
+    /**
+     * Transformation of the service request into a PaymentService
+     */
+    REQUEST_TRANSFORM,
+    /**
+     * Validation of the PaymentService against the Worldpay xsd
+     */
+    VALIDATION,
+    /**
+     * Marshalling of the PaymentService into the XML posted to Worldpay
+     */
+    MARSHAL,
+    /**
+     * Exchange with Worldpay, from the connection lease until the reply starts to be read, without the marshalling and unmarshalling
+     */
+    NETWORK,
+    /**
+     * Unmarshalling of the reply of Worldpay, which is read from the connection as it is parsed
+     */
+    UNMARSHAL,
+    /**
+     * Transformation of the reply into the service response
+     */
+    RESPONSE_TRANSFORM,
+    /**
+     * The whole request, including the XML logging
+     */
+    TOTAL
+}
@@ -0,0 +1,98 @@
+package com.worldpay.service.metrics;
+
+import com.worldpay.service.response.ServiceResponse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the stages of one request sent through the gateway and records them in its {@link WorldpayGatewayMetrics}.
+ * <p>
+ * The gateway calls {@link #record(WorldpayGatewayStage)} at the end of each stage, which records the time elapsed since the end of the
+ * previous one, and {@link #mark()} to leave out work that belongs to no stage. Stages that run inside another one, like the
+ * marshalling done by the connector, are recorded with {@link #recordNested(WorldpayGatewayStage, long)} and subtracted from it.
+ * The stages are recorded in microseconds. A timer is used by the thread that sends the request only.
+ * </p>
+ */
+public class WorldpayGatewayTimer {
+
+    private final WorldpayGatewayMetrics metrics;
+    private final Runnable onStop;
+    private final long startNanos;
+    private long markNanos;
+    private long nestedNanos;
+
+    /**
+     * @param metrics the metrics to record the stages in
+     * @param onStop  called once the timer is stopped
+     */
+    public WorldpayGatewayTimer(final WorldpayGatewayMetrics metrics, final Runnable onStop) {
+        this.metrics = metrics;
+        this.onStop = onStop;
+        this.startNanos = nanoTime();
+        this.markNanos = startNanos;
+    }
+
+    /**
+     * Starts the next stage now
+     */
+    public void mark() {
+        markNanos = nanoTime();
+        nestedNanos = 0L;
+    }
+
+    /**
+     * Records the time elapsed since the previous stage ended, minus the nested stages, and starts the next stage
+     *
+     * @param stage the stage that ended
+     */
+    public void record(final WorldpayGatewayStage stage) {
+        final long now = nanoTime();
+        metrics.recordStage(stage, toMicros(now - markNanos - nestedNanos));
+        markNanos = now;
+        nestedNanos = 0L;
+    }
+
+    /**
+     * Records a stage that ran inside the current one
+     *
+     * @param stage the nested stage
+     * @param nanos the duration of the nested stage, in nanoseconds
+     */
+    public void recordNested(final WorldpayGatewayStage stage, final long nanos) {
+        metrics.recordStage(stage, toMicros(nanos));
+        nestedNanos += nanos;
+    }
+
+    public void recordResponse(final ServiceResponse response) {
+        metrics.recordResponse(response);
+    }
+
+    public void recordFailure(final Exception exception) {
+        metrics.recordFailure(exception);
+    }
+
+    /**
+     * Records the {@link WorldpayGatewayStage#TOTAL} time of the request
+     */
+    public void stop() {
+        try {
+            metrics.recordStage(WorldpayGatewayStage.TOTAL, toMicros(nanoTime() - startNanos));
+        } finally {
+            if (onStop != null) {
+                onStop.run();
+            }
+        }
+    }
+
+    public WorldpayGatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private static long toMicros(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,138 @@
+package com.worldpay.service.metrics.impl;
+
+import com.worldpay.service.metrics.WorldpayGatewayMetrics;
+import com.worldpay.service.metrics.WorldpayGatewayMetricsRegistry;
+import com.worldpay.service.metrics.WorldpayGatewayStage;
+import com.worldpay.service.metrics.WorldpayGatewayTimer;
+import com.worldpay.service.model.MerchantInfo;
+import com.worldpay.service.request.ServiceRequest;
+import com.worldpay.util.WorldpayLatencyHistogram;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@inheritDoc}
+ * <p/>
+ * <p>The metrics are also exposed over JMX, as one line per request class, merchant and stage.</p>
+ */
+@ManagedResource(description = "Latency per stage and errors of the requests sent to Worldpay")
+public class DefaultWorldpayGatewayMetricsRegistry implements WorldpayGatewayMetricsRegistry {
+
+    private static final String KEY_SEPARATOR = ":";
+    private static final String UNKNOWN_MERCHANT = "unknown";
+    private static final String STAGE_LATENCY_FORMAT =
+            "{0} {1} {2} count={3} avg={4,number,0.###} p50={5,number,0.###} p95={6,number,0.###} p99={7,number,0.###} max={8,number,0.###}";
+    private static final ThreadLocal<WorldpayGatewayTimer> CURRENT_TIMER = new ThreadLocal<>();
+
+    private final Map<String, WorldpayGatewayMetrics> gatewayMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WorldpayGatewayTimer startTimer(final ServiceRequest request) {
+        final WorldpayGatewayMetrics metrics = getGatewayMetrics(request.getClass().getSimpleName(), getMerchantCode(request));
+        final WorldpayGatewayTimer enclosingTimer = CURRENT_TIMER.get();
+        final WorldpayGatewayTimer timer = new WorldpayGatewayTimer(metrics, () -> {
+            if (enclosingTimer == null) {
+                CURRENT_TIMER.remove();
+            } else {
+                CURRENT_TIMER.set(enclosingTimer);
+            }
+        });
+        CURRENT_TIMER.set(timer);
+        return timer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WorldpayGatewayTimer getCurrentTimer() {
+        return CURRENT_TIMER.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<WorldpayGatewayMetrics> getGatewayMetrics() {
+        final List<WorldpayGatewayMetrics> metrics = new ArrayList<>(gatewayMetrics.values());
+        metrics.sort(Comparator.comparing(WorldpayGatewayMetrics::getRequestType).thenComparing(WorldpayGatewayMetrics::getMerchantCode));
+        return metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @ManagedOperation(description = "Drops the metrics recorded so far")
+    public void reset() {
+        gatewayMetrics.clear();
+    }
+
+    @ManagedAttribute(description = "Count, average, percentiles and maximum in milliseconds, per request class, merchant and stage")
+    public String[] getStageLatencies() {
+        final List<String> lines = new ArrayList<>();
+        for (final WorldpayGatewayMetrics metrics : getGatewayMetrics()) {
+            for (final WorldpayLatencyHistogram histogram : metrics.getLatencyHistograms()) {
+                lines.add(format(STAGE_LATENCY_FORMAT, metrics.getRequestType(), metrics.getMerchantCode(), histogram.getName(),
+                        histogram.getCount(), histogram.getAverageMillis(), toMillis(histogram, histogram.getPercentile(50)),
+                        toMillis(histogram, histogram.getPercentile(95)), toMillis(histogram, histogram.getPercentile(99)),
+                        toMillis(histogram, histogram.getMax())));
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @ManagedAttribute(description = "Responses reporting an error by error code and failed requests by exception, per request class and merchant")
+    public String[] getErrors() {
+        return getGatewayMetrics().stream()
+                .filter(metrics -> metrics.getErrorResponses() > 0 || metrics.getFailures() > 0)
+                .map(metrics -> format("{0} {1} errorCodes={2} exceptions={3}", metrics.getRequestType(), metrics.getMerchantCode(),
+                        metrics.getErrorCodes(), metrics.getExceptions()))
+                .toArray(String[]::new);
+    }
+
+    @ManagedOperation(description = "Estimates a percentile of the latency of a stage, in milliseconds")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "requestType", description = "Simple name of the service request class"),
+            @ManagedOperationParameter(name = "merchantCode", description = "Merchant code"),
+            @ManagedOperationParameter(name = "stage", description = "Stage, e.g. NETWORK or TOTAL"),
+            @ManagedOperationParameter(name = "percentile", description = "Percentile, between 0 and 100")
+    })
+    public double getPercentileMillis(final String requestType, final String merchantCode, final String stage, final double percentile) {
+        final WorldpayGatewayMetrics metrics = gatewayMetrics.get(requestType + KEY_SEPARATOR + merchantCode);
+        if (metrics == null) {
+            return 0d;
+        }
+        final WorldpayLatencyHistogram histogram = metrics.getLatencyHistogram(WorldpayGatewayStage.valueOf(stage));
+        return toMillis(histogram, histogram.getPercentile(percentile));
+    }
+
+    protected WorldpayGatewayMetrics getGatewayMetrics(final String requestType, final String merchantCode) {
+        return gatewayMetrics.computeIfAbsent(requestType + KEY_SEPARATOR + merchantCode, key -> new WorldpayGatewayMetrics(requestType, merchantCode));
+    }
+
+    private static double toMillis(final WorldpayLatencyHistogram histogram, final long latency) {
+        return (double) histogram.getUnit().toNanos(latency) / TimeUnit.MILLISECONDS.toNanos(1L);
+    }
+
+    private static String getMerchantCode(final ServiceRequest request) {
+        final MerchantInfo merchantInfo = request.getMerchantInfo();
+        return merchantInfo != null && merchantInfo.getMerchantCode() != null ? merchantInfo.getMerchantCode() : UNKNOWN_MERCHANT;
+    }
+}
@@ -0,0 +1,20 @@
+package com.worldpay.service.notification;
+
+import com.worldpay.exception.WorldpayModelTransformationException;
+
+import java.io.InputStream;
+
+/**
+ * Parses the order notifications received from Worldpay
+ */
+public interface OrderNotificationMessageParser {
+
+    /**
+     * Parses the xml of an order notification into an {@link OrderNotificationMessage}
+     *
+     * @param in the body of the notification sent by Worldpay
+     * @return the message with the details of the notification
+     * @throws WorldpayModelTransformationException when the body is not a valid order notification
+     */
+    OrderNotificationMessage parse(InputStream in) throws WorldpayModelTransformationException;
+}
@@ -0,0 +1,106 @@
+package com.worldpay.service.notification.impl;
+
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.marshalling.PaymentServiceMarshaller;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.service.notification.OrderNotificationMessageParser;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.dto.converter.Converter;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@inheritDoc}
+ * <p>
+ * Notifications are read with the {@link StaxOrderNotificationMessageReader} when {@code worldpay.notification.parser.streaming.enabled}
+ * is set. The notifications it does not support, and all of them when it is disabled, are unmarshalled with JAXB and converted by
+ * the orderNotificationRequestToMessageConverter.
+ * </p>
+ */
+public class DefaultOrderNotificationMessageParser implements OrderNotificationMessageParser {
+
+    protected static final String WORLDPAY_NOTIFICATION_PARSER_STREAMING_ENABLED = "worldpay.notification.parser.streaming.enabled";
+
+    private final LongAdder streamedNotifications = new LongAdder();
+    private final LongAdder unmarshalledNotifications = new LongAdder();
+
+    private StaxOrderNotificationMessageReader staxOrderNotificationMessageReader;
+    private PaymentServiceMarshaller paymentServiceMarshaller;
+    private Converter<PaymentService, OrderNotificationMessage> orderNotificationRequestToMessageConverter;
+    private ConfigurationService configurationService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderNotificationMessage parse(final InputStream in) throws WorldpayModelTransformationException {
+        final byte[] body = readBody(in);
+        if (configurationService.getConfiguration().getBoolean(WORLDPAY_NOTIFICATION_PARSER_STREAMING_ENABLED, true)) {
+            final Optional<OrderNotificationMessage> message = staxOrderNotificationMessageReader.read(body);
+            if (message.isPresent()) {
+                streamedNotifications.increment();
+                return message.get();
+            }
+        }
+        unmarshalledNotifications.increment();
+        return unmarshal(body);
+    }
+
+    protected OrderNotificationMessage unmarshal(final byte[] body) throws WorldpayModelTransformationException {
+        final PaymentService paymentService = paymentServiceMarshaller.unmarshal(new ByteArrayInputStream(body));
+        return orderNotificationRequestToMessageConverter.convert(paymentService);
+    }
+
+    /**
+     * The body is buffered, so it can be unmarshalled with JAXB when the streaming reader does not support it. Notifications are
+     * a few kilobytes at most.
+     */
+    protected byte[] readBody(final InputStream in) throws WorldpayModelTransformationException {
+        try {
+            return IOUtils.toByteArray(in);
+        } catch (final IOException e) {
+            throw new WorldpayModelTransformationException("Failed to read the notification received from Worldpay", e);
+        }
+    }
+
+    /**
+     * @return the number of notifications read by the streaming reader
+     */
+    public long getStreamedNotifications() {
+        return streamedNotifications.sum();
+    }
+
+    /**
+     * @return the number of notifications unmarshalled with JAXB
+     */
+    public long getUnmarshalledNotifications() {
+        return unmarshalledNotifications.sum();
+    }
+
+    @Required
+    public void setStaxOrderNotificationMessageReader(final StaxOrderNotificationMessageReader staxOrderNotificationMessageReader) {
+        this.staxOrderNotificationMessageReader = staxOrderNotificationMessageReader;
+    }
+
+    @Required
+    public void setPaymentServiceMarshaller(final PaymentServiceMarshaller paymentServiceMarshaller) {
+        this.paymentServiceMarshaller = paymentServiceMarshaller;
+    }
+
+    @Required
+    public void setOrderNotificationRequestToMessageConverter(final Converter<PaymentService, OrderNotificationMessage> orderNotificationRequestToMessageConverter) {
+        this.orderNotificationRequestToMessageConverter = orderNotificationRequestToMessageConverter;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+}
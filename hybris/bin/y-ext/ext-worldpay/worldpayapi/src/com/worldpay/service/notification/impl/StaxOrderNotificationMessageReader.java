@@ -0,0 +1,482 @@
+package com.worldpay.service.notification.impl;
+
+import com.worldpay.enums.order.AuthorisedStatus;
+import com.worldpay.service.model.AccountTransaction;
+import com.worldpay.service.model.Amount;
+import com.worldpay.service.model.Date;
+import com.worldpay.service.model.DebitCreditIndicator;
+import com.worldpay.service.model.ErrorDetail;
+import com.worldpay.service.model.JournalReply;
+import com.worldpay.service.model.PaymentReply;
+import com.worldpay.service.model.RiskScore;
+import com.worldpay.service.model.payment.Card;
+import com.worldpay.service.model.payment.PaymentType;
+import com.worldpay.service.model.token.TokenDetails;
+import com.worldpay.service.model.token.TokenReply;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import org.apache.log4j.Logger;
+
+import javax.xml.bind.annotation.adapters.CollapsedStringAdapter;
+import javax.xml.bind.annotation.adapters.NormalizedStringAdapter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.text.MessageFormat;
+import java.util.Optional;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Reads an order notification sent by Worldpay into an {@link OrderNotificationMessage} in a single pass over the xml, without
+ * building the JAXB {@link com.worldpay.internal.model.PaymentService} tree.
+ * <p>
+ * The message is filled with the same values as the {@link com.worldpay.converters.OrderModificationRequestConverter}. Only the
+ * usual shape of an orderStatusEvent is supported: when the notification is not an orderStatusEvent, carries a token payment
+ * instrument or shopper webform refund details, or misses an element the converter relies on, the reader returns an empty result
+ * and the notification has to be unmarshalled with JAXB. Elements the converter does not use are skipped.
+ * </p>
+ * <p>
+ * The DTD declared by the notification is neither loaded nor validated.
+ * </p>
+ */
+public class StaxOrderNotificationMessageReader {
+
+    private static final Logger LOG = Logger.getLogger(StaxOrderNotificationMessageReader.class);
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+    private static final CollapsedStringAdapter COLLAPSED_STRING_ADAPTER = new CollapsedStringAdapter();
+    private static final NormalizedStringAdapter NORMALIZED_STRING_ADAPTER = new NormalizedStringAdapter();
+
+    /**
+     * Reads the notification
+     *
+     * @param body the xml sent by Worldpay
+     * @return the message, or empty when the notification has to be unmarshalled with JAXB
+     */
+    public Optional<OrderNotificationMessage> read(final byte[] body) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(body));
+            return Optional.of(readPaymentService(reader));
+        } catch (final XMLStreamException | UnsupportedNotificationException e) {
+            LOG.debug(MessageFormat.format("Notification not supported by the streaming reader: {0}", e.getMessage()));
+            return Optional.empty();
+        } finally {
+            close(reader);
+        }
+    }
+
+    protected OrderNotificationMessage readPaymentService(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        moveToRootElement(reader);
+        expectElement(reader, "paymentService");
+        final String merchantCode = collapse(reader.getAttributeValue(null, "merchantCode"));
+        if (!nextChildElement(reader)) {
+            throw new UnsupportedNotificationException("paymentService has no content");
+        }
+        expectElement(reader, "notify");
+        if (!nextChildElement(reader)) {
+            throw new UnsupportedNotificationException("notify has no content");
+        }
+        expectElement(reader, "orderStatusEvent");
+
+        final OrderNotificationMessage message = readOrderStatusEvent(reader);
+        message.setMerchantCode(merchantCode);
+        return message;
+    }
+
+    protected OrderNotificationMessage readOrderStatusEvent(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        final OrderNotificationMessage message = new OrderNotificationMessage();
+        message.setOrderCode(normalize(reader.getAttributeValue(null, "orderCode")));
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case "payment":
+                    message.setPaymentReply(readPayment(reader));
+                    break;
+                case "journal":
+                    message.setJournalReply(readJournal(reader));
+                    break;
+                case "token":
+                    message.setTokenReply(readToken(reader));
+                    break;
+                case "shopperWebformRefundDetails":
+                    throw new UnsupportedNotificationException("shopperWebformRefundDetails is not supported");
+                default:
+                    skipElement(reader);
+            }
+        }
+        if (message.getPaymentReply() == null || message.getJournalReply() == null) {
+            throw new UnsupportedNotificationException("orderStatusEvent without payment or journal");
+        }
+        return message;
+    }
+
+    protected PaymentReply readPayment(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        final PaymentReply paymentReply = new PaymentReply();
+        boolean paymentMethodDetailRead = false;
+        boolean cardRead = false;
+        String cardType = null;
+        String cardNumber = null;
+        Date cardExpiryDate = null;
+        String cardHolderName = null;
+        boolean balanceRead = false;
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case "paymentMethod":
+                    paymentReply.setMethodCode(reader.getElementText());
+                    break;
+                case "paymentMethodDetail":
+                    paymentMethodDetailRead = true;
+                    while (nextChildElement(reader)) {
+                        if ("card".equals(reader.getLocalName())) {
+                            cardRead = true;
+                            cardType = collapse(reader.getAttributeValue(null, "type"));
+                            cardNumber = normalize(reader.getAttributeValue(null, "number"));
+                            cardExpiryDate = readCardExpiryDate(reader);
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                    if (!cardRead) {
+                        throw new UnsupportedNotificationException("paymentMethodDetail without card");
+                    }
+                    break;
+                case "amount":
+                    paymentReply.setAmount(readAmount(reader));
+                    break;
+                case "lastEvent":
+                    paymentReply.setAuthStatus(toAuthorisedStatus(reader.getElementText()));
+                    break;
+                case "refundReference":
+                    paymentReply.setRefundReference(reader.getElementText());
+                    break;
+                case "AuthorisationId":
+                    paymentReply.setAuthorisationId(collapse(reader.getAttributeValue(null, "id")));
+                    final String authorisedBy = collapse(reader.getAttributeValue(null, "by"));
+                    if (authorisedBy != null) {
+                        paymentReply.setAuthorisedBy(authorisedBy);
+                    }
+                    skipElement(reader);
+                    break;
+                case "ISO8583ReturnCode":
+                    paymentReply.setReturnCode(collapse(reader.getAttributeValue(null, "code")));
+                    skipElement(reader);
+                    break;
+                case "CVCResultCode":
+                    paymentReply.setCvcResultDescription(Optional.ofNullable(readFirstDescription(reader))
+                            .orElseThrow(() -> new UnsupportedNotificationException("CVCResultCode without description")));
+                    break;
+                case "AAVAddressResultCode":
+                    paymentReply.setAavAddressResultCode(readFirstDescription(reader));
+                    break;
+                case "AAVPostcodeResultCode":
+                    paymentReply.setAavPostcodeResultCode(readFirstDescription(reader));
+                    break;
+                case "AAVCardholderNameResultCode":
+                    paymentReply.setAavCardholderNameResultCode(readFirstDescription(reader));
+                    break;
+                case "AAVTelephoneResultCode":
+                    paymentReply.setAavTelephoneResultCode(readFirstDescription(reader));
+                    break;
+                case "AAVEmailResultCode":
+                    paymentReply.setAavEmailResultCode(readFirstDescription(reader));
+                    break;
+                case "cardHolderName":
+                    final String name = reader.getElementText();
+                    cardHolderName = name != null && name.length() > 0 ? name : null;
+                    break;
+                case "balance":
+                    if (!balanceRead) {
+                        balanceRead = true;
+                        paymentReply.setBalanceAccountType(collapse(reader.getAttributeValue(null, "accountType")));
+                        paymentReply.setBalanceAmount(Optional.ofNullable(readChildAmount(reader))
+                                .orElseThrow(() -> new UnsupportedNotificationException("balance without amount")));
+                    } else {
+                        skipElement(reader);
+                    }
+                    break;
+                case "riskScore":
+                    paymentReply.setRiskScore(readRiskScore(reader));
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        if (paymentReply.getAuthStatus() == null || paymentReply.getAmount() == null || paymentReply.getRiskScore() == null) {
+            throw new UnsupportedNotificationException("payment without lastEvent, amount or riskScore");
+        }
+        if (paymentMethodDetailRead) {
+            paymentReply.setCardDetails(new Card(PaymentType.getPaymentType(cardType), cardNumber, null, cardExpiryDate, cardHolderName, null, null, null, null));
+        }
+        return paymentReply;
+    }
+
+    protected JournalReply readJournal(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        final JournalReply journalReply = new JournalReply();
+        journalReply.setJournalType(toAuthorisedStatus(collapse(reader.getAttributeValue(null, "journalType"))));
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case "bookingDate":
+                    journalReply.setBookingDate(readChildDate(reader));
+                    break;
+                case "accountTx":
+                    final AccountTransaction accountTransaction = new AccountTransaction();
+                    accountTransaction.setAccountType(collapse(reader.getAttributeValue(null, "accountType")));
+                    accountTransaction.setBatchId(collapse(reader.getAttributeValue(null, "batchId")));
+                    final Amount amount = readChildAmount(reader);
+                    if (amount != null) {
+                        accountTransaction.setAmount(amount);
+                    }
+                    journalReply.addAccountTransaction(accountTransaction);
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return journalReply;
+    }
+
+    protected TokenReply readToken(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        final TokenReply tokenReply = new TokenReply();
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case "authenticatedShopperID":
+                    tokenReply.setAuthenticatedShopperID(reader.getElementText());
+                    break;
+                case "tokenEventReference":
+                    tokenReply.setTokenEventReference(reader.getElementText());
+                    break;
+                case "tokenReason":
+                    tokenReply.setTokenReason(reader.getElementText());
+                    break;
+                case "tokenDetails":
+                    tokenReply.setTokenDetails(readTokenDetails(reader));
+                    break;
+                case "error":
+                    final String code = collapse(reader.getAttributeValue(null, "code"));
+                    tokenReply.setError(new ErrorDetail(code, reader.getElementText()));
+                    break;
+                case "paymentInstrument":
+                    throw new UnsupportedNotificationException("token paymentInstrument is not supported");
+                default:
+                    skipElement(reader);
+            }
+        }
+        return tokenReply;
+    }
+
+    protected TokenDetails readTokenDetails(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        final TokenDetails tokenDetails = new TokenDetails();
+        tokenDetails.setTokenEvent(collapse(reader.getAttributeValue(null, "tokenEvent")));
+        while (nextChildElement(reader)) {
+            switch (reader.getLocalName()) {
+                case "paymentTokenID":
+                    tokenDetails.setPaymentTokenID(reader.getElementText());
+                    break;
+                case "paymentTokenExpiry":
+                    tokenDetails.setPaymentTokenExpiry(readRequiredChildDate(reader));
+                    break;
+                case "reportingTokenID":
+                    tokenDetails.setReportingTokenID(reader.getElementText());
+                    break;
+                case "reportingTokenExpiry":
+                    tokenDetails.setReportingTokenExpiry(readRequiredChildDate(reader));
+                    break;
+                case "tokenEventReference":
+                    tokenDetails.setTokenEventReference(reader.getElementText());
+                    break;
+                case "tokenReason":
+                    tokenDetails.setTokenReason(reader.getElementText());
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        if (tokenDetails.getPaymentTokenExpiry() == null) {
+            throw new UnsupportedNotificationException("tokenDetails without paymentTokenExpiry");
+        }
+        return tokenDetails;
+    }
+
+    private Date readCardExpiryDate(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        Date expiryDate = null;
+        while (nextChildElement(reader)) {
+            if ("expiryDate".equals(reader.getLocalName())) {
+                expiryDate = readRequiredChildDate(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return expiryDate;
+    }
+
+    private Date readRequiredChildDate(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        final String localName = reader.getLocalName();
+        return Optional.ofNullable(readChildDate(reader))
+                .orElseThrow(() -> new UnsupportedNotificationException(localName + " without date"));
+    }
+
+    /**
+     * Reads the date wrapped by the current element, like bookingDate or expiryDate, and moves to the end of the current element
+     */
+    private Date readChildDate(final XMLStreamReader reader) throws XMLStreamException {
+        Date date = null;
+        while (nextChildElement(reader)) {
+            if ("date".equals(reader.getLocalName())) {
+                date = new Date(collapse(reader.getAttributeValue(null, "dayOfMonth")), collapse(reader.getAttributeValue(null, "month")),
+                        collapse(reader.getAttributeValue(null, "year")), collapse(reader.getAttributeValue(null, "hour")),
+                        collapse(reader.getAttributeValue(null, "minute")), collapse(reader.getAttributeValue(null, "second")));
+            }
+            skipElement(reader);
+        }
+        return date;
+    }
+
+    /**
+     * Reads the amount wrapped by the current element, like balance or accountTx, and moves to the end of the current element
+     */
+    private Amount readChildAmount(final XMLStreamReader reader) throws XMLStreamException {
+        Amount amount = null;
+        while (nextChildElement(reader)) {
+            if ("amount".equals(reader.getLocalName())) {
+                amount = readAmount(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return amount;
+    }
+
+    private Amount readAmount(final XMLStreamReader reader) throws XMLStreamException {
+        final String debitCreditIndicator = collapse(reader.getAttributeValue(null, "debitCreditIndicator"));
+        final Amount amount = new Amount(collapse(reader.getAttributeValue(null, "value")), collapse(reader.getAttributeValue(null, "currencyCode")),
+                collapse(reader.getAttributeValue(null, "exponent")),
+                DebitCreditIndicator.getDebitCreditIndicator(debitCreditIndicator == null ? "credit" : debitCreditIndicator));
+        skipElement(reader);
+        return amount;
+    }
+
+    private RiskScore readRiskScore(final XMLStreamReader reader) throws XMLStreamException {
+        final RiskScore riskScore = new RiskScore();
+        riskScore.setExtendedResponse(normalize(reader.getAttributeValue(null, "extendedResponse")));
+        riskScore.setFinalScore(normalize(reader.getAttributeValue(null, "finalScore")));
+        riskScore.setId(normalize(reader.getAttributeValue(null, "id")));
+        riskScore.setValue(normalize(reader.getAttributeValue(null, "value")));
+        riskScore.setMessage(normalize(reader.getAttributeValue(null, "message")));
+        riskScore.setProvider(normalize(reader.getAttributeValue(null, "provider")));
+        riskScore.setRGID(normalize(reader.getAttributeValue(null, "RGID")));
+        riskScore.setTRisk(normalize(reader.getAttributeValue(null, "tRisk")));
+        riskScore.setTScore(normalize(reader.getAttributeValue(null, "tScore")));
+        skipElement(reader);
+        return riskScore;
+    }
+
+    /**
+     * The description of the result codes is a list of tokens, of which only the first one is kept, as JAXB does
+     */
+    private String readFirstDescription(final XMLStreamReader reader) throws XMLStreamException {
+        final String description = collapse(reader.getAttributeValue(null, "description"));
+        skipElement(reader);
+        if (description == null || description.isEmpty()) {
+            return null;
+        }
+        final int separator = description.indexOf(' ');
+        return separator < 0 ? description : description.substring(0, separator);
+    }
+
+    private AuthorisedStatus toAuthorisedStatus(final String status) throws UnsupportedNotificationException {
+        if (status == null) {
+            throw new UnsupportedNotificationException("Missing status");
+        }
+        try {
+            return AuthorisedStatus.valueOf(status);
+        } catch (final IllegalArgumentException e) {
+            throw new UnsupportedNotificationException(MessageFormat.format("Unknown status [{0}]", status));
+        }
+    }
+
+    private void moveToRootElement(final XMLStreamReader reader) throws XMLStreamException, UnsupportedNotificationException {
+        while (reader.hasNext()) {
+            if (reader.next() == START_ELEMENT) {
+                return;
+            }
+        }
+        throw new UnsupportedNotificationException("Empty notification");
+    }
+
+    private void expectElement(final XMLStreamReader reader, final String localName) throws UnsupportedNotificationException {
+        if (!localName.equals(reader.getLocalName())) {
+            throw new UnsupportedNotificationException(MessageFormat.format("Expected [{0}] but found [{1}]", localName, reader.getLocalName()));
+        }
+    }
+
+    /**
+     * Moves to the next child of the current element
+     *
+     * @return true when positioned on the start of a child, false when positioned on the end of the current element
+     */
+    private boolean nextChildElement(final XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == START_ELEMENT) {
+                return true;
+            }
+            if (event == END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the end of the current element, ignoring its content
+     */
+    private void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            final int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private String collapse(final String value) {
+        return value == null ? null : COLLAPSED_STRING_ADAPTER.unmarshal(value);
+    }
+
+    private String normalize(final String value) {
+        return value == null ? null : NORMALIZED_STRING_ADAPTER.unmarshal(value);
+    }
+
+    private void close(final XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (final XMLStreamException e) {
+                LOG.debug("Failed to close the notification reader", e);
+            }
+        }
+    }
+
+    /**
+     * The factory is thread safe once configured. DTDs and external entities are disabled, so the DOCTYPE of the notification is
+     * skipped without being resolved.
+     */
+    private static XMLInputFactory createXMLInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    protected static class UnsupportedNotificationException extends Exception {
+        UnsupportedNotificationException(final String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.worldpay.service.request.validation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters collected by the {@link WorldpayXMLValidator} for a single request type.
+ * <p>
+ * All counters are cumulative since the validator was created and are safe to update from concurrent request threads.
+ * </p>
+ */
+public class WorldpayXMLValidationMetrics {
+
+    private final String requestType;
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder validationTimeNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder reportsDropped = new LongAdder();
+
+    /**
+     * Creates the metrics holder for the given request type
+     *
+     * @param requestType the request type the counters are collected for
+     */
+    public WorldpayXMLValidationMetrics(final String requestType) {
+        this.requestType = requestType;
+    }
+
+    /**
+     * Records a completed validation against the xsd.
+     *
+     * @param nanos time spent validating the message
+     * @param valid whether the message was valid
+     */
+    public void recordValidation(final long nanos, final boolean valid) {
+        validations.increment();
+        validationTimeNanos.add(nanos);
+        if (!valid) {
+            failures.increment();
+        }
+    }
+
+    /**
+     * Records a message sent without being validated.
+     */
+    public void recordSkipped() {
+        skipped.increment();
+    }
+
+    /**
+     * Records a sampled message that could not be validated because the background validation queue was full.
+     */
+    public void recordReportDropped() {
+        reportsDropped.increment();
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public long getValidations() {
+        return validations.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getReportsDropped() {
+        return reportsDropped.sum();
+    }
+
+    /**
+     * @return the average time in milliseconds spent validating a message
+     */
+    public double getAverageValidationTimeMillis() {
+        final long count = getValidations();
+        return count == 0 ? 0d : (double) TimeUnit.NANOSECONDS.toMicros(validationTimeNanos.sum()) / count / 1000d;
+    }
+
+    @Override
+    public String toString() {
+        return "WorldpayXMLValidationMetrics{" +
+                "requestType='" + requestType + '\'' +
+                ", validations=" + getValidations() +
+                ", averageValidationTimeMillis=" + getAverageValidationTimeMillis() +
+                ", failures=" + getFailures() +
+                ", skipped=" + getSkipped() +
+                ", reportsDropped=" + getReportsDropped() +
+                '}';
+    }
+}
@@ -0,0 +1,23 @@
+package com.worldpay.service.request.validation;
+
+/**
+ * Modes in which the {@link WorldpayXMLValidator} validates outbound {@link com.worldpay.internal.model.PaymentService} messages
+ */
+public enum WorldpayXMLValidationMode {
+
+    /**
+     * Every message is validated on the calling thread and invalid messages are rejected
+     */
+    ALWAYS,
+
+    /**
+     * One in every N messages, and every message of a request type not seen before, is validated in the background.
+     * Invalid messages are reported but still sent
+     */
+    SAMPLED,
+
+    /**
+     * No message is validated
+     */
+    OFF
+}
@@ -3,26 +3,73 @@ package com.worldpay.service.request.validation.impl;
 import com.worldpay.exception.WorldpayValidationException;
 import com.worldpay.internal.model.PaymentService;
 import com.worldpay.service.request.validation.WorldpayErrorHandler;
+import com.worldpay.service.request.validation.WorldpayXMLValidationMetrics;
+import com.worldpay.service.request.validation.WorldpayXMLValidationMode;
 import com.worldpay.service.request.validation.WorldpayXMLValidator;
 import com.worldpay.util.WorldpayConstants;
+import com.worldpay.util.WorldpayThreadFactory;
+import com.worldpay.util.WorldpayUtil;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 import javax.xml.bind.util.JAXBSource;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
 
 /**
  * This class uses standard java classes to validate that the xml that {@link PaymentService} will generate matches an associated xsd
  * <p/>
  * <p>Uses JAXB implementation that validates against an xsd and throws SAXParseException if there are any errors. The associated {@link WorldpayErrorHandler} is associated to
  * the JAXB validator at initialisation</p>
+ * <p>The {@link WorldpayXMLValidationMode} is read from {@code worldpay.xml.validation.mode} on every call. In {@link WorldpayXMLValidationMode#SAMPLED} mode
+ * the selected messages are marshalled on the request thread and the xml is validated on a single background thread, where failures are only
+ * logged, so the xsd check is taken off the request path without sharing the {@link PaymentService}, which is still being sent.
+ * Validators are reused per thread and validation time is recorded per request type in {@link WorldpayXMLValidationMetrics}, which are
+ * also published over JMX.</p>
  */
-public class DefaultWorldpayXMLValidator implements WorldpayXMLValidator {
+@ManagedResource(description = "Validation of the XML sent to Worldpay against the paymentService xsd")
+public class DefaultWorldpayXMLValidator implements WorldpayXMLValidator, DisposableBean {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayXMLValidator.class);
+
+    protected static final String WORLDPAY_XML_VALIDATION_MODE = "worldpay.xml.validation.mode";
+    protected static final String WORLDPAY_XML_VALIDATION_SAMPLE_RATE = "worldpay.xml.validation.sample.rate";
+    protected static final String WORLDPAY_XML_VALIDATION_QUEUE_CAPACITY = "worldpay.xml.validation.queue.capacity";
+
+    private static final int DEFAULT_SAMPLE_RATE = 100;
+    private static final int DEFAULT_QUEUE_CAPACITY = 100;
+    private static final ErrorHandler ERROR_HANDLER = new WorldpayErrorHandler();
 
     private static Schema SCHEMA;
 
@@ -36,19 +83,184 @@ public class DefaultWorldpayXMLValidator implements WorldpayXMLValidator {
         }
     }
 
+    private final ThreadLocal<Validator> validators = ThreadLocal.withInitial(SCHEMA::newValidator);
+    private final ThreadLocal<Marshaller> marshallers = new ThreadLocal<>();
+    private final Map<String, WorldpayXMLValidationMetrics> validationMetrics = new ConcurrentHashMap<>();
+    private final Set<String> sampledRequestTypes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong messageCounter = new AtomicLong();
+    private volatile ExecutorService sampledValidationExecutor;
+
+    private ConfigurationService configurationService;
+
     @Override
     public void validate(PaymentService paymentService) throws WorldpayValidationException {
+        final WorldpayXMLValidationMode mode = getValidationMode();
+        final WorldpayXMLValidationMetrics metrics = getMetrics(WorldpayUtil.getRequestType(paymentService));
+        if (mode == WorldpayXMLValidationMode.ALWAYS) {
+            validateAndRecord(paymentService, metrics);
+        } else if (mode == WorldpayXMLValidationMode.SAMPLED && isSampled(metrics.getRequestType())) {
+            validateInBackground(paymentService, metrics);
+        } else {
+            metrics.recordSkipped();
+        }
+    }
+
+    /**
+     * @return the validation counters of every request type seen so far
+     */
+    public Collection<WorldpayXMLValidationMetrics> getValidationMetrics() {
+        return new ArrayList<>(validationMetrics.values());
+    }
+
+    @ManagedAttribute(description = "Validations, failures, skipped messages, dropped reports and average validation time, per request type")
+    public String[] getValidations() {
+        return getValidationMetrics().stream()
+                .sorted(Comparator.comparing(WorldpayXMLValidationMetrics::getRequestType))
+                .map(metrics -> format("{0} validations={1} failures={2} skipped={3} reportsDropped={4} avgMillis={5,number,0.000}",
+                        metrics.getRequestType(), metrics.getValidations(), metrics.getFailures(), metrics.getSkipped(),
+                        metrics.getReportsDropped(), metrics.getAverageValidationTimeMillis()))
+                .toArray(String[]::new);
+    }
+
+    @ManagedAttribute(description = "Validation mode in use")
+    public String getMode() {
+        return getValidationMode().name();
+    }
+
+    @Override
+    public void destroy() {
+        final ExecutorService executor = sampledValidationExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    protected WorldpayXMLValidationMode getValidationMode() {
+        final String mode = configurationService.getConfiguration().getString(WORLDPAY_XML_VALIDATION_MODE);
+        if (StringUtils.isBlank(mode)) {
+            return WorldpayXMLValidationMode.ALWAYS;
+        }
         try {
-            final JAXBSource source = new JAXBSource(WorldpayConstants.JAXB_CONTEXT, paymentService);
-            final Validator validator = SCHEMA.newValidator();
-            validator.setErrorHandler(new WorldpayErrorHandler());
-            validator.validate(source);
+            return WorldpayXMLValidationMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOG.warn(format("Unknown xml validation mode [{0}] in [{1}], validating every message", mode, WORLDPAY_XML_VALIDATION_MODE));
+            return WorldpayXMLValidationMode.ALWAYS;
+        }
+    }
+
+    /**
+     * A message is sampled when it is the first one of its request type, or the n-th message overall for the configured sample rate.
+     */
+    protected boolean isSampled(final String requestType) {
+        if (sampledRequestTypes.add(requestType)) {
+            return true;
+        }
+        final int sampleRate = Math.max(1, configurationService.getConfiguration().getInt(WORLDPAY_XML_VALIDATION_SAMPLE_RATE, DEFAULT_SAMPLE_RATE));
+        return messageCounter.incrementAndGet() % sampleRate == 0;
+    }
+
+    protected void validateInBackground(final PaymentService paymentService, final WorldpayXMLValidationMetrics metrics) {
+        final byte[] xml;
+        try {
+            xml = marshal(paymentService);
         } catch (JAXBException e) {
+            metrics.recordReportDropped();
+            LOG.error(format("Unable to marshal the sampled {0} message for validation", metrics.getRequestType()), e);
+            return;
+        }
+        try {
+            getSampledValidationExecutor().execute(() -> {
+                try {
+                    validateAndRecord(new StreamSource(new ByteArrayInputStream(xml)), metrics);
+                } catch (WorldpayValidationException e) {
+                    LOG.error(format("Sampled {0} message sent to Worldpay does not match the paymentService xsd", metrics.getRequestType()), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metrics.recordReportDropped();
+            LOG.debug(format("Sampled xml validation queue is full, skipping validation of {0} message", metrics.getRequestType()));
+        }
+    }
+
+    protected void validateAndRecord(final PaymentService paymentService, final WorldpayXMLValidationMetrics metrics) throws WorldpayValidationException {
+        final Source source;
+        try {
+            source = new JAXBSource(WorldpayConstants.JAXB_CONTEXT, paymentService);
+        } catch (JAXBException e) {
+            metrics.recordValidation(0L, false);
             throw new WorldpayValidationException("XML context or source building failure while validating xml model", e);
+        }
+        validateAndRecord(source, metrics);
+    }
+
+    protected void validateAndRecord(final Source source, final WorldpayXMLValidationMetrics metrics) throws WorldpayValidationException {
+        final long start = System.nanoTime();
+        boolean valid = false;
+        try {
+            doValidate(source);
+            valid = true;
+        } finally {
+            metrics.recordValidation(System.nanoTime() - start, valid);
+        }
+    }
+
+    /**
+     * Writes the message with the marshaller of the calling thread, so it can be validated on another thread
+     */
+    protected byte[] marshal(final PaymentService paymentService) throws JAXBException {
+        Marshaller marshaller = marshallers.get();
+        if (marshaller == null) {
+            marshaller = WorldpayConstants.JAXB_CONTEXT.createMarshaller();
+            marshallers.set(marshaller);
+        }
+        final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        marshaller.marshal(paymentService, xml);
+        return xml.toByteArray();
+    }
+
+    private void doValidate(final Source source) throws WorldpayValidationException {
+        final Validator validator = validators.get();
+        try {
+            validator.reset();
+            validator.setErrorHandler(ERROR_HANDLER);
+            validator.validate(source);
         } catch (SAXException e) {
             throw new WorldpayValidationException("Validation error against paymentService xsd", e);
         } catch (IOException e) {
             throw new WorldpayValidationException("Unable to parse or validate against paymentService xsd", e);
         }
     }
+
+    private WorldpayXMLValidationMetrics getMetrics(final String requestType) {
+        return validationMetrics.computeIfAbsent(requestType, WorldpayXMLValidationMetrics::new);
+    }
+
+    private ExecutorService getSampledValidationExecutor() {
+        ExecutorService executor = sampledValidationExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = sampledValidationExecutor;
+                if (executor == null) {
+                    executor = createSampledValidationExecutor();
+                    sampledValidationExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Creates the single daemon thread executor validating sampled messages. Its queue is bounded so a slow validation
+     * never holds on to more than {@code worldpay.xml.validation.queue.capacity} messages.
+     */
+    protected ExecutorService createSampledValidationExecutor() {
+        final int queueCapacity = Math.max(1, configurationService.getConfiguration().getInt(WORLDPAY_XML_VALIDATION_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY));
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                new WorldpayThreadFactory("worldpay-xml-validation"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
 }
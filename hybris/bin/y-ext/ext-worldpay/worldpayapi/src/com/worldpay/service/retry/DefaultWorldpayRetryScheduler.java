@@ -0,0 +1,205 @@
+package com.worldpay.service.retry;
+
+import com.worldpay.exception.WorldpayException;
+import com.worldpay.util.WorldpayLatencyHistogram;
+import com.worldpay.util.WorldpayThreadFactory;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@inheritDoc}
+ * <p/>
+ * <p>The retries and deadlines of all the calls are scheduled on a single shared scheduler thread, which only starts the next try: the
+ * calls themselves run wherever the futures returned by the tries complete, usually the pool of the
+ * {@link com.worldpay.service.WorldpayAsyncServiceGateway}.</p>
+ * <p>The metrics are also exposed over JMX, as one line per key.</p>
+ */
+@ManagedResource(description = "Retries of the calls made to Worldpay, per merchant")
+public class DefaultWorldpayRetryScheduler implements WorldpayRetryScheduler, DisposableBean {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayRetryScheduler.class);
+
+    private final Map<String, WorldpayRetryMetrics> metrics = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletableFuture<T> execute(final String key, final WorldpayRetryPolicy policy, final Supplier<CompletableFuture<T>> call) {
+        final WorldpayRetryMetrics callMetrics = metrics.computeIfAbsent(String.valueOf(key), WorldpayRetryMetrics::new);
+        callMetrics.recordCall();
+        final RetryingCall<T> retryingCall = new RetryingCall<>(key, policy, call, callMetrics);
+        if (policy.getDeadlineMillis() > 0) {
+            try {
+                final ScheduledFuture<?> deadlineTask = getScheduler().schedule(retryingCall::exceedDeadline, policy.getDeadlineMillis(), TimeUnit.MILLISECONDS);
+                retryingCall.result.whenComplete((value, throwable) -> deadlineTask.cancel(false));
+            } catch (final RejectedExecutionException e) {
+                retryingCall.fail(new WorldpayException("The Worldpay retry scheduler is shut down", e), false);
+                return retryingCall.result;
+            }
+        }
+        retryingCall.tryCall(1);
+        return retryingCall.result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, WorldpayRetryMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    @ManagedAttribute(description = "Calls, tries, retries, successes, failures, deadlines exceeded and latency percentiles in milliseconds, per merchant")
+    public String[] getRetryMetrics() {
+        return metrics.values().stream()
+                .sorted(Comparator.comparing(WorldpayRetryMetrics::getKey))
+                .map(this::formatRetryMetrics)
+                .toArray(String[]::new);
+    }
+
+    @ManagedOperation(description = "Drops the metrics recorded so far")
+    public void resetMetrics() {
+        metrics.clear();
+    }
+
+    protected String formatRetryMetrics(final WorldpayRetryMetrics retryMetrics) {
+        final WorldpayLatencyHistogram histogram = retryMetrics.getLatencyHistogram();
+        return format("{0} calls={1} tries={2} retries={3} successes={4} failures={5} deadlinesExceeded={6} avg={7,number,0.0} p50={8} p95={9} p99={10} max={11}",
+                retryMetrics.getKey(), retryMetrics.getCalls(), retryMetrics.getTries(), retryMetrics.getRetries(), retryMetrics.getSuccesses(),
+                retryMetrics.getFailures(), retryMetrics.getDeadlinesExceeded(), histogram.getAverageMillis(), histogram.getPercentileMillis(50),
+                histogram.getPercentileMillis(95), histogram.getPercentileMillis(99), histogram.getMaxMillis());
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    protected ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = createScheduler();
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Creates the single thread scheduler of the retries and deadlines. The deadline of a call is cancelled as soon as the call completes,
+     * and is then removed from the queue. The thread is bound to the tenant of the caller, so the tries can use the platform services.
+     */
+    protected ScheduledExecutorService createScheduler() {
+        final ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1, new WorldpayThreadFactory("worldpay-retry"));
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        return scheduledExecutor;
+    }
+
+    protected static Throwable unwrap(final Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private class RetryingCall<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final String key;
+        private final WorldpayRetryPolicy policy;
+        private final Supplier<CompletableFuture<T>> call;
+        private final WorldpayRetryMetrics callMetrics;
+        private final long start = System.nanoTime();
+
+        private RetryingCall(final String key, final WorldpayRetryPolicy policy, final Supplier<CompletableFuture<T>> call,
+                             final WorldpayRetryMetrics callMetrics) {
+            this.key = key;
+            this.policy = policy;
+            this.call = call;
+            this.callMetrics = callMetrics;
+        }
+
+        private void tryCall(final int tryNumber) {
+            if (finished.get()) {
+                return;
+            }
+            callMetrics.recordTry(tryNumber > 1);
+            CompletableFuture<T> attempt;
+            try {
+                attempt = call.get();
+            } catch (final RuntimeException e) {
+                attempt = new CompletableFuture<>();
+                attempt.completeExceptionally(e);
+            }
+            attempt.whenComplete((value, throwable) -> {
+                if (throwable == null) {
+                    succeed(value);
+                } else {
+                    retryOrFail(tryNumber, unwrap(throwable));
+                }
+            });
+        }
+
+        private void retryOrFail(final int tryNumber, final Throwable cause) {
+            if (!(cause instanceof WorldpayException) || tryNumber >= policy.getMaxTries()) {
+                fail(cause, false);
+                return;
+            }
+            final long delay = policy.getDelayMillis(tryNumber);
+            if (policy.getDeadlineMillis() > 0 && getElapsedMillis() + delay >= policy.getDeadlineMillis()) {
+                fail(new WorldpayException(format("The next try of the Worldpay call for [{0}] would exceed its deadline of {1} ms", key, policy.getDeadlineMillis()), cause), true);
+                return;
+            }
+            LOG.debug(format("Worldpay call for [{0}] failed on try {1}, retrying in {2} ms: {3}", key, tryNumber, delay, cause.getMessage()));
+            try {
+                getScheduler().schedule(() -> tryCall(tryNumber + 1), delay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                fail(cause, false);
+            }
+        }
+
+        private void exceedDeadline() {
+            fail(new WorldpayException(format("The Worldpay call for [{0}] did not complete within its deadline of {1} ms", key, policy.getDeadlineMillis())), true);
+        }
+
+        /**
+         * The metrics are recorded before the result is completed, so they include the call once the caller sees it done.
+         */
+        private void succeed(final T value) {
+            if (finished.compareAndSet(false, true)) {
+                callMetrics.recordSuccess(getElapsedMillis());
+                result.complete(value);
+            }
+        }
+
+        private void fail(final Throwable cause, final boolean deadlineExceeded) {
+            if (finished.compareAndSet(false, true)) {
+                callMetrics.recordFailure(getElapsedMillis(), deadlineExceeded);
+                result.completeExceptionally(cause);
+            }
+        }
+
+        private long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+}
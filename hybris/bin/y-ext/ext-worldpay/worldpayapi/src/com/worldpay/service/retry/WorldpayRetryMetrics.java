@@ -0,0 +1,98 @@
+package com.worldpay.service.retry;
+
+import com.worldpay.util.WorldpayLatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency of the calls made through the {@link WorldpayRetryScheduler} with the same key, usually a merchant code.
+ * <p>
+ * The latency of a call is measured from its first try until it succeeds or fails for good, including the delays between tries.
+ * </p>
+ */
+public class WorldpayRetryMetrics {
+
+    private final String key;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder tries = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder deadlinesExceeded = new LongAdder();
+    private final WorldpayLatencyHistogram latencyHistogram;
+
+    public WorldpayRetryMetrics(final String key) {
+        this.key = key;
+        this.latencyHistogram = new WorldpayLatencyHistogram(key);
+    }
+
+    protected void recordCall() {
+        calls.increment();
+    }
+
+    protected void recordTry(final boolean retry) {
+        tries.increment();
+        if (retry) {
+            retries.increment();
+        }
+    }
+
+    protected void recordSuccess(final long latencyMillis) {
+        successes.increment();
+        latencyHistogram.record(latencyMillis);
+    }
+
+    protected void recordFailure(final long latencyMillis, final boolean deadlineExceeded) {
+        failures.increment();
+        if (deadlineExceeded) {
+            deadlinesExceeded.increment();
+        }
+        latencyHistogram.record(latencyMillis);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getTries() {
+        return tries.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getDeadlinesExceeded() {
+        return deadlinesExceeded.sum();
+    }
+
+    public WorldpayLatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    @Override
+    public String toString() {
+        return "WorldpayRetryMetrics{" +
+                "key='" + key + '\'' +
+                ", calls=" + getCalls() +
+                ", tries=" + getTries() +
+                ", retries=" + getRetries() +
+                ", successes=" + getSuccesses() +
+                ", failures=" + getFailures() +
+                ", deadlinesExceeded=" + getDeadlinesExceeded() +
+                ", latency=" + latencyHistogram +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.worldpay.service.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable retry policy of the {@link WorldpayRetryScheduler}: how many times a call is tried, how long to wait between tries and the
+ * deadline of all the tries.
+ * <p>
+ * The delay before the n-th retry is {@code initialDelay * multiplier^(n-1)}, capped at {@code maxDelay}, and varied randomly by up to
+ * {@code jitter} of its value so that calls failing at the same time are not retried at the same time.
+ * </p>
+ */
+public class WorldpayRetryPolicy {
+
+    private final int maxTries;
+    private final long initialDelayMillis;
+    private final double multiplier;
+    private final long maxDelayMillis;
+    private final double jitter;
+    private final long deadlineMillis;
+
+    /**
+     * @param maxTries           the maximum number of tries, including the first one
+     * @param initialDelayMillis the delay before the first retry in milliseconds
+     * @param multiplier         the factor the delay is multiplied by after every retry
+     * @param maxDelayMillis     the maximum delay between two tries in milliseconds
+     * @param jitter             the fraction of the delay it is randomly varied by, between 0 and 1
+     * @param deadlineMillis     the time in milliseconds after the first try by which all the tries must be done, 0 for no deadline
+     */
+    public WorldpayRetryPolicy(final int maxTries, final long initialDelayMillis, final double multiplier, final long maxDelayMillis,
+                               final double jitter, final long deadlineMillis) {
+        this.maxTries = Math.max(1, maxTries);
+        this.initialDelayMillis = Math.max(0L, initialDelayMillis);
+        this.multiplier = Math.max(1d, multiplier);
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+        this.jitter = Math.min(1d, Math.max(0d, jitter));
+        this.deadlineMillis = Math.max(0L, deadlineMillis);
+    }
+
+    /**
+     * @param retry the number of the retry, starting at 1
+     * @return the delay before the retry in milliseconds, with jitter applied
+     */
+    public long getDelayMillis(final int retry) {
+        final double delay = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, Math.max(0, retry - 1)));
+        if (jitter == 0d || delay == 0d) {
+            return (long) delay;
+        }
+        final double variation = delay * jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(0L, Math.round(delay + variation));
+    }
+
+    public int getMaxTries() {
+        return maxTries;
+    }
+
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+}
@@ -0,0 +1,35 @@
+package com.worldpay.service.retry;
+
+import com.worldpay.exception.WorldpayException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Retries asynchronous calls to Worldpay without blocking any thread between the tries.
+ * <p>
+ * A call is tried again, following its {@link WorldpayRetryPolicy}, when its future is completed exceptionally with a
+ * {@link WorldpayException}. Any other failure is not retried. The retries are scheduled on a shared scheduler instead of making the
+ * calling thread sleep, so callers can wait for the result, with or without a timeout, or carry on and be notified when it completes.
+ * </p>
+ */
+public interface WorldpayRetryScheduler {
+
+    /**
+     * Makes the call, retrying it according to the policy
+     *
+     * @param key    the key the tries and latency of the call are counted under, usually the merchant code
+     * @param policy the retry policy
+     * @param call   makes one try of the call
+     * @param <T>    the type of the result
+     * @return future completed with the result of the first successful try, or exceptionally with a {@link WorldpayException} when the
+     * tries are exhausted or the deadline of the policy is exceeded
+     */
+    <T> CompletableFuture<T> execute(final String key, final WorldpayRetryPolicy policy, final Supplier<CompletableFuture<T>> call);
+
+    /**
+     * @return the metrics of the calls made since the start, by key
+     */
+    Map<String, WorldpayRetryMetrics> getMetrics();
+}
@@ -0,0 +1,61 @@
+package com.worldpay.transaction;
+
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.AbstractOrderModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, immutable state of the payment transactions of an order, read once and kept by the {@link WorldpayPaymentStateCache}
+ * while order modifications are processed.
+ */
+public class OrderPaymentState {
+
+    private final Map<String, PaymentTransactionState> byRequestId;
+    private final Map<PK, PaymentTransactionState> byPk;
+
+    protected OrderPaymentState(final Map<String, PaymentTransactionState> byRequestId, final Map<PK, PaymentTransactionState> byPk) {
+        this.byRequestId = byRequestId;
+        this.byPk = byPk;
+    }
+
+    /**
+     * Reads the payment transactions of the order and their entries. When payment transactions share a request id, the last one is
+     * kept, as {@link WorldpayPaymentTransactionService#isPreviousTransactionCompleted} does.
+     *
+     * @param order the order
+     * @return the state of its payment transactions
+     */
+    public static OrderPaymentState of(final AbstractOrderModel order) {
+        final Map<String, PaymentTransactionState> byRequestId = new HashMap<>();
+        final Map<PK, PaymentTransactionState> byPk = new HashMap<>();
+        for (final PaymentTransactionModel paymentTransaction : order.getPaymentTransactions()) {
+            final PaymentTransactionState state = PaymentTransactionState.of(paymentTransaction);
+            if (state.getRequestId() != null) {
+                byRequestId.put(state.getRequestId(), state);
+            }
+            if (state.getPk() != null) {
+                byPk.put(state.getPk(), state);
+            }
+        }
+        return new OrderPaymentState(byRequestId, byPk);
+    }
+
+    /**
+     * @param requestId the worldpay order code of the payment transaction
+     * @return the state of the payment transaction, or {@code null} if the order has none with the request id
+     */
+    public PaymentTransactionState getPaymentTransactionState(final String requestId) {
+        return byRequestId.get(requestId);
+    }
+
+    /**
+     * @param paymentTransaction the payment transaction
+     * @return the state of the payment transaction, or {@code null} if it was not saved when the state was read
+     */
+    public PaymentTransactionState getPaymentTransactionState(final PaymentTransactionModel paymentTransaction) {
+        return paymentTransaction.getPk() == null ? null : byPk.get(paymentTransaction.getPk());
+    }
+}
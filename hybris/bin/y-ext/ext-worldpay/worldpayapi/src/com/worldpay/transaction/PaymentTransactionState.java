@@ -0,0 +1,257 @@
+package com.worldpay.transaction;
+
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.c2l.CurrencyModel;
+import de.hybris.platform.payment.dto.TransactionStatus;
+import de.hybris.platform.payment.enums.PaymentTransactionType;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * Compact, immutable summary of the entries of a {@link PaymentTransactionModel}, built by reading the entries once.
+ * <p>
+ * The entry types are kept as bitsets indexed by the ordinal of the {@link PaymentTransactionType}, with the number of entries,
+ * pending entries and accepted entries of each type, and the exact sum of their amounts. The questions asked about the entries while
+ * orders are fulfilled and order modifications are processed are answered without walking the entries again, comparing status
+ * strings or building intermediate lists.
+ * </p>
+ * <p>
+ * The amounts are summed as longs in a scale starting at the fraction digits of the currency, as used to convert the amounts received
+ * from Worldpay, and widened when an entry has more decimals, so the sums are never rounded. Sums that do not fit in a long are kept
+ * as {@link BigDecimal}.
+ * </p>
+ */
+public class PaymentTransactionState {
+
+    private static final int DEFAULT_DIGITS = 2;
+    private static final PaymentTransactionType[] TYPES = PaymentTransactionType.values();
+    private static final String ACCEPTED = TransactionStatus.ACCEPTED.name();
+
+    static {
+        if (TYPES.length > Long.SIZE) {
+            throw new IllegalStateException("The entry type bitsets hold up to " + Long.SIZE + " payment transaction types, found " + TYPES.length);
+        }
+    }
+
+    private final PK pk;
+    private final String requestId;
+    private final int scale;
+    private final long types;
+    private final long pendingTypes;
+    private final long notPendingTypes;
+    private final long notAcceptedTypes;
+    private final long typesWithoutAmount;
+    private final int[] counts;
+    private final int[] pendingCounts;
+    private final int[] acceptedCounts;
+    private final long[] amounts;
+    private final BigDecimal[] exactAmounts;
+
+    protected PaymentTransactionState(final PK pk, final String requestId, final int scale, final long pendingTypes, final long notPendingTypes,
+                                      final long notAcceptedTypes, final long typesWithoutAmount, final int[] counts, final int[] pendingCounts,
+                                      final int[] acceptedCounts, final long[] amounts, final BigDecimal[] exactAmounts) {
+        this.pk = pk;
+        this.requestId = requestId;
+        this.scale = scale;
+        this.types = pendingTypes | notPendingTypes;
+        this.pendingTypes = pendingTypes;
+        this.notPendingTypes = notPendingTypes;
+        this.notAcceptedTypes = notAcceptedTypes;
+        this.typesWithoutAmount = typesWithoutAmount;
+        this.counts = counts;
+        this.pendingCounts = pendingCounts;
+        this.acceptedCounts = acceptedCounts;
+        this.amounts = amounts;
+        this.exactAmounts = exactAmounts;
+    }
+
+    /**
+     * Reads the entries of the payment transaction.
+     *
+     * @param paymentTransaction the payment transaction
+     * @return the summary of its entries
+     */
+    public static PaymentTransactionState of(final PaymentTransactionModel paymentTransaction) {
+        int scale = getDigits(paymentTransaction.getCurrency());
+        long pendingTypes = 0L;
+        long notPendingTypes = 0L;
+        long notAcceptedTypes = 0L;
+        long typesWithoutAmount = 0L;
+        final int[] counts = new int[TYPES.length];
+        final int[] pendingCounts = new int[TYPES.length];
+        final int[] acceptedCounts = new int[TYPES.length];
+        long[] amounts = new long[TYPES.length];
+        BigDecimal[] exactAmounts = null;
+        for (final PaymentTransactionEntryModel entry : paymentTransaction.getEntries()) {
+            final PaymentTransactionType type = entry.getType();
+            if (type == null) {
+                continue;
+            }
+            final int index = type.ordinal();
+            final long bit = 1L << index;
+            counts[index]++;
+            if (Boolean.TRUE.equals(entry.getPending())) {
+                pendingTypes |= bit;
+                pendingCounts[index]++;
+            } else {
+                notPendingTypes |= bit;
+            }
+            if (ACCEPTED.equals(entry.getTransactionStatus())) {
+                acceptedCounts[index]++;
+            } else {
+                notAcceptedTypes |= bit;
+            }
+            final BigDecimal amount = entry.getAmount();
+            if (amount == null) {
+                typesWithoutAmount |= bit;
+            } else if (exactAmounts != null) {
+                exactAmounts[index] = exactAmounts[index].add(amount);
+            } else {
+                try {
+                    if (amount.scale() > scale) {
+                        final int amountScale = amount.stripTrailingZeros().scale();
+                        if (amountScale > scale) {
+                            amounts = rescale(amounts, amountScale - scale);
+                            scale = amountScale;
+                        }
+                    }
+                    amounts[index] = Math.addExact(amounts[index], amount.movePointRight(scale).longValueExact());
+                } catch (final ArithmeticException e) {
+                    exactAmounts = toExactAmounts(amounts, scale);
+                    exactAmounts[index] = exactAmounts[index].add(amount);
+                }
+            }
+        }
+        return new PaymentTransactionState(paymentTransaction.getPk(), paymentTransaction.getRequestId(), scale, pendingTypes, notPendingTypes,
+                notAcceptedTypes, typesWithoutAmount, counts, pendingCounts, acceptedCounts, amounts, exactAmounts);
+    }
+
+    /**
+     * The fraction digits of the currency ISO code, as used to convert the amounts received from Worldpay, or the digits of the
+     * currency when the ISO code is unknown, or 2 when the transaction has no currency.
+     */
+    protected static int getDigits(final CurrencyModel currency) {
+        if (currency == null) {
+            return DEFAULT_DIGITS;
+        }
+        if (currency.getIsocode() != null) {
+            try {
+                final int fractionDigits = Currency.getInstance(currency.getIsocode()).getDefaultFractionDigits();
+                if (fractionDigits >= 0) {
+                    return fractionDigits;
+                }
+            } catch (final IllegalArgumentException e) {
+                // not an ISO 4217 code, use the digits of the currency
+            }
+        }
+        return currency.getDigits() == null ? DEFAULT_DIGITS : Math.max(0, currency.getDigits());
+    }
+
+    private static long[] rescale(final long[] amounts, final int digits) {
+        final long factor = BigDecimal.ONE.movePointRight(digits).longValueExact();
+        final long[] rescaledAmounts = new long[amounts.length];
+        for (int i = 0; i < amounts.length; i++) {
+            rescaledAmounts[i] = Math.multiplyExact(amounts[i], factor);
+        }
+        return rescaledAmounts;
+    }
+
+    private static BigDecimal[] toExactAmounts(final long[] amounts, final int scale) {
+        final BigDecimal[] exactAmounts = new BigDecimal[amounts.length];
+        for (int i = 0; i < amounts.length; i++) {
+            exactAmounts[i] = amounts[i] == 0L ? BigDecimal.ZERO : BigDecimal.valueOf(amounts[i], scale);
+        }
+        return exactAmounts;
+    }
+
+    public PK getPk() {
+        return pk;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @param type the entry type
+     * @return {@code true} if the payment transaction has an entry of the type, pending or not
+     */
+    public boolean hasEntryOfType(final PaymentTransactionType type) {
+        return (types & bit(type)) != 0;
+    }
+
+    /**
+     * @param type the entry type
+     * @return {@code true} if the payment transaction has a pending entry of the type
+     */
+    public boolean hasPendingEntryOfType(final PaymentTransactionType type) {
+        return (pendingTypes & bit(type)) != 0;
+    }
+
+    /**
+     * @param type the entry type
+     * @return {@code true} if the payment transaction has an entry of the type that is not pending
+     */
+    public boolean hasNotPendingEntryOfType(final PaymentTransactionType type) {
+        return (notPendingTypes & bit(type)) != 0;
+    }
+
+    /**
+     * @param type the entry type
+     * @return {@code true} if all the entries of the type have the {@link TransactionStatus#ACCEPTED} status, also when there is none
+     */
+    public boolean areAllEntriesAcceptedForType(final PaymentTransactionType type) {
+        return (notAcceptedTypes & bit(type)) == 0;
+    }
+
+    /**
+     * @param type the entry type
+     * @return {@code true} if the payment transaction has an entry of the type without amount
+     */
+    public boolean hasEntryWithoutAmountOfType(final PaymentTransactionType type) {
+        return (typesWithoutAmount & bit(type)) != 0;
+    }
+
+    /**
+     * @param type the entry type
+     * @return the number of entries of the type
+     */
+    public int getEntryCount(final PaymentTransactionType type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * @param type the entry type
+     * @return the number of pending entries of the type
+     */
+    public int getPendingEntryCount(final PaymentTransactionType type) {
+        return pendingCounts[type.ordinal()];
+    }
+
+    /**
+     * @param type the entry type
+     * @return the number of entries of the type with the {@link TransactionStatus#ACCEPTED} status
+     */
+    public int getAcceptedEntryCount(final PaymentTransactionType type) {
+        return acceptedCounts[type.ordinal()];
+    }
+
+    /**
+     * @param type the entry type
+     * @return the exact sum of the amounts of the entries of the type, {@link BigDecimal#ZERO} when there is none
+     */
+    public BigDecimal getAmount(final PaymentTransactionType type) {
+        if (exactAmounts != null) {
+            return exactAmounts[type.ordinal()];
+        }
+        final long amount = amounts[type.ordinal()];
+        return amount == 0L ? BigDecimal.ZERO : BigDecimal.valueOf(amount, scale);
+    }
+
+    private static long bit(final PaymentTransactionType type) {
+        return 1L << type.ordinal();
+    }
+}
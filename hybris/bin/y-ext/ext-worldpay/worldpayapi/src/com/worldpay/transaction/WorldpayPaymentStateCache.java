@@ -0,0 +1,56 @@
+package com.worldpay.transaction;
+
+import de.hybris.platform.core.model.order.AbstractOrderModel;
+
+/**
+ * Cache of the {@link OrderPaymentState} of the orders, scoped to a processing run.
+ * <p>
+ * A run is opened by the thread processing a batch of order modifications and closed when the batch is done. While it is open, the
+ * payment state of an order is read once and shared by the checks of all the modifications of the order, until it is invalidated
+ * by a change on any thread. Outside of a run nothing is cached, so callers read the payment transactions themselves.
+ * </p>
+ */
+public interface WorldpayPaymentStateCache {
+
+    /**
+     * Opens a run on the current thread. Runs opened while another one is open on the thread join it, and the cache is cleared when
+     * the outermost run is closed.
+     *
+     * @return the run, to close in a try-with-resources statement
+     */
+    Run openRun();
+
+    /**
+     * Gets the payment state of the order, reading it when it is not cached yet
+     *
+     * @param order the order
+     * @return the payment state of the order, or {@code null} when no run is open on the current thread
+     */
+    OrderPaymentState getOrderPaymentState(final AbstractOrderModel order);
+
+    /**
+     * Removes the payment state of the order from the cache of every run, as its payment transactions or their entries were changed.
+     * It can be called from any thread, with or without an open run.
+     *
+     * @param order the order
+     */
+    void invalidate(final AbstractOrderModel order);
+
+    /**
+     * Removes the payment state of every order from the cache of every run, when the order of a change cannot be found. It can be
+     * called from any thread, with or without an open run.
+     */
+    void invalidateAll();
+
+    /**
+     * A processing run
+     */
+    interface Run extends AutoCloseable {
+
+        /**
+         * Closes the run, without throwing checked exceptions
+         */
+        @Override
+        void close();
+    }
+}
@@ -12,7 +12,9 @@ import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Definition of the methods used to handle the PaymentTransactions
@@ -153,6 +155,16 @@ public interface WorldpayPaymentTransactionService {
      */
     PaymentTransactionModel getPaymentTransactionFromCode(final String worldpayOrderCode);
 
+    /**
+     * Returns the PaymentTransactionModels {@link PaymentTransactionModel} corresponding to the {@param worldpayOrderCodes}, read with a
+     * single query
+     *
+     * @param worldpayOrderCodes The worldpayOrderCodes to look for associated to a PaymentTransactionModel
+     * @return The PaymentTransactionModel associated to each worldpayOrderCode, null when none was found. Codes associated to more than
+     * one PaymentTransactionModel are left out, so callers can report them with {@link #getPaymentTransactionFromCode(String)}
+     */
+    Map<String, PaymentTransactionModel> getPaymentTransactionsFromCodes(final Collection<String> worldpayOrderCodes);
+
     /**
      * Updates each one of the {@param paymentTransactionEntries} to the status {@param transactionStatus}
      *
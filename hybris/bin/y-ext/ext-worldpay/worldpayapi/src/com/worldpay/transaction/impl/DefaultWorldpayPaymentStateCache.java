@@ -0,0 +1,192 @@
+package com.worldpay.transaction.impl;
+
+import com.worldpay.transaction.OrderPaymentState;
+import com.worldpay.transaction.WorldpayPaymentStateCache;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.AbstractOrderModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Default implementation of the {@link WorldpayPaymentStateCache} interface.
+ * <p>
+ * The cache is bound to the thread that opened the run, and is enabled with {@code worldpay.payment.state.cache.enabled}. Runs are
+ * meant to be short, e.g. one batch of order modifications. The payment transactions of an order can still be changed by other
+ * threads while a run is open, so invalidations are shared between threads: each one stamps the stripe of the order's PK with
+ * a new sequence number, and a cached state read before the latest stamp of its stripe is read again. Orders sharing a stripe
+ * are read again needlessly.
+ * </p>
+ * <p>
+ * A change is invalidated twice: when it is prepared, so the thread saving it reads the state again, and once it is committed, by
+ * {@link WorldpayPaymentStateCacheAfterSaveListener}, so a state read by another thread between the two is not kept. Changes saved
+ * on other cluster nodes are not seen until the run is closed.
+ * </p>
+ * <p>
+ * The hits, misses and invalidations of each run are logged when it is closed, and their totals are exported for monitoring.
+ * </p>
+ */
+@ManagedResource(description = "Worldpay order payment state cache")
+public class DefaultWorldpayPaymentStateCache implements WorldpayPaymentStateCache {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayPaymentStateCache.class);
+
+    protected static final String WORLDPAY_PAYMENT_STATE_CACHE_ENABLED = "worldpay.payment.state.cache.enabled";
+
+    private static final int INVALIDATION_STRIPES = 1024;
+    private static final Run NO_RUN = () -> {
+    };
+
+    private final ThreadLocal<RunState> runs = new ThreadLocal<>();
+    private final AtomicLong invalidationSequence = new AtomicLong();
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(INVALIDATION_STRIPES);
+    private final AtomicLong globalInvalidationStamp = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private ConfigurationService configurationService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Run openRun() {
+        RunState runState = runs.get();
+        if (runState == null) {
+            if (!configurationService.getConfiguration().getBoolean(WORLDPAY_PAYMENT_STATE_CACHE_ENABLED, true)) {
+                return NO_RUN;
+            }
+            runState = new RunState();
+            runs.set(runState);
+        }
+        runState.depth++;
+        return this::closeRun;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderPaymentState getOrderPaymentState(final AbstractOrderModel order) {
+        final RunState runState = runs.get();
+        if (runState == null || order.getPk() == null) {
+            return null;
+        }
+        final long invalidationStamp = Math.max(invalidationStamps.get(getStripe(order.getPk())), globalInvalidationStamp.get());
+        final CachedState cachedState = runState.states.get(order.getPk());
+        if (cachedState != null && cachedState.invalidationStamp == invalidationStamp) {
+            runState.hits++;
+            hits.increment();
+            return cachedState.orderPaymentState;
+        }
+        runState.misses++;
+        misses.increment();
+        final OrderPaymentState orderPaymentState = OrderPaymentState.of(order);
+        runState.states.put(order.getPk(), new CachedState(orderPaymentState, invalidationStamp));
+        return orderPaymentState;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidate(final AbstractOrderModel order) {
+        if (order == null || order.getPk() == null) {
+            return;
+        }
+        final long sequence = invalidationSequence.incrementAndGet();
+        invalidationStamps.accumulateAndGet(getStripe(order.getPk()), sequence, Math::max);
+        invalidations.increment();
+        final RunState runState = runs.get();
+        if (runState != null && runState.states.remove(order.getPk()) != null) {
+            runState.invalidations++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void invalidateAll() {
+        globalInvalidationStamp.accumulateAndGet(invalidationSequence.incrementAndGet(), Math::max);
+        invalidations.increment();
+        final RunState runState = runs.get();
+        if (runState != null && !runState.states.isEmpty()) {
+            runState.invalidations += runState.states.size();
+            runState.states.clear();
+        }
+    }
+
+    protected int getStripe(final PK pk) {
+        return (int) (pk.getLongValue() & (INVALIDATION_STRIPES - 1));
+    }
+
+    protected void closeRun() {
+        final RunState runState = runs.get();
+        if (runState == null || --runState.depth > 0) {
+            return;
+        }
+        runs.remove();
+        if (runState.hits + runState.misses > 0) {
+            LOG.info(format("Order payment state cache: [{0}] hits, [{1}] misses, [{2}] invalidations", runState.hits, runState.misses, runState.invalidations));
+        }
+    }
+
+    /**
+     * @return the number of payment states found in the cache since the start
+     */
+    @ManagedAttribute(description = "Number of order payment states found in the cache")
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of payment states read because they were not cached since the start
+     */
+    @ManagedAttribute(description = "Number of order payment states read because they were not cached or were invalidated")
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of changes to the payment transactions of an order seen since the start, on any thread
+     */
+    @ManagedAttribute(description = "Number of changes to the payment transactions of an order invalidating its cached payment state")
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    private static class CachedState {
+        private final OrderPaymentState orderPaymentState;
+        private final long invalidationStamp;
+
+        private CachedState(final OrderPaymentState orderPaymentState, final long invalidationStamp) {
+            this.orderPaymentState = orderPaymentState;
+            this.invalidationStamp = invalidationStamp;
+        }
+    }
+
+    private static class RunState {
+        private final Map<PK, CachedState> states = new HashMap<>();
+        private int depth;
+        private long hits;
+        private long misses;
+        private long invalidations;
+    }
+}
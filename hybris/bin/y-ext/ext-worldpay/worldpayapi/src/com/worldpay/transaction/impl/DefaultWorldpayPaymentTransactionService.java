@@ -8,13 +8,15 @@ import com.worldpay.service.model.PaymentReply;
 import com.worldpay.service.model.RiskScore;
 import com.worldpay.service.notification.OrderNotificationMessage;
 import com.worldpay.transaction.EntryCodeStrategy;
+import com.worldpay.transaction.OrderPaymentState;
+import com.worldpay.transaction.PaymentTransactionState;
+import com.worldpay.transaction.WorldpayPaymentStateCache;
 import com.worldpay.transaction.WorldpayPaymentTransactionService;
 import de.hybris.platform.commerceservices.service.data.CommerceCheckoutParameter;
 import de.hybris.platform.converters.Populator;
 import de.hybris.platform.core.model.order.AbstractOrderModel;
 import de.hybris.platform.core.model.order.CartModel;
 import de.hybris.platform.core.model.order.OrderModel;
-import de.hybris.platform.payment.dto.TransactionStatus;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
 import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
@@ -28,7 +30,10 @@ import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Required;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Currency;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -41,6 +46,11 @@ import static java.text.MessageFormat.format;
 
 /**
  * {@inheritDoc}
+ * <p>
+ * The status, amount and pending checks of the payment transactions are answered from their {@link PaymentTransactionState}, read in
+ * a single pass over the entries. While a run of the {@link WorldpayPaymentStateCache} is open, the cached state is used instead, the
+ * entries are looked up only when it shows there are matching ones, and previous transactions are checked on it.
+ * </p>
  */
 public class DefaultWorldpayPaymentTransactionService implements WorldpayPaymentTransactionService {
 
@@ -54,6 +64,7 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
     private WorldpayPaymentTransactionDao worldpayPaymentTransactionDao;
     private Converter<RiskScore, WorldpayRiskScoreModel> worldpayRiskScoreConverter;
     private Populator<PaymentReply, WorldpayAavResponseModel> worldpayAavResponsePopulator;
+    private WorldpayPaymentStateCache worldpayPaymentStateCache;
 
     /**
      * {@inheritDoc}
@@ -62,14 +73,11 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
     public boolean areAllPaymentTransactionsAcceptedForType(final OrderModel order, final PaymentTransactionType paymentTransactionType) {
         boolean typeFound = false;
         for (final PaymentTransactionModel paymentTransaction : order.getPaymentTransactions()) {
-            for (final PaymentTransactionEntryModel paymentTransactionEntry : paymentTransaction.getEntries()) {
-                if (paymentTransactionEntry.getType().equals(paymentTransactionType)) {
-                    typeFound = true;
-                }
-                if (!TransactionStatus.ACCEPTED.name().equals(paymentTransactionEntry.getTransactionStatus()) && paymentTransactionEntry.getType().equals(paymentTransactionType)) {
-                    return false;
-                }
+            final PaymentTransactionState paymentTransactionState = summarise(paymentTransaction);
+            if (!paymentTransactionState.areAllEntriesAcceptedForType(paymentTransactionType)) {
+                return false;
             }
+            typeFound |= paymentTransactionState.hasEntryOfType(paymentTransactionType);
         }
         return typeFound;
     }
@@ -87,8 +95,7 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
      */
     @Override
     public boolean isPaymentTransactionPending(final PaymentTransactionModel paymentTransaction, final PaymentTransactionType paymentTransactionType) {
-        return paymentTransaction.getEntries().stream()
-                .anyMatch(paymentTransactionEntry -> paymentTransactionType.equals(paymentTransactionEntry.getType()) && paymentTransactionEntry.getPending());
+        return summarise(paymentTransaction).hasPendingEntryOfType(paymentTransactionType);
     }
 
     /**
@@ -97,9 +104,18 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
     @Override
     public List<PaymentTransactionEntryModel> filterPaymentTransactionEntriesOfType(final PaymentTransactionModel paymentTransaction,
                                                                                     final PaymentTransactionType paymentTransactionType) {
-        return paymentTransaction.getEntries().stream()
-                .filter(entry -> entry.getType().equals(paymentTransactionType))
-                .collect(Collectors.toList());
+        final PaymentTransactionState paymentTransactionState = getPaymentTransactionState(paymentTransaction);
+        if (paymentTransactionState != null && !paymentTransactionState.hasEntryOfType(paymentTransactionType)) {
+            return new ArrayList<>();
+        }
+        final List<PaymentTransactionEntryModel> entries = paymentTransactionState == null ?
+                new ArrayList<>() : new ArrayList<>(paymentTransactionState.getEntryCount(paymentTransactionType));
+        for (final PaymentTransactionEntryModel entry : paymentTransaction.getEntries()) {
+            if (paymentTransactionType == entry.getType()) {
+                entries.add(entry);
+            }
+        }
+        return entries;
     }
 
     /**
@@ -108,6 +124,10 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
     @Override
     public List<PaymentTransactionEntryModel> getPendingPaymentTransactionEntriesForType(final PaymentTransactionModel paymentTransactionModel,
                                                                                          final PaymentTransactionType paymentTransactionType) {
+        final PaymentTransactionState paymentTransactionState = getPaymentTransactionState(paymentTransactionModel);
+        if (paymentTransactionState != null && !paymentTransactionState.hasPendingEntryOfType(paymentTransactionType)) {
+            return new ArrayList<>();
+        }
         return filterPaymentTransactionEntriesOfType(paymentTransactionModel, paymentTransactionType).stream()
                 .filter(PaymentTransactionEntryModel::getPending)
                 .collect(Collectors.toList());
@@ -119,6 +139,10 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
     @Override
     public List<PaymentTransactionEntryModel> getNotPendingPaymentTransactionEntriesForType(final PaymentTransactionModel paymentTransactionModel,
                                                                                             final PaymentTransactionType paymentTransactionType) {
+        final PaymentTransactionState paymentTransactionState = getPaymentTransactionState(paymentTransactionModel);
+        if (paymentTransactionState != null && !paymentTransactionState.hasNotPendingEntryOfType(paymentTransactionType)) {
+            return new ArrayList<>();
+        }
         return filterPaymentTransactionEntriesOfType(paymentTransactionModel, paymentTransactionType).stream()
                 .filter(entry -> !entry.getPending())
                 .collect(Collectors.toList());
@@ -133,6 +157,11 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
         if (dependingTransactionType == null) {
             return true;
         }
+        final OrderPaymentState orderPaymentState = worldpayPaymentStateCache.getOrderPaymentState(orderModel);
+        if (orderPaymentState != null) {
+            final PaymentTransactionState paymentTransactionState = orderPaymentState.getPaymentTransactionState(worldpayOrderCode);
+            return paymentTransactionState != null && paymentTransactionState.hasNotPendingEntryOfType(dependingTransactionType);
+        }
         boolean completed = false;
         for (final PaymentTransactionModel paymentTransactionModel : orderModel.getPaymentTransactions()) {
             if (paymentTransactionModel.getRequestId().equals(worldpayOrderCode)) {
@@ -221,6 +250,26 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, PaymentTransactionModel> getPaymentTransactionsFromCodes(final Collection<String> worldpayOrderCodes) {
+        final Map<String, List<PaymentTransactionModel>> paymentTransactionsByCode = worldpayPaymentTransactionDao.findPaymentTransactionsByRequestIds(worldpayOrderCodes).stream()
+                .collect(Collectors.groupingBy(PaymentTransactionModel::getRequestId));
+        final Map<String, PaymentTransactionModel> paymentTransactions = new HashMap<>();
+        for (final String worldpayOrderCode : worldpayOrderCodes) {
+            final List<PaymentTransactionModel> matches = paymentTransactionsByCode.get(worldpayOrderCode);
+            if (matches == null) {
+                LOG.error(format("Error finding paymentTransaction with code [{0}]", worldpayOrderCode));
+                paymentTransactions.put(worldpayOrderCode, null);
+            } else if (matches.size() == 1) {
+                paymentTransactions.put(worldpayOrderCode, matches.get(0));
+            }
+        }
+        return paymentTransactions;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -282,15 +331,12 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
         BigDecimal authorisedAmount = BigDecimal.ZERO;
 
         for (final PaymentTransactionModel paymentTransaction : order.getPaymentTransactions()) {
-            for (final PaymentTransactionEntryModel entry : paymentTransaction.getEntries()) {
-                if (AUTHORIZATION.equals(entry.getType()) && entry.getAmount() == null) {
-                    //To handle HOP response without authorised amount in response
-                    return true;
-                }
-                if (AUTHORIZATION.equals(entry.getType())) {
-                    authorisedAmount = authorisedAmount.add(entry.getAmount());
-                }
+            final PaymentTransactionState paymentTransactionState = summarise(paymentTransaction);
+            if (paymentTransactionState.hasEntryWithoutAmountOfType(AUTHORIZATION)) {
+                //To handle HOP response without authorised amount in response
+                return true;
             }
+            authorisedAmount = authorisedAmount.add(paymentTransactionState.getAmount(AUTHORIZATION));
         }
 
         double tolerance = configurationService.getConfiguration().getDouble("worldpayapi.authoriseamount.validation.tolerance");
@@ -298,6 +344,26 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
         return Math.abs(order.getTotalPrice() - authorisedAmount.doubleValue()) <= tolerance;
     }
 
+    /**
+     * @return the cached state of the payment transaction, or {@code null} when no run of the {@link WorldpayPaymentStateCache} is open
+     */
+    protected PaymentTransactionState getPaymentTransactionState(final PaymentTransactionModel paymentTransaction) {
+        final AbstractOrderModel order = paymentTransaction.getOrder();
+        if (order == null) {
+            return null;
+        }
+        final OrderPaymentState orderPaymentState = worldpayPaymentStateCache.getOrderPaymentState(order);
+        return orderPaymentState == null ? null : orderPaymentState.getPaymentTransactionState(paymentTransaction);
+    }
+
+    /**
+     * @return the cached state of the payment transaction, or the state read from its entries when it is not cached
+     */
+    protected PaymentTransactionState summarise(final PaymentTransactionModel paymentTransaction) {
+        final PaymentTransactionState paymentTransactionState = getPaymentTransactionState(paymentTransaction);
+        return paymentTransactionState == null ? PaymentTransactionState.of(paymentTransaction) : paymentTransactionState;
+    }
+
     protected BigDecimal convertAmount(final Amount amount) {
         final Currency currency = Currency.getInstance(amount.getCurrencyCode());
         return new BigDecimal(amount.getValue()).movePointLeft(currency.getDefaultFractionDigits());
@@ -402,4 +468,9 @@ public class DefaultWorldpayPaymentTransactionService implements WorldpayPayment
     public void setConfigurationService(ConfigurationService configurationService) {
         this.configurationService = configurationService;
     }
+
+    @Required
+    public void setWorldpayPaymentStateCache(final WorldpayPaymentStateCache worldpayPaymentStateCache) {
+        this.worldpayPaymentStateCache = worldpayPaymentStateCache;
+    }
 }
@@ -0,0 +1,115 @@
+package com.worldpay.transaction.impl;
+
+import com.worldpay.transaction.WorldpayPaymentStateCache;
+import de.hybris.platform.core.model.order.AbstractOrderModel;
+import de.hybris.platform.jalo.type.ComposedType;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.tx.AfterSaveEvent;
+import de.hybris.platform.tx.AfterSaveListener;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Invalidates the payment state of an order in the {@link WorldpayPaymentStateCache} once a change to one of its payment transactions
+ * or payment transaction entries is committed.
+ * <p>
+ * {@link com.worldpay.interceptors.WorldpayPaymentStateCacheInvalidationInterceptor} invalidates the state when the change is prepared,
+ * so another thread can still read and cache the state as it was before the commit. Invalidating it again after the commit drops that
+ * state. A removed item cannot be read any more to find its order, so its removal invalidates the payment state of every order.
+ * </p>
+ */
+public class WorldpayPaymentStateCacheAfterSaveListener implements AfterSaveListener {
+
+    private static final Logger LOG = Logger.getLogger(WorldpayPaymentStateCacheAfterSaveListener.class);
+
+    private volatile Set<Integer> paymentTypeCodes;
+
+    private WorldpayPaymentStateCache worldpayPaymentStateCache;
+    private ModelService modelService;
+    private TypeService typeService;
+
+    /**
+     * Invalidates the payment state of the orders of the payment transactions and entries saved or removed
+     *
+     * @param events the committed changes
+     */
+    @Override
+    public void afterSave(final Collection<AfterSaveEvent> events) {
+        final Set<Integer> typeCodes = getPaymentTypeCodes();
+        for (final AfterSaveEvent event : events) {
+            if (typeCodes.contains(event.getPk().getTypeCode())) {
+                invalidate(event);
+            }
+        }
+    }
+
+    protected void invalidate(final AfterSaveEvent event) {
+        if (event.getType() == AfterSaveEvent.REMOVE) {
+            worldpayPaymentStateCache.invalidateAll();
+            return;
+        }
+        try {
+            final AbstractOrderModel order = getOrder(modelService.get(event.getPk()));
+            if (order != null) {
+                worldpayPaymentStateCache.invalidate(order);
+            }
+        } catch (final RuntimeException e) {
+            LOG.debug(format("Could not read the item [{0}], invalidating the payment state of every order", event.getPk()), e);
+            worldpayPaymentStateCache.invalidateAll();
+        }
+    }
+
+    protected AbstractOrderModel getOrder(final Object item) {
+        PaymentTransactionModel paymentTransaction = null;
+        if (item instanceof PaymentTransactionEntryModel) {
+            paymentTransaction = ((PaymentTransactionEntryModel) item).getPaymentTransaction();
+        } else if (item instanceof PaymentTransactionModel) {
+            paymentTransaction = (PaymentTransactionModel) item;
+        }
+        return paymentTransaction == null ? null : paymentTransaction.getOrder();
+    }
+
+    /**
+     * The type codes of the payment transactions, the payment transaction entries and their sub types, resolved once
+     */
+    protected Set<Integer> getPaymentTypeCodes() {
+        Set<Integer> typeCodes = paymentTypeCodes;
+        if (typeCodes == null) {
+            typeCodes = new HashSet<>();
+            for (final String code : Arrays.asList(PaymentTransactionModel._TYPECODE, PaymentTransactionEntryModel._TYPECODE)) {
+                final ComposedType composedType = (ComposedType) modelService.getSource(typeService.getComposedTypeForCode(code));
+                typeCodes.add(composedType.getItemTypeCode());
+                for (final ComposedType subType : composedType.getAllSubTypes()) {
+                    typeCodes.add(subType.getItemTypeCode());
+                }
+            }
+            paymentTypeCodes = typeCodes;
+        }
+        return typeCodes;
+    }
+
+    @Required
+    public void setWorldpayPaymentStateCache(final WorldpayPaymentStateCache worldpayPaymentStateCache) {
+        this.worldpayPaymentStateCache = worldpayPaymentStateCache;
+    }
+
+    @Required
+    public void setModelService(final ModelService modelService) {
+        this.modelService = modelService;
+    }
+
+    @Required
+    public void setTypeService(final TypeService typeService) {
+        this.typeService = typeService;
+    }
+}
@@ -0,0 +1,204 @@
+package com.worldpay.util;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies, counted in fixed buckets.
+ * <p>
+ * The buckets have an inclusive upper bound, with a last bucket for every value above the highest bound. Recording is lock free, so the
+ * histogram can be shared by concurrent threads. Percentiles are estimated as the upper bound of the bucket they fall in.
+ * </p>
+ * <p>
+ * Latencies are recorded in the unit of the histogram, milliseconds by default. Latencies that are mostly below a millisecond are
+ * recorded in a finer unit, so they are not truncated to 0. The getters named after milliseconds convert to milliseconds.
+ * </p>
+ * <p>
+ * A histogram declared as a Spring bean can be registered with an MBeanExporter, which publishes its counts over JMX.
+ * </p>
+ */
+@ManagedResource(description = "Latency histogram")
+public class WorldpayLatencyHistogram {
+
+    /**
+     * Default bucket upper bounds, from 10 milliseconds to 30 minutes
+     */
+    public static final long[] DEFAULT_BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000, 600000, 1800000};
+
+    private final String name;
+    private final long[] bucketUpperBounds;
+    private final TimeUnit unit;
+    private final AtomicLongArray bucketCounts;
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates a histogram with the {@link #DEFAULT_BUCKETS}
+     *
+     * @param name the name the latencies are reported with
+     */
+    public WorldpayLatencyHistogram(final String name) {
+        this(name, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Creates a histogram of latencies in milliseconds with the given bucket upper bounds
+     *
+     * @param name              the name the latencies are reported with
+     * @param bucketUpperBounds the inclusive upper bounds of the buckets in milliseconds, in ascending order
+     */
+    public WorldpayLatencyHistogram(final String name, final long[] bucketUpperBounds) {
+        this(name, bucketUpperBounds, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a histogram of latencies in the given unit with the given bucket upper bounds
+     *
+     * @param name              the name the latencies are reported with
+     * @param bucketUpperBounds the inclusive upper bounds of the buckets in the given unit, in ascending order
+     * @param unit              the unit the latencies are recorded in
+     */
+    public WorldpayLatencyHistogram(final String name, final long[] bucketUpperBounds, final TimeUnit unit) {
+        this.name = name;
+        this.bucketUpperBounds = Arrays.copyOf(bucketUpperBounds, bucketUpperBounds.length);
+        Arrays.sort(this.bucketUpperBounds);
+        this.unit = unit;
+        this.bucketCounts = new AtomicLongArray(bucketUpperBounds.length + 1);
+    }
+
+    /**
+     * Records a latency. Negative values, caused by clock differences between cluster nodes, are recorded as 0.
+     *
+     * @param latency the latency in the unit of the histogram
+     */
+    public void record(final long latency) {
+        final long value = Math.max(0L, latency);
+        final int index = Arrays.binarySearch(bucketUpperBounds, value);
+        bucketCounts.incrementAndGet(index >= 0 ? index : -index - 1);
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    @ManagedAttribute(description = "Name the latencies are reported with")
+    public String getName() {
+        return name;
+    }
+
+    @ManagedAttribute(description = "Unit the latencies are recorded in")
+    public TimeUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return a copy of the bucket upper bounds in the unit of the histogram
+     */
+    @ManagedAttribute(description = "Inclusive upper bounds of the buckets in the unit of the histogram")
+    public long[] getBucketUpperBounds() {
+        return Arrays.copyOf(bucketUpperBounds, bucketUpperBounds.length);
+    }
+
+    /**
+     * @return the number of latencies in each bucket. The last element counts the latencies above the highest bound
+     */
+    @ManagedAttribute(description = "Number of latencies in each bucket, the last one above the highest bound")
+    public long[] getBucketCounts() {
+        final long[] counts = new long[bucketCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = bucketCounts.get(i);
+        }
+        return counts;
+    }
+
+    @ManagedAttribute(description = "Number of latencies recorded")
+    public long getCount() {
+        return Arrays.stream(getBucketCounts()).sum();
+    }
+
+    /**
+     * @return the highest latency recorded, in the unit of the histogram
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the average latency, in the unit of the histogram
+     */
+    public double getAverage() {
+        final long count = getCount();
+        return count == 0 ? 0d : (double) total.sum() / count;
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, capped to the maximum latency recorded, in the unit of the
+     * histogram
+     */
+    public long getPercentile(final double percentile) {
+        final long[] counts = getBucketCounts();
+        final long count = Arrays.stream(counts).sum();
+        if (count == 0) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(count * Math.min(100d, Math.max(0d, percentile)) / 100d));
+        long seen = 0;
+        for (int i = 0; i < bucketUpperBounds.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBounds[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @ManagedAttribute(description = "Highest latency recorded in milliseconds")
+    public long getMaxMillis() {
+        return unit.toMillis(getMax());
+    }
+
+    @ManagedAttribute(description = "Average latency in milliseconds")
+    public double getAverageMillis() {
+        return getAverage() * unit.toNanos(1L) / TimeUnit.MILLISECONDS.toNanos(1L);
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies, truncated to milliseconds
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile estimated by {@link #getPercentile(double)}, in milliseconds
+     */
+    @ManagedOperation(description = "Estimates a percentile of the recorded latencies in milliseconds")
+    public long getPercentileMillis(final double percentile) {
+        return unit.toMillis(getPercentile(percentile));
+    }
+
+    /**
+     * @return the estimated 50th, 95th and 99th percentiles
+     */
+    @ManagedAttribute(description = "Estimated 50th, 95th and 99th percentiles in milliseconds")
+    public String getPercentiles() {
+        return "p50=" + getPercentileMillis(50) + ", p95=" + getPercentileMillis(95) + ", p99=" + getPercentileMillis(99);
+    }
+
+    @Override
+    public String toString() {
+        return "WorldpayLatencyHistogram{" +
+                "name='" + name + '\'' +
+                ", count=" + getCount() +
+                ", averageMillis=" + getAverageMillis() +
+                ", p50=" + getPercentileMillis(50) +
+                ", p95=" + getPercentileMillis(95) +
+                ", p99=" + getPercentileMillis(99) +
+                ", maxMillis=" + getMaxMillis() +
+                '}';
+    }
+}
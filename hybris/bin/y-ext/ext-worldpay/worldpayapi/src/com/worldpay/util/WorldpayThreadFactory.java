@@ -0,0 +1,51 @@
+package com.worldpay.util;
+
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.Tenant;
+import de.hybris.platform.core.TenantAwareThreadFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the daemon threads of the Worldpay executors.
+ * <p>
+ * Threads are bound to a tenant, by default the tenant current when the factory is created, so the tasks they run can use the
+ * platform services. They are named after the executor and numbered, e.g. {@code worldpay-gateway-3}.
+ * </p>
+ */
+public class WorldpayThreadFactory implements ThreadFactory {
+
+    private final ThreadFactory delegate;
+    private final String namePrefix;
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * Creates a factory binding the threads to the current tenant
+     *
+     * @param namePrefix the prefix of the thread names
+     */
+    public WorldpayThreadFactory(final String namePrefix) {
+        this(Registry.getCurrentTenantNoFallback(), namePrefix);
+    }
+
+    /**
+     * Creates a factory binding the threads to the given tenant
+     *
+     * @param tenant     the tenant of the threads, or null when there is no tenant to bind them to
+     * @param namePrefix the prefix of the thread names
+     */
+    public WorldpayThreadFactory(final Tenant tenant, final String namePrefix) {
+        this.delegate = tenant != null ? new TenantAwareThreadFactory(tenant) : Executors.defaultThreadFactory();
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        final Thread thread = delegate.newThread(runnable);
+        thread.setName(namePrefix + "-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
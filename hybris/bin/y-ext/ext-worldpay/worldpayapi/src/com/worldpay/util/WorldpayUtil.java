@@ -1,11 +1,18 @@
 package com.worldpay.util;
 
+import com.worldpay.internal.model.Inquiry;
+import com.worldpay.internal.model.Modify;
+import com.worldpay.internal.model.OrderModification;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.internal.model.Submit;
 import com.worldpay.order.data.WorldpayAdditionalInfoData;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.SerializationUtils;
 import org.joda.time.DateTime;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 
 /**
@@ -13,6 +20,13 @@ import java.util.Date;
  */
 public final class WorldpayUtil {
 
+    /**
+     * Request type reported for a {@link PaymentService} without any content
+     */
+    public static final String UNKNOWN_REQUEST_TYPE = "unknown";
+
+    private static final String REQUEST_TYPE_SEPARATOR = "/";
+
     private WorldpayUtil() {
     }
 
@@ -47,4 +61,49 @@ public final class WorldpayUtil {
     public static Date createDateInPast(final int days) {
         return new DateTime().minusDays(days).toDate();
     }
+
+    /**
+     * Resolves a short, low-cardinality name for the kind of request held by a {@link PaymentService}, made of the
+     * message element and its first operation, e.g. {@code submit/order}, {@code modify/capture} or {@code inquiry/orderInquiry}.
+     * Used to group validation, logging and timing figures by request type.
+     * @param paymentService the paymentService to inspect
+     * @return the request type of the paymentService
+     */
+    public static String getRequestType(final PaymentService paymentService) {
+        final List<Object> messages = paymentService.getSubmitOrModifyOrInquiryOrReplyOrNotifyOrVerify();
+        if (messages.isEmpty() || messages.get(0) == null) {
+            return UNKNOWN_REQUEST_TYPE;
+        }
+        final Object message = messages.get(0);
+        final List<Object> operations = getOperations(message);
+        if (operations.isEmpty() || operations.get(0) == null) {
+            return elementName(message);
+        }
+        final Object operation = operations.get(0);
+        if (operation instanceof OrderModification) {
+            final List<Object> modifications = ((OrderModification) operation).getCancelOrCaptureOrRefundOrRevokeOrAddBackOfficeCodeOrAuthoriseOrIncreaseAuthorisationOrCancelOrRefundOrDefendOrShopperWebformRefundDetailsOrExtendExpiryDateOrCancelRefund();
+            if (!modifications.isEmpty() && modifications.get(0) != null) {
+                return elementName(message) + REQUEST_TYPE_SEPARATOR + elementName(modifications.get(0));
+            }
+        }
+        return elementName(message) + REQUEST_TYPE_SEPARATOR + elementName(operation);
+    }
+
+    private static List<Object> getOperations(final Object message) {
+        if (message instanceof Submit) {
+            return ((Submit) message).getOrderOrOrderBatchOrShopperOrFuturePayAgreementOrMakeFuturePayPaymentOrIdentifyMeRequestOrPaymentTokenCreate();
+        }
+        if (message instanceof Modify) {
+            return ((Modify) message).getOrderModificationOrBatchModificationOrAccountBatchModificationOrFuturePayAgreementModificationOrPaymentTokenUpdateOrPaymentTokenDelete();
+        }
+        if (message instanceof Inquiry) {
+            return ((Inquiry) message).getOrderInquiryOrKlarnaConfirmationInquiryOrBatchInquiryOrAccountBatchInquiryOrRefundableAmountInquiryOrShopperAuthenticationOrPriceInquiryOrBankAccountInquiryOrIdentifyMeInquiryOrPaymentOptionsInquiryOrPaymentTokenInquiryOrShopperTokenRetrieval();
+        }
+        return Collections.emptyList();
+    }
+
+    private static String elementName(final Object element) {
+        final String simpleName = element.getClass().getSimpleName();
+        return Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+    }
 }
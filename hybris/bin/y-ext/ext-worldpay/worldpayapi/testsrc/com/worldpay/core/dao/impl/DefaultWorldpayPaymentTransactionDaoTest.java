@@ -1,7 +1,11 @@
 package com.worldpay.core.dao.impl;
 
+import com.worldpay.core.dao.PaymentTransactionPageProcessor;
 import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.OrderModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.model.ModelService;
 import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
 import de.hybris.platform.servicelayer.search.FlexibleSearchService;
 import de.hybris.platform.servicelayer.search.SearchResult;
@@ -14,20 +18,26 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static com.worldpay.core.dao.impl.DefaultWorldpayPaymentTransactionDao.*;
 import static de.hybris.platform.core.enums.OrderStatus.PAYMENT_PENDING;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
 
 @UnitTest
 @RunWith (MockitoJUnitRunner.class)
 public class DefaultWorldpayPaymentTransactionDaoTest {
 
     public static final String TEST_REQUEST_ID = "testRequestId";
+    private static final int PAGE_SIZE = 2;
+    private static final long FIRST_PK = 1L;
+    private static final long SECOND_PK = 2L;
+    private static final long THIRD_PK = 3L;
     @InjectMocks
     private DefaultWorldpayPaymentTransactionDao testObj = new DefaultWorldpayPaymentTransactionDao();
 
@@ -39,6 +49,16 @@ public class DefaultWorldpayPaymentTransactionDaoTest {
     private SearchResult<Object> searchResultMock;
     @Mock
     private PaymentTransactionModel paymentTransactionModelMock;
+    @Mock
+    private PaymentTransactionModel secondPaymentTransactionModelMock;
+    @Mock
+    private PaymentTransactionModel thirdPaymentTransactionModelMock;
+    @Mock
+    private ModelService modelServiceMock;
+    @Mock
+    private PaymentTransactionPageProcessor pageProcessorMock;
+    @Mock
+    private OrderModel orderModelMock;
 
     @Before
     public void setUp() {
@@ -90,6 +110,31 @@ public class DefaultWorldpayPaymentTransactionDaoTest {
         assertEquals(TEST_REQUEST_ID, queryArgumentCaptorValue.getQueryParameters().get(REQUESTID));
     }
 
+    @Test
+    public void testFindPaymentTransactionsByRequestIds() {
+        final List<Object> searchResult = singletonList(paymentTransactionModelMock);
+        when(searchResultMock.getResult()).thenReturn(searchResult);
+        final List<String> requestIds = Arrays.asList(TEST_REQUEST_ID, "anotherRequestId");
+
+        final List<PaymentTransactionModel> result = testObj.findPaymentTransactionsByRequestIds(requestIds);
+
+        assertSame(paymentTransactionModelMock, result.get(0));
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(QUERY_TRANSACTIONS_BY_REQUESTIDS, queryArgumentCaptorValue.getQuery());
+        assertEquals(requestIds, queryArgumentCaptorValue.getQueryParameters().get(REQUESTIDS));
+    }
+
+    @Test
+    public void testFindPaymentTransactionsByRequestIdsDoesNotQueryWithoutRequestIds() {
+        final List<PaymentTransactionModel> result = testObj.findPaymentTransactionsByRequestIds(Collections.emptyList());
+
+        assertTrue(result.isEmpty());
+        verifyZeroInteractions(flexibleSearchServiceMock);
+    }
+
     @Test
     public void testFindCancellablePendingAPMPaymentTransactions() throws Exception {
         final List<Object> searchResult = singletonList(paymentTransactionModelMock);
@@ -107,4 +152,77 @@ public class DefaultWorldpayPaymentTransactionDaoTest {
         assertEquals(PAYMENT_PENDING.getCode(), queryArgumentCaptorValue.getQueryParameters().get(ORDER_STATUS_PARAMETER));
         assertTrue(queryArgumentCaptorValue.getQueryParameters().containsKey(TIMEOUT_DATE_PARAMETER));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void processPendingPaymentTransactionsShouldReadPagesAfterTheLastPkOfThePreviousPage() {
+        givenPages();
+        when(pageProcessorMock.process(anyListOf(PaymentTransactionModel.class))).thenReturn(true);
+
+        testObj.processPendingPaymentTransactions(5, FIRST_PK - 1, PAGE_SIZE, pageProcessorMock);
+
+        verify(pageProcessorMock).process(Arrays.asList(paymentTransactionModelMock, secondPaymentTransactionModelMock));
+        verify(pageProcessorMock).process(Collections.singletonList(thirdPaymentTransactionModelMock));
+        verify(flexibleSearchServiceMock, times(2)).search(queryArgumentCaptor.capture());
+        final List<FlexibleSearchQuery> queries = queryArgumentCaptor.getAllValues();
+        final FlexibleSearchQuery firstPageQuery = queries.get(queries.size() - 2);
+        final FlexibleSearchQuery secondPageQuery = queries.get(queries.size() - 1);
+        assertEquals(PENDING_PAYMENT_TRANSACTION_QUERY + PAGE_CONDITION, firstPageQuery.getQuery());
+        assertEquals(PAYMENT_PENDING, firstPageQuery.getQueryParameters().get(ORDER_STATUS_PARAMETER));
+        assertEquals(FIRST_PK - 1, firstPageQuery.getQueryParameters().get(LAST_PK_PARAMETER));
+        assertEquals(PAGE_SIZE, firstPageQuery.getCount());
+        assertEquals(SECOND_PK, secondPageQuery.getQueryParameters().get(LAST_PK_PARAMETER));
+        assertEquals(firstPageQuery.getQueryParameters().get(CREATION_TIME_PARAMETER), secondPageQuery.getQueryParameters().get(CREATION_TIME_PARAMETER));
+        verify(modelServiceMock).detach(paymentTransactionModelMock);
+        verify(modelServiceMock).detach(secondPaymentTransactionModelMock);
+        verify(modelServiceMock).detach(thirdPaymentTransactionModelMock);
+    }
+
+    @Test
+    public void processCancellablePendingAPMPaymentTransactionsShouldStopWhenProcessorReturnsFalse() {
+        givenPages();
+        when(pageProcessorMock.process(anyListOf(PaymentTransactionModel.class))).thenReturn(false);
+
+        testObj.processCancellablePendingAPMPaymentTransactions(PAGE_SIZE, pageProcessorMock);
+
+        verify(pageProcessorMock).process(Arrays.asList(paymentTransactionModelMock, secondPaymentTransactionModelMock));
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+        assertEquals(CANCELLABLE_APM_PAYMENT_TRANSACTION_QUERY + PAGE_CONDITION, queryArgumentCaptorValue.getQuery());
+        assertEquals(PAYMENT_PENDING.getCode(), queryArgumentCaptorValue.getQueryParameters().get(ORDER_STATUS_PARAMETER));
+        assertEquals(0L, queryArgumentCaptorValue.getQueryParameters().get(LAST_PK_PARAMETER));
+        verify(modelServiceMock).detach(paymentTransactionModelMock);
+        verify(modelServiceMock).detach(secondPaymentTransactionModelMock);
+    }
+
+    @Test
+    public void processCancellablePendingAPMPaymentTransactionsShouldDetachTheTransactionsAndOrdersOfEachPageWithoutLoadingMore() {
+        givenPages();
+        when(pageProcessorMock.process(anyListOf(PaymentTransactionModel.class))).thenReturn(false);
+        when(paymentTransactionModelMock.getOrder()).thenReturn(orderModelMock);
+
+        testObj.processCancellablePendingAPMPaymentTransactions(PAGE_SIZE, pageProcessorMock);
+
+        verify(modelServiceMock).detach(paymentTransactionModelMock);
+        verify(modelServiceMock).detach(orderModelMock);
+        verify(modelServiceMock).detach(secondPaymentTransactionModelMock);
+        verify(paymentTransactionModelMock, never()).getEntries();
+        verify(paymentTransactionModelMock, never()).getInfo();
+        verifyZeroInteractions(orderModelMock);
+    }
+
+    @Test
+    public void processCancellablePendingAPMPaymentTransactionsShouldNotCallProcessorWhenNothingFound() {
+        when(searchResultMock.getResult()).thenReturn(Collections.emptyList());
+
+        testObj.processCancellablePendingAPMPaymentTransactions(PAGE_SIZE, pageProcessorMock);
+
+        verifyZeroInteractions(pageProcessorMock, modelServiceMock);
+    }
+
+    private void givenPages() {
+        when(paymentTransactionModelMock.getPk()).thenReturn(PK.fromLong(FIRST_PK));
+        when(secondPaymentTransactionModelMock.getPk()).thenReturn(PK.fromLong(SECOND_PK));
+        when(thirdPaymentTransactionModelMock.getPk()).thenReturn(PK.fromLong(THIRD_PK));
+        when(searchResultMock.getResult()).thenReturn(Arrays.asList(paymentTransactionModelMock, secondPaymentTransactionModelMock), Collections.singletonList(thirdPaymentTransactionModelMock));
+    }
+}
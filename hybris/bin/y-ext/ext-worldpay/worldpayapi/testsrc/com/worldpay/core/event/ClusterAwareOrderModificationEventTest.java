@@ -0,0 +1,66 @@
+package com.worldpay.core.event;
+
+import com.worldpay.service.notification.OrderNotificationMessage;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.event.PublishEventContext;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterAwareOrderModificationEventTest {
+
+    private static final int TARGET_NODE_ID = 2;
+    private static final String PAYMENTS_GROUP = "payments";
+
+    @Mock
+    private OrderNotificationMessage orderNotificationMessageMock;
+    @Mock
+    private PublishEventContext publishEventContextMock;
+
+    @Test
+    public void canPublishShouldBeTrueForTheTargetNode() {
+        when(publishEventContextMock.getTargetNodeId()).thenReturn(TARGET_NODE_ID);
+
+        assertTrue(ClusterAwareOrderModificationEvent.forNode(orderNotificationMessageMock, TARGET_NODE_ID).canPublish(publishEventContextMock));
+    }
+
+    @Test
+    public void canPublishShouldBeFalseForAnotherNode() {
+        when(publishEventContextMock.getTargetNodeId()).thenReturn(TARGET_NODE_ID + 1);
+
+        assertFalse(ClusterAwareOrderModificationEvent.forNode(orderNotificationMessageMock, TARGET_NODE_ID).canPublish(publishEventContextMock));
+    }
+
+    @Test
+    public void canPublishShouldBeTrueForTheTargetNodeOfTheTargetGroup() {
+        when(publishEventContextMock.getTargetNodeGroups()).thenReturn(Collections.singleton(PAYMENTS_GROUP));
+        when(publishEventContextMock.getTargetNodeId()).thenReturn(TARGET_NODE_ID);
+
+        assertTrue(ClusterAwareOrderModificationEvent.forNodeGroup(orderNotificationMessageMock, PAYMENTS_GROUP, TARGET_NODE_ID).canPublish(publishEventContextMock));
+    }
+
+    @Test
+    public void canPublishShouldBeFalseForAnotherNodeOfTheTargetGroup() {
+        when(publishEventContextMock.getTargetNodeGroups()).thenReturn(Collections.singleton(PAYMENTS_GROUP));
+        when(publishEventContextMock.getTargetNodeId()).thenReturn(TARGET_NODE_ID + 1);
+
+        assertFalse(ClusterAwareOrderModificationEvent.forNodeGroup(orderNotificationMessageMock, PAYMENTS_GROUP, TARGET_NODE_ID).canPublish(publishEventContextMock));
+    }
+
+    @Test
+    public void canPublishShouldBeFalseForTheNodesOfAnotherGroup() {
+        when(publishEventContextMock.getTargetNodeGroups()).thenReturn(Collections.singleton("storefront"));
+        when(publishEventContextMock.getTargetNodeId()).thenReturn(TARGET_NODE_ID);
+
+        assertFalse(ClusterAwareOrderModificationEvent.forNodeGroup(orderNotificationMessageMock, PAYMENTS_GROUP, TARGET_NODE_ID).canPublish(publishEventContextMock));
+    }
+}
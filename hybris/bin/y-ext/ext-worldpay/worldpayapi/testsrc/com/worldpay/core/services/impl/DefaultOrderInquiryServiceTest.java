@@ -1,9 +1,10 @@
 package com.worldpay.core.services.impl;
 
-import com.evanlennick.retry4j.config.RetryConfig;
 import com.worldpay.core.services.WorldpayPaymentInfoService;
+import com.worldpay.exception.WorldpayCommunicationException;
 import com.worldpay.exception.WorldpayException;
 import com.worldpay.model.WorldpayAPMConfigurationModel;
+import com.worldpay.service.WorldpayAsyncServiceGateway;
 import com.worldpay.service.WorldpayServiceGateway;
 import com.worldpay.service.model.ErrorDetail;
 import com.worldpay.service.model.MerchantInfo;
@@ -11,6 +12,8 @@ import com.worldpay.service.model.PaymentReply;
 import com.worldpay.service.request.KlarnaOrderInquiryServiceRequest;
 import com.worldpay.service.request.OrderInquiryServiceRequest;
 import com.worldpay.service.response.OrderInquiryServiceResponse;
+import com.worldpay.service.retry.DefaultWorldpayRetryScheduler;
+import com.worldpay.service.retry.WorldpayRetryPolicy;
 import de.hybris.bootstrap.annotations.UnitTest;
 import de.hybris.platform.core.model.order.AbstractOrderModel;
 import de.hybris.platform.core.model.order.payment.PaymentInfoModel;
@@ -18,6 +21,7 @@ import de.hybris.platform.core.model.order.payment.WorldpayAPMPaymentInfoModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.model.ModelService;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -26,8 +30,10 @@ import org.junit.runner.RunWith;
 import org.mockito.*;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.util.concurrent.Callable;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
@@ -42,8 +48,13 @@ public class DefaultOrderInquiryServiceTest {
     private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
     private static final String WORLDPAYAPI_INQUIRY_MAX_NUMBER_OF_RETRIES = "worldpayapi.inquiry.max.number.of.retries";
     private static final String WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES = "worldpayapi.inquiry.delay.between.retries";
-    private static final int DELAY_BETWEEN_RETRIES = 1;
+    private static final String WORLDPAYAPI_INQUIRY_RESPONSE_TTL = "worldpayapi.inquiry.response.ttl";
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final int DELAY_BETWEEN_RETRIES = 0;
     private static final int MAX_NUMBER_RETRIES = 3;
+    private static final long MAX_WAIT = 50L;
+    private static final long RESPONSE_TTL = 30000L;
+    private static final long RETRIES_MAX_WAIT = 5000L;
 
 
     @Rule
@@ -82,13 +93,17 @@ public class DefaultOrderInquiryServiceTest {
     private MerchantInfo merchantInfoMock;
     @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private ConfigurationService configurationServiceMock;
-    @Captor
-    private ArgumentCaptor<RetryConfig> retryConfigArgumentCaptor;
     @Mock
     private KlarnaOrderInquiryServiceRequest klarnaOrderInquiryServiceRequestMock;
+    @Mock
+    private WorldpayAsyncServiceGateway worldpayAsyncServiceGatewayMock;
+
+    private DefaultWorldpayRetryScheduler worldpayRetryScheduler = new DefaultWorldpayRetryScheduler();
 
     @Before
     public void setUp() throws Exception {
+        testObj.setWorldpayRetryScheduler(worldpayRetryScheduler);
+        when(merchantInfoMock.getMerchantCode()).thenReturn(MERCHANT_CODE);
         doReturn(orderInquiryServiceRequestMock).when(testObj).createOrderInquiryServiceRequest(merchantInfoMock, WORLDPAY_ORDER_CODE);
         when(orderInquiryServiceResponseMock.getPaymentReply()).thenReturn(paymentReplyMock);
         when(paymentReplyMock.getMethodCode()).thenReturn(PAYMENT_METHOD_CODE);
@@ -105,6 +120,12 @@ public class DefaultOrderInquiryServiceTest {
 
         when(configurationServiceMock.getConfiguration().getInt(WORLDPAYAPI_INQUIRY_MAX_NUMBER_OF_RETRIES, 3)).thenReturn(MAX_NUMBER_RETRIES);
         when(configurationServiceMock.getConfiguration().getInt(WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES, 3)).thenReturn(DELAY_BETWEEN_RETRIES);
+        when(configurationServiceMock.getConfiguration().getLong(WORLDPAYAPI_INQUIRY_RESPONSE_TTL, RESPONSE_TTL)).thenReturn(RESPONSE_TTL);
+    }
+
+    @After
+    public void tearDown() {
+        worldpayRetryScheduler.destroy();
     }
 
     @Test
@@ -160,23 +181,23 @@ public class DefaultOrderInquiryServiceTest {
 
     @Test
     public void shouldInquiryPaymentDetailsOfAnOrderUsingOrderCode() throws Exception {
-        when(worldpayServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(orderInquiryServiceResponseMock);
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(completedFuture(orderInquiryServiceResponseMock));
         when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(null);
 
         final OrderInquiryServiceResponse result = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
 
         verify(testObj).createOrderInquiryServiceRequest(merchantInfoMock, WORLDPAY_ORDER_CODE);
-        verify(worldpayServiceGatewayMock).orderInquiry(orderInquiryServiceRequestMock);
+        verify(worldpayAsyncServiceGatewayMock).orderInquiry(orderInquiryServiceRequestMock);
 
         assertEquals(result, orderInquiryServiceResponseMock);
     }
 
     @Test
     public void shouldRetryInquiryPaymentDetailsWhenThereIsAnError() throws Exception {
-        when(worldpayServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock))
-                .thenReturn(orderInquiryServiceResponseMock)
-                .thenReturn(orderInquiryServiceResponseMock1)
-                .thenReturn(orderInquiryServiceResponseMock2);
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock1))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock2));
 
         when(orderInquiryServiceResponseMock2.getPaymentReply()).thenReturn(paymentReplyMock);
 
@@ -188,32 +209,51 @@ public class DefaultOrderInquiryServiceTest {
         final OrderInquiryServiceResponse result = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
 
         verify(testObj).createOrderInquiryServiceRequest(merchantInfoMock, WORLDPAY_ORDER_CODE);
-        verify(worldpayServiceGatewayMock, times(3)).orderInquiry(orderInquiryServiceRequestMock);
+        verify(worldpayAsyncServiceGatewayMock, times(3)).orderInquiry(orderInquiryServiceRequestMock);
 
         assertEquals(result, orderInquiryServiceResponseMock2);
+        assertThat(worldpayRetryScheduler.getMetrics().get(MERCHANT_CODE).getRetries()).isEqualTo(2);
     }
 
     @Test
-    public void shouldCreateConfigurationUsingConfigurationServiceValues() throws Exception {
-        when(worldpayServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(orderInquiryServiceResponseMock);
-
-        when(orderInquiryServiceResponseMock.getPaymentReply()).thenReturn(paymentReplyMock);
+    public void shouldRetryInquiryPaymentDetailsWhenTheRequestFails() throws Exception {
+        final CompletableFuture<OrderInquiryServiceResponse> failedInquiry = new CompletableFuture<>();
+        failedInquiry.completeExceptionally(new WorldpayCommunicationException(EXCEPTION_MESSAGE));
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock))
+                .thenReturn(failedInquiry)
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock));
         when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(null);
 
-        testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
+        final OrderInquiryServiceResponse result = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
 
-        verify(testObj).executeInquiryCallable(any(Callable.class), retryConfigArgumentCaptor.capture());
-        final RetryConfig value = retryConfigArgumentCaptor.getValue();
-        assertEquals(value.getMaxNumberOfTries().longValue(), MAX_NUMBER_RETRIES);
-        assertEquals(value.getDelayBetweenRetries().getSeconds(), DELAY_BETWEEN_RETRIES);
+        verify(worldpayAsyncServiceGatewayMock, times(2)).orderInquiry(orderInquiryServiceRequestMock);
+        assertEquals(result, orderInquiryServiceResponseMock);
+    }
+
+    @Test
+    public void shouldCreateRetryPolicyUsingConfigurationServiceValues() {
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAYAPI_INQUIRY_DELAY_BETWEEN_RETRIES, 3)).thenReturn(2);
+        when(configurationServiceMock.getConfiguration().getDouble("worldpayapi.inquiry.backoff.multiplier", 2d)).thenReturn(3d);
+        when(configurationServiceMock.getConfiguration().getLong("worldpayapi.inquiry.backoff.max.delay", 10000L)).thenReturn(5000L);
+        when(configurationServiceMock.getConfiguration().getDouble("worldpayapi.inquiry.backoff.jitter", 0.2d)).thenReturn(0.1d);
+        when(configurationServiceMock.getConfiguration().getLong("worldpayapi.inquiry.deadline", 20000L)).thenReturn(15000L);
+
+        final WorldpayRetryPolicy result = testObj.buildRetryPolicy();
+
+        assertEquals(MAX_NUMBER_RETRIES, result.getMaxTries());
+        assertEquals(2000L, result.getInitialDelayMillis());
+        assertEquals(3d, result.getMultiplier(), 0d);
+        assertEquals(5000L, result.getMaxDelayMillis());
+        assertEquals(0.1d, result.getJitter(), 0d);
+        assertEquals(15000L, result.getDeadlineMillis());
     }
 
     @Test(expected = WorldpayException.class)
     public void shouldRetryInquiryPaymentDetailsWhenThereIsAnErrorAndFailWhenRetriesNumberAreExhausted() throws Exception {
-        when(worldpayServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock))
-                .thenReturn(orderInquiryServiceResponseMock)
-                .thenReturn(orderInquiryServiceResponseMock1)
-                .thenReturn(orderInquiryServiceResponseMock2);
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock1))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock2));
 
         final ErrorDetail errorDetail = new ErrorDetail("5", "Some Error Detail");
         when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(errorDetail);
@@ -224,31 +264,104 @@ public class DefaultOrderInquiryServiceTest {
     }
 
     @Test
-    public void shouldInquiryKlarnaOrderStatus() throws WorldpayException {
-        doReturn(klarnaOrderInquiryServiceRequestMock).when(testObj).createKlarnaOrderInquiryServiceRequest(merchantInfoMock, WORLDPAY_ORDER_CODE);
-        when(worldpayServiceGatewayMock.orderInquiry(klarnaOrderInquiryServiceRequestMock)).thenReturn(orderInquiryServiceResponseMock);
-        when(orderInquiryServiceResponseMock.getPaymentReply()).thenReturn(paymentReplyMock);
+    public void inquireOrderAsyncShouldNotWaitForTheResponse() {
+        final CompletableFuture<OrderInquiryServiceResponse> inquiry = new CompletableFuture<>();
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(inquiry);
+
+        final CompletableFuture<OrderInquiryServiceResponse> result = testObj.inquireOrderAsync(merchantInfoMock, WORLDPAY_ORDER_CODE);
+
+        assertThat(result.isDone()).isFalse();
+        inquiry.complete(orderInquiryServiceResponseMock);
+        assertThat(result.join()).isEqualTo(orderInquiryServiceResponseMock);
+    }
+
+    @Test
+    public void inquireOrderWithMaxWaitShouldReturnTheResponseWhenReceivedInTime() throws Exception {
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(completedFuture(orderInquiryServiceResponseMock));
         when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(null);
 
-        final OrderInquiryServiceResponse result = testObj.inquiryKlarnaOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
+        final Optional<OrderInquiryServiceResponse> result = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
 
-        assertThat(result).isEqualTo(orderInquiryServiceResponseMock);
+        assertThat(result.get()).isEqualTo(orderInquiryServiceResponseMock);
     }
 
     @Test
-    public void shouldCreateRetryConfigurationUsingConfigurationServiceValuesForKlarnaInquiry() throws Exception {
-        doReturn(klarnaOrderInquiryServiceRequestMock).when(testObj).createKlarnaOrderInquiryServiceRequest(merchantInfoMock, WORLDPAY_ORDER_CODE);
+    public void inquireOrderWithMaxWaitShouldReturnEmptyAndShareTheInquiryWhileItIsInProgress() throws Exception {
+        final CompletableFuture<OrderInquiryServiceResponse> inquiry = new CompletableFuture<>();
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(inquiry);
 
-        when(worldpayServiceGatewayMock.orderInquiry(klarnaOrderInquiryServiceRequestMock)).thenReturn(orderInquiryServiceResponseMock);
+        final Optional<OrderInquiryServiceResponse> firstResult = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
+        final Optional<OrderInquiryServiceResponse> secondResult = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
+
+        assertThat(firstResult.isPresent()).isFalse();
+        assertThat(secondResult.isPresent()).isFalse();
+        verify(worldpayAsyncServiceGatewayMock).orderInquiry(orderInquiryServiceRequestMock);
+    }
+
+    @Test
+    public void inquireOrderWithMaxWaitShouldReturnTheKeptResponseToALaterCall() throws Exception {
+        final CompletableFuture<OrderInquiryServiceResponse> inquiry = new CompletableFuture<>();
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(inquiry);
         when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(null);
 
-        testObj.inquiryKlarnaOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
+        final Optional<OrderInquiryServiceResponse> firstResult = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
+        inquiry.complete(orderInquiryServiceResponseMock);
+        final Optional<OrderInquiryServiceResponse> laterResult = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
 
-        verify(testObj).executeInquiryCallable(any(Callable.class), retryConfigArgumentCaptor.capture());
+        assertThat(firstResult.isPresent()).isFalse();
+        assertThat(laterResult.get()).isEqualTo(orderInquiryServiceResponseMock);
+        verify(worldpayAsyncServiceGatewayMock).orderInquiry(orderInquiryServiceRequestMock);
+    }
 
-        final RetryConfig value = retryConfigArgumentCaptor.getValue();
-        assertEquals(value.getMaxNumberOfTries().longValue(), MAX_NUMBER_RETRIES);
-        assertEquals(value.getDelayBetweenRetries().getSeconds(), DELAY_BETWEEN_RETRIES);
+    @Test
+    public void inquireOrderWithMaxWaitShouldStartANewInquiryOnceTheResponseExpired() throws Exception {
+        when(configurationServiceMock.getConfiguration().getLong(WORLDPAYAPI_INQUIRY_RESPONSE_TTL, RESPONSE_TTL)).thenReturn(0L);
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(completedFuture(orderInquiryServiceResponseMock));
+        when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(null);
+
+        testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
+        testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
+
+        verify(worldpayAsyncServiceGatewayMock, times(2)).orderInquiry(orderInquiryServiceRequestMock);
+    }
+
+    @Test
+    public void inquireOrderWithMaxWaitShouldStartANewInquiryAfterAFailure() throws Exception {
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock1), completedFuture(orderInquiryServiceResponseMock1),
+                        completedFuture(orderInquiryServiceResponseMock1), completedFuture(orderInquiryServiceResponseMock));
+        when(orderInquiryServiceResponseMock1.getErrorDetail()).thenReturn(new ErrorDetail("5", "Some Error Detail"));
+        when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(null);
+
+        try {
+            testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, RETRIES_MAX_WAIT);
+        } catch (final WorldpayException e) {
+            // The first inquiry fails after all its retries
+        }
+        final Optional<OrderInquiryServiceResponse> result = testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, RETRIES_MAX_WAIT);
+
+        assertThat(result.get()).isEqualTo(orderInquiryServiceResponseMock);
+    }
+
+    @Test(expected = WorldpayException.class)
+    public void inquireOrderWithMaxWaitShouldThrowExceptionWhenTheInquiryFails() throws Exception {
+        final ErrorDetail errorDetail = new ErrorDetail("5", "Some Error Detail");
+        when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(errorDetail);
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(orderInquiryServiceRequestMock)).thenReturn(completedFuture(orderInquiryServiceResponseMock));
+
+        testObj.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, MAX_WAIT);
+    }
+
+    @Test
+    public void shouldInquiryKlarnaOrderStatus() throws WorldpayException {
+        doReturn(klarnaOrderInquiryServiceRequestMock).when(testObj).createKlarnaOrderInquiryServiceRequest(merchantInfoMock, WORLDPAY_ORDER_CODE);
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(klarnaOrderInquiryServiceRequestMock)).thenReturn(completedFuture(orderInquiryServiceResponseMock));
+        when(orderInquiryServiceResponseMock.getPaymentReply()).thenReturn(paymentReplyMock);
+        when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(null);
+
+        final OrderInquiryServiceResponse result = testObj.inquiryKlarnaOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
+
+        assertThat(result).isEqualTo(orderInquiryServiceResponseMock);
     }
 
     @Test(expected = WorldpayException.class)
@@ -258,12 +371,15 @@ public class DefaultOrderInquiryServiceTest {
         final ErrorDetail errorDetail = new ErrorDetail("5", "Some Error Detail");
         when(orderInquiryServiceResponseMock.getErrorDetail()).thenReturn(errorDetail);
 
-        when(worldpayServiceGatewayMock.orderInquiry(klarnaOrderInquiryServiceRequestMock))
-                .thenReturn(orderInquiryServiceResponseMock)
-                .thenReturn(orderInquiryServiceResponseMock)
-                .thenReturn(orderInquiryServiceResponseMock);
+        when(worldpayAsyncServiceGatewayMock.orderInquiry(klarnaOrderInquiryServiceRequestMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock))
+                .thenReturn(completedFuture(orderInquiryServiceResponseMock));
 
-        testObj.inquiryKlarnaOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
+        try {
+            testObj.inquiryKlarnaOrder(merchantInfoMock, WORLDPAY_ORDER_CODE);
+        } finally {
+            verify(worldpayAsyncServiceGatewayMock, times(3)).orderInquiry(klarnaOrderInquiryServiceRequestMock);
+        }
     }
-
 }
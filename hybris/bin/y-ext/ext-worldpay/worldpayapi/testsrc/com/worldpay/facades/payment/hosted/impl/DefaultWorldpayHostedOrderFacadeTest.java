@@ -20,6 +20,7 @@ import com.worldpay.service.response.OrderInquiryServiceResponse;
 import de.hybris.bootstrap.annotations.UnitTest;
 import de.hybris.platform.core.model.order.CartModel;
 import de.hybris.platform.order.CartService;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.session.SessionService;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,6 +31,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.math.BigDecimal;
+import java.util.Optional;
 
 import static com.worldpay.facades.payment.hosted.impl.DefaultWorldpayHostedOrderFacade.WORLDPAY_MERCHANT_CODE;
 import static org.junit.Assert.*;
@@ -45,6 +47,7 @@ public class DefaultWorldpayHostedOrderFacadeTest {
     private static final ImmutableMap<String, String> WORLDPAY_RESPONSE = ImmutableMap.of("responseKey", "responseValue");
     private static final String WORLDPAY_ORDER_CODE = "orderCode";
     private static final String PAYMENT_TYPE_CODE = "paymentTypeCode";
+    private static final long HOP_MAX_WAIT = 2000L;
 
     @InjectMocks
     private DefaultWorldpayHostedOrderFacade testObj;
@@ -81,12 +84,15 @@ public class DefaultWorldpayHostedOrderFacadeTest {
     private WorldpayAPMConfigurationModel worldpayAPMConfigurationModel;
     @Mock
     private OrderInquiryServiceResponse orderInquiryServiceResponseMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
 
     @Before
     public void setUp() throws WorldpayConfigurationException {
         when(sessionServiceMock.getAttribute(WORLDPAY_MERCHANT_CODE)).thenReturn(MERCHANT_CODE);
         when(cartServiceMock.getSessionCart()).thenReturn(cartModelMock);
         when(orderInquiryServiceResponseMock.getPaymentReply()).thenReturn(paymentReplyMock);
+        when(configurationServiceMock.getConfiguration().getLong("worldpayapi.inquiry.hop.max.wait", HOP_MAX_WAIT)).thenReturn(HOP_MAX_WAIT);
     }
 
     @Test
@@ -126,7 +132,7 @@ public class DefaultWorldpayHostedOrderFacadeTest {
     public void shouldInquiryPaymentStatusRetrievingOrderCodeFromCartForAPM() throws WorldpayException {
         when(worldpayMerchantInfoServiceMock.getCurrentSiteMerchant()).thenReturn(merchantInfoMock);
         when(cartModelMock.getWorldpayOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
-        when(orderInquiryServiceMock.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE)).thenReturn(orderInquiryServiceResponseMock);
+        when(orderInquiryServiceMock.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, HOP_MAX_WAIT)).thenReturn(Optional.of(orderInquiryServiceResponseMock));
         when(paymentReplyMock.getAuthStatus()).thenReturn(AuthorisedStatus.AUTHORISED);
         when(paymentReplyMock.getAmount().getValue()).thenReturn("12345");
         when(paymentReplyMock.getAmount().getExponent()).thenReturn("2");
@@ -144,7 +150,7 @@ public class DefaultWorldpayHostedOrderFacadeTest {
     public void shouldInquiryPaymentStatusRetrievingOrderCodeFromCartForNotAPM() throws WorldpayException {
         when(worldpayMerchantInfoServiceMock.getCurrentSiteMerchant()).thenReturn(merchantInfoMock);
         when(cartModelMock.getWorldpayOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
-        when(orderInquiryServiceMock.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE)).thenReturn(orderInquiryServiceResponseMock);
+        when(orderInquiryServiceMock.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, HOP_MAX_WAIT)).thenReturn(Optional.of(orderInquiryServiceResponseMock));
         when(paymentReplyMock.getAuthStatus()).thenReturn(AuthorisedStatus.AUTHORISED);
         when(paymentReplyMock.getAmount().getValue()).thenReturn("12345");
         when(paymentReplyMock.getAmount().getExponent()).thenReturn("2");
@@ -157,4 +163,18 @@ public class DefaultWorldpayHostedOrderFacadeTest {
         assertEquals(BigDecimal.valueOf(123.45D), result.getPaymentAmount());
         assertFalse(result.getPending());
     }
+
+    @Test
+    public void shouldReturnPendingResultWhenInquiryIsStillInProgress() throws WorldpayException {
+        when(worldpayMerchantInfoServiceMock.getCurrentSiteMerchant()).thenReturn(merchantInfoMock);
+        when(cartModelMock.getWorldpayOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(orderInquiryServiceMock.inquireOrder(merchantInfoMock, WORLDPAY_ORDER_CODE, HOP_MAX_WAIT)).thenReturn(Optional.empty());
+
+        final RedirectAuthoriseResult result = testObj.inquiryPaymentStatus();
+
+        assertEquals(WORLDPAY_ORDER_CODE, result.getOrderCode());
+        assertNull(result.getPaymentStatus());
+        assertTrue(result.getPending());
+        assertTrue(result.getInquiryInProgress());
+    }
 }
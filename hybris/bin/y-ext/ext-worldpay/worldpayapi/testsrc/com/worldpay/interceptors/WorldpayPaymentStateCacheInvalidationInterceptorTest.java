@@ -0,0 +1,67 @@
+package com.worldpay.interceptors;
+
+import com.worldpay.transaction.WorldpayPaymentStateCache;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.model.order.OrderModel;
+import de.hybris.platform.core.model.product.ProductModel;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.interceptor.InterceptorContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class WorldpayPaymentStateCacheInvalidationInterceptorTest {
+
+    @InjectMocks
+    private WorldpayPaymentStateCacheInvalidationInterceptor testObj;
+
+    @Mock
+    private WorldpayPaymentStateCache worldpayPaymentStateCacheMock;
+    @Mock
+    private InterceptorContext interceptorContextMock;
+    @Mock
+    private PaymentTransactionModel paymentTransactionModelMock;
+    @Mock
+    private PaymentTransactionEntryModel paymentTransactionEntryModelMock;
+    @Mock
+    private OrderModel orderModelMock;
+    @Mock
+    private ProductModel productModelMock;
+
+    @Before
+    public void setUp() {
+        when(paymentTransactionEntryModelMock.getPaymentTransaction()).thenReturn(paymentTransactionModelMock);
+        when(paymentTransactionModelMock.getOrder()).thenReturn(orderModelMock);
+    }
+
+    @Test
+    public void onPrepareShouldInvalidateTheOrderOfThePaymentTransactionEntry() {
+        testObj.onPrepare(paymentTransactionEntryModelMock, interceptorContextMock);
+
+        verify(worldpayPaymentStateCacheMock).invalidate(orderModelMock);
+    }
+
+    @Test
+    public void onRemoveShouldInvalidateTheOrderOfThePaymentTransaction() {
+        testObj.onRemove(paymentTransactionModelMock, interceptorContextMock);
+
+        verify(worldpayPaymentStateCacheMock).invalidate(orderModelMock);
+    }
+
+    @Test
+    public void onPrepareShouldIgnoreOtherItems() {
+        testObj.onPrepare(productModelMock, interceptorContextMock);
+
+        verifyZeroInteractions(worldpayPaymentStateCacheMock);
+    }
+}
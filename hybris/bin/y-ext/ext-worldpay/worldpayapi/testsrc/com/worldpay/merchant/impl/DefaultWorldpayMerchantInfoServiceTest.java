@@ -2,6 +2,7 @@ package com.worldpay.merchant.impl;
 
 import com.worldpay.config.merchant.WorldpayMerchantConfigData;
 import com.worldpay.exception.WorldpayConfigurationException;
+import com.worldpay.merchant.WorldpayMerchantRegistry;
 import com.worldpay.service.model.MerchantInfo;
 import com.worldpay.strategy.WorldpayMerchantStrategy;
 import de.hybris.bootstrap.annotations.UnitTest;
@@ -15,8 +16,6 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.util.Arrays;
-
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.any;
@@ -43,6 +42,8 @@ public class DefaultWorldpayMerchantInfoServiceTest {
     @Mock
     private WorldpayMerchantStrategy worldpayMerchantStrategyMock;
     @Mock
+    private WorldpayMerchantRegistry worldpayMerchantRegistryMock;
+    @Mock
     private WorldpayMerchantConfigData merchantConfigDataMock;
     @Mock
     private MerchantInfo merchantInfo;
@@ -51,7 +52,8 @@ public class DefaultWorldpayMerchantInfoServiceTest {
     public void setUp() {
         when(worldpayMerchantConfigDataMock.getCode()).thenReturn(KNOWN_MERCHANT_CODE);
         when(anotherWorldpayMerchantConfigDataMock.getCode()).thenReturn(MERCHANT_CODE);
-        testObj.setConfiguredMerchants(Arrays.asList(worldpayMerchantConfigDataMock, anotherWorldpayMerchantConfigDataMock));
+        when(worldpayMerchantRegistryMock.getMerchantByCode(KNOWN_MERCHANT_CODE)).thenReturn(worldpayMerchantConfigDataMock);
+        when(worldpayMerchantRegistryMock.getMerchantByCode(MERCHANT_CODE)).thenReturn(anotherWorldpayMerchantConfigDataMock);
     }
 
     @Test
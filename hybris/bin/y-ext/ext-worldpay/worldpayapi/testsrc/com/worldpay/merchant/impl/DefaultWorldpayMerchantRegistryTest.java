@@ -0,0 +1,116 @@
+package com.worldpay.merchant.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.worldpay.config.merchant.WorldpayMerchantConfigData;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.acceleratorservices.config.SiteConfigService;
+import de.hybris.platform.basecommerce.model.site.BaseSiteModel;
+import de.hybris.platform.site.BaseSiteService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Map;
+
+import static com.worldpay.merchant.impl.DefaultWorldpayMerchantRegistry.WORLDPAY_MERCHANT_CONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayMerchantRegistryTest {
+
+    private static final String WEB = "web";
+    private static final String SITE_UID = "electronics";
+    private static final String OTHER_SITE_UID = "apparel-uk";
+    private static final String MERCHANT_CONFIG_BEAN_NAME = "worldpayMerchantConfiguration";
+    private static final String OTHER_MERCHANT_CONFIG_BEAN_NAME = "apparelWorldpayMerchantConfiguration";
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final String OTHER_MERCHANT_CODE = "otherMerchantCode";
+
+    @InjectMocks
+    private DefaultWorldpayMerchantRegistry testObj;
+
+    @Mock
+    private SiteConfigService siteConfigServiceMock;
+    @Mock
+    private BaseSiteService baseSiteServiceMock;
+    @Mock
+    private ApplicationContext applicationContextMock;
+    @Mock
+    private BaseSiteModel siteMock, otherSiteMock;
+    @Mock
+    private WorldpayMerchantConfigData merchantMock, otherMerchantMock;
+
+    @Before
+    public void setUp() {
+        testObj.setApplicationContext(applicationContextMock);
+        when(merchantMock.getCode()).thenReturn(MERCHANT_CODE);
+        when(otherMerchantMock.getCode()).thenReturn(OTHER_MERCHANT_CODE);
+        when(applicationContextMock.getBeansOfType(WorldpayMerchantConfigData.class))
+                .thenReturn(ImmutableMap.of("merchant", merchantMock, "otherMerchant", otherMerchantMock));
+        when(siteMock.getUid()).thenReturn(SITE_UID);
+        when(otherSiteMock.getUid()).thenReturn(OTHER_SITE_UID);
+        when(baseSiteServiceMock.getCurrentBaseSite()).thenReturn(siteMock);
+        when(siteConfigServiceMock.getProperty(WORLDPAY_MERCHANT_CONFIG)).thenReturn(MERCHANT_CONFIG_BEAN_NAME);
+        when(applicationContextMock.getBean(MERCHANT_CONFIG_BEAN_NAME)).thenReturn(ImmutableMap.of(WEB, merchantMock));
+        when(applicationContextMock.getBean(OTHER_MERCHANT_CONFIG_BEAN_NAME)).thenReturn(ImmutableMap.of(WEB, otherMerchantMock));
+    }
+
+    @Test
+    public void getMerchantByCodeShouldReturnTheMerchantWithTheCode() {
+        assertSame(merchantMock, testObj.getMerchantByCode(MERCHANT_CODE));
+        assertSame(otherMerchantMock, testObj.getMerchantByCode(OTHER_MERCHANT_CODE));
+        assertNull(testObj.getMerchantByCode("unknownMerchantCode"));
+        assertNull(testObj.getMerchantByCode(null));
+    }
+
+    @Test
+    public void getMerchantByCodeShouldIndexTheMerchantsOnlyOnce() {
+        testObj.getMerchantByCode(MERCHANT_CODE);
+        testObj.getMerchantByCode(OTHER_MERCHANT_CODE);
+
+        verify(applicationContextMock).getBeansOfType(WorldpayMerchantConfigData.class);
+    }
+
+    @Test
+    public void getCurrentSiteMerchantsShouldResolveTheMerchantsOfASiteOnlyOnce() {
+        final Map<String, WorldpayMerchantConfigData> result = testObj.getCurrentSiteMerchants();
+        testObj.getCurrentSiteMerchants();
+
+        assertSame(merchantMock, result.get(WEB));
+        verify(siteConfigServiceMock).getProperty(WORLDPAY_MERCHANT_CONFIG);
+        verify(applicationContextMock).getBean(MERCHANT_CONFIG_BEAN_NAME);
+    }
+
+    @Test
+    public void getCurrentSiteMerchantsShouldResolveTheMerchantsOfEverySite() {
+        testObj.getCurrentSiteMerchants();
+        when(baseSiteServiceMock.getCurrentBaseSite()).thenReturn(otherSiteMock);
+        when(siteConfigServiceMock.getProperty(WORLDPAY_MERCHANT_CONFIG)).thenReturn(OTHER_MERCHANT_CONFIG_BEAN_NAME);
+
+        final Map<String, WorldpayMerchantConfigData> result = testObj.getCurrentSiteMerchants();
+
+        assertSame(otherMerchantMock, result.get(WEB));
+        assertEquals(2, testObj.getSiteMerchants().size());
+    }
+
+    @Test
+    public void invalidateShouldRebuildTheIndex() {
+        testObj.getCurrentSiteMerchants();
+        when(applicationContextMock.getBeansOfType(WorldpayMerchantConfigData.class)).thenReturn(ImmutableMap.of("merchant", merchantMock));
+
+        testObj.invalidate();
+
+        assertNull(testObj.getMerchantByCode(OTHER_MERCHANT_CODE));
+        assertEquals(0, testObj.getSiteMerchants().size());
+        testObj.getCurrentSiteMerchants();
+        verify(applicationContextMock, times(2)).getBean(MERCHANT_CONFIG_BEAN_NAME);
+    }
+}
@@ -0,0 +1,165 @@
+package com.worldpay.service;
+
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.exception.WorldpayException;
+import com.worldpay.service.request.CaptureServiceRequest;
+import com.worldpay.service.request.RefundServiceRequest;
+import com.worldpay.service.response.CaptureServiceResponse;
+import com.worldpay.service.response.RefundServiceResponse;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Answers.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayAsyncServiceGatewayTest {
+
+    private static final String WORLDPAY_GATEWAY_ASYNC_TIMEOUT = "worldpay.gateway.async.timeout";
+    private static final String WORLDPAY_GATEWAY_ASYNC_BULKHEAD = "worldpay.gateway.async.bulkhead";
+
+    private DefaultWorldpayAsyncServiceGateway testObj;
+
+    @Mock
+    private WorldpayServiceGateway worldpayServiceGatewayMock;
+    @Mock(answer = RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private CaptureServiceRequest captureServiceRequestMock;
+    @Mock
+    private CaptureServiceResponse captureServiceResponseMock;
+    @Mock
+    private RefundServiceRequest refundServiceRequestMock;
+    @Mock
+    private RefundServiceResponse refundServiceResponseMock;
+
+    private final CountDownLatch releaseLatch = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        testObj = new DefaultWorldpayAsyncServiceGateway() {
+            @Override
+            protected ThreadFactory createThreadFactory(final String namePrefix) {
+                return Executors.defaultThreadFactory();
+            }
+        };
+        testObj.setWorldpayServiceGateway(worldpayServiceGatewayMock);
+        testObj.setConfigurationService(configurationServiceMock);
+
+        when(configurationServiceMock.getConfiguration().getInt("worldpay.gateway.async.threads", 20)).thenReturn(4);
+        when(configurationServiceMock.getConfiguration().getInt("worldpay.gateway.async.queue.capacity", 200)).thenReturn(10);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_TIMEOUT, 20000)).thenReturn(20000);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_TIMEOUT + ".capture", 20000)).thenReturn(20000);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_TIMEOUT + ".refund", 20000)).thenReturn(20000);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_BULKHEAD, 20)).thenReturn(20);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_BULKHEAD + ".capture", 20)).thenReturn(20);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_BULKHEAD + ".refund", 20)).thenReturn(20);
+    }
+
+    @After
+    public void tearDown() {
+        releaseLatch.countDown();
+        testObj.destroy();
+    }
+
+    @Test
+    public void captureShouldCompleteWithResponseOfGateway() throws Exception {
+        when(worldpayServiceGatewayMock.capture(captureServiceRequestMock)).thenReturn(captureServiceResponseMock);
+
+        final CaptureServiceResponse result = testObj.capture(captureServiceRequestMock).get(5, TimeUnit.SECONDS);
+
+        assertSame(captureServiceResponseMock, result);
+    }
+
+    @Test
+    public void captureShouldRemoveTheTimeoutOfTheRequestOnceItCompletes() throws Exception {
+        when(worldpayServiceGatewayMock.capture(captureServiceRequestMock)).thenReturn(captureServiceResponseMock);
+
+        testObj.capture(captureServiceRequestMock).get(5, TimeUnit.SECONDS);
+
+        final ScheduledThreadPoolExecutor timeoutScheduler = (ScheduledThreadPoolExecutor) testObj.getTimeoutScheduler();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!timeoutScheduler.getQueue().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(timeoutScheduler.getQueue().isEmpty());
+    }
+
+    @Test
+    public void captureShouldCompleteExceptionallyWithExceptionOfGateway() throws Exception {
+        final WorldpayException exception = new WorldpayException("error");
+        when(worldpayServiceGatewayMock.capture(captureServiceRequestMock)).thenThrow(exception);
+
+        final Throwable cause = getFailureCause(testObj.capture(captureServiceRequestMock));
+
+        assertSame(exception, cause);
+    }
+
+    @Test
+    public void captureShouldBeRejectedWhenBulkheadOfOperationIsFull() throws Exception {
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_BULKHEAD + ".capture", 20)).thenReturn(1);
+        when(worldpayServiceGatewayMock.capture(captureServiceRequestMock)).then(invocation -> {
+            releaseLatch.await();
+            return captureServiceResponseMock;
+        });
+        when(worldpayServiceGatewayMock.refund(refundServiceRequestMock)).thenReturn(refundServiceResponseMock);
+
+        final CompletableFuture<CaptureServiceResponse> first = testObj.capture(captureServiceRequestMock);
+        final Throwable cause = getFailureCause(testObj.capture(captureServiceRequestMock));
+
+        assertTrue(cause instanceof WorldpayCommunicationException);
+        assertSame(refundServiceResponseMock, testObj.refund(refundServiceRequestMock).get(5, TimeUnit.SECONDS));
+        releaseLatch.countDown();
+        assertSame(captureServiceResponseMock, first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void captureShouldTimeOutAndReleaseBulkheadWhenRequestCompletes() throws Exception {
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_TIMEOUT + ".capture", 20000)).thenReturn(50);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_GATEWAY_ASYNC_BULKHEAD + ".capture", 20)).thenReturn(1);
+        final CountDownLatch finishedLatch = new CountDownLatch(1);
+        when(worldpayServiceGatewayMock.capture(captureServiceRequestMock)).then(invocation -> {
+            releaseLatch.await();
+            finishedLatch.countDown();
+            return captureServiceResponseMock;
+        });
+
+        final Throwable cause = getFailureCause(testObj.capture(captureServiceRequestMock));
+
+        assertTrue(cause instanceof WorldpayCommunicationException);
+        assertEquals(0, testObj.getBulkhead("capture").availablePermits());
+        releaseLatch.countDown();
+        finishedLatch.await(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+        assertEquals(1, testObj.getBulkhead("capture").availablePermits());
+    }
+
+    private Throwable getFailureCause(final CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Future should have completed exceptionally");
+            return null;
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
+    }
+}
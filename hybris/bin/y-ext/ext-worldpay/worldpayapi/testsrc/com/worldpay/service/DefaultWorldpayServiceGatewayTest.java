@@ -0,0 +1,159 @@
+package com.worldpay.service;
+
+import com.worldpay.exception.WorldpayConfigurationException;
+import com.worldpay.exception.WorldpayException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.http.ServiceReply;
+import com.worldpay.service.http.WorldpayConnector;
+import com.worldpay.service.marshalling.PaymentServiceXMLLogger;
+import com.worldpay.service.metrics.WorldpayGatewayMetricsRegistry;
+import com.worldpay.service.metrics.WorldpayGatewayTimer;
+import com.worldpay.service.model.Amount;
+import com.worldpay.service.model.MerchantInfo;
+import com.worldpay.service.request.AbstractServiceRequest;
+import com.worldpay.service.request.CaptureServiceRequest;
+import com.worldpay.service.request.ServiceRequest;
+import com.worldpay.service.request.transform.ServiceRequestTransformer;
+import com.worldpay.service.request.validation.WorldpayXMLValidator;
+import com.worldpay.service.response.CaptureServiceResponse;
+import com.worldpay.service.response.transform.ServiceResponseTransformer;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayServiceGatewayTest {
+
+    private static final String CAPTURE_REQUEST = "com.worldpay.service.request.CaptureServiceRequest";
+    private static final List<String> REQUEST_CLASS_NAMES = Arrays.asList(
+            "com.worldpay.service.request.DirectAuthoriseServiceRequest",
+            "com.worldpay.service.request.CreateTokenServiceRequest",
+            "com.worldpay.service.request.UpdateTokenServiceRequest",
+            "com.worldpay.service.request.DeleteTokenServiceRequest",
+            "com.worldpay.service.request.RedirectAuthoriseServiceRequest",
+            CAPTURE_REQUEST,
+            "com.worldpay.service.request.CancelServiceRequest",
+            "com.worldpay.service.request.RefundServiceRequest",
+            "com.worldpay.service.request.AddBackOfficeCodeServiceRequest",
+            "com.worldpay.service.request.AuthorisationCodeServiceRequest",
+            "com.worldpay.service.request.OrderInquiryServiceRequest");
+
+    @InjectMocks
+    private DefaultWorldpayServiceGateway testObj;
+
+    @Mock
+    private WorldpayConnector worldpayConnectorMock;
+    @Mock
+    private WorldpayXMLValidator woldpayXmlValidatorMock;
+    @Mock
+    private PaymentServiceXMLLogger paymentServiceXMLLoggerMock;
+    @Mock
+    private WorldpayGatewayMetricsRegistry worldpayGatewayMetricsRegistryMock;
+    @Mock
+    private WorldpayGatewayTimer worldpayGatewayTimerMock;
+    @Mock
+    private ServiceRequestTransformer requestTransformerMock;
+    @Mock
+    private ServiceResponseTransformer responseTransformerMock;
+    @Mock
+    private MerchantInfo merchantInfoMock;
+    @Mock
+    private Amount amountMock;
+    @Mock
+    private PaymentService paymentServiceMock;
+    @Mock
+    private ServiceReply serviceReplyMock;
+    @Mock
+    private CaptureServiceResponse captureServiceResponseMock;
+    @Mock
+    private AbstractServiceRequest unmappedServiceRequestMock;
+
+    private Map<String, ServiceRequestTransformer> requestTransformerStrategyMap = new HashMap<>();
+    private Map<String, ServiceResponseTransformer> responseTransformerStrategyMap = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        REQUEST_CLASS_NAMES.forEach(requestClassName -> {
+            requestTransformerStrategyMap.put(requestClassName, requestTransformerMock);
+            responseTransformerStrategyMap.put(requestClassName, responseTransformerMock);
+        });
+        testObj.setRequestTransformerStrategyMap(requestTransformerStrategyMap);
+        testObj.setResponseTransformerStrategyMap(responseTransformerStrategyMap);
+        when(worldpayGatewayMetricsRegistryMock.startTimer(any(ServiceRequest.class))).thenReturn(worldpayGatewayTimerMock);
+    }
+
+    @Test
+    public void captureShouldUseTheTransformersBoundToTheRequestClass() throws WorldpayException {
+        final CaptureServiceRequest request = CaptureServiceRequest.createCaptureRequest(merchantInfoMock, "orderCode", amountMock, null);
+        when(requestTransformerMock.transform(request)).thenReturn(paymentServiceMock);
+        when(worldpayConnectorMock.send(paymentServiceMock, merchantInfoMock, null)).thenReturn(serviceReplyMock);
+        when(responseTransformerMock.transform(serviceReplyMock)).thenReturn(captureServiceResponseMock);
+        testObj.afterPropertiesSet();
+
+        assertSame(captureServiceResponseMock, testObj.capture(request));
+
+        verify(worldpayGatewayTimerMock).recordResponse(captureServiceResponseMock);
+        verify(worldpayGatewayTimerMock).stop();
+    }
+
+    @Test
+    public void serviceShouldFailFastForARequestClassWithoutTransformers() throws WorldpayException {
+        testObj.afterPropertiesSet();
+
+        try {
+            testObj.orderInquiry(unmappedServiceRequestMock);
+            fail();
+        } catch (final WorldpayConfigurationException e) {
+            verifyZeroInteractions(requestTransformerMock, worldpayConnectorMock);
+            verify(worldpayGatewayTimerMock).recordFailure(e);
+        }
+    }
+
+    @Test
+    public void afterPropertiesSetShouldFailWhenARequestClassHasNoResponseTransformer() {
+        responseTransformerStrategyMap.remove(CAPTURE_REQUEST);
+
+        assertConfigurationFails("[" + CAPTURE_REQUEST + "] has no response transformer");
+    }
+
+    @Test
+    public void afterPropertiesSetShouldFailWhenARequestClassCanNotBeLoaded() {
+        requestTransformerStrategyMap.put("com.worldpay.service.request.UnknownServiceRequest", requestTransformerMock);
+        responseTransformerStrategyMap.put("com.worldpay.service.request.UnknownServiceRequest", responseTransformerMock);
+
+        assertConfigurationFails("[com.worldpay.service.request.UnknownServiceRequest] can not be loaded");
+    }
+
+    @Test
+    public void afterPropertiesSetShouldFailWhenAGatewayMethodHasNoTransformers() {
+        requestTransformerStrategyMap.remove(CAPTURE_REQUEST);
+        responseTransformerStrategyMap.remove(CAPTURE_REQUEST);
+
+        assertConfigurationFails("no request accepted by [capture] has transformers");
+    }
+
+    private void assertConfigurationFails(final String error) {
+        try {
+            testObj.afterPropertiesSet();
+            fail();
+        } catch (final WorldpayConfigurationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(error));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.worldpay.service.http;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.worldpay.service.http.WorldpayCircuitBreaker.NOT_PERMITTED;
+import static com.worldpay.service.http.WorldpayCircuitBreaker.State.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@UnitTest
+public class WorldpayCircuitBreakerTest {
+
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final String REQUEST_TYPE = "submit/order";
+
+    private final List<WorldpayCircuitBreaker.StateTransition> transitions = new ArrayList<>();
+    private long now = 1000L;
+
+    private WorldpayCircuitBreaker testObj = new WorldpayCircuitBreaker(MERCHANT_CODE, REQUEST_TYPE, 50, 4, 4, 100, 2, transitions::add) {
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    @Test
+    public void shouldStayClosedUntilTheMinimumNumberOfCallsIsReached() {
+        fail(3);
+
+        assertEquals(CLOSED, testObj.getState());
+        assertEquals(-1, testObj.getFailureRate());
+        assertNotEquals(NOT_PERMITTED, testObj.tryAcquirePermission());
+    }
+
+    @Test
+    public void shouldOpenWhenTheFailureRateReachesTheThreshold() {
+        succeed(2);
+        fail(2);
+
+        assertEquals(OPEN, testObj.getState());
+        assertEquals(NOT_PERMITTED, testObj.tryAcquirePermission());
+        assertEquals(1, testObj.getNotPermittedCalls());
+        assertEquals(1, transitions.size());
+        assertEquals(CLOSED, transitions.get(0).getFromState());
+        assertEquals(OPEN, transitions.get(0).getToState());
+    }
+
+    @Test
+    public void shouldOpenWhenTheMinimumNumberOfCallsIsReachedWithASuccess() {
+        fail(3);
+        succeed(1);
+
+        assertEquals(OPEN, testObj.getState());
+    }
+
+    @Test
+    public void shouldComputeTheFailureRateOnTheLatestCallsOnly() {
+        fail(1);
+        succeed(4);
+        fail(1);
+
+        assertEquals(CLOSED, testObj.getState());
+        assertEquals(25, testObj.getFailureRate());
+    }
+
+    @Test
+    public void shouldLetTrialCallsThroughOnceTheOpenDurationElapsed() {
+        fail(4);
+        now += 100;
+
+        final long firstTrial = testObj.tryAcquirePermission();
+        final long secondTrial = testObj.tryAcquirePermission();
+
+        assertEquals(HALF_OPEN, testObj.getState());
+        assertNotEquals(NOT_PERMITTED, firstTrial);
+        assertNotEquals(NOT_PERMITTED, secondTrial);
+        assertEquals(NOT_PERMITTED, testObj.tryAcquirePermission());
+    }
+
+    @Test
+    public void shouldCloseWhenAllTrialCallsSucceed() {
+        fail(4);
+        now += 100;
+
+        succeed(2);
+
+        assertEquals(CLOSED, testObj.getState());
+        assertEquals(3, transitions.size());
+    }
+
+    @Test
+    public void shouldOpenAgainWhenATrialCallFails() {
+        fail(4);
+        now += 100;
+
+        succeed(1);
+        fail(1);
+
+        assertEquals(OPEN, testObj.getState());
+        assertEquals(NOT_PERMITTED, testObj.tryAcquirePermission());
+    }
+
+    @Test
+    public void shouldIgnoreTheOutcomeOfCallsPermittedBeforeTheStateChanged() {
+        final long permittedWhileClosed = testObj.tryAcquirePermission();
+        fail(4);
+        now += 100;
+        testObj.tryAcquirePermission();
+
+        testObj.onFailure(permittedWhileClosed);
+
+        assertEquals(HALF_OPEN, testObj.getState());
+    }
+
+    @Test
+    public void onIgnoredShouldReleaseTheTrialPermission() {
+        fail(4);
+        now += 100;
+        final long firstTrial = testObj.tryAcquirePermission();
+        testObj.tryAcquirePermission();
+
+        testObj.onIgnored(firstTrial);
+
+        assertNotEquals(NOT_PERMITTED, testObj.tryAcquirePermission());
+    }
+
+    @Test
+    public void resetShouldCloseTheBreaker() {
+        fail(4);
+
+        testObj.reset();
+
+        assertEquals(CLOSED, testObj.getState());
+        assertNotEquals(NOT_PERMITTED, testObj.tryAcquirePermission());
+    }
+
+    private void succeed(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            testObj.onSuccess(testObj.tryAcquirePermission());
+        }
+    }
+
+    private void fail(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            testObj.onFailure(testObj.tryAcquirePermission());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.worldpay.service.http.impl;
+
+import com.worldpay.service.http.WorldpayBulkhead;
+import com.worldpay.service.http.WorldpayCircuitBreaker;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static com.worldpay.service.http.impl.DefaultWorldpayResilienceRegistry.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayResilienceRegistryTest {
+
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final String ORDER_REQUEST_TYPE = "submit/order";
+    private static final String INQUIRY_REQUEST_TYPE = "inquiry/orderInquiry";
+
+    @InjectMocks
+    private DefaultWorldpayResilienceRegistry testObj;
+
+    @Mock
+    private ConfigurationService configurationServiceMock;
+
+    private Configuration configuration = new BaseConfiguration();
+
+    @Before
+    public void setUp() {
+        when(configurationServiceMock.getConfiguration()).thenReturn(configuration);
+        configuration.setProperty(WORLDPAY_CONNECTOR_BULKHEAD, 10);
+        configuration.setProperty(WORLDPAY_CONNECTOR_BULKHEAD + "." + INQUIRY_REQUEST_TYPE, 2);
+        configuration.setProperty(WORLDPAY_CONNECTOR_CIRCUITBREAKER_WINDOW, 2);
+        configuration.setProperty(WORLDPAY_CONNECTOR_CIRCUITBREAKER_MINIMUM_CALLS, 2);
+        configuration.setProperty(WORLDPAY_CONNECTOR_CIRCUITBREAKER_TRANSITIONS_KEPT, 1);
+    }
+
+    @Test
+    public void getBulkheadShouldUseTheSettingOfTheRequestTypeWhenThereIsOne() {
+        final WorldpayBulkhead orderBulkhead = testObj.getBulkhead(MERCHANT_CODE, ORDER_REQUEST_TYPE);
+        final WorldpayBulkhead inquiryBulkhead = testObj.getBulkhead(MERCHANT_CODE, INQUIRY_REQUEST_TYPE);
+
+        assertEquals(10, orderBulkhead.getMaxConcurrentCalls());
+        assertEquals(2, inquiryBulkhead.getMaxConcurrentCalls());
+        assertSame(orderBulkhead, testObj.getBulkhead(MERCHANT_CODE, ORDER_REQUEST_TYPE));
+    }
+
+    @Test
+    public void getCircuitBreakerShouldKeepOneBreakerPerMerchantAndRequestType() {
+        final WorldpayCircuitBreaker orderCircuitBreaker = testObj.getCircuitBreaker(MERCHANT_CODE, ORDER_REQUEST_TYPE);
+
+        assertSame(orderCircuitBreaker, testObj.getCircuitBreaker(MERCHANT_CODE, ORDER_REQUEST_TYPE));
+        assertNotSame(orderCircuitBreaker, testObj.getCircuitBreaker(MERCHANT_CODE, INQUIRY_REQUEST_TYPE));
+        assertNotSame(orderCircuitBreaker, testObj.getCircuitBreaker("otherMerchantCode", ORDER_REQUEST_TYPE));
+        assertEquals(3, testObj.getCircuitBreakers().size());
+    }
+
+    @Test
+    public void shouldKeepTheLatestStateTransitions() {
+        final WorldpayCircuitBreaker circuitBreaker = testObj.getCircuitBreaker(MERCHANT_CODE, ORDER_REQUEST_TYPE);
+        circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onFailure(circuitBreaker.tryAcquirePermission());
+
+        testObj.reset();
+
+        assertEquals(1, testObj.getStateTransitions().size());
+        assertEquals(WorldpayCircuitBreaker.State.CLOSED, testObj.getStateTransitions().get(0).getToState());
+        assertEquals(WorldpayCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(testObj.getCircuitBreakers().isEmpty());
+    }
+
+    @Test
+    public void resetShouldKeepTheBulkheadsWithCallsInFlight() {
+        final WorldpayBulkhead busyBulkhead = testObj.getBulkhead(MERCHANT_CODE, ORDER_REQUEST_TYPE);
+        testObj.getBulkhead(MERCHANT_CODE, INQUIRY_REQUEST_TYPE);
+        busyBulkhead.tryAcquire();
+
+        testObj.reset();
+
+        assertEquals(1, testObj.getBulkheads().size());
+        assertSame(busyBulkhead, testObj.getBulkhead(MERCHANT_CODE, ORDER_REQUEST_TYPE));
+    }
+}
@@ -0,0 +1,114 @@
+package com.worldpay.service.http.impl;
+
+import com.worldpay.exception.WorldpayBulkheadFullException;
+import com.worldpay.exception.WorldpayCircuitOpenException;
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.http.ServiceReply;
+import com.worldpay.service.http.WorldpayBulkhead;
+import com.worldpay.service.http.WorldpayCircuitBreaker;
+import com.worldpay.service.http.WorldpayConnector;
+import com.worldpay.service.http.WorldpayResilienceRegistry;
+import com.worldpay.service.model.MerchantInfo;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static com.worldpay.service.http.WorldpayCircuitBreaker.State.OPEN;
+import static com.worldpay.util.WorldpayUtil.UNKNOWN_REQUEST_TYPE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class ResilientWorldpayConnectorTest {
+
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final String COOKIE = "cookie";
+
+    @InjectMocks
+    private ResilientWorldpayConnector testObj;
+
+    @Mock
+    private WorldpayConnector worldpayConnectorMock;
+    @Mock
+    private WorldpayResilienceRegistry worldpayResilienceRegistryMock;
+    @Mock
+    private PaymentService paymentServiceMock;
+    @Mock
+    private MerchantInfo merchantInfoMock;
+    @Mock
+    private ServiceReply serviceReplyMock;
+
+    private WorldpayCircuitBreaker circuitBreaker = new WorldpayCircuitBreaker(MERCHANT_CODE, UNKNOWN_REQUEST_TYPE, 50, 2, 2, 60000, 1, null);
+    private WorldpayBulkhead bulkhead = new WorldpayBulkhead(MERCHANT_CODE, UNKNOWN_REQUEST_TYPE, 1, 0);
+
+    @Before
+    public void setUp() {
+        when(merchantInfoMock.getMerchantCode()).thenReturn(MERCHANT_CODE);
+        when(worldpayResilienceRegistryMock.getCircuitBreaker(MERCHANT_CODE, UNKNOWN_REQUEST_TYPE)).thenReturn(circuitBreaker);
+        when(worldpayResilienceRegistryMock.getBulkhead(MERCHANT_CODE, UNKNOWN_REQUEST_TYPE)).thenReturn(bulkhead);
+    }
+
+    @Test
+    public void sendShouldReturnTheReplyOfTheConnectorAndReleaseTheBulkhead() throws Exception {
+        when(worldpayConnectorMock.send(paymentServiceMock, merchantInfoMock, COOKIE)).thenReturn(serviceReplyMock);
+
+        final ServiceReply result = testObj.send(paymentServiceMock, merchantInfoMock, COOKIE);
+
+        assertSame(serviceReplyMock, result);
+        assertEquals(1, circuitBreaker.getSuccessfulCalls());
+        assertEquals(0, bulkhead.getCallsInFlight());
+    }
+
+    @Test
+    public void sendShouldOpenTheCircuitBreakerWhenWorldpayCannotBeReached() throws Exception {
+        when(worldpayConnectorMock.send(paymentServiceMock, merchantInfoMock, COOKIE)).thenThrow(new WorldpayCommunicationException("timeout"));
+
+        sendAndExpect(WorldpayCommunicationException.class);
+        sendAndExpect(WorldpayCommunicationException.class);
+        sendAndExpect(WorldpayCircuitOpenException.class);
+
+        assertEquals(OPEN, circuitBreaker.getState());
+        verify(worldpayConnectorMock, times(2)).send(paymentServiceMock, merchantInfoMock, COOKIE);
+        assertEquals(0, bulkhead.getCallsInFlight());
+    }
+
+    @Test
+    public void sendShouldNotCountTransformationErrorsAsFailures() throws Exception {
+        when(worldpayConnectorMock.send(paymentServiceMock, merchantInfoMock, COOKIE)).thenThrow(new WorldpayModelTransformationException("invalid"));
+
+        sendAndExpect(WorldpayModelTransformationException.class);
+        sendAndExpect(WorldpayModelTransformationException.class);
+
+        assertEquals(0, circuitBreaker.getFailedCalls());
+        assertEquals(WorldpayCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void sendShouldFailFastWhenTheBulkheadIsFull() throws Exception {
+        bulkhead.tryAcquire();
+
+        sendAndExpect(WorldpayBulkheadFullException.class);
+
+        verify(worldpayConnectorMock, never()).send(any(PaymentService.class), any(MerchantInfo.class), anyString());
+        assertEquals(1, bulkhead.getRejectedCalls());
+    }
+
+    private void sendAndExpect(final Class<? extends Exception> exceptionClass) {
+        try {
+            testObj.send(paymentServiceMock, merchantInfoMock, COOKIE);
+            fail("Expected " + exceptionClass.getSimpleName());
+        } catch (final Exception e) {
+            assertEquals(exceptionClass, e.getClass());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.worldpay.service.marshalling.impl;
+
+import com.worldpay.internal.model.Inquiry;
+import com.worldpay.internal.model.OrderInquiry;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.util.WorldpayBenchmark;
+import com.worldpay.util.WorldpayBenchmark.Measurement;
+import com.worldpay.util.WorldpayConstants;
+import de.hybris.bootstrap.annotations.PerformanceTest;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static java.text.MessageFormat.format;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the throughput and allocation rate of unmarshalling a PaymentService with a JAXB unmarshaller and SAX parser
+ * created per message against the thread confined instances reused by {@link DefaultPaymentServiceMarshaller}. Only the
+ * allocation rate is asserted on, the throughput is logged.
+ */
+@PerformanceTest
+public class DefaultPaymentServiceMarshallerPerformanceTest {
+
+    private static final Logger LOG = Logger.getLogger(DefaultPaymentServiceMarshallerPerformanceTest.class);
+
+    private static final int WARM_UP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 20000;
+
+    private DefaultPaymentServiceMarshaller testObj = new DefaultPaymentServiceMarshaller();
+    private byte[] xml;
+
+    @Before
+    public void setUp() throws Exception {
+        final OrderInquiry orderInquiry = new OrderInquiry();
+        orderInquiry.setOrderCode("orderCode");
+        final Inquiry inquiry = new Inquiry();
+        inquiry.getOrderInquiryOrKlarnaConfirmationInquiryOrBatchInquiryOrAccountBatchInquiryOrRefundableAmountInquiryOrShopperAuthenticationOrPriceInquiryOrBankAccountInquiryOrIdentifyMeInquiryOrPaymentOptionsInquiryOrPaymentTokenInquiryOrShopperTokenRetrieval().add(orderInquiry);
+        final PaymentService paymentService = new PaymentService();
+        paymentService.setMerchantCode("MERCHANT1ECOM");
+        paymentService.setVersion("1.4");
+        paymentService.getSubmitOrModifyOrInquiryOrReplyOrNotifyOrVerify().add(inquiry);
+        xml = testObj.marshal(paymentService).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void reusedUnmarshallerShouldAllocateLessThanUnmarshallerPerMessage() throws Exception {
+        final Measurement perMessage = measure(this::unmarshalWithNewInstances);
+        final Measurement reused = measure(() -> testObj.unmarshal(new ByteArrayInputStream(xml)));
+
+        LOG.info(format("Unmarshaller per message: {0}", perMessage));
+        LOG.info(format("Reused unmarshaller:      {0}", reused));
+
+        assertTrue(reused.getBytesPerOperation() < perMessage.getBytesPerOperation());
+    }
+
+    private void unmarshalWithNewInstances() throws Exception {
+        final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+        saxParserFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, false);
+        final Unmarshaller unmarshaller = WorldpayConstants.JAXB_CONTEXT.createUnmarshaller();
+        unmarshaller.unmarshal(new SAXSource(saxParserFactory.newSAXParser().getXMLReader(), new InputSource(new ByteArrayInputStream(xml))));
+    }
+
+    private Measurement measure(final WorldpayBenchmark.Operation operation) throws Exception {
+        return WorldpayBenchmark.measure(WARM_UP_ITERATIONS, MEASURED_ITERATIONS, operation);
+    }
+}
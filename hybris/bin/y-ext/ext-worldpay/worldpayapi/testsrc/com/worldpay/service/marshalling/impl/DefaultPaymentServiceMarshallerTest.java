@@ -0,0 +1,110 @@
+package com.worldpay.service.marshalling.impl;
+
+import com.worldpay.internal.model.Inquiry;
+import com.worldpay.internal.model.OrderInquiry;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.util.WorldpayConstants;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@UnitTest
+public class DefaultPaymentServiceMarshallerTest {
+
+    private static final String MERCHANT_CODE = "MERCHANT1ECOM";
+    private static final String ORDER_CODE = "orderCode";
+    private static final String VERSION = "1.4";
+
+    private DefaultPaymentServiceMarshaller testObj = new DefaultPaymentServiceMarshaller();
+    private PaymentService paymentService;
+
+    @Before
+    public void setUp() {
+        final OrderInquiry orderInquiry = new OrderInquiry();
+        orderInquiry.setOrderCode(ORDER_CODE);
+        final Inquiry inquiry = new Inquiry();
+        inquiry.getOrderInquiryOrKlarnaConfirmationInquiryOrBatchInquiryOrAccountBatchInquiryOrRefundableAmountInquiryOrShopperAuthenticationOrPriceInquiryOrBankAccountInquiryOrIdentifyMeInquiryOrPaymentOptionsInquiryOrPaymentTokenInquiryOrShopperTokenRetrieval().add(orderInquiry);
+        paymentService = new PaymentService();
+        paymentService.setMerchantCode(MERCHANT_CODE);
+        paymentService.setVersion(VERSION);
+        paymentService.getSubmitOrModifyOrInquiryOrReplyOrNotifyOrVerify().add(inquiry);
+    }
+
+    @Test
+    public void getUnmarshallerShouldReuseInstanceOnSameThread() throws Exception {
+        final Unmarshaller first = testObj.getUnmarshaller();
+
+        assertSame(first, testObj.getUnmarshaller());
+    }
+
+    @Test
+    public void getFragmentMarshallerShouldNotShareInstanceBetweenThreads() throws Exception {
+        final Marshaller marshaller = testObj.getFragmentMarshaller();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final Marshaller otherThreadMarshaller = executorService.submit(() -> testObj.getFragmentMarshaller()).get();
+
+            assertNotSame(marshaller, otherThreadMarshaller);
+            assertSame(marshaller, testObj.getFragmentMarshaller());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void marshalAsRequestShouldWriteHeaderFollowedByFragment() throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        testObj.marshalAsRequest(paymentService, outputStream);
+
+        final String result = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(result.startsWith(WorldpayConstants.XML_HEADER));
+        assertEquals(result.indexOf("<?xml"), result.lastIndexOf("<?xml"));
+        assertTrue(result.contains(ORDER_CODE));
+    }
+
+    @Test
+    public void marshalFragmentShouldWriteThePaymentServiceWithoutDeclaration() throws Exception {
+        final StringWriter writer = new StringWriter();
+        final TransformerHandler contentHandler = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+        contentHandler.getTransformer().setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        contentHandler.setResult(new StreamResult(writer));
+
+        testObj.marshalFragment(paymentService, contentHandler);
+
+        final String result = writer.toString();
+        assertFalse(result.contains("<?xml"));
+        assertTrue(result.contains(ORDER_CODE));
+    }
+
+    @Test
+    public void unmarshalShouldReadWhatMarshalWrites() throws Exception {
+        final String xml = testObj.marshal(paymentService);
+
+        final PaymentService first = testObj.unmarshal(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        final PaymentService second = testObj.unmarshal(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(MERCHANT_CODE, first.getMerchantCode());
+        assertEquals(MERCHANT_CODE, second.getMerchantCode());
+    }
+}
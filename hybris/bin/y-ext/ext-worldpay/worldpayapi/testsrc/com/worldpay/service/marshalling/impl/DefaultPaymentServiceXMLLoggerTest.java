@@ -0,0 +1,110 @@
+package com.worldpay.service.marshalling.impl;
+
+import com.worldpay.internal.model.Inquiry;
+import com.worldpay.internal.model.OrderInquiry;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.marshalling.PaymentServiceMarshaller;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Answers.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultPaymentServiceXMLLoggerTest {
+
+    private static final String WORLDPAY_CONFIG_ENVIRONMENT = "worldpay.config.environment";
+    private static final String WORLDPAY_XML_LOGGING_LEVEL = "worldpay.xml.logging.level";
+    private static final String SAMPLE_RATE = "worldpay.xml.logging.sample.rate";
+    private static final String ORDER_INQUIRY_SAMPLE_RATE = SAMPLE_RATE + ".inquiry/orderInquiry";
+
+    @InjectMocks
+    private DefaultPaymentServiceXMLLogger testObj;
+
+    @Mock(answer = RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private PaymentServiceMarshaller paymentServiceMarshallerMock;
+
+    private final Logger logger = Logger.getLogger(DefaultPaymentServiceXMLLogger.class);
+    private Level originalLevel;
+    private PaymentService paymentService;
+
+    @Before
+    public void setUp() {
+        originalLevel = logger.getLevel();
+        logger.setLevel(Level.DEBUG);
+
+        final OrderInquiry orderInquiry = new OrderInquiry();
+        orderInquiry.setOrderCode("orderCode");
+        final Inquiry inquiry = new Inquiry();
+        inquiry.getOrderInquiryOrKlarnaConfirmationInquiryOrBatchInquiryOrAccountBatchInquiryOrRefundableAmountInquiryOrShopperAuthenticationOrPriceInquiryOrBankAccountInquiryOrIdentifyMeInquiryOrPaymentOptionsInquiryOrPaymentTokenInquiryOrShopperTokenRetrieval().add(orderInquiry);
+        paymentService = new PaymentService();
+        paymentService.getSubmitOrModifyOrInquiryOrReplyOrNotifyOrVerify().add(inquiry);
+
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_CONFIG_ENVIRONMENT)).thenReturn("TEST");
+        when(configurationServiceMock.getConfiguration().getInt(SAMPLE_RATE, 1)).thenReturn(1);
+        when(configurationServiceMock.getConfiguration().getInt(ORDER_INQUIRY_SAMPLE_RATE, 1)).thenReturn(1);
+    }
+
+    @After
+    public void tearDown() {
+        logger.setLevel(originalLevel);
+    }
+
+    @Test
+    public void isLoggableShouldLogAtInfoByDefault() {
+        logger.setLevel(Level.INFO);
+
+        assertTrue(testObj.isLoggable(paymentService));
+    }
+
+    @Test
+    public void isLoggableShouldReturnFalseWhenTheLoggingLevelIsDisabled() {
+        logger.setLevel(Level.INFO);
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_XML_LOGGING_LEVEL)).thenReturn("DEBUG");
+
+        assertFalse(testObj.isLoggable(paymentService));
+    }
+
+    @Test
+    public void isLoggableShouldReturnFalseInProduction() {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_CONFIG_ENVIRONMENT)).thenReturn("PROD");
+
+        assertFalse(testObj.isLoggable(paymentService));
+    }
+
+    @Test
+    public void isLoggableShouldReturnTrueForEveryExchangeByDefault() {
+        assertTrue(testObj.isLoggable(paymentService));
+        assertTrue(testObj.isLoggable(paymentService));
+    }
+
+    @Test
+    public void isLoggableShouldSampleByRequestType() {
+        when(configurationServiceMock.getConfiguration().getInt(ORDER_INQUIRY_SAMPLE_RATE, 1)).thenReturn(2);
+
+        assertTrue(testObj.isLoggable(paymentService));
+        assertFalse(testObj.isLoggable(paymentService));
+        assertTrue(testObj.isLoggable(paymentService));
+    }
+
+    @Test
+    public void isLoggableShouldReturnFalseWhenRequestTypeIsDisabled() {
+        when(configurationServiceMock.getConfiguration().getInt(ORDER_INQUIRY_SAMPLE_RATE, 1)).thenReturn(0);
+
+        assertFalse(testObj.isLoggable(paymentService));
+    }
+}
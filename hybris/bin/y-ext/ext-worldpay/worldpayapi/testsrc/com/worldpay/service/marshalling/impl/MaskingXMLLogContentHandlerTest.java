@@ -0,0 +1,69 @@
+package com.worldpay.service.marshalling.impl;
+
+import com.worldpay.internal.model.CardHolderName;
+import com.worldpay.internal.model.CardNumber;
+import com.worldpay.internal.model.Cvc;
+import com.worldpay.internal.model.VISASSL;
+import com.worldpay.util.WorldpayConstants;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+@UnitTest
+public class MaskingXMLLogContentHandlerTest {
+
+    private static final String CARD_NUMBER = "4444333322221111";
+    private static final String CVC = "123";
+
+    private final List<String> lines = new ArrayList<>();
+    private MaskingXMLLogContentHandler testObj;
+
+    @Before
+    public void setUp() {
+        testObj = new MaskingXMLLogContentHandler(lines::add, new HashSet<>(asList("cardNumber", "cvc")));
+    }
+
+    @Test
+    public void shouldWriteOneIndentedElementPerLineWithMaskedValues() throws Exception {
+        final CardNumber cardNumber = new CardNumber();
+        cardNumber.setvalue(CARD_NUMBER);
+        final Cvc cvc = new Cvc();
+        cvc.setvalue(CVC);
+        final CardHolderName cardHolderName = new CardHolderName();
+        cardHolderName.setvalue("J & Shopper");
+        final VISASSL visassl = new VISASSL();
+        visassl.setCardNumber(cardNumber);
+        visassl.setCardHolderName(cardHolderName);
+        visassl.setCvc(cvc);
+
+        WorldpayConstants.JAXB_CONTEXT.createMarshaller().marshal(visassl, testObj);
+
+        assertEquals(asList(
+                "<VISA-SSL>",
+                "    <cardNumber>****</cardNumber>",
+                "    <cardHolderName>J &amp; Shopper</cardHolderName>",
+                "    <cvc>****</cvc>",
+                "</VISA-SSL>"), lines);
+    }
+
+    @Test
+    public void shouldMaskAttributesWithMaskedNames() {
+        final AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "cvc", "cvc", "CDATA", CVC);
+        attributes.addAttribute("", "orderCode", "orderCode", "CDATA", "order\"1");
+
+        testObj.startElement("", "order", "order", attributes);
+        testObj.endElement("", "order", "order");
+
+        assertEquals(singletonList("<order cvc=\"****\" orderCode=\"order&quot;1\"/>"), lines);
+    }
+}
@@ -0,0 +1,76 @@
+package com.worldpay.service.marshalling.impl;
+
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.marshalling.PaymentServiceMarshaller;
+import com.worldpay.service.metrics.WorldpayGatewayMetricsRegistry;
+import com.worldpay.service.metrics.WorldpayGatewayTimer;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static com.worldpay.service.metrics.WorldpayGatewayStage.MARSHAL;
+import static com.worldpay.service.metrics.WorldpayGatewayStage.UNMARSHAL;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class MeteredPaymentServiceMarshallerTest {
+
+    @InjectMocks
+    private MeteredPaymentServiceMarshaller testObj;
+
+    @Mock
+    private PaymentServiceMarshaller paymentServiceMarshallerMock;
+    @Mock
+    private WorldpayGatewayMetricsRegistry worldpayGatewayMetricsRegistryMock;
+    @Mock
+    private WorldpayGatewayTimer worldpayGatewayTimerMock;
+    @Mock
+    private PaymentService paymentServiceMock;
+    @Mock
+    private InputStream inputStreamMock;
+    @Mock
+    private OutputStream outputStreamMock;
+
+    @Test
+    public void unmarshalShouldRecordTheUnmarshallingInTheCurrentTimer() throws WorldpayModelTransformationException {
+        when(worldpayGatewayMetricsRegistryMock.getCurrentTimer()).thenReturn(worldpayGatewayTimerMock);
+        when(paymentServiceMarshallerMock.unmarshal(inputStreamMock)).thenReturn(paymentServiceMock);
+
+        assertSame(paymentServiceMock, testObj.unmarshal(inputStreamMock));
+
+        verify(worldpayGatewayTimerMock).recordNested(eq(UNMARSHAL), anyLong());
+    }
+
+    @Test
+    public void marshalAsRequestShouldRecordTheMarshallingEvenWhenItFails() throws WorldpayModelTransformationException {
+        when(worldpayGatewayMetricsRegistryMock.getCurrentTimer()).thenReturn(worldpayGatewayTimerMock);
+        doThrow(new WorldpayModelTransformationException("error")).when(paymentServiceMarshallerMock).marshalAsRequest(paymentServiceMock, outputStreamMock);
+
+        try {
+            testObj.marshalAsRequest(paymentServiceMock, outputStreamMock);
+            fail();
+        } catch (final WorldpayModelTransformationException e) {
+            verify(worldpayGatewayTimerMock).recordNested(eq(MARSHAL), anyLong());
+        }
+    }
+
+    @Test
+    public void unmarshalShouldNotRecordAnythingOutsideOfAGatewayRequest() throws WorldpayModelTransformationException {
+        testObj.unmarshal(inputStreamMock);
+
+        verify(paymentServiceMarshallerMock).unmarshal(inputStreamMock);
+        verifyZeroInteractions(worldpayGatewayTimerMock);
+    }
+}
@@ -0,0 +1,131 @@
+package com.worldpay.service.metrics;
+
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.service.model.ErrorDetail;
+import com.worldpay.service.response.ServiceResponse;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.worldpay.service.metrics.WorldpayGatewayStage.MARSHAL;
+import static com.worldpay.service.metrics.WorldpayGatewayStage.NETWORK;
+import static com.worldpay.service.metrics.WorldpayGatewayStage.REQUEST_TRANSFORM;
+import static com.worldpay.service.metrics.WorldpayGatewayStage.RESPONSE_TRANSFORM;
+import static com.worldpay.service.metrics.WorldpayGatewayStage.TOTAL;
+import static com.worldpay.service.metrics.WorldpayGatewayStage.UNMARSHAL;
+import static com.worldpay.service.metrics.WorldpayGatewayStage.VALIDATION;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class WorldpayGatewayTimerTest {
+
+    private static final String ERROR_CODE = "5";
+
+    @Mock
+    private ServiceResponse serviceResponseMock;
+    @Mock
+    private Runnable onStopMock;
+
+    private long now;
+    private WorldpayGatewayMetrics metrics = new WorldpayGatewayMetrics("DirectAuthoriseServiceRequest", "merchantCode");
+    private WorldpayGatewayTimer testObj = new WorldpayGatewayTimer(metrics, () -> onStopMock.run()) {
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    };
+
+    @Test
+    public void recordShouldRecordTheTimeElapsedSinceThePreviousStage() {
+        advance(3);
+        testObj.record(REQUEST_TRANSFORM);
+        advance(40);
+        testObj.record(NETWORK);
+
+        assertEquals(3, metrics.getLatencyHistogram(REQUEST_TRANSFORM).getMaxMillis());
+        assertEquals(40, metrics.getLatencyHistogram(NETWORK).getMaxMillis());
+    }
+
+    @Test
+    public void recordShouldKeepStagesShorterThanAMillisecond() {
+        now += TimeUnit.MICROSECONDS.toNanos(180);
+        testObj.record(VALIDATION);
+        testObj.recordNested(MARSHAL, TimeUnit.MICROSECONDS.toNanos(420));
+
+        assertEquals(180, metrics.getLatencyHistogram(VALIDATION).getMax());
+        assertEquals(420, metrics.getLatencyHistogram(MARSHAL).getMax());
+        assertEquals(250, metrics.getLatencyHistogram(VALIDATION).getPercentile(50));
+    }
+
+    @Test
+    public void recordShouldLeaveOutTheTimeBeforeTheMark() {
+        advance(10);
+        testObj.mark();
+        advance(4);
+        testObj.record(RESPONSE_TRANSFORM);
+
+        assertEquals(4, metrics.getLatencyHistogram(RESPONSE_TRANSFORM).getMaxMillis());
+    }
+
+    @Test
+    public void recordShouldSubtractTheNestedStages() {
+        advance(100);
+        testObj.recordNested(MARSHAL, TimeUnit.MILLISECONDS.toNanos(7));
+        testObj.recordNested(UNMARSHAL, TimeUnit.MILLISECONDS.toNanos(13));
+        testObj.record(NETWORK);
+
+        assertEquals(7, metrics.getLatencyHistogram(MARSHAL).getMaxMillis());
+        assertEquals(13, metrics.getLatencyHistogram(UNMARSHAL).getMaxMillis());
+        assertEquals(80, metrics.getLatencyHistogram(NETWORK).getMaxMillis());
+    }
+
+    @Test
+    public void stopShouldRecordTheTotalTimeAndCallBack() {
+        advance(250);
+
+        testObj.stop();
+
+        assertEquals(1, metrics.getCalls());
+        assertEquals(250, metrics.getLatencyHistogram(TOTAL).getMaxMillis());
+        verify(onStopMock).run();
+    }
+
+    @Test
+    public void recordResponseShouldCountTheErrorCode() {
+        when(serviceResponseMock.isError()).thenReturn(true);
+        when(serviceResponseMock.getErrorDetail()).thenReturn(new ErrorDetail(ERROR_CODE, "Order has already been paid"));
+
+        testObj.recordResponse(serviceResponseMock);
+        testObj.recordResponse(serviceResponseMock);
+
+        assertEquals(2, metrics.getErrorResponses());
+        assertEquals(Collections.singletonMap(ERROR_CODE, 2L), metrics.getErrorCodes());
+    }
+
+    @Test
+    public void recordResponseShouldNotCountSuccessfulResponses() {
+        testObj.recordResponse(serviceResponseMock);
+
+        assertEquals(0, metrics.getErrorResponses());
+        assertEquals(Collections.emptyMap(), metrics.getErrorCodes());
+    }
+
+    @Test
+    public void recordFailureShouldCountTheException() {
+        testObj.recordFailure(new WorldpayCommunicationException("Unable to communicate with Worldpay"));
+
+        assertEquals(1, metrics.getFailures());
+        assertEquals(Collections.singletonMap("WorldpayCommunicationException", 1L), metrics.getExceptions());
+    }
+
+    private void advance(final long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
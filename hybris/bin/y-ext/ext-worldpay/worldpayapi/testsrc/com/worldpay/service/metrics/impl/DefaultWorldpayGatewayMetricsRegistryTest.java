@@ -0,0 +1,113 @@
+package com.worldpay.service.metrics.impl;
+
+import com.worldpay.service.metrics.WorldpayGatewayMetrics;
+import com.worldpay.service.metrics.WorldpayGatewayStage;
+import com.worldpay.service.metrics.WorldpayGatewayTimer;
+import com.worldpay.service.model.MerchantInfo;
+import com.worldpay.service.request.DirectAuthoriseServiceRequest;
+import com.worldpay.service.request.ServiceRequest;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayGatewayMetricsRegistryTest {
+
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final String OTHER_MERCHANT_CODE = "otherMerchantCode";
+
+    private DefaultWorldpayGatewayMetricsRegistry testObj = new DefaultWorldpayGatewayMetricsRegistry();
+
+    @Mock
+    private DirectAuthoriseServiceRequest directAuthoriseServiceRequestMock;
+    @Mock
+    private ServiceRequest otherServiceRequestMock;
+    @Mock
+    private MerchantInfo merchantInfoMock;
+    @Mock
+    private MerchantInfo otherMerchantInfoMock;
+
+    @Before
+    public void setUp() {
+        when(merchantInfoMock.getMerchantCode()).thenReturn(MERCHANT_CODE);
+        when(otherMerchantInfoMock.getMerchantCode()).thenReturn(OTHER_MERCHANT_CODE);
+        when(directAuthoriseServiceRequestMock.getMerchantInfo()).thenReturn(merchantInfoMock);
+        when(otherServiceRequestMock.getMerchantInfo()).thenReturn(otherMerchantInfoMock);
+    }
+
+    @After
+    public void tearDown() {
+        while (testObj.getCurrentTimer() != null) {
+            testObj.getCurrentTimer().stop();
+        }
+    }
+
+    @Test
+    public void startTimerShouldBindTheTimerToTheCurrentThreadUntilItIsStopped() {
+        final WorldpayGatewayTimer timer = testObj.startTimer(directAuthoriseServiceRequestMock);
+
+        assertSame(timer, testObj.getCurrentTimer());
+
+        timer.stop();
+
+        assertNull(testObj.getCurrentTimer());
+    }
+
+    @Test
+    public void stopShouldRestoreTheEnclosingTimer() {
+        final WorldpayGatewayTimer enclosingTimer = testObj.startTimer(directAuthoriseServiceRequestMock);
+        final WorldpayGatewayTimer timer = testObj.startTimer(otherServiceRequestMock);
+
+        timer.stop();
+
+        assertSame(enclosingTimer, testObj.getCurrentTimer());
+    }
+
+    @Test
+    public void startTimerShouldKeepTheMetricsPerRequestClassAndMerchant() {
+        testObj.startTimer(directAuthoriseServiceRequestMock).stop();
+        testObj.startTimer(directAuthoriseServiceRequestMock).stop();
+        testObj.startTimer(otherServiceRequestMock).stop();
+
+        final List<WorldpayGatewayMetrics> gatewayMetrics = new ArrayList<>(testObj.getGatewayMetrics());
+
+        assertEquals(2, gatewayMetrics.size());
+        final WorldpayGatewayMetrics directAuthoriseMetrics = gatewayMetrics.stream()
+                .filter(metrics -> MERCHANT_CODE.equals(metrics.getMerchantCode())).findFirst().get();
+        assertEquals(directAuthoriseServiceRequestMock.getClass().getSimpleName(), directAuthoriseMetrics.getRequestType());
+        assertEquals(2, directAuthoriseMetrics.getCalls());
+    }
+
+    @Test
+    public void getStageLatenciesShouldDescribeEveryStage() {
+        testObj.startTimer(directAuthoriseServiceRequestMock).stop();
+
+        final String[] stageLatencies = testObj.getStageLatencies();
+
+        assertEquals(WorldpayGatewayStage.values().length, stageLatencies.length);
+        assertTrue(stageLatencies[stageLatencies.length - 1].contains(MERCHANT_CODE + " TOTAL count=1"));
+    }
+
+    @Test
+    public void resetShouldDropTheMetrics() {
+        testObj.startTimer(directAuthoriseServiceRequestMock).stop();
+
+        testObj.reset();
+
+        assertTrue(testObj.getGatewayMetrics().isEmpty());
+    }
+}
@@ -0,0 +1,96 @@
+package com.worldpay.service.notification.impl;
+
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.internal.model.PaymentService;
+import com.worldpay.service.marshalling.PaymentServiceMarshaller;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.dto.converter.Converter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static com.worldpay.service.notification.impl.DefaultOrderNotificationMessageParser.WORLDPAY_NOTIFICATION_PARSER_STREAMING_ENABLED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Answers.RETURNS_DEEP_STUBS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultOrderNotificationMessageParserTest {
+
+    private static final byte[] BODY = "<paymentService/>".getBytes(StandardCharsets.UTF_8);
+
+    @InjectMocks
+    private DefaultOrderNotificationMessageParser testObj;
+
+    @Mock
+    private StaxOrderNotificationMessageReader staxOrderNotificationMessageReaderMock;
+    @Mock
+    private PaymentServiceMarshaller paymentServiceMarshallerMock;
+    @Mock
+    private Converter<PaymentService, OrderNotificationMessage> orderNotificationRequestToMessageConverterMock;
+    @Mock(answer = RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private OrderNotificationMessage orderNotificationMessageMock;
+    @Mock
+    private PaymentService paymentServiceMock;
+
+    @Before
+    public void setUp() throws WorldpayModelTransformationException {
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_NOTIFICATION_PARSER_STREAMING_ENABLED, true)).thenReturn(true);
+        when(paymentServiceMarshallerMock.unmarshal(any(InputStream.class))).thenReturn(paymentServiceMock);
+        when(orderNotificationRequestToMessageConverterMock.convert(paymentServiceMock)).thenReturn(orderNotificationMessageMock);
+    }
+
+    @Test
+    public void parseShouldReturnTheMessageReadByTheStreamingReader() throws WorldpayModelTransformationException {
+        when(staxOrderNotificationMessageReaderMock.read(BODY)).thenReturn(Optional.of(orderNotificationMessageMock));
+
+        final OrderNotificationMessage result = testObj.parse(new ByteArrayInputStream(BODY));
+
+        assertSame(orderNotificationMessageMock, result);
+        verifyZeroInteractions(paymentServiceMarshallerMock);
+        assertEquals(1L, testObj.getStreamedNotifications());
+    }
+
+    @Test
+    public void parseShouldUnmarshalTheNotificationsNotSupportedByTheStreamingReader() throws WorldpayModelTransformationException {
+        when(staxOrderNotificationMessageReaderMock.read(BODY)).thenReturn(Optional.empty());
+
+        final OrderNotificationMessage result = testObj.parse(new ByteArrayInputStream(BODY));
+
+        assertSame(orderNotificationMessageMock, result);
+        assertEquals(1L, testObj.getUnmarshalledNotifications());
+    }
+
+    @Test
+    public void parseShouldUnmarshalAllNotificationsWhenStreamingIsDisabled() throws WorldpayModelTransformationException {
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_NOTIFICATION_PARSER_STREAMING_ENABLED, true)).thenReturn(false);
+
+        final OrderNotificationMessage result = testObj.parse(new ByteArrayInputStream(BODY));
+
+        assertSame(orderNotificationMessageMock, result);
+        verifyZeroInteractions(staxOrderNotificationMessageReaderMock);
+    }
+
+    @Test(expected = WorldpayModelTransformationException.class)
+    public void parseShouldFailWhenTheNotificationIsNotAPaymentService() throws WorldpayModelTransformationException {
+        when(staxOrderNotificationMessageReaderMock.read(BODY)).thenReturn(Optional.empty());
+        when(paymentServiceMarshallerMock.unmarshal(any(InputStream.class))).thenThrow(new WorldpayModelTransformationException("invalid"));
+
+        testObj.parse(new ByteArrayInputStream(BODY));
+    }
+}
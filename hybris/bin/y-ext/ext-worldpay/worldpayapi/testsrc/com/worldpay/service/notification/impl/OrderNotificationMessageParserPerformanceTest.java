@@ -0,0 +1,76 @@
+package com.worldpay.service.notification.impl;
+
+import com.worldpay.converters.OrderModificationRequestConverter;
+import com.worldpay.service.marshalling.impl.DefaultPaymentServiceMarshaller;
+import com.worldpay.service.response.transform.impl.DefaultServiceResponseTransformerHelper;
+import com.worldpay.util.WorldpayBenchmark;
+import com.worldpay.util.WorldpayBenchmark.Measurement;
+import de.hybris.bootstrap.annotations.PerformanceTest;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static java.text.MessageFormat.format;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the throughput and allocation rate of reading the representative AUTHORISED, CAPTURED, REFUSED and SETTLED notifications
+ * with the {@link StaxOrderNotificationMessageReader} against unmarshalling them with JAXB and converting the PaymentService. Only the
+ * allocation rate is asserted on, the throughput is logged.
+ */
+@PerformanceTest
+public class OrderNotificationMessageParserPerformanceTest {
+
+    private static final Logger LOG = Logger.getLogger(OrderNotificationMessageParserPerformanceTest.class);
+
+    private static final int WARM_UP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 20000;
+
+    private StaxOrderNotificationMessageReader staxOrderNotificationMessageReader = new StaxOrderNotificationMessageReader();
+    private DefaultPaymentServiceMarshaller paymentServiceMarshaller = new DefaultPaymentServiceMarshaller();
+    private OrderModificationRequestConverter orderModificationRequestConverter = new OrderModificationRequestConverter();
+
+    @Before
+    public void setUp() {
+        orderModificationRequestConverter.setServiceResponseTransformerHelper(new DefaultServiceResponseTransformerHelper());
+    }
+
+    @Test
+    public void authorisedNotification() throws Exception {
+        compare("AUTHORISED", OrderNotificationSamples.AUTHORISED);
+    }
+
+    @Test
+    public void capturedNotification() throws Exception {
+        compare("CAPTURED", OrderNotificationSamples.CAPTURED);
+    }
+
+    @Test
+    public void refusedNotification() throws Exception {
+        compare("REFUSED", OrderNotificationSamples.REFUSED);
+    }
+
+    @Test
+    public void settledNotification() throws Exception {
+        compare("SETTLED", OrderNotificationSamples.SETTLED);
+    }
+
+    private void compare(final String name, final String notification) throws Exception {
+        final byte[] xml = notification.getBytes(StandardCharsets.UTF_8);
+        final Measurement jaxb = measure(() -> orderModificationRequestConverter.convert(paymentServiceMarshaller.unmarshal(new ByteArrayInputStream(xml))));
+        final Measurement stax = measure(() -> staxOrderNotificationMessageReader.read(xml)
+                .orElseThrow(() -> new AssertionError(name + " notification not supported by the streaming reader")));
+
+        LOG.info(format("{0} JAXB and converter: {1}", name, jaxb));
+        LOG.info(format("{0} StAX reader:        {1}", name, stax));
+
+        assertTrue(stax.getBytesPerOperation() < jaxb.getBytesPerOperation());
+    }
+
+    private Measurement measure(final WorldpayBenchmark.Operation operation) throws Exception {
+        return WorldpayBenchmark.measure(WARM_UP_ITERATIONS, MEASURED_ITERATIONS, operation);
+    }
+}
@@ -0,0 +1,157 @@
+package com.worldpay.service.notification.impl;
+
+/**
+ * Representative order notifications sent by Worldpay
+ */
+final class OrderNotificationSamples {
+
+    static final String AUTHORISED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<paymentService version=\"1.4\" merchantCode=\"MERCHANT1ECOM\">\n" +
+            "    <notify>\n" +
+            "        <orderStatusEvent orderCode=\"00001000-1500000000000\">\n" +
+            "            <payment>\n" +
+            "                <paymentMethod>VISA-SSL</paymentMethod>\n" +
+            "                <paymentMethodDetail>\n" +
+            "                    <card number=\"4444********1111\" type=\"creditcard\">\n" +
+            "                        <expiryDate>\n" +
+            "                            <date month=\"01\" year=\"2022\"/>\n" +
+            "                        </expiryDate>\n" +
+            "                    </card>\n" +
+            "                </paymentMethodDetail>\n" +
+            "                <amount value=\"10000\" currencyCode=\"GBP\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                <lastEvent>AUTHORISED</lastEvent>\n" +
+            "                <AuthorisationId id=\"666\" by=\"acquirer\"/>\n" +
+            "                <CVCResultCode description=\"NOT CHECKED BY ACQUIRER\"/>\n" +
+            "                <AVSResultCode description=\"NOT CHECKED BY ACQUIRER\"/>\n" +
+            "                <AAVAddressResultCode description=\"UNKNOWN\"/>\n" +
+            "                <AAVPostcodeResultCode description=\"UNKNOWN\"/>\n" +
+            "                <AAVCardholderNameResultCode description=\"UNKNOWN\"/>\n" +
+            "                <AAVTelephoneResultCode description=\"UNKNOWN\"/>\n" +
+            "                <AAVEmailResultCode description=\"UNKNOWN\"/>\n" +
+            "                <cardHolderName><![CDATA[John Smith]]></cardHolderName>\n" +
+            "                <issuerCountryCode>N/A</issuerCountryCode>\n" +
+            "                <balance accountType=\"IN_PROCESS_AUTHORISED\">\n" +
+            "                    <amount value=\"10000\" currencyCode=\"GBP\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </balance>\n" +
+            "                <riskScore value=\"1\" provider=\"RiskManagement\" id=\"123\" finalScore=\"12\" message=\"review\"/>\n" +
+            "            </payment>\n" +
+            "            <token>\n" +
+            "                <authenticatedShopperID>shopper</authenticatedShopperID>\n" +
+            "                <tokenEventReference>tokenEventReference</tokenEventReference>\n" +
+            "                <tokenReason>tokenReason</tokenReason>\n" +
+            "                <tokenDetails tokenEvent=\"NEW\">\n" +
+            "                    <paymentTokenID>paymentTokenID</paymentTokenID>\n" +
+            "                    <paymentTokenExpiry>\n" +
+            "                        <date dayOfMonth=\"20\" month=\"07\" year=\"2025\" hour=\"11\" minute=\"12\" second=\"13\"/>\n" +
+            "                    </paymentTokenExpiry>\n" +
+            "                    <tokenEventReference>tokenEventReference</tokenEventReference>\n" +
+            "                    <tokenReason>tokenReason</tokenReason>\n" +
+            "                </tokenDetails>\n" +
+            "            </token>\n" +
+            "            <journal journalType=\"AUTHORISED\">\n" +
+            "                <bookingDate>\n" +
+            "                    <date dayOfMonth=\"5\" month=\"6\" year=\"2015\"/>\n" +
+            "                </bookingDate>\n" +
+            "                <accountTx accountType=\"IN_PROCESS_AUTHORISED\" batchId=\"84\">\n" +
+            "                    <amount value=\"10000\" currencyCode=\"GBP\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </accountTx>\n" +
+            "            </journal>\n" +
+            "        </orderStatusEvent>\n" +
+            "    </notify>\n" +
+            "</paymentService>";
+
+    static final String CAPTURED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<paymentService version=\"1.4\" merchantCode=\"MERCHANT1ECOM\">\n" +
+            "    <notify>\n" +
+            "        <orderStatusEvent orderCode=\"00001000-1500000000000\">\n" +
+            "            <payment>\n" +
+            "                <paymentMethod>ECMC-SSL</paymentMethod>\n" +
+            "                <amount value=\"10000\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                <lastEvent>CAPTURED</lastEvent>\n" +
+            "                <reference>reference</reference>\n" +
+            "                <balance accountType=\"IN_PROCESS_CAPTURED\">\n" +
+            "                    <amount value=\"10000\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </balance>\n" +
+            "                <riskScore value=\"1\"/>\n" +
+            "            </payment>\n" +
+            "            <journal journalType=\"CAPTURED\">\n" +
+            "                <bookingDate>\n" +
+            "                    <date dayOfMonth=\"6\" month=\"6\" year=\"2015\"/>\n" +
+            "                </bookingDate>\n" +
+            "                <accountTx accountType=\"IN_PROCESS_AUTHORISED\" batchId=\"85\">\n" +
+            "                    <amount value=\"10000\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"debit\"/>\n" +
+            "                </accountTx>\n" +
+            "                <accountTx accountType=\"IN_PROCESS_CAPTURED\" batchId=\"85\">\n" +
+            "                    <amount value=\"10000\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </accountTx>\n" +
+            "            </journal>\n" +
+            "        </orderStatusEvent>\n" +
+            "    </notify>\n" +
+            "</paymentService>";
+
+    static final String REFUSED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<paymentService version=\"1.4\" merchantCode=\"MERCHANT1ECOM\">\n" +
+            "    <notify>\n" +
+            "        <orderStatusEvent orderCode=\"00001000-1500000000000\">\n" +
+            "            <payment>\n" +
+            "                <paymentMethod>VISA-SSL</paymentMethod>\n" +
+            "                <paymentMethodDetail>\n" +
+            "                    <card number=\"4444********1111\" type=\"creditcard\">\n" +
+            "                        <expiryDate>\n" +
+            "                            <date month=\"01\" year=\"2022\"/>\n" +
+            "                        </expiryDate>\n" +
+            "                    </card>\n" +
+            "                </paymentMethodDetail>\n" +
+            "                <amount value=\"10000\" currencyCode=\"GBP\" exponent=\"2\"/>\n" +
+            "                <lastEvent>REFUSED</lastEvent>\n" +
+            "                <ISO8583ReturnCode code=\"5\" description=\"REFUSED\"/>\n" +
+            "                <CVCResultCode description=\"C\"/>\n" +
+            "                <cardHolderName><![CDATA[]]></cardHolderName>\n" +
+            "                <riskScore value=\"100\"/>\n" +
+            "            </payment>\n" +
+            "            <journal journalType=\"REFUSED\">\n" +
+            "                <bookingDate>\n" +
+            "                    <date dayOfMonth=\"5\" month=\"6\" year=\"2015\"/>\n" +
+            "                </bookingDate>\n" +
+            "            </journal>\n" +
+            "        </orderStatusEvent>\n" +
+            "    </notify>\n" +
+            "</paymentService>";
+
+    static final String SETTLED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<paymentService version=\"1.4\" merchantCode=\"MERCHANT1ECOM\">\n" +
+            "    <notify>\n" +
+            "        <orderStatusEvent orderCode=\"00001000-1500000000000\">\n" +
+            "            <payment>\n" +
+            "                <paymentMethod>ECMC-SSL</paymentMethod>\n" +
+            "                <amount value=\"10000\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                <lastEvent>SETTLED</lastEvent>\n" +
+            "                <balance accountType=\"SETTLED_BIBIT_NET\">\n" +
+            "                    <amount value=\"9800\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </balance>\n" +
+            "                <balance accountType=\"SETTLED_BIBIT_COMMISSION\">\n" +
+            "                    <amount value=\"200\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </balance>\n" +
+            "                <riskScore value=\"1\"/>\n" +
+            "            </payment>\n" +
+            "            <journal journalType=\"SETTLED\" description=\"Settlement\">\n" +
+            "                <bookingDate>\n" +
+            "                    <date dayOfMonth=\"8\" month=\"6\" year=\"2015\"/>\n" +
+            "                </bookingDate>\n" +
+            "                <accountTx accountType=\"IN_PROCESS_CAPTURED\" batchId=\"86\">\n" +
+            "                    <amount value=\"10000\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"debit\"/>\n" +
+            "                </accountTx>\n" +
+            "                <accountTx accountType=\"SETTLED_BIBIT_NET\" batchId=\"86\">\n" +
+            "                    <amount value=\"9800\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </accountTx>\n" +
+            "                <accountTx accountType=\"SETTLED_BIBIT_COMMISSION\" batchId=\"86\">\n" +
+            "                    <amount value=\"200\" currencyCode=\"EUR\" exponent=\"2\" debitCreditIndicator=\"credit\"/>\n" +
+            "                </accountTx>\n" +
+            "            </journal>\n" +
+            "        </orderStatusEvent>\n" +
+            "    </notify>\n" +
+            "</paymentService>";
+
+    private OrderNotificationSamples() {
+    }
+}
@@ -0,0 +1,121 @@
+package com.worldpay.service.notification.impl;
+
+import com.google.gson.Gson;
+import com.worldpay.converters.OrderModificationRequestConverter;
+import com.worldpay.service.marshalling.impl.DefaultPaymentServiceMarshaller;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.service.response.transform.impl.DefaultServiceResponseTransformerHelper;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static com.worldpay.enums.order.AuthorisedStatus.AUTHORISED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@UnitTest
+public class StaxOrderNotificationMessageReaderTest {
+
+    private static final String DOCTYPE = "<!DOCTYPE paymentService PUBLIC \"-//worldpay//DTD worldpay PaymentService v1//EN\"\n" +
+            "        \"http://dtd.worldpay.com/paymentService_v1.dtd\">\n";
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    private StaxOrderNotificationMessageReader testObj = new StaxOrderNotificationMessageReader();
+
+    private DefaultPaymentServiceMarshaller paymentServiceMarshaller = new DefaultPaymentServiceMarshaller();
+    private OrderModificationRequestConverter orderModificationRequestConverter = new OrderModificationRequestConverter();
+    private Gson gson = new Gson();
+
+    @Before
+    public void setUp() {
+        orderModificationRequestConverter.setServiceResponseTransformerHelper(new DefaultServiceResponseTransformerHelper());
+    }
+
+    @Test
+    public void readShouldReadAuthorisedNotificationLikeJaxb() throws Exception {
+        assertReadLikeJaxb(OrderNotificationSamples.AUTHORISED);
+    }
+
+    @Test
+    public void readShouldReadCapturedNotificationLikeJaxb() throws Exception {
+        assertReadLikeJaxb(OrderNotificationSamples.CAPTURED);
+    }
+
+    @Test
+    public void readShouldReadRefusedNotificationLikeJaxb() throws Exception {
+        assertReadLikeJaxb(OrderNotificationSamples.REFUSED);
+    }
+
+    @Test
+    public void readShouldReadSettledNotificationLikeJaxb() throws Exception {
+        assertReadLikeJaxb(OrderNotificationSamples.SETTLED);
+    }
+
+    @Test
+    public void readShouldSkipTheDoctype() {
+        final Optional<OrderNotificationMessage> result = testObj.read(bytes(OrderNotificationSamples.AUTHORISED.replace(XML_DECLARATION, XML_DECLARATION + DOCTYPE)));
+
+        assertTrue(result.isPresent());
+        assertEquals("00001000-1500000000000", result.get().getOrderCode());
+        assertEquals("MERCHANT1ECOM", result.get().getMerchantCode());
+        assertEquals(AUTHORISED, result.get().getJournalReply().getJournalType());
+    }
+
+    @Test
+    public void readShouldReturnEmptyForShopperWebformRefundDetails() {
+        final String xml = OrderNotificationSamples.CAPTURED.replace("</journal>", "</journal><shopperWebformRefundDetails><webformId>1</webformId></shopperWebformRefundDetails>");
+
+        assertFalse(testObj.read(bytes(xml)).isPresent());
+    }
+
+    @Test
+    public void readShouldReturnEmptyForTokenPaymentInstrument() {
+        final String xml = OrderNotificationSamples.AUTHORISED.replace("</tokenDetails>", "</tokenDetails><paymentInstrument><cardDetails/></paymentInstrument>");
+
+        assertFalse(testObj.read(bytes(xml)).isPresent());
+    }
+
+    @Test
+    public void readShouldReturnEmptyWithoutRiskScore() {
+        final String xml = OrderNotificationSamples.CAPTURED.replace("<riskScore value=\"1\"/>", "");
+
+        assertFalse(testObj.read(bytes(xml)).isPresent());
+    }
+
+    @Test
+    public void readShouldReturnEmptyForUnknownJournalType() {
+        final String xml = OrderNotificationSamples.CAPTURED.replace("journalType=\"CAPTURED\"", "journalType=\"UNKNOWN\"");
+
+        assertFalse(testObj.read(bytes(xml)).isPresent());
+    }
+
+    @Test
+    public void readShouldReturnEmptyForReports() {
+        final String xml = XML_DECLARATION + "<paymentService version=\"1.4\" merchantCode=\"MERCHANT1ECOM\"><notify><report/></notify></paymentService>";
+
+        assertFalse(testObj.read(bytes(xml)).isPresent());
+    }
+
+    @Test
+    public void readShouldReturnEmptyForMalformedXml() {
+        assertFalse(testObj.read(bytes(OrderNotificationSamples.AUTHORISED.substring(0, 200))).isPresent());
+    }
+
+    private void assertReadLikeJaxb(final String xml) throws Exception {
+        final OrderNotificationMessage expected = orderModificationRequestConverter.convert(paymentServiceMarshaller.unmarshal(new ByteArrayInputStream(bytes(xml))));
+
+        final Optional<OrderNotificationMessage> result = testObj.read(bytes(xml));
+
+        assertTrue(result.isPresent());
+        assertEquals(gson.toJson(expected), gson.toJson(result.get()));
+    }
+
+    private byte[] bytes(final String xml) {
+        return xml.getBytes(StandardCharsets.UTF_8);
+    }
+}
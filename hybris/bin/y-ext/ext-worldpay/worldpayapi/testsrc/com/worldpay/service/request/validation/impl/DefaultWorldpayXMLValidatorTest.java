@@ -14,9 +14,10 @@ import com.worldpay.service.request.AuthoriseServiceRequest;
 import com.worldpay.service.request.DirectAuthoriseServiceRequest;
 import com.worldpay.service.request.RedirectAuthoriseServiceRequest;
 import com.worldpay.service.request.transform.AuthoriseRequestTransformer;
-import com.worldpay.service.request.validation.WorldpayXMLValidator;
+import com.worldpay.service.request.validation.WorldpayXMLValidationMetrics;
 import de.hybris.bootstrap.annotations.UnitTest;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -24,11 +25,18 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.xml.bind.JAXBException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static com.worldpay.service.model.payment.PaymentType.ONLINE;
 import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Answers.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.when;
 
@@ -36,6 +44,8 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class DefaultWorldpayXMLValidatorTest {
     private static final String WORLDPAY_CONFIG_VERSION = "worldpay.config.version";
+    private static final String WORLDPAY_XML_VALIDATION_MODE = "worldpay.xml.validation.mode";
+    private static final String WORLDPAY_XML_VALIDATION_SAMPLE_RATE = "worldpay.xml.validation.sample.rate";
 
     private static final String STATEMENT_NARRATIVE_TEXT = "STATEMENT NARRATIVE TEXT";
     private static final String EMAIL_ADDRESS = "jshopper@myprovider.com";
@@ -61,6 +71,9 @@ public class DefaultWorldpayXMLValidatorTest {
     @Mock(answer = RETURNS_DEEP_STUBS)
     private ConfigurationService configurationServiceMock;
 
+    private DefaultWorldpayXMLValidator validator;
+    private ExecutorService sampledValidationExecutor;
+
     private static final String ORDER_CONTENT = "orderContent";
 
     @Before
@@ -71,6 +84,21 @@ public class DefaultWorldpayXMLValidatorTest {
         billingAddress = new Address("John", "Shopper", "Shopper Address1", "Shopper Address2", "Shopper Address3", "postalCode", "city", "GB");
         cardAddress = new Address("John", "Shopper", "Shopper Address1", "Shopper Address2", "Shopper Address3", "postalCode", "city", "GB");
         when(configurationServiceMock.getConfiguration().getString(WORLDPAY_CONFIG_VERSION)).thenReturn("1.4");
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_XML_VALIDATION_SAMPLE_RATE, 100)).thenReturn(100);
+
+        sampledValidationExecutor = Executors.newSingleThreadExecutor();
+        validator = new DefaultWorldpayXMLValidator() {
+            @Override
+            protected ExecutorService createSampledValidationExecutor() {
+                return sampledValidationExecutor;
+            }
+        };
+        validator.setConfigurationService(configurationServiceMock);
+    }
+
+    @After
+    public void tearDown() {
+        sampledValidationExecutor.shutdownNow();
     }
 
     @Test
@@ -82,7 +110,6 @@ public class DefaultWorldpayXMLValidatorTest {
 
         final PaymentService paymentService = testObj.transform(request);
 
-        final WorldpayXMLValidator validator = new DefaultWorldpayXMLValidator();
         validator.validate(paymentService);
     }
 
@@ -96,7 +123,6 @@ public class DefaultWorldpayXMLValidatorTest {
 
         final PaymentService paymentService = testObj.transform(request);
 
-        final WorldpayXMLValidator validator = new DefaultWorldpayXMLValidator();
         validator.validate(paymentService);
     }
 
@@ -110,7 +136,6 @@ public class DefaultWorldpayXMLValidatorTest {
 
         final PaymentService paymentService = testObj.transform(request);
 
-        final WorldpayXMLValidator validator = new DefaultWorldpayXMLValidator();
         validator.validate(paymentService);
     }
 
@@ -122,7 +147,6 @@ public class DefaultWorldpayXMLValidatorTest {
 
         final PaymentService paymentService = testObj.transform(request);
 
-        final WorldpayXMLValidator validator = new DefaultWorldpayXMLValidator();
         validator.validate(paymentService);
     }
 
@@ -134,7 +158,6 @@ public class DefaultWorldpayXMLValidatorTest {
 
         final PaymentService paymentService = testObj.transform(request);
 
-        final WorldpayXMLValidator validator = new DefaultWorldpayXMLValidator();
         validator.validate(paymentService);
     }
 
@@ -147,7 +170,97 @@ public class DefaultWorldpayXMLValidatorTest {
 
         final PaymentService paymentService = testObj.transform(request);
 
-        final WorldpayXMLValidator validator = new DefaultWorldpayXMLValidator();
         validator.validate(paymentService);
     }
+
+    @Test(expected = WorldpayValidationException.class)
+    public void validateShouldRejectInvalidMessageWhenModeIsAlways() throws WorldpayValidationException {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_XML_VALIDATION_MODE)).thenReturn("always");
+
+        validator.validate(new PaymentService());
+    }
+
+    @Test
+    public void validateShouldSkipInvalidMessageWhenModeIsOff() throws WorldpayValidationException {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_XML_VALIDATION_MODE)).thenReturn("OFF");
+
+        validator.validate(new PaymentService());
+
+        final WorldpayXMLValidationMetrics metrics = validator.getValidationMetrics().iterator().next();
+        assertEquals(0L, metrics.getValidations());
+        assertEquals(1L, metrics.getSkipped());
+    }
+
+    @Test
+    public void validateShouldValidateFirstMessageOfRequestTypeInBackgroundWhenModeIsSampled() throws Exception {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_XML_VALIDATION_MODE)).thenReturn("SAMPLED");
+
+        validator.validate(new PaymentService());
+        validator.validate(new PaymentService());
+        sampledValidationExecutor.shutdown();
+        sampledValidationExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+        final WorldpayXMLValidationMetrics metrics = validator.getValidationMetrics().iterator().next();
+        assertEquals(1L, metrics.getValidations());
+        assertEquals(1L, metrics.getFailures());
+        assertEquals(1L, metrics.getSkipped());
+    }
+
+    @Test
+    public void validateShouldMarshalSampledMessageOnTheCallingThread() throws Exception {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_XML_VALIDATION_MODE)).thenReturn("SAMPLED");
+        final List<Thread> marshallingThreads = new ArrayList<>();
+        validator = new DefaultWorldpayXMLValidator() {
+            @Override
+            protected ExecutorService createSampledValidationExecutor() {
+                return sampledValidationExecutor;
+            }
+
+            @Override
+            protected byte[] marshal(final PaymentService paymentService) throws JAXBException {
+                marshallingThreads.add(Thread.currentThread());
+                return super.marshal(paymentService);
+            }
+        };
+        validator.setConfigurationService(configurationServiceMock);
+
+        validator.validate(new PaymentService());
+        sampledValidationExecutor.shutdown();
+        sampledValidationExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(singletonList(Thread.currentThread()), marshallingThreads);
+        assertEquals(1L, validator.getValidationMetrics().iterator().next().getValidations());
+    }
+
+    @Test
+    public void validateShouldRecordValidationsPerRequestType() throws Exception {
+        final AuthoriseServiceRequest request = RedirectAuthoriseServiceRequest.createRedirectAuthoriseRequest(merchantInfo, basicOrderInfo, null, ORDER_CONTENT,
+                singletonList(ONLINE), null, SHOPPER, shippingAddress, billingAddress, STATEMENT_NARRATIVE_TEXT);
+
+        validator.validate(testObj.transform(request));
+
+        final WorldpayXMLValidationMetrics metrics = validator.getValidationMetrics().iterator().next();
+        assertEquals("submit/order", metrics.getRequestType());
+        assertEquals(1L, metrics.getValidations());
+        assertEquals(0L, metrics.getFailures());
+    }
+
+    @Test
+    public void getValidationsShouldDescribeTheValidationsOfEveryRequestType() throws Exception {
+        final AuthoriseServiceRequest request = RedirectAuthoriseServiceRequest.createRedirectAuthoriseRequest(merchantInfo, basicOrderInfo, null, ORDER_CONTENT,
+                singletonList(ONLINE), null, SHOPPER, shippingAddress, billingAddress, STATEMENT_NARRATIVE_TEXT);
+
+        validator.validate(testObj.transform(request));
+
+        final String[] result = validator.getValidations();
+        assertEquals(1, result.length);
+        assertTrue(result[0].startsWith("submit/order validations=1 failures=0 skipped=0"));
+    }
+
+    @Test
+    public void getModeShouldValidateEveryMessageWhenTheModeIsUnknown() {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_XML_VALIDATION_MODE)).thenReturn("sometimes");
+
+        assertEquals("ALWAYS", validator.getMode());
+    }
 }
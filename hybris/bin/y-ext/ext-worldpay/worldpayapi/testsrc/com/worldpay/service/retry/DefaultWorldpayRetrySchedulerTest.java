@@ -0,0 +1,135 @@
+package com.worldpay.service.retry;
+
+import com.worldpay.exception.WorldpayCommunicationException;
+import com.worldpay.exception.WorldpayException;
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@UnitTest
+public class DefaultWorldpayRetrySchedulerTest {
+
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final String RESPONSE = "response";
+    private static final WorldpayRetryPolicy POLICY = new WorldpayRetryPolicy(3, 0, 2, 0, 0, 0);
+
+    private DefaultWorldpayRetryScheduler testObj = new DefaultWorldpayRetryScheduler();
+    private AtomicInteger tries = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        testObj.destroy();
+    }
+
+    @Test
+    public void executeShouldReturnTheResultOfTheFirstTryWhenItSucceeds() {
+        final String result = testObj.execute(MERCHANT_CODE, POLICY, () -> failingTimes(0)).join();
+
+        assertEquals(RESPONSE, result);
+        final WorldpayRetryMetrics metrics = testObj.getMetrics().get(MERCHANT_CODE);
+        assertEquals(1, metrics.getCalls());
+        assertEquals(1, metrics.getTries());
+        assertEquals(0, metrics.getRetries());
+        assertEquals(1, metrics.getSuccesses());
+        assertEquals(1, metrics.getLatencyHistogram().getCount());
+    }
+
+    @Test
+    public void getRetryMetricsShouldListTheMetricsOfEachKey() {
+        testObj.execute(MERCHANT_CODE, POLICY, () -> failingTimes(1)).join();
+
+        final String[] result = testObj.getRetryMetrics();
+
+        assertEquals(1, result.length);
+        assertThat(result[0]).startsWith(MERCHANT_CODE + " calls=1 tries=2 retries=1 successes=1 failures=0 deadlinesExceeded=0");
+    }
+
+    @Test
+    public void executeShouldRetryWhenTheTryFailsWithAWorldpayException() {
+        final String result = testObj.execute(MERCHANT_CODE, POLICY, () -> failingTimes(2)).join();
+
+        assertEquals(RESPONSE, result);
+        assertEquals(3, tries.get());
+        final WorldpayRetryMetrics metrics = testObj.getMetrics().get(MERCHANT_CODE);
+        assertEquals(3, metrics.getTries());
+        assertEquals(2, metrics.getRetries());
+        assertEquals(1, metrics.getSuccesses());
+        assertEquals(0, metrics.getFailures());
+    }
+
+    @Test
+    public void executeShouldFailWithTheLastExceptionWhenTheTriesAreExhausted() {
+        final CompletableFuture<String> result = testObj.execute(MERCHANT_CODE, POLICY, () -> failingTimes(3));
+
+        assertFailsWith(result, WorldpayCommunicationException.class);
+        assertEquals(3, tries.get());
+        assertEquals(1, testObj.getMetrics().get(MERCHANT_CODE).getFailures());
+    }
+
+    @Test
+    public void executeShouldNotRetryOtherExceptions() {
+        final CompletableFuture<String> result = testObj.execute(MERCHANT_CODE, POLICY, () -> {
+            tries.incrementAndGet();
+            throw new IllegalStateException();
+        });
+
+        assertFailsWith(result, IllegalStateException.class);
+        assertEquals(1, tries.get());
+    }
+
+    @Test
+    public void executeShouldFailWithoutWaitingWhenTheNextTryWouldExceedTheDeadline() {
+        final WorldpayRetryPolicy policy = new WorldpayRetryPolicy(3, 60000, 2, 60000, 0, 1000);
+
+        final CompletableFuture<String> result = testObj.execute(MERCHANT_CODE, policy, () -> failingTimes(1));
+
+        assertFailsWith(result, WorldpayException.class);
+        assertEquals(1, tries.get());
+        assertEquals(1, testObj.getMetrics().get(MERCHANT_CODE).getDeadlinesExceeded());
+    }
+
+    @Test
+    public void executeShouldFailWhenTheCallDoesNotCompleteWithinTheDeadline() {
+        final WorldpayRetryPolicy policy = new WorldpayRetryPolicy(3, 0, 2, 0, 0, 50);
+
+        final CompletableFuture<String> result = testObj.execute(MERCHANT_CODE, policy, CompletableFuture::new);
+
+        assertFailsWith(result, WorldpayException.class);
+        assertEquals(1, testObj.getMetrics().get(MERCHANT_CODE).getDeadlinesExceeded());
+    }
+
+    @Test
+    public void executeShouldPublishTheMetricsByKey() {
+        testObj.execute(MERCHANT_CODE, POLICY, () -> failingTimes(0)).join();
+        testObj.execute("otherMerchantCode", POLICY, () -> failingTimes(0)).join();
+
+        assertThat(testObj.getMetrics()).containsOnlyKeys(MERCHANT_CODE, "otherMerchantCode");
+    }
+
+    private CompletableFuture<String> failingTimes(final int failures) {
+        if (tries.incrementAndGet() > failures) {
+            return completedFuture(RESPONSE);
+        }
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        future.completeExceptionally(new WorldpayCommunicationException("Worldpay is not available"));
+        return future;
+    }
+
+    private void assertFailsWith(final CompletableFuture<String> result, final Class<? extends Throwable> exceptionClass) {
+        try {
+            result.join();
+            fail("Expected the call to fail");
+        } catch (final CompletionException e) {
+            assertThat(e.getCause()).isInstanceOf(exceptionClass);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.worldpay.service.retry;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+@UnitTest
+public class WorldpayRetryPolicyTest {
+
+    @Test
+    public void getDelayMillisShouldGrowExponentiallyUpToTheMaxDelay() {
+        final WorldpayRetryPolicy testObj = new WorldpayRetryPolicy(5, 100, 2, 300, 0, 0);
+
+        assertEquals(100, testObj.getDelayMillis(1));
+        assertEquals(200, testObj.getDelayMillis(2));
+        assertEquals(300, testObj.getDelayMillis(3));
+        assertEquals(300, testObj.getDelayMillis(4));
+    }
+
+    @Test
+    public void getDelayMillisShouldVaryTheDelayByUpToTheJitter() {
+        final WorldpayRetryPolicy testObj = new WorldpayRetryPolicy(5, 1000, 1, 1000, 0.2, 0);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(testObj.getDelayMillis(1)).isBetween(800L, 1200L);
+        }
+    }
+
+    @Test
+    public void constructorShouldKeepTheValuesWithinTheirBounds() {
+        final WorldpayRetryPolicy testObj = new WorldpayRetryPolicy(0, -1, 0.5, -1, 2, -1);
+
+        assertEquals(1, testObj.getMaxTries());
+        assertEquals(0, testObj.getInitialDelayMillis());
+        assertEquals(1d, testObj.getMultiplier(), 0d);
+        assertEquals(0, testObj.getMaxDelayMillis());
+        assertEquals(1d, testObj.getJitter(), 0d);
+        assertEquals(0, testObj.getDeadlineMillis());
+    }
+}
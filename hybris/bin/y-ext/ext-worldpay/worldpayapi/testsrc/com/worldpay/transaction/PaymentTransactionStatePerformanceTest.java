@@ -0,0 +1,130 @@
+package com.worldpay.transaction;
+
+import com.worldpay.util.WorldpayBenchmark;
+import com.worldpay.util.WorldpayBenchmark.Measurement;
+import de.hybris.bootstrap.annotations.PerformanceTest;
+import de.hybris.platform.payment.enums.PaymentTransactionType;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import static de.hybris.platform.payment.dto.TransactionStatus.ACCEPTED;
+import static de.hybris.platform.payment.dto.TransactionStatus.REJECTED;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.AUTHORIZATION;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.CAPTURE;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.SETTLED;
+import static java.text.MessageFormat.format;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the throughput and allocation rate of answering the accepted, pending, authorised amount and filter checks made by the
+ * fulfilment actions by walking the entries of a payment transaction, as they were, against reading them once into a
+ * {@link PaymentTransactionState}, for transactions with few and many entries. The summary has to allocate less than walking the
+ * entries of transactions with many entries, and the cached summary for all of them. The throughput is logged.
+ */
+@PerformanceTest
+public class PaymentTransactionStatePerformanceTest {
+
+    private static final Logger LOG = Logger.getLogger(PaymentTransactionStatePerformanceTest.class);
+
+    private static final int WARM_UP_ITERATIONS = 5000;
+    private static final int MEASURED_ITERATIONS = 50000;
+    private static final int FEW_ENTRIES = 4;
+    private static final int MANY_ENTRIES = 200;
+
+    private int blackhole;
+
+    @Test
+    public void transactionWithFewEntries() throws Exception {
+        compare(FEW_ENTRIES);
+    }
+
+    @Test
+    public void transactionWithManyEntries() throws Exception {
+        compare(MANY_ENTRIES);
+    }
+
+    private void compare(final int numberOfEntries) throws Exception {
+        final PaymentTransactionModel paymentTransaction = createPaymentTransaction(numberOfEntries);
+        final PaymentTransactionState cachedState = PaymentTransactionState.of(paymentTransaction);
+        assertEquals(walkEntries(paymentTransaction), summarise(PaymentTransactionState.of(paymentTransaction)));
+
+        final Measurement entries = measure(transaction -> walkEntries(transaction), paymentTransaction);
+        final Measurement summary = measure(transaction -> summarise(PaymentTransactionState.of(transaction)), paymentTransaction);
+        final Measurement cached = measure(transaction -> summarise(cachedState), paymentTransaction);
+
+        LOG.info(format("{0} entries, walking the entries: {1}", numberOfEntries, entries));
+        LOG.info(format("{0} entries, summary:             {1}", numberOfEntries, summary));
+        LOG.info(format("{0} entries, cached summary:      {1}", numberOfEntries, cached));
+
+        assertTrue(cached.getBytesPerOperation() < entries.getBytesPerOperation());
+        if (numberOfEntries >= MANY_ENTRIES) {
+            assertTrue(summary.getBytesPerOperation() < entries.getBytesPerOperation());
+        }
+    }
+
+    private int walkEntries(final PaymentTransactionModel paymentTransaction) {
+        boolean typeFound = false;
+        boolean accepted = true;
+        for (final PaymentTransactionEntryModel entry : paymentTransaction.getEntries()) {
+            if (entry.getType().equals(AUTHORIZATION)) {
+                typeFound = true;
+            }
+            if (!ACCEPTED.name().equals(entry.getTransactionStatus()) && entry.getType().equals(AUTHORIZATION)) {
+                accepted = false;
+            }
+        }
+        final boolean pending = paymentTransaction.getEntries().stream()
+                .anyMatch(entry -> CAPTURE.equals(entry.getType()) && entry.getPending());
+        BigDecimal authorisedAmount = BigDecimal.ZERO;
+        for (final PaymentTransactionEntryModel entry : paymentTransaction.getEntries()) {
+            if (AUTHORIZATION.equals(entry.getType())) {
+                authorisedAmount = authorisedAmount.add(entry.getAmount());
+            }
+        }
+        final List<PaymentTransactionEntryModel> settled = paymentTransaction.getEntries().stream()
+                .filter(entry -> entry.getType().equals(SETTLED))
+                .collect(Collectors.toList());
+        return result(typeFound && accepted, pending, authorisedAmount, settled.isEmpty());
+    }
+
+    private int summarise(final PaymentTransactionState state) {
+        return result(state.hasEntryOfType(AUTHORIZATION) && state.areAllEntriesAcceptedForType(AUTHORIZATION),
+                state.hasPendingEntryOfType(CAPTURE), state.getAmount(AUTHORIZATION), !state.hasEntryOfType(SETTLED));
+    }
+
+    private int result(final boolean accepted, final boolean pending, final BigDecimal authorisedAmount, final boolean noneSettled) {
+        return (accepted ? 1 : 0) | (pending ? 2 : 0) | (noneSettled ? 4 : 0) | authorisedAmount.intValue() << 3;
+    }
+
+    private PaymentTransactionModel createPaymentTransaction(final int numberOfEntries) {
+        final List<PaymentTransactionEntryModel> entries = new ArrayList<>();
+        for (int i = 0; i < numberOfEntries; i++) {
+            final PaymentTransactionType type = i % 2 == 0 ? AUTHORIZATION : CAPTURE;
+            final PaymentTransactionEntryModel entry = new PaymentTransactionEntryModel();
+            entry.setType(type);
+            entry.setTransactionStatus(i % 10 == 9 ? REJECTED.name() : ACCEPTED.name());
+            entry.setPending(Boolean.valueOf(i % 3 == 0));
+            entry.setAmount(new BigDecimal("12.34"));
+            entries.add(entry);
+        }
+        final PaymentTransactionModel paymentTransaction = new PaymentTransactionModel();
+        paymentTransaction.setRequestId("worldpayOrderCode");
+        paymentTransaction.setEntries(entries);
+        return paymentTransaction;
+    }
+
+    private Measurement measure(final ToIntFunction<PaymentTransactionModel> operation, final PaymentTransactionModel paymentTransaction) throws Exception {
+        final Measurement measurement = WorldpayBenchmark.measure(WARM_UP_ITERATIONS, MEASURED_ITERATIONS, () -> blackhole += operation.applyAsInt(paymentTransaction));
+        LOG.debug(blackhole);
+        return measurement;
+    }
+}
@@ -0,0 +1,114 @@
+package com.worldpay.transaction;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.model.c2l.CurrencyModel;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static de.hybris.platform.payment.dto.TransactionStatus.ACCEPTED;
+import static de.hybris.platform.payment.dto.TransactionStatus.REJECTED;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.AUTHORIZATION;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.CAPTURE;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.SETTLED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class PaymentTransactionStateTest {
+
+    @Mock
+    private PaymentTransactionModel paymentTransactionModelMock;
+    @Mock
+    private PaymentTransactionEntryModel acceptedAuthorisationEntryMock, rejectedPendingAuthorisationEntryMock, captureEntryMock;
+    @Mock
+    private CurrencyModel currencyModelMock;
+
+    @Before
+    public void setUp() {
+        when(acceptedAuthorisationEntryMock.getType()).thenReturn(AUTHORIZATION);
+        when(acceptedAuthorisationEntryMock.getTransactionStatus()).thenReturn(ACCEPTED.name());
+        when(acceptedAuthorisationEntryMock.getPending()).thenReturn(Boolean.FALSE);
+        when(acceptedAuthorisationEntryMock.getAmount()).thenReturn(new BigDecimal("10.50"));
+
+        when(rejectedPendingAuthorisationEntryMock.getType()).thenReturn(AUTHORIZATION);
+        when(rejectedPendingAuthorisationEntryMock.getTransactionStatus()).thenReturn(REJECTED.name());
+        when(rejectedPendingAuthorisationEntryMock.getPending()).thenReturn(Boolean.TRUE);
+        when(rejectedPendingAuthorisationEntryMock.getAmount()).thenReturn(new BigDecimal("2.25"));
+
+        when(captureEntryMock.getType()).thenReturn(CAPTURE);
+        when(captureEntryMock.getTransactionStatus()).thenReturn(ACCEPTED.name());
+        when(captureEntryMock.getPending()).thenReturn(Boolean.FALSE);
+
+        when(paymentTransactionModelMock.getEntries()).thenReturn(Arrays.asList(acceptedAuthorisationEntryMock, rejectedPendingAuthorisationEntryMock, captureEntryMock));
+    }
+
+    @Test
+    public void ofShouldSummariseTheEntriesByType() {
+        final PaymentTransactionState result = PaymentTransactionState.of(paymentTransactionModelMock);
+
+        assertTrue(result.hasEntryOfType(AUTHORIZATION));
+        assertTrue(result.hasPendingEntryOfType(AUTHORIZATION));
+        assertTrue(result.hasNotPendingEntryOfType(AUTHORIZATION));
+        assertFalse(result.hasPendingEntryOfType(CAPTURE));
+        assertFalse(result.hasEntryOfType(SETTLED));
+        assertEquals(2, result.getEntryCount(AUTHORIZATION));
+        assertEquals(1, result.getPendingEntryCount(AUTHORIZATION));
+        assertEquals(1, result.getAcceptedEntryCount(AUTHORIZATION));
+    }
+
+    @Test
+    public void areAllEntriesAcceptedForTypeShouldBeFalseWhenAnEntryOfTheTypeIsNotAccepted() {
+        final PaymentTransactionState result = PaymentTransactionState.of(paymentTransactionModelMock);
+
+        assertFalse(result.areAllEntriesAcceptedForType(AUTHORIZATION));
+        assertTrue(result.areAllEntriesAcceptedForType(CAPTURE));
+        assertTrue(result.areAllEntriesAcceptedForType(SETTLED));
+    }
+
+    @Test
+    public void ofShouldSumTheAmountsOfTheEntriesOfEachType() {
+        when(paymentTransactionModelMock.getCurrency()).thenReturn(currencyModelMock);
+        when(currencyModelMock.getDigits()).thenReturn(3);
+
+        final PaymentTransactionState result = PaymentTransactionState.of(paymentTransactionModelMock);
+
+        assertEquals(0, new BigDecimal("12.75").compareTo(result.getAmount(AUTHORIZATION)));
+        assertEquals(BigDecimal.ZERO, result.getAmount(SETTLED));
+        assertTrue(result.hasEntryWithoutAmountOfType(CAPTURE));
+        assertFalse(result.hasEntryWithoutAmountOfType(AUTHORIZATION));
+    }
+
+    @Test
+    public void ofShouldNotRoundAmountsWithMoreDecimalsThanTheCurrency() {
+        when(paymentTransactionModelMock.getCurrency()).thenReturn(currencyModelMock);
+        when(currencyModelMock.getIsocode()).thenReturn("JPY");
+        when(currencyModelMock.getDigits()).thenReturn(2);
+        when(rejectedPendingAuthorisationEntryMock.getAmount()).thenReturn(new BigDecimal("2.255"));
+
+        final PaymentTransactionState result = PaymentTransactionState.of(paymentTransactionModelMock);
+
+        assertEquals(0, new BigDecimal("12.755").compareTo(result.getAmount(AUTHORIZATION)));
+    }
+
+    @Test
+    public void ofShouldSumAmountsNotFittingInALongExactly() {
+        final BigDecimal largeAmount = BigDecimal.valueOf(Long.MAX_VALUE);
+        when(acceptedAuthorisationEntryMock.getAmount()).thenReturn(largeAmount);
+
+        final PaymentTransactionState result = PaymentTransactionState.of(paymentTransactionModelMock);
+
+        assertEquals(0, largeAmount.add(new BigDecimal("2.25")).compareTo(result.getAmount(AUTHORIZATION)));
+        assertEquals(BigDecimal.ZERO, result.getAmount(SETTLED));
+    }
+}
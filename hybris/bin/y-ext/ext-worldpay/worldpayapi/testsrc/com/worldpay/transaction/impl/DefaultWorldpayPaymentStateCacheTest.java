@@ -0,0 +1,150 @@
+package com.worldpay.transaction.impl;
+
+import com.worldpay.transaction.OrderPaymentState;
+import com.worldpay.transaction.WorldpayPaymentStateCache;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.OrderModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.configuration.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static com.worldpay.transaction.impl.DefaultWorldpayPaymentStateCache.WORLDPAY_PAYMENT_STATE_CACHE_ENABLED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayPaymentStateCacheTest {
+
+    private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
+
+    @InjectMocks
+    private DefaultWorldpayPaymentStateCache testObj;
+
+    @Mock
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private Configuration configurationMock;
+    @Mock
+    private OrderModel orderModelMock;
+    @Mock
+    private PaymentTransactionModel paymentTransactionModelMock;
+
+    @Before
+    public void setUp() {
+        when(configurationServiceMock.getConfiguration()).thenReturn(configurationMock);
+        when(configurationMock.getBoolean(WORLDPAY_PAYMENT_STATE_CACHE_ENABLED, true)).thenReturn(true);
+        when(orderModelMock.getPk()).thenReturn(PK.fromLong(1L));
+        when(orderModelMock.getPaymentTransactions()).thenReturn(Collections.singletonList(paymentTransactionModelMock));
+        when(paymentTransactionModelMock.getRequestId()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(paymentTransactionModelMock.getEntries()).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void getOrderPaymentStateShouldReturnNullWhenNoRunIsOpen() {
+        final OrderPaymentState result = testObj.getOrderPaymentState(orderModelMock);
+
+        assertNull(result);
+    }
+
+    @Test
+    public void getOrderPaymentStateShouldReadThePaymentTransactionsOncePerRun() {
+        final OrderPaymentState first;
+        final OrderPaymentState second;
+        try (WorldpayPaymentStateCache.Run ignored = testObj.openRun()) {
+            first = testObj.getOrderPaymentState(orderModelMock);
+            second = testObj.getOrderPaymentState(orderModelMock);
+        }
+
+        assertNotNull(first.getPaymentTransactionState(WORLDPAY_ORDER_CODE));
+        assertSame(first, second);
+        verify(orderModelMock).getPaymentTransactions();
+        assertEquals(1, testObj.getHits());
+        assertEquals(1, testObj.getMisses());
+    }
+
+    @Test
+    public void getOrderPaymentStateShouldReadThePaymentTransactionsAgainAfterInvalidation() {
+        try (WorldpayPaymentStateCache.Run ignored = testObj.openRun()) {
+            final OrderPaymentState first = testObj.getOrderPaymentState(orderModelMock);
+            testObj.invalidate(orderModelMock);
+            final OrderPaymentState second = testObj.getOrderPaymentState(orderModelMock);
+
+            assertNotSame(first, second);
+        }
+
+        verify(orderModelMock, times(2)).getPaymentTransactions();
+        assertEquals(1, testObj.getInvalidations());
+    }
+
+    @Test
+    public void getOrderPaymentStateShouldReadThePaymentTransactionsAgainAfterInvalidationOnAnotherThread() throws InterruptedException {
+        try (WorldpayPaymentStateCache.Run ignored = testObj.openRun()) {
+            final OrderPaymentState first = testObj.getOrderPaymentState(orderModelMock);
+            final Thread otherThread = new Thread(() -> testObj.invalidate(orderModelMock));
+            otherThread.start();
+            otherThread.join();
+            final OrderPaymentState second = testObj.getOrderPaymentState(orderModelMock);
+
+            assertNotSame(first, second);
+            assertSame(second, testObj.getOrderPaymentState(orderModelMock));
+        }
+
+        verify(orderModelMock, times(2)).getPaymentTransactions();
+        assertEquals(1, testObj.getInvalidations());
+    }
+
+    @Test
+    public void getOrderPaymentStateShouldReadThePaymentTransactionsAgainAfterEveryOrderIsInvalidated() throws InterruptedException {
+        try (WorldpayPaymentStateCache.Run ignored = testObj.openRun()) {
+            final OrderPaymentState first = testObj.getOrderPaymentState(orderModelMock);
+            final Thread otherThread = new Thread(testObj::invalidateAll);
+            otherThread.start();
+            otherThread.join();
+            final OrderPaymentState second = testObj.getOrderPaymentState(orderModelMock);
+
+            assertNotSame(first, second);
+            assertSame(second, testObj.getOrderPaymentState(orderModelMock));
+        }
+
+        verify(orderModelMock, times(2)).getPaymentTransactions();
+        assertEquals(1, testObj.getInvalidations());
+    }
+
+    @Test
+    public void nestedRunShouldJoinTheOuterRun() {
+        try (WorldpayPaymentStateCache.Run ignored = testObj.openRun()) {
+            final OrderPaymentState first = testObj.getOrderPaymentState(orderModelMock);
+            try (WorldpayPaymentStateCache.Run nested = testObj.openRun()) {
+                assertSame(first, testObj.getOrderPaymentState(orderModelMock));
+            }
+            assertSame(first, testObj.getOrderPaymentState(orderModelMock));
+        }
+
+        assertNull(testObj.getOrderPaymentState(orderModelMock));
+    }
+
+    @Test
+    public void getOrderPaymentStateShouldReturnNullWhenTheCacheIsDisabled() {
+        when(configurationMock.getBoolean(WORLDPAY_PAYMENT_STATE_CACHE_ENABLED, true)).thenReturn(false);
+
+        try (WorldpayPaymentStateCache.Run ignored = testObj.openRun()) {
+            assertNull(testObj.getOrderPaymentState(orderModelMock));
+        }
+    }
+}
@@ -9,6 +9,9 @@ import com.worldpay.service.model.PaymentReply;
 import com.worldpay.service.model.RiskScore;
 import com.worldpay.service.notification.OrderNotificationMessage;
 import com.worldpay.transaction.EntryCodeStrategy;
+import com.worldpay.transaction.OrderPaymentState;
+import com.worldpay.transaction.PaymentTransactionState;
+import com.worldpay.transaction.WorldpayPaymentStateCache;
 import de.hybris.bootstrap.annotations.UnitTest;
 import de.hybris.platform.commerceservices.service.data.CommerceCheckoutParameter;
 import de.hybris.platform.converters.Populator;
@@ -50,6 +53,7 @@ import static de.hybris.platform.payment.enums.PaymentTransactionType.AUTHORIZAT
 import static de.hybris.platform.payment.enums.PaymentTransactionType.CAPTURE;
 import static de.hybris.platform.payment.enums.PaymentTransactionType.SETTLED;
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -131,6 +135,12 @@ public class DefaultWorldpayPaymentTransactionServiceTest {
     private ConfigurationService configurationServiceMock;
     @Mock
     private Configuration configurationMock;
+    @Mock
+    private WorldpayPaymentStateCache worldpayPaymentStateCacheMock;
+    @Mock
+    private OrderPaymentState orderPaymentStateMock;
+    @Mock
+    private PaymentTransactionState paymentTransactionStateMock;
 
     @Before
     public void setUp() {
@@ -289,6 +299,27 @@ public class DefaultWorldpayPaymentTransactionServiceTest {
         assertFalse(result);
     }
 
+    @Test
+    public void isPreviousTransactionCompletedShouldUseTheCachedPaymentStateWhenARunIsOpen() {
+        when(worldpayPaymentStateCacheMock.getOrderPaymentState(orderModelMock)).thenReturn(orderPaymentStateMock);
+        when(orderPaymentStateMock.getPaymentTransactionState(WORLDPAY_ORDER_CODE)).thenReturn(paymentTransactionStateMock);
+        when(paymentTransactionStateMock.hasNotPendingEntryOfType(AUTHORIZATION)).thenReturn(true);
+
+        final boolean result = testObj.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock);
+
+        assertTrue(result);
+        verify(orderModelMock, never()).getPaymentTransactions();
+    }
+
+    @Test
+    public void isPreviousTransactionCompletedShouldReturnFalseWhenTheCachedPaymentStateHasNoTransaction() {
+        when(worldpayPaymentStateCacheMock.getOrderPaymentState(orderModelMock)).thenReturn(orderPaymentStateMock);
+
+        final boolean result = testObj.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock);
+
+        assertFalse(result);
+    }
+
     @Test
     public void whenTransactionIsNonDependantOnAPreviousOneThenReturnTrue() {
         when(paymentTransactionModelMock.getRequestId()).thenReturn(WORLDPAY_ORDER_CODE);
@@ -361,6 +392,24 @@ public class DefaultWorldpayPaymentTransactionServiceTest {
         verify(worldpayPaymentTransactionDaoMock).findPaymentTransactionByRequestId(WORLDPAY_ORDER_CODE);
     }
 
+    @Test
+    public void getPaymentTransactionsFromCodesShouldMapUniqueTransactionsAndLeaveOutAmbiguousCodes() {
+        final String notFoundCode = "notFoundCode";
+        final String ambiguousCode = "ambiguousCode";
+        when(paymentTransactionModelMock.getRequestId()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(notApmOpenPaymentTransactionModelMock.getRequestId()).thenReturn(ambiguousCode);
+        when(apmOpenPaymentTransactionModelMock.getRequestId()).thenReturn(ambiguousCode);
+        final List<String> codes = asList(WORLDPAY_ORDER_CODE, notFoundCode, ambiguousCode);
+        when(worldpayPaymentTransactionDaoMock.findPaymentTransactionsByRequestIds(codes)).thenReturn(asList(paymentTransactionModelMock, notApmOpenPaymentTransactionModelMock, apmOpenPaymentTransactionModelMock));
+
+        final Map<String, PaymentTransactionModel> result = testObj.getPaymentTransactionsFromCodes(codes);
+
+        assertEquals(paymentTransactionModelMock, result.get(WORLDPAY_ORDER_CODE));
+        assertTrue(result.containsKey(notFoundCode));
+        assertNull(result.get(notFoundCode));
+        assertFalse(result.containsKey(ambiguousCode));
+    }
+
     @Test
     public void shouldCreatePaymentTransaction() {
         testObj.createPaymentTransaction(true, MERCHANT_CODE, commerceCheckoutParameterMock);
@@ -415,6 +464,18 @@ public class DefaultWorldpayPaymentTransactionServiceTest {
         assertFalse(result.contains(authorisedAndAcceptedAndNotPendingEntryMock));
     }
 
+    @Test
+    public void shouldNotReadTheEntriesWhenTheCachedPaymentStateHasNoPendingEntries() {
+        when(paymentTransactionModelMock.getOrder()).thenReturn(orderModelMock);
+        when(worldpayPaymentStateCacheMock.getOrderPaymentState(orderModelMock)).thenReturn(orderPaymentStateMock);
+        when(orderPaymentStateMock.getPaymentTransactionState(paymentTransactionModelMock)).thenReturn(paymentTransactionStateMock);
+
+        final List<PaymentTransactionEntryModel> result = testObj.getPendingPaymentTransactionEntriesForType(paymentTransactionModelMock, AUTHORIZATION);
+
+        assertTrue(result.isEmpty());
+        verify(paymentTransactionModelMock, never()).getEntries();
+    }
+
     @Test
     public void shouldReturnNonPendingEntries() {
         when(paymentTransactionModelMock.getEntries()).thenReturn(Arrays.asList(authorisedAndAcceptedAndPendingEntryMock, authorisedAndAcceptedAndNotPendingEntryMock));
@@ -0,0 +1,107 @@
+package com.worldpay.transaction.impl;
+
+import com.worldpay.transaction.WorldpayPaymentStateCache;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.order.OrderModel;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.tx.AfterSaveEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class WorldpayPaymentStateCacheAfterSaveListenerTest {
+
+    private static final int PAYMENT_TRANSACTION_TYPE_CODE = 4000;
+    private static final int PAYMENT_TRANSACTION_ENTRY_TYPE_CODE = 4001;
+    private static final int PRODUCT_TYPE_CODE = 1;
+
+    @Spy
+    @InjectMocks
+    private WorldpayPaymentStateCacheAfterSaveListener testObj;
+
+    @Mock
+    private WorldpayPaymentStateCache worldpayPaymentStateCacheMock;
+    @Mock
+    private ModelService modelServiceMock;
+    @Mock
+    private TypeService typeServiceMock;
+    @Mock
+    private AfterSaveEvent afterSaveEventMock;
+    @Mock
+    private PaymentTransactionModel paymentTransactionModelMock;
+    @Mock
+    private PaymentTransactionEntryModel paymentTransactionEntryModelMock;
+    @Mock
+    private OrderModel orderModelMock;
+
+    @Before
+    public void setUp() {
+        doReturn(new HashSet<>(Arrays.asList(PAYMENT_TRANSACTION_TYPE_CODE, PAYMENT_TRANSACTION_ENTRY_TYPE_CODE))).when(testObj).getPaymentTypeCodes();
+        when(paymentTransactionEntryModelMock.getPaymentTransaction()).thenReturn(paymentTransactionModelMock);
+        when(paymentTransactionModelMock.getOrder()).thenReturn(orderModelMock);
+        when(afterSaveEventMock.getType()).thenReturn(AfterSaveEvent.UPDATE);
+    }
+
+    @Test
+    public void afterSaveShouldInvalidateTheOrderOfTheCommittedPaymentTransactionEntry() {
+        final PK pk = PK.createFixedCounterPK(PAYMENT_TRANSACTION_ENTRY_TYPE_CODE, 1L);
+        when(afterSaveEventMock.getPk()).thenReturn(pk);
+        when(modelServiceMock.get(pk)).thenReturn(paymentTransactionEntryModelMock);
+
+        testObj.afterSave(Collections.singletonList(afterSaveEventMock));
+
+        verify(worldpayPaymentStateCacheMock).invalidate(orderModelMock);
+        verify(worldpayPaymentStateCacheMock, never()).invalidateAll();
+    }
+
+    @Test
+    public void afterSaveShouldInvalidateEveryOrderWhenAPaymentTransactionIsRemoved() {
+        when(afterSaveEventMock.getPk()).thenReturn(PK.createFixedCounterPK(PAYMENT_TRANSACTION_TYPE_CODE, 1L));
+        when(afterSaveEventMock.getType()).thenReturn(AfterSaveEvent.REMOVE);
+
+        testObj.afterSave(Collections.singletonList(afterSaveEventMock));
+
+        verify(worldpayPaymentStateCacheMock).invalidateAll();
+        verify(modelServiceMock, never()).get(afterSaveEventMock.getPk());
+    }
+
+    @Test
+    public void afterSaveShouldInvalidateEveryOrderWhenTheItemCannotBeRead() {
+        final PK pk = PK.createFixedCounterPK(PAYMENT_TRANSACTION_TYPE_CODE, 1L);
+        when(afterSaveEventMock.getPk()).thenReturn(pk);
+        when(modelServiceMock.get(pk)).thenThrow(new IllegalStateException("no session"));
+
+        testObj.afterSave(Collections.singletonList(afterSaveEventMock));
+
+        verify(worldpayPaymentStateCacheMock).invalidateAll();
+    }
+
+    @Test
+    public void afterSaveShouldIgnoreOtherItems() {
+        when(afterSaveEventMock.getPk()).thenReturn(PK.createFixedCounterPK(PRODUCT_TYPE_CODE, 1L));
+
+        testObj.afterSave(Collections.singletonList(afterSaveEventMock));
+
+        verifyZeroInteractions(worldpayPaymentStateCacheMock, modelServiceMock);
+    }
+}
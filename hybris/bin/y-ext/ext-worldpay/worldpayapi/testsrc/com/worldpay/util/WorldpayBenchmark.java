@@ -0,0 +1,79 @@
+package com.worldpay.util;
+
+import java.lang.management.ManagementFactory;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Measures the throughput and allocation rate of an operation for the performance tests.
+ * <p>
+ * The operation is run a number of times to warm up, then measured on the current thread. The allocation rate is read from the
+ * {@link com.sun.management.ThreadMXBean} and is stable enough to be asserted on. The throughput depends on the machine and its
+ * load, so it is only meant to be logged.
+ * </p>
+ */
+public final class WorldpayBenchmark {
+
+    private WorldpayBenchmark() {
+    }
+
+    /**
+     * Runs the operation {@code warmUpIterations} times, then measures {@code measuredIterations} runs
+     *
+     * @param warmUpIterations   the number of runs before measuring
+     * @param measuredIterations the number of runs measured
+     * @param operation          the operation
+     * @return the throughput and allocation rate of the measured runs
+     * @throws Exception when the operation fails
+     */
+    public static Measurement measure(final int warmUpIterations, final int measuredIterations, final Operation operation) throws Exception {
+        for (int i = 0; i < warmUpIterations; i++) {
+            operation.run();
+        }
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < measuredIterations; i++) {
+            operation.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        return new Measurement(measuredIterations * 1_000_000_000d / elapsed, allocated / measuredIterations);
+    }
+
+    /**
+     * The operation measured
+     */
+    @FunctionalInterface
+    public interface Operation {
+
+        void run() throws Exception;
+    }
+
+    /**
+     * Throughput and allocation rate of an operation
+     */
+    public static class Measurement {
+        private final double operationsPerSecond;
+        private final long bytesPerOperation;
+
+        public Measurement(final double operationsPerSecond, final long bytesPerOperation) {
+            this.operationsPerSecond = operationsPerSecond;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        public double getOperationsPerSecond() {
+            return operationsPerSecond;
+        }
+
+        public long getBytesPerOperation() {
+            return bytesPerOperation;
+        }
+
+        @Override
+        public String toString() {
+            return format("{0,number,#} ops/s, {1} bytes/op", operationsPerSecond, bytesPerOperation);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.worldpay.util;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@UnitTest
+public class WorldpayLatencyHistogramTest {
+
+    private static final long[] BUCKETS = {10, 100, 1000};
+
+    private WorldpayLatencyHistogram testObj = new WorldpayLatencyHistogram("test", BUCKETS);
+
+    @Test
+    public void recordShouldCountLatenciesInTheirBuckets() {
+        testObj.record(-5);
+        testObj.record(10);
+        testObj.record(11);
+        testObj.record(1000);
+        testObj.record(5000);
+
+        assertArrayEquals(new long[]{2, 1, 1, 1}, testObj.getBucketCounts());
+        assertEquals(5, testObj.getCount());
+        assertEquals(5000, testObj.getMaxMillis());
+    }
+
+    @Test
+    public void getPercentileMillisShouldReturnTheUpperBoundOfTheBucket() {
+        for (int i = 0; i < 90; i++) {
+            testObj.record(5);
+        }
+        for (int i = 0; i < 10; i++) {
+            testObj.record(500);
+        }
+
+        assertEquals(10, testObj.getPercentileMillis(50));
+        assertEquals(10, testObj.getPercentileMillis(90));
+        assertEquals(500, testObj.getPercentileMillis(95));
+    }
+
+    @Test
+    public void getPercentileMillisShouldNotExceedTheMaximum() {
+        testObj.record(3);
+
+        assertEquals(3, testObj.getPercentileMillis(99));
+    }
+
+    @Test
+    public void getPercentileMillisShouldReturnTheMaximumAboveTheHighestBucket() {
+        testObj.record(2500);
+
+        assertEquals(2500, testObj.getPercentileMillis(99));
+    }
+
+    @Test
+    public void getMillisShouldConvertFromTheUnitOfTheHistogram() {
+        final WorldpayLatencyHistogram microsHistogram = new WorldpayLatencyHistogram("test", BUCKETS, TimeUnit.MICROSECONDS);
+        microsHistogram.record(50);
+        microsHistogram.record(2500);
+
+        assertEquals(100, microsHistogram.getPercentile(50));
+        assertEquals(2500, microsHistogram.getMax());
+        assertEquals(2, microsHistogram.getMaxMillis());
+        assertEquals(1.275d, microsHistogram.getAverageMillis(), 0.0001d);
+    }
+
+    @Test
+    public void getPercentileMillisShouldBeZeroWhenEmpty() {
+        assertEquals(0, testObj.getPercentileMillis(99));
+        assertEquals(0d, testObj.getAverageMillis(), 0d);
+    }
+}
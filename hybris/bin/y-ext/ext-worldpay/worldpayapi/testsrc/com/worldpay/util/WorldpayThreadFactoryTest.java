@@ -0,0 +1,26 @@
+package com.worldpay.util;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@UnitTest
+public class WorldpayThreadFactoryTest {
+
+    private WorldpayThreadFactory testObj = new WorldpayThreadFactory(null, "worldpay-test");
+
+    @Test
+    public void newThreadShouldCreateNumberedDaemonThreads() {
+        final Thread first = testObj.newThread(() -> {
+        });
+        final Thread second = testObj.newThread(() -> {
+        });
+
+        assertEquals("worldpay-test-1", first.getName());
+        assertEquals("worldpay-test-2", second.getName());
+        assertTrue(first.isDaemon());
+        assertTrue(second.isDaemon());
+    }
+}
@@ -1,6 +1,7 @@
 package com.worldpay.core.services;
 
 import com.worldpay.service.notification.OrderNotificationMessage;
+import de.hybris.platform.payment.model.PaymentTransactionModel;
 
 
 /**
@@ -17,4 +18,13 @@ public interface OrderNotificationService {
      * @param orderNotificationMessage - The order notification message from worldpay.
      */
     void processOrderNotificationMessage(final OrderNotificationMessage orderNotificationMessage);
+
+    /**
+     * Processes the order notification message from worldpay for a payment transaction already read by the caller, as when a page of
+     * order modifications is processed and all their payment transactions were read with a single query.
+     *
+     * @param orderNotificationMessage - The order notification message from worldpay.
+     * @param paymentTransactionModel  - The payment transaction of the order whose Request Id is the order code of the message.
+     */
+    void processOrderNotificationMessage(final OrderNotificationMessage orderNotificationMessage, final PaymentTransactionModel paymentTransactionModel);
 }
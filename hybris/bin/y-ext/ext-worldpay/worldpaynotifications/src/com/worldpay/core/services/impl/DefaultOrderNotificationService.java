@@ -25,16 +25,31 @@ public class DefaultOrderNotificationService implements OrderNotificationService
 
     @Override
     public void processOrderNotificationMessage(final OrderNotificationMessage orderNotificationMessage) {
-        final AuthorisedStatus journalTypeCode = orderNotificationMessage.getJournalReply().getJournalType();
-        final OrderNotificationProcessorStrategy orderNotificationProcessorStrategy = journalTypeToNotificationProcessorStrategyMap.get(journalTypeCode);
+        final OrderNotificationProcessorStrategy orderNotificationProcessorStrategy = getOrderNotificationProcessorStrategy(orderNotificationMessage);
 
         if (orderNotificationProcessorStrategy != null) {
             final PaymentTransactionModel paymentTransactionModel = worldpayPaymentTransactionDao.findPaymentTransactionByRequestIdFromOrdersOnly(orderNotificationMessage.getOrderCode());
             orderNotificationProcessorStrategy.processNotificationMessage(paymentTransactionModel, orderNotificationMessage);
-        } else {
+        }
+    }
+
+    @Override
+    public void processOrderNotificationMessage(final OrderNotificationMessage orderNotificationMessage, final PaymentTransactionModel paymentTransactionModel) {
+        final OrderNotificationProcessorStrategy orderNotificationProcessorStrategy = getOrderNotificationProcessorStrategy(orderNotificationMessage);
+
+        if (orderNotificationProcessorStrategy != null) {
+            orderNotificationProcessorStrategy.processNotificationMessage(paymentTransactionModel, orderNotificationMessage);
+        }
+    }
+
+    protected OrderNotificationProcessorStrategy getOrderNotificationProcessorStrategy(final OrderNotificationMessage orderNotificationMessage) {
+        final AuthorisedStatus journalTypeCode = orderNotificationMessage.getJournalReply().getJournalType();
+        final OrderNotificationProcessorStrategy orderNotificationProcessorStrategy = journalTypeToNotificationProcessorStrategyMap.get(journalTypeCode);
+        if (orderNotificationProcessorStrategy == null) {
             LOG.warn(format("Could not find notification processor for journal type code [{0}]. " +
                     "It's either an unsupported journal type or there is a configuration problem.", journalTypeCode.name()));
         }
+        return orderNotificationProcessorStrategy;
     }
 
     @Required
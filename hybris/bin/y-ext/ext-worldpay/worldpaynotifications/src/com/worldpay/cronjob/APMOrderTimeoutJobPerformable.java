@@ -1,60 +1,277 @@
 package com.worldpay.cronjob;
 
+import com.google.common.collect.Lists;
 import com.worldpay.core.dao.WorldpayPaymentTransactionDao;
 import com.worldpay.transaction.WorldpayPaymentTransactionService;
+import com.worldpay.util.WorldpayThreadFactory;
+import com.worldpay.worldpaynotifications.model.APMOrderTimeoutCronJobModel;
 import de.hybris.platform.core.model.order.OrderModel;
 import de.hybris.platform.cronjob.enums.CronJobResult;
 import de.hybris.platform.cronjob.enums.CronJobStatus;
 import de.hybris.platform.cronjob.model.CronJobModel;
 import de.hybris.platform.orderprocessing.model.OrderProcessModel;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
+import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.processengine.BusinessProcessService;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.cronjob.AbstractJobPerformable;
 import de.hybris.platform.servicelayer.cronjob.PerformResult;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.user.UserService;
+import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
 import org.springframework.transaction.support.TransactionOperations;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static de.hybris.platform.payment.dto.TransactionStatus.REVIEW;
+import static java.text.MessageFormat.format;
 
 /**
  * The APM Order Timeout Job Performable that sets the Payment Transaction Entries status to REVIEW for all timed out pending orders with APM as the payment type
  * and awakens the order process of the orders.
+ * <p>
+ * The timed out transactions are read in pages of {@code worldpay.apm.timeout.page.size}, which are detached once processed.
+ * <p>
+ * With {@code worldpay.apm.timeout.batch.enabled} the pages are swept in batches: the entries of {@code worldpay.apm.timeout.batch.chunk.size}
+ * transactions are updated in a single database transaction, and the events of their order processes are triggered by up to
+ * {@code worldpay.apm.timeout.batch.event.concurrency} threads, all of them before the next page is read. A failing chunk or event is
+ * logged and counted but does not stop the run. When run by an {@link APMOrderTimeoutCronJobModel} the progress and throughput of the
+ * sweep are stored on the cronjob after every page.
+ * <p>
+ * The job is abortable in both modes: an abort request is honoured once the current page is processed.
  */
 public class APMOrderTimeoutJobPerformable extends AbstractJobPerformable {
 
     private static final Logger LOG = Logger.getLogger(APMOrderTimeoutJobPerformable.class);
 
+    protected static final String WORLDPAY_APM_TIMEOUT_PAGE_SIZE = "worldpay.apm.timeout.page.size";
+    protected static final String WORLDPAY_APM_TIMEOUT_BATCH_ENABLED = "worldpay.apm.timeout.batch.enabled";
+    protected static final String WORLDPAY_APM_TIMEOUT_BATCH_CHUNK_SIZE = "worldpay.apm.timeout.batch.chunk.size";
+    protected static final String WORLDPAY_APM_TIMEOUT_BATCH_EVENT_CONCURRENCY = "worldpay.apm.timeout.batch.event.concurrency";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int DEFAULT_CHUNK_SIZE = 20;
+    private static final int DEFAULT_EVENT_CONCURRENCY = 4;
+
     private WorldpayPaymentTransactionDao worldpayPaymentTransactionDao;
     private BusinessProcessService businessProcessService;
     private WorldpayPaymentTransactionService worldpayPaymentTransactionService;
     private TransactionOperations transactionTemplate;
+    private ConfigurationService configurationService;
+    private UserService userService;
 
     @Override
     public PerformResult perform(final CronJobModel cronJobModel) {
         LOG.debug("Executing Order Timeout cronjob for timed out pending payment transactions");
-        final List<PaymentTransactionModel> cancellablePendingAPMPaymentTransactions = worldpayPaymentTransactionDao.findCancellablePendingAPMPaymentTransactions();
-        CronJobResult cronJobResult = CronJobResult.SUCCESS;
-        for (PaymentTransactionModel paymentTransactionModel : cancellablePendingAPMPaymentTransactions) {
+        final Configuration configuration = configurationService.getConfiguration();
+        final int pageSize = Math.max(1, configuration.getInt(WORLDPAY_APM_TIMEOUT_PAGE_SIZE, DEFAULT_PAGE_SIZE));
+        if (configuration.getBoolean(WORLDPAY_APM_TIMEOUT_BATCH_ENABLED, false)) {
+            return sweep(cronJobModel, pageSize, Math.max(1, configuration.getInt(WORLDPAY_APM_TIMEOUT_BATCH_CHUNK_SIZE, DEFAULT_CHUNK_SIZE)),
+                    Math.max(1, configuration.getInt(WORLDPAY_APM_TIMEOUT_BATCH_EVENT_CONCURRENCY, DEFAULT_EVENT_CONCURRENCY)));
+        }
+        final AtomicBoolean aborted = new AtomicBoolean();
+        worldpayPaymentTransactionDao.processCancellablePendingAPMPaymentTransactions(pageSize, paymentTransactions -> {
+            paymentTransactions.forEach(this::timeOutPaymentTransaction);
+            aborted.set(clearAbortRequestedIfNeeded(cronJobModel));
+            return !aborted.get();
+        });
+        if (aborted.get()) {
+            LOG.info("APM order timeout job aborted");
+            return new PerformResult(CronJobResult.UNKNOWN, CronJobStatus.ABORTED);
+        }
+        return new PerformResult(CronJobResult.SUCCESS, CronJobStatus.FINISHED);
+    }
+
+    @Override
+    public boolean isAbortable() {
+        return true;
+    }
+
+    protected void timeOutPaymentTransaction(final PaymentTransactionModel paymentTransactionModel) {
+        transactionTemplate.execute(transactionStatus -> {
+            worldpayPaymentTransactionService.updateEntriesStatus(paymentTransactionModel.getEntries(), REVIEW.name());
+            modelService.save(paymentTransactionModel);
+            return null;
+        });
+        final OrderModel orderModel = (OrderModel) paymentTransactionModel.getOrder();
+        final Collection<OrderProcessModel> orderProcesses = orderModel.getOrderProcess();
+        for (final OrderProcessModel orderProcess : orderProcesses) {
+            final String eventName = orderProcess.getCode() + "_" + PaymentTransactionType.AUTHORIZATION;
+            LOG.info(MessageFormat.format("Order with code [{0}] timed out. Attempting to trigger an event with code [{1}]", orderModel.getCode(), eventName));
+            businessProcessService.triggerEvent(eventName);
+        }
+    }
+
+    protected PerformResult sweep(final CronJobModel cronJobModel, final int pageSize, final int chunkSize, final int eventConcurrency) {
+        if (!(cronJobModel instanceof APMOrderTimeoutCronJobModel)) {
+            LOG.warn(format("Cronjob [{0}] is not an APMOrderTimeoutCronJob, the progress of the sweep is not stored. Import the "
+                    + "projectdataAPMOrderTimeoutCronjob.impex of worldpaynotifications to migrate it", cronJobModel.getCode()));
+        }
+        final SweepRun sweepRun = new SweepRun(eventConcurrency > 1 ? createEventExecutor(eventConcurrency) : null);
+        final AtomicBoolean aborted = new AtomicBoolean();
+        try {
+            worldpayPaymentTransactionDao.processCancellablePendingAPMPaymentTransactions(pageSize, paymentTransactions -> {
+                sweepPage(paymentTransactions, chunkSize, sweepRun);
+                if (cronJobModel instanceof APMOrderTimeoutCronJobModel) {
+                    saveProgress((APMOrderTimeoutCronJobModel) cronJobModel, sweepRun);
+                }
+                aborted.set(clearAbortRequestedIfNeeded(cronJobModel));
+                return !aborted.get();
+            });
+        } finally {
+            sweepRun.shutdown();
+        }
+
+        if (aborted.get()) {
+            LOG.info(format("APM order timeout sweep aborted after {0} timed out transactions", sweepRun.getTimedOutTransactions()));
+            return new PerformResult(CronJobResult.UNKNOWN, CronJobStatus.ABORTED);
+        }
+        LOG.info(format("APM order timeout sweep finished: {0} timed out transactions, {1} events triggered, {2} failures, {3,number,#.##} transactions/s",
+                sweepRun.getTimedOutTransactions(), sweepRun.getEventsTriggered(), sweepRun.getFailures(), sweepRun.getTransactionsPerSecond()));
+        return new PerformResult(sweepRun.getFailures() == 0 ? CronJobResult.SUCCESS : CronJobResult.FAILURE, CronJobStatus.FINISHED);
+    }
+
+    /**
+     * Updates the entries of the page chunk by chunk, then triggers the events of the chunks that were updated and waits for all of them,
+     * so the page can be detached.
+     */
+    protected void sweepPage(final List<PaymentTransactionModel> paymentTransactions, final int chunkSize, final SweepRun sweepRun) {
+        final List<CompletableFuture<Void>> events = new ArrayList<>();
+        for (final List<PaymentTransactionModel> chunk : Lists.partition(paymentTransactions, chunkSize)) {
+            if (timeOutChunk(chunk, sweepRun)) {
+                for (final PaymentTransactionModel paymentTransactionModel : chunk) {
+                    final OrderModel orderModel = (OrderModel) paymentTransactionModel.getOrder();
+                    for (final OrderProcessModel orderProcess : orderModel.getOrderProcess()) {
+                        final String eventName = orderProcess.getCode() + "_" + PaymentTransactionType.AUTHORIZATION;
+                        LOG.info(format("Order with code [{0}] timed out. Attempting to trigger an event with code [{1}]", orderModel.getCode(), eventName));
+                        events.add(sweepRun.submit(() -> triggerEvent(eventName, sweepRun)));
+                    }
+                }
+            }
+        }
+        CompletableFuture.allOf(events.toArray(new CompletableFuture[events.size()])).join();
+    }
+
+    protected boolean timeOutChunk(final List<PaymentTransactionModel> chunk, final SweepRun sweepRun) {
+        try {
             transactionTemplate.execute(transactionStatus -> {
-                worldpayPaymentTransactionService.updateEntriesStatus(paymentTransactionModel.getEntries(), REVIEW.name());
-                modelService.save(paymentTransactionModel);
+                final List<PaymentTransactionEntryModel> entries = new ArrayList<>();
+                chunk.forEach(paymentTransactionModel -> entries.addAll(paymentTransactionModel.getEntries()));
+                worldpayPaymentTransactionService.updateEntriesStatus(entries, REVIEW.name());
+                modelService.saveAll(chunk);
                 return null;
             });
-            final OrderModel orderModel = (OrderModel) paymentTransactionModel.getOrder();
-            final Collection<OrderProcessModel> orderProcesses = orderModel.getOrderProcess();
-            for (final OrderProcessModel orderProcess : orderProcesses) {
-                final String eventName = orderProcess.getCode() + "_" + PaymentTransactionType.AUTHORIZATION;
-                LOG.info(MessageFormat.format("Order with code [{0}] timed out. Attempting to trigger an event with code [{1}]", orderModel.getCode(), eventName));
-                businessProcessService.triggerEvent(eventName);
+            sweepRun.recordTimedOutTransactions(chunk.size());
+            return true;
+        } catch (final RuntimeException e) {
+            LOG.error(format("Error setting the entries of [{0}] timed out payment transactions starting at worldpayOrderCode [{1}] to REVIEW",
+                    chunk.size(), chunk.get(0).getRequestId()), e);
+            sweepRun.recordFailures(chunk.size());
+            return false;
+        }
+    }
+
+    protected void triggerEvent(final String eventName, final SweepRun sweepRun) {
+        try {
+            sessionService.executeInLocalView(new SessionExecutionBody() {
+                @Override
+                public void executeWithoutResult() {
+                    businessProcessService.triggerEvent(eventName);
+                }
+            }, userService.getAdminUser());
+            sweepRun.recordEventTriggered();
+        } catch (final RuntimeException e) {
+            LOG.error(format("Error triggering the event with code [{0}]", eventName), e);
+            sweepRun.recordFailures(1);
+        }
+    }
+
+    protected void saveProgress(final APMOrderTimeoutCronJobModel cronJobModel, final SweepRun sweepRun) {
+        cronJobModel.setTimedOutTransactions(sweepRun.getTimedOutTransactions());
+        cronJobModel.setTimeoutEventsTriggered(sweepRun.getEventsTriggered());
+        cronJobModel.setTimeoutFailures(sweepRun.getFailures());
+        cronJobModel.setTimedOutTransactionsPerSecond(sweepRun.getTransactionsPerSecond());
+        modelService.save(cronJobModel);
+    }
+
+    /**
+     * Creates the pool triggering the events of a sweep. Threads are bound to the tenant of the job, so the process engine can be used.
+     */
+    protected ExecutorService createEventExecutor(final int concurrency) {
+        return Executors.newFixedThreadPool(concurrency, new WorldpayThreadFactory("worldpay-apm-timeout-event"));
+    }
+
+    /**
+     * State of a single sweep: the executor triggering the events and the counters reported on the cronjob.
+     */
+    protected static class SweepRun {
+
+        private final ExecutorService executor;
+        private final AtomicInteger timedOutTransactions = new AtomicInteger();
+        private final AtomicInteger eventsTriggered = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final long startTime = System.nanoTime();
+
+        protected SweepRun(final ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Runs the task on the executor of the sweep, or on the calling thread when the sweep is sequential.
+         */
+        protected CompletableFuture<Void> submit(final Runnable task) {
+            if (executor == null) {
+                task.run();
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.runAsync(task, executor);
+        }
+
+        protected void recordTimedOutTransactions(final int count) {
+            timedOutTransactions.addAndGet(count);
+        }
+
+        protected void recordEventTriggered() {
+            eventsTriggered.incrementAndGet();
+        }
+
+        protected void recordFailures(final int count) {
+            failures.addAndGet(count);
+        }
+
+        protected int getTimedOutTransactions() {
+            return timedOutTransactions.get();
+        }
+
+        protected int getEventsTriggered() {
+            return eventsTriggered.get();
+        }
+
+        protected int getFailures() {
+            return failures.get();
+        }
+
+        protected double getTransactionsPerSecond() {
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            return elapsedMillis == 0 ? 0d : getTimedOutTransactions() * 1000d / elapsedMillis;
+        }
+
+        protected void shutdown() {
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
-        return new PerformResult(cronJobResult, CronJobStatus.FINISHED);
     }
 
     @Required
@@ -76,5 +293,14 @@ public class APMOrderTimeoutJobPerformable extends AbstractJobPerformable {
     public void setTransactionTemplate(final TransactionOperations transactionTemplate) {
         this.transactionTemplate = transactionTemplate;
     }
-}
 
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setUserService(final UserService userService) {
+        this.userService = userService;
+    }
+}
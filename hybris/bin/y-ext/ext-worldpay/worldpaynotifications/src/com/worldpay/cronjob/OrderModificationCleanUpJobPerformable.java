@@ -4,23 +4,96 @@ import com.worldpay.strategies.WorldpayOrderModificationCleanUpStrategy;
 import com.worldpay.worldpaynotifications.model.CleanUpProcessedOrderModificationsCronJobModel;
 import de.hybris.platform.cronjob.enums.CronJobResult;
 import de.hybris.platform.cronjob.enums.CronJobStatus;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.cronjob.AbstractJobPerformable;
 import de.hybris.platform.servicelayer.cronjob.PerformResult;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+
 /**
  * The Order Modification Clean Up Job Performable that cleans up processed order modifications after a certain amount of time.
+ * <p>
+ * When {@code worldpay.ordermodification.cleanup.bulk.enabled} is true, the order modifications are deleted in chunks of PKs by
+ * {@link WorldpayOrderModificationCleanUpStrategy#doBulkCleanUp(int, long, com.worldpay.strategies.OrderModificationPurgeProgressListener)}.
+ * The PK of the last deleted chunk is saved on the cronjob, so an aborted or failed run is resumed from there by the next one.
  */
 public class OrderModificationCleanUpJobPerformable extends AbstractJobPerformable<CleanUpProcessedOrderModificationsCronJobModel> {
 
+    protected static final String WORLDPAY_ORDERMODIFICATION_CLEANUP_BULK_ENABLED = "worldpay.ordermodification.cleanup.bulk.enabled";
+
+    private static final Logger LOG = Logger.getLogger(OrderModificationCleanUpJobPerformable.class);
+
     private WorldpayOrderModificationCleanUpStrategy worldpayOrderModificationCleanUpStrategy;
+    private ConfigurationService configurationService;
 
     @Override
     public PerformResult perform(final CleanUpProcessedOrderModificationsCronJobModel cleanUpOrderModificationsCronJobModel) {
-        getWorldpayOrderModificationCleanUpStrategy().doCleanUp(cleanUpOrderModificationsCronJobModel.getDaysToWaitBeforeDeletion());
+        if (!configurationService.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_CLEANUP_BULK_ENABLED, false)) {
+            getWorldpayOrderModificationCleanUpStrategy().doCleanUp(cleanUpOrderModificationsCronJobModel.getDaysToWaitBeforeDeletion());
+            return new PerformResult(CronJobResult.SUCCESS, CronJobStatus.FINISHED);
+        }
+        return performBulkCleanUp(cleanUpOrderModificationsCronJobModel);
+    }
+
+    protected PerformResult performBulkCleanUp(final CleanUpProcessedOrderModificationsCronJobModel cronJobModel) {
+        final long checkpoint = getCheckpoint(cronJobModel);
+        final long startTime = System.nanoTime();
+        final AtomicLong purgedRows = new AtomicLong();
+        final AtomicBoolean aborted = new AtomicBoolean();
+        try {
+            getWorldpayOrderModificationCleanUpStrategy().doBulkCleanUp(cronJobModel.getDaysToWaitBeforeDeletion(), checkpoint, (lastPk, purged) -> {
+                saveProgress(cronJobModel, lastPk, purgedRows.addAndGet(purged), startTime);
+                aborted.set(clearAbortRequestedIfNeeded(cronJobModel));
+                return !aborted.get();
+            });
+        } catch (final RuntimeException e) {
+            LOG.error(format("Order modification clean up failed after deleting {0} order modifications, the next run resumes from the last deleted chunk", purgedRows.get()), e);
+            return new PerformResult(CronJobResult.ERROR, CronJobStatus.FINISHED);
+        }
+        if (aborted.get()) {
+            LOG.info(format("Order modification clean up aborted after deleting {0} order modifications", purgedRows.get()));
+            return new PerformResult(CronJobResult.UNKNOWN, CronJobStatus.ABORTED);
+        }
+        saveProgress(cronJobModel, null, purgedRows.get(), startTime);
+        LOG.info(format("Order modification clean up finished: {0} order modifications deleted, {1,number,#.##} rows/s",
+                purgedRows.get(), cronJobModel.getPurgeRowsPerSecond()));
         return new PerformResult(CronJobResult.SUCCESS, CronJobStatus.FINISHED);
     }
 
+    @Override
+    public boolean isAbortable() {
+        return true;
+    }
+
+    /**
+     * Returns the PK of the last order modification deleted by a previous run that did not finish, or 0 to delete them all
+     */
+    protected long getCheckpoint(final CleanUpProcessedOrderModificationsCronJobModel cronJobModel) {
+        final Long checkpoint = cronJobModel.getPurgeCheckpoint();
+        if (checkpoint != null) {
+            LOG.info(format("Resuming order modification clean up after PK [{0}]", String.valueOf(checkpoint)));
+            return checkpoint;
+        }
+        return 0L;
+    }
+
+    /**
+     * Saves the checkpoint and the throughput of the run on the cronjob. A null checkpoint marks the run as finished.
+     */
+    protected void saveProgress(final CleanUpProcessedOrderModificationsCronJobModel cronJobModel, final Long checkpoint, final long purgedRows, final long startTime) {
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        cronJobModel.setPurgeCheckpoint(checkpoint);
+        cronJobModel.setPurgedRows(purgedRows);
+        cronJobModel.setPurgeRowsPerSecond(elapsedMillis == 0 ? 0d : purgedRows * 1000d / elapsedMillis);
+        modelService.save(cronJobModel);
+    }
+
     public WorldpayOrderModificationCleanUpStrategy getWorldpayOrderModificationCleanUpStrategy() {
         return worldpayOrderModificationCleanUpStrategy;
     }
@@ -29,4 +102,9 @@ public class OrderModificationCleanUpJobPerformable extends AbstractJobPerformab
     public void setWorldpayOrderModificationCleanUpStrategy(WorldpayOrderModificationCleanUpStrategy worldpayOrderModificationCleanUpStrategy) {
         this.worldpayOrderModificationCleanUpStrategy = worldpayOrderModificationCleanUpStrategy;
     }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
 }
@@ -1,16 +1,35 @@
 package com.worldpay.cronjob;
 
+import com.worldpay.strategies.WorldpayOrderModificationPartitionLeaseStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
 import com.worldpay.strategies.WorldpayOrderModificationProcessStrategy;
+import com.worldpay.util.WorldpayThreadFactory;
 import com.worldpay.worldpaynotifications.model.OrderModificationCronJobModel;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
+import de.hybris.platform.core.model.user.UserModel;
 import de.hybris.platform.cronjob.enums.CronJobResult;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.cronjob.AbstractJobPerformable;
 import de.hybris.platform.servicelayer.cronjob.PerformResult;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.user.UserService;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static de.hybris.platform.cronjob.enums.CronJobResult.ERROR;
 import static de.hybris.platform.cronjob.enums.CronJobResult.SUCCESS;
@@ -18,10 +37,25 @@ import static de.hybris.platform.cronjob.enums.CronJobStatus.FINISHED;
 
 /**
  * The Order Modification Processor Job Performable that processes all pending order modifications for available payment transaction types.
+ * <p>
+ * When the order modifications are split into more than one partition by the {@link WorldpayOrderModificationPartitionStrategy}, every
+ * cluster node running the job starts {@code worldpay.ordermodification.partition.workers} workers. Each worker claims the lease of a
+ * partition, processes all the payment transaction types of that partition and releases it, until every partition was visited.
+ * Partitions leased by another node are skipped. The modifications of an order always fall in the same partition, so they are
+ * still processed in order.
  */
 public class OrderModificationProcessorJobPerformable extends AbstractJobPerformable<OrderModificationCronJobModel> {
 
+    protected static final String WORLDPAY_ORDERMODIFICATION_PARTITION_WORKERS = "worldpay.ordermodification.partition.workers";
+    protected static final String CLUSTER_ID = "cluster.id";
+
+    private static final int DEFAULT_WORKERS = 1;
+
     private WorldpayOrderModificationProcessStrategy worldpayOrderModificationProcessStrategy;
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy;
+    private WorldpayOrderModificationPartitionLeaseStrategy worldpayOrderModificationPartitionLeaseStrategy;
+    private ConfigurationService configurationService;
+    private UserService userService;
 
     private static final Logger LOG = Logger.getLogger(OrderModificationProcessorJobPerformable.class);
 
@@ -29,19 +63,143 @@ public class OrderModificationProcessorJobPerformable extends AbstractJobPerform
     public PerformResult perform(final OrderModificationCronJobModel cronJobModel) {
         final Set<PaymentTransactionType> typeOfPaymentTransactionToProcessSet = cronJobModel.getTypeOfPaymentTransactionToProcessSet();
         LOG.info(MessageFormat.format("Executing cronjob for payment transaction types: {0}", typeOfPaymentTransactionToProcessSet));
+        final int partitionCount = worldpayOrderModificationPartitionStrategy.getPartitionCount();
+        final boolean success;
+        if (partitionCount > 1) {
+            success = processPartitions(typeOfPaymentTransactionToProcessSet, partitionCount);
+        } else {
+            success = processAllOrderModifications(typeOfPaymentTransactionToProcessSet);
+        }
+        final CronJobResult result = success ? SUCCESS : ERROR;
+        LOG.info(MessageFormat.format("Cronjob finished with result {0}", result));
+        return new PerformResult(result, FINISHED);
+    }
+
+    protected boolean processAllOrderModifications(final Set<PaymentTransactionType> paymentTransactionTypes) {
         boolean success = true;
-        for (final PaymentTransactionType paymentTransactionType : typeOfPaymentTransactionToProcessSet) {
+        for (final PaymentTransactionType paymentTransactionType : paymentTransactionTypes) {
             if (!worldpayOrderModificationProcessStrategy.processOrderModificationMessages(paymentTransactionType)) {
                 success = false;
             }
         }
-        final CronJobResult result = success ? SUCCESS : ERROR;
-        LOG.info(MessageFormat.format("Cronjob finished with result {0}", result));
-        return new PerformResult(result, FINISHED);
+        return success;
+    }
+
+    /**
+     * Visits the partitions in a random order, so the nodes running the job at the same time do not compete for the same partitions.
+     */
+    protected boolean processPartitions(final Set<PaymentTransactionType> paymentTransactionTypes, final int partitionCount) {
+        final List<Integer> partitions = IntStream.range(0, partitionCount).boxed().collect(Collectors.toList());
+        Collections.shuffle(partitions);
+        final Queue<Integer> pendingPartitions = new ConcurrentLinkedQueue<>(partitions);
+        final int workers = Math.min(partitionCount, Math.max(1, configurationService.getConfiguration().getInt(WORLDPAY_ORDERMODIFICATION_PARTITION_WORKERS, DEFAULT_WORKERS)));
+        if (workers == 1) {
+            return processPendingPartitions(pendingPartitions, paymentTransactionTypes);
+        }
+
+        final UserModel user = userService.getCurrentUser();
+        final ExecutorService executor = createWorkerExecutor(workers);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                results.add(executor.submit(() -> (Boolean) sessionService.executeInLocalView(new SessionExecutionBody() {
+                    @Override
+                    public Object execute() {
+                        return processPendingPartitions(pendingPartitions, paymentTransactionTypes);
+                    }
+                }, user)));
+            }
+            boolean success = true;
+            for (final Future<Boolean> result : results) {
+                success &= getWorkerResult(result);
+            }
+            return success;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected boolean processPendingPartitions(final Queue<Integer> pendingPartitions, final Set<PaymentTransactionType> paymentTransactionTypes) {
+        boolean success = true;
+        Integer partition;
+        while ((partition = pendingPartitions.poll()) != null) {
+            success &= processPartition(partition, paymentTransactionTypes);
+        }
+        return success;
+    }
+
+    /**
+     * The lease is renewed before every payment transaction type, and processing stops if it was taken over by another owner.
+     */
+    protected boolean processPartition(final int partition, final Set<PaymentTransactionType> paymentTransactionTypes) {
+        final String owner = getLeaseOwner();
+        if (!worldpayOrderModificationPartitionLeaseStrategy.acquireLease(partition, owner)) {
+            LOG.debug(MessageFormat.format("Partition [{0}] is processed by another owner, skipping it", partition));
+            return true;
+        }
+        try {
+            final WorldpayOrderModificationPartitionModel partitionModel = worldpayOrderModificationPartitionLeaseStrategy.updateLag(partition);
+            LOG.info(MessageFormat.format("Processing partition [{0}] with [{1}] unprocessed order modifications, lag [{2}] ms",
+                    partition, partitionModel.getBacklog(), partitionModel.getLag()));
+            boolean success = true;
+            for (final PaymentTransactionType paymentTransactionType : paymentTransactionTypes) {
+                if (!worldpayOrderModificationPartitionLeaseStrategy.acquireLease(partition, owner)) {
+                    LOG.warn(MessageFormat.format("Lease on partition [{0}] was taken over by another owner, stopping", partition));
+                    return success;
+                }
+                if (!worldpayOrderModificationProcessStrategy.processOrderModificationMessages(paymentTransactionType, partition)) {
+                    success = false;
+                }
+            }
+            return success;
+        } finally {
+            worldpayOrderModificationPartitionLeaseStrategy.releaseLease(partition, owner);
+        }
+    }
+
+    protected String getLeaseOwner() {
+        return configurationService.getConfiguration().getString(CLUSTER_ID, "0") + "/" + Thread.currentThread().getName();
+    }
+
+    protected ExecutorService createWorkerExecutor(final int workers) {
+        return Executors.newFixedThreadPool(workers, new WorldpayThreadFactory("worldpay-ordermodification-worker"));
+    }
+
+    private boolean getWorkerResult(final Future<Boolean> result) {
+        try {
+            return result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while waiting for the order modification workers", e);
+            return false;
+        } catch (final ExecutionException e) {
+            LOG.error("Order modification worker failed", e.getCause());
+            return false;
+        }
     }
 
     @Required
     public void setWorldpayOrderModificationProcessStrategy(WorldpayOrderModificationProcessStrategy worldpayOrderModificationProcessStrategy) {
         this.worldpayOrderModificationProcessStrategy = worldpayOrderModificationProcessStrategy;
     }
+
+    @Required
+    public void setWorldpayOrderModificationPartitionStrategy(final WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy) {
+        this.worldpayOrderModificationPartitionStrategy = worldpayOrderModificationPartitionStrategy;
+    }
+
+    @Required
+    public void setWorldpayOrderModificationPartitionLeaseStrategy(final WorldpayOrderModificationPartitionLeaseStrategy worldpayOrderModificationPartitionLeaseStrategy) {
+        this.worldpayOrderModificationPartitionLeaseStrategy = worldpayOrderModificationPartitionLeaseStrategy;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setUserService(final UserService userService) {
+        this.userService = userService;
+    }
 }
@@ -1,5 +1,6 @@
 package com.worldpay.cronjob;
 
+import com.google.common.util.concurrent.RateLimiter;
 import com.worldpay.core.dao.WorldpayPaymentTransactionDao;
 import com.worldpay.core.services.OrderInquiryService;
 import com.worldpay.exception.WorldpayException;
@@ -7,6 +8,8 @@ import com.worldpay.merchant.WorldpayMerchantInfoService;
 import com.worldpay.service.model.MerchantInfo;
 import com.worldpay.service.response.OrderInquiryServiceResponse;
 import com.worldpay.strategies.PaymentTransactionRejectionStrategy;
+import com.worldpay.util.WorldpayThreadFactory;
+import com.worldpay.worldpaynotifications.model.PaymentInfoInquiryCronJobModel;
 import de.hybris.platform.core.model.order.payment.PaymentInfoModel;
 import de.hybris.platform.core.model.order.payment.WorldpayAPMPaymentInfoModel;
 import de.hybris.platform.cronjob.model.CronJobModel;
@@ -14,14 +17,27 @@ import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.cronjob.AbstractJobPerformable;
 import de.hybris.platform.servicelayer.cronjob.PerformResult;
+import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Required;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static de.hybris.platform.cronjob.enums.CronJobResult.FAILURE;
 import static de.hybris.platform.cronjob.enums.CronJobResult.SUCCESS;
+import static de.hybris.platform.cronjob.enums.CronJobResult.UNKNOWN;
+import static de.hybris.platform.cronjob.enums.CronJobStatus.ABORTED;
 import static de.hybris.platform.cronjob.enums.CronJobStatus.FINISHED;
 import static java.text.MessageFormat.format;
 
@@ -32,6 +48,14 @@ import static java.text.MessageFormat.format;
  * based on a timeout, we need to inquire if the PaymentInfo is for an APM.
  * Some APMs (such as eNets) are only Orders in Worldpay and do not become Payments. This means that the order inquiry service will not return a
  * Payment Type for that APM. In this situation we will reject all orders with no Payment Type after a configured timeout.
+ * <p>
+ * Up to {@code worldpay.paymentinfo.inquiry.concurrency} inquiries are sent at the same time, limited to
+ * {@code worldpay.paymentinfo.inquiry.merchant.rate.limit} per second and merchant. The worldpay order code and merchant of each
+ * transaction are read on the job thread and only those are passed to the inquiry threads, the responses are processed on the job thread.
+ * A failing transaction is logged and counted but does not stop the run. When run by a {@link PaymentInfoInquiryCronJobModel} the
+ * progress is checkpointed every {@code worldpay.paymentinfo.inquiry.checkpoint.interval} transactions, so an aborted or restarted run
+ * resumes after the last checkpoint, and the throughput and failures of the run are stored on the cronjob.
+ * Pending transactions are read in pages of the same size and detached once inquired, so memory use does not depend on the backlog.
  */
 public class PaymentInfoInquiryJobPerformable extends AbstractJobPerformable {
 
@@ -39,9 +63,15 @@ public class PaymentInfoInquiryJobPerformable extends AbstractJobPerformable {
 
     protected static final String WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT = "worldpay.APM.minutes.before.inquiring.timeout";
     protected static final String WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT = "worldpay.APM.days.before.stop.inquiring.timeout";
+    protected static final String WORLDPAY_PAYMENTINFO_INQUIRY_CONCURRENCY = "worldpay.paymentinfo.inquiry.concurrency";
+    protected static final String WORLDPAY_PAYMENTINFO_INQUIRY_MERCHANT_RATE_LIMIT = "worldpay.paymentinfo.inquiry.merchant.rate.limit";
+    protected static final String WORLDPAY_PAYMENTINFO_INQUIRY_CHECKPOINT_INTERVAL = "worldpay.paymentinfo.inquiry.checkpoint.interval";
 
     private static final int DEFAULT_WAIT_IN_MINUTES = 15;
     private static final int DEFAULT_BLANKET_TIME_IN_DAYS = 5;
+    private static final int DEFAULT_CONCURRENCY = 1;
+    private static final int DEFAULT_MERCHANT_RATE_LIMIT = 0;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 50;
 
     private PaymentTransactionRejectionStrategy paymentTransactionRejectionStrategy;
     private OrderInquiryService orderInquiryService;
@@ -52,33 +82,203 @@ public class PaymentInfoInquiryJobPerformable extends AbstractJobPerformable {
     @Override
     public PerformResult perform(final CronJobModel cronJobModel) {
         LOG.info("Executing timeout preparation cronjob for pending payment transaction");
-        final int waitTime = configurationService.getConfiguration().getInt(WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT, DEFAULT_WAIT_IN_MINUTES);
-        final int blanketTime = configurationService.getConfiguration().getInt(WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT, DEFAULT_BLANKET_TIME_IN_DAYS);
-        final List<PaymentTransactionModel> pendingPaymentTransactions = worldpayPaymentTransactionDao.findPendingPaymentTransactions(waitTime);
-        for (final PaymentTransactionModel paymentTransactionModel : pendingPaymentTransactions) {
+        final Configuration configuration = configurationService.getConfiguration();
+        final int waitTime = configuration.getInt(WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT, DEFAULT_WAIT_IN_MINUTES);
+        final int blanketTime = configuration.getInt(WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT, DEFAULT_BLANKET_TIME_IN_DAYS);
+        final int concurrency = Math.max(1, configuration.getInt(WORLDPAY_PAYMENTINFO_INQUIRY_CONCURRENCY, DEFAULT_CONCURRENCY));
+        final int merchantRateLimit = configuration.getInt(WORLDPAY_PAYMENTINFO_INQUIRY_MERCHANT_RATE_LIMIT, DEFAULT_MERCHANT_RATE_LIMIT);
+        final int checkpointInterval = Math.max(1, configuration.getInt(WORLDPAY_PAYMENTINFO_INQUIRY_CHECKPOINT_INTERVAL, DEFAULT_CHECKPOINT_INTERVAL));
+
+        final long checkpoint = getCheckpoint(cronJobModel);
+        final InquiryRun inquiryRun = new InquiryRun(concurrency > 1 ? createInquiryExecutor(concurrency) : null, merchantRateLimit);
+        final AtomicBoolean aborted = new AtomicBoolean();
+        try {
+            worldpayPaymentTransactionDao.processPendingPaymentTransactions(waitTime, checkpoint, checkpointInterval, page -> {
+                inquireChunk(page, blanketTime, inquiryRun);
+                if (cronJobModel instanceof PaymentInfoInquiryCronJobModel) {
+                    saveProgress((PaymentInfoInquiryCronJobModel) cronJobModel, page.get(page.size() - 1).getPk().getLongValue(), inquiryRun);
+                }
+                aborted.set(clearAbortRequestedIfNeeded(cronJobModel));
+                return !aborted.get();
+            });
+        } finally {
+            inquiryRun.shutdown();
+        }
+
+        if (aborted.get()) {
+            LOG.info(format("Payment info inquiry aborted after {0} inquiries, the next run resumes from the last checkpoint", inquiryRun.getInquiriesSent()));
+            return new PerformResult(UNKNOWN, ABORTED);
+        }
+        if (cronJobModel instanceof PaymentInfoInquiryCronJobModel) {
+            saveProgress((PaymentInfoInquiryCronJobModel) cronJobModel, null, inquiryRun);
+        }
+        LOG.info(format("Payment info inquiry finished: {0} inquiries sent, {1} failures, {2,number,#.##} inquiries/s",
+                inquiryRun.getInquiriesSent(), inquiryRun.getFailures(), inquiryRun.getInquiriesPerSecond()));
+        return new PerformResult(inquiryRun.getFailures() == 0 ? SUCCESS : FAILURE, FINISHED);
+    }
+
+    @Override
+    public boolean isAbortable() {
+        return true;
+    }
+
+    /**
+     * Pending transactions are read in PK order, so an unfinished run is resumed after the last transaction it checkpointed.
+     */
+    protected long getCheckpoint(final CronJobModel cronJobModel) {
+        if (cronJobModel instanceof PaymentInfoInquiryCronJobModel) {
+            final Long checkpoint = ((PaymentInfoInquiryCronJobModel) cronJobModel).getInquiryCheckpoint();
+            if (checkpoint != null) {
+                LOG.info(format("Resuming payment info inquiry after payment transaction with PK [{0}]", String.valueOf(checkpoint)));
+                return checkpoint;
+            }
+        } else {
+            LOG.warn(format("Cronjob [{0}] is not a PaymentInfoInquiryCronJob, the progress of the inquiries is not stored. Import the "
+                    + "projectdataPaymentInfoInquiryCronjob.impex of worldpaynotifications to migrate it", cronJobModel.getCode()));
+        }
+        return 0L;
+    }
+
+    protected void inquireChunk(final List<PaymentTransactionModel> paymentTransactions, final int blanketTime, final InquiryRun inquiryRun) {
+        final Map<PaymentTransactionModel, CompletableFuture<OrderInquiryServiceResponse>> inquiries = new LinkedHashMap<>();
+        for (final PaymentTransactionModel paymentTransactionModel : paymentTransactions) {
             if (paymentTransactionIsOverBlanketTime(paymentTransactionModel, blanketTime)) {
-                paymentTransactionRejectionStrategy.executeRejection(paymentTransactionModel);
+                rejectPaymentTransaction(paymentTransactionModel, inquiryRun);
             } else {
                 final String requestId = paymentTransactionModel.getRequestId();
                 try {
                     final MerchantInfo merchantConfig = worldpayMerchantInfoService.getMerchantInfoFromTransaction(paymentTransactionModel);
-                    final OrderInquiryServiceResponse orderInquiryServiceResponse = orderInquiryService.inquirePaymentTransaction(merchantConfig, paymentTransactionModel);
-                    LOG.info(format("Processing order Inquiry Service Response for pending payment transaction with worldpay order code [{0}]", requestId));
-                    orderInquiryService.processOrderInquiryServiceResponse(paymentTransactionModel, orderInquiryServiceResponse);
-                } catch (WorldpayException e) {
-                    LOG.error(format("Error receiving response from Worldpay for orderInquiry with worldpayOrderCode [{0}]. " +
-                            "Probably the service is down, or there is a problem with the merchant configuration", requestId), e);
-                    return new PerformResult(FAILURE, FINISHED);
+                    inquiries.put(paymentTransactionModel, inquiryRun.submit(merchantConfig, () -> orderInquiryService.inquirePaymentTransaction(merchantConfig, requestId)));
+                } catch (final WorldpayException e) {
+                    LOG.error(format("Unable to find the merchant configuration for orderInquiry with worldpayOrderCode [{0}]", requestId), e);
+                    inquiryRun.recordFailure();
                 }
             }
         }
-        return new PerformResult(SUCCESS, FINISHED);
+
+        for (final Map.Entry<PaymentTransactionModel, CompletableFuture<OrderInquiryServiceResponse>> inquiry : inquiries.entrySet()) {
+            processInquiry(inquiry.getKey(), inquiry.getValue(), inquiryRun);
+        }
+    }
+
+    protected void processInquiry(final PaymentTransactionModel paymentTransactionModel, final CompletableFuture<OrderInquiryServiceResponse> inquiry, final InquiryRun inquiryRun) {
+        final String requestId = paymentTransactionModel.getRequestId();
+        try {
+            final OrderInquiryServiceResponse orderInquiryServiceResponse = inquiry.get();
+            LOG.info(format("Processing order Inquiry Service Response for pending payment transaction with worldpay order code [{0}]", requestId));
+            orderInquiryService.processOrderInquiryServiceResponse(paymentTransactionModel, orderInquiryServiceResponse);
+        } catch (final ExecutionException e) {
+            LOG.error(format("Error receiving response from Worldpay for orderInquiry with worldpayOrderCode [{0}]. " +
+                    "Probably the service is down, or there is a problem with the merchant configuration", requestId), e.getCause());
+            inquiryRun.recordFailure();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error(format("Interrupted while waiting for orderInquiry with worldpayOrderCode [{0}]", requestId), e);
+            inquiryRun.recordFailure();
+        } catch (final RuntimeException e) {
+            LOG.error(format("Error processing the orderInquiry response for worldpayOrderCode [{0}]", requestId), e);
+            inquiryRun.recordFailure();
+        }
+    }
+
+    protected void saveProgress(final PaymentInfoInquiryCronJobModel cronJobModel, final Long checkpoint, final InquiryRun inquiryRun) {
+        cronJobModel.setInquiryCheckpoint(checkpoint);
+        cronJobModel.setInquiriesSent(inquiryRun.getInquiriesSent());
+        cronJobModel.setInquiryFailures(inquiryRun.getFailures());
+        cronJobModel.setInquiriesPerSecond(inquiryRun.getInquiriesPerSecond());
+        modelService.save(cronJobModel);
+    }
+
+    /**
+     * Creates the pool sending the inquiries of a run. Threads are bound to the tenant of the job, so the gateway can use the platform services.
+     */
+    protected ExecutorService createInquiryExecutor(final int concurrency) {
+        return Executors.newFixedThreadPool(concurrency, new WorldpayThreadFactory("worldpay-paymentinfo-inquiry"));
+    }
+
+    private void rejectPaymentTransaction(final PaymentTransactionModel paymentTransactionModel, final InquiryRun inquiryRun) {
+        try {
+            paymentTransactionRejectionStrategy.executeRejection(paymentTransactionModel);
+        } catch (final RuntimeException e) {
+            LOG.error(format("Error rejecting the payment transaction with worldpayOrderCode [{0}]", paymentTransactionModel.getRequestId()), e);
+            inquiryRun.recordFailure();
+        }
     }
 
     private boolean paymentTransactionIsOverBlanketTime(final PaymentTransactionModel paymentTransactionModel, final int blanketTime) {
         return paymentTransactionModel.getCreationtime().before(new DateTime().minusDays(blanketTime).toDate());
     }
 
+    @FunctionalInterface
+    protected interface Inquiry {
+        OrderInquiryServiceResponse inquire() throws WorldpayException;
+    }
+
+    /**
+     * State of a single run: the executor sending the inquiries, the rate limiter of every merchant and the counters reported on the cronjob.
+     */
+    protected static class InquiryRun {
+
+        private final ExecutorService executor;
+        private final int merchantRateLimit;
+        private final Map<String, RateLimiter> merchantRateLimiters = new ConcurrentHashMap<>();
+        private final AtomicInteger inquiriesSent = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final long startTime = System.nanoTime();
+
+        protected InquiryRun(final ExecutorService executor, final int merchantRateLimit) {
+            this.executor = executor;
+            this.merchantRateLimit = merchantRateLimit;
+        }
+
+        /**
+         * Sends the inquiry on the executor of the run, or on the calling thread when the run is sequential.
+         */
+        protected CompletableFuture<OrderInquiryServiceResponse> submit(final MerchantInfo merchantInfo, final Inquiry inquiry) {
+            final CompletableFuture<OrderInquiryServiceResponse> future = new CompletableFuture<>();
+            final Runnable task = () -> {
+                try {
+                    if (merchantRateLimit > 0) {
+                        merchantRateLimiters.computeIfAbsent(merchantInfo.getMerchantCode(), merchantCode -> RateLimiter.create(merchantRateLimit)).acquire();
+                    }
+                    inquiriesSent.incrementAndGet();
+                    future.complete(inquiry.inquire());
+                } catch (final WorldpayException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            };
+            if (executor == null) {
+                task.run();
+            } else {
+                executor.execute(task);
+            }
+            return future;
+        }
+
+        protected void recordFailure() {
+            failures.incrementAndGet();
+        }
+
+        protected int getInquiriesSent() {
+            return inquiriesSent.get();
+        }
+
+        protected int getFailures() {
+            return failures.get();
+        }
+
+        protected double getInquiriesPerSecond() {
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            return elapsedMillis == 0 ? 0d : getInquiriesSent() * 1000d / elapsedMillis;
+        }
+
+        protected void shutdown() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
     @Required
     public void setOrderInquiryService(OrderInquiryService orderInquiryService) {
         this.orderInquiryService = orderInquiryService;
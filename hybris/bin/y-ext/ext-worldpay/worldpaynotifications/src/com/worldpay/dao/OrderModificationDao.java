@@ -1,6 +1,7 @@
 package com.worldpay.dao;
 
 import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
 
 import java.util.Date;
@@ -19,6 +20,54 @@ public interface OrderModificationDao {
      */
     List<WorldpayOrderModificationModel> findUnprocessedOrderModificationsByType(final PaymentTransactionType paymentTransactionType);
 
+    /**
+     * Finds unprocessed order modifications by payment transaction type with a partition key in the given range. Modifications saved
+     * before partitioning was introduced have no partition key and belong to the range starting at 0.
+     *
+     * @param paymentTransactionType {@link PaymentTransactionType}
+     * @param firstPartitionKey      the first partition key, inclusive
+     * @param lastPartitionKey       the last partition key, exclusive
+     * @return the list of {@link WorldpayOrderModificationModel}
+     */
+    List<WorldpayOrderModificationModel> findUnprocessedOrderModificationsByTypeAndPartitionKeys(final PaymentTransactionType paymentTransactionType,
+                                                                                                 final int firstPartitionKey, final int lastPartitionKey);
+
+    /**
+     * Counts the unprocessed order modifications with a partition key in the given range
+     *
+     * @param firstPartitionKey the first partition key, inclusive
+     * @param lastPartitionKey  the last partition key, exclusive
+     * @return the number of unprocessed order modifications
+     */
+    int countUnprocessedOrderModifications(final int firstPartitionKey, final int lastPartitionKey);
+
+    /**
+     * Finds the creation time of the oldest unprocessed order modification with a partition key in the given range
+     *
+     * @param firstPartitionKey the first partition key, inclusive
+     * @param lastPartitionKey  the last partition key, exclusive
+     * @return the creation time, or null when there are no unprocessed order modifications
+     */
+    Date findOldestUnprocessedOrderModificationDate(final int firstPartitionKey, final int lastPartitionKey);
+
+    /**
+     * Finds the lease and lag information of an order modification partition
+     *
+     * @param partition the partition
+     * @return the {@link WorldpayOrderModificationPartitionModel}, or null if the partition was never claimed
+     */
+    WorldpayOrderModificationPartitionModel findOrderModificationPartition(final int partition);
+
+    /**
+     * Counts the partitions leased until after the given date by owners splitting the order modifications into another number of
+     * partitions, or whose number of partitions is unknown
+     *
+     * @param partitionCount the number of partitions of the caller
+     * @param date           the current date
+     * @return the number of live leases taken with another number of partitions
+     */
+    int countOrderModificationPartitionLeasesWithOtherPartitionCount(final int partitionCount, final Date date);
+
     /**
      * Finds unprocessed and not notified order modifications created before the given date.
      *
@@ -35,6 +84,28 @@ public interface OrderModificationDao {
      */
     List<WorldpayOrderModificationModel> findProcessedOrderModificationsBeforeDate(final Date date);
 
+    /**
+     * Finds a chunk of processed, non defective order modifications created before the given date, in PK order, without loading
+     * them as models.
+     *
+     * @param date        the latest creation date
+     * @param afterPk     only order modifications with a greater PK are returned
+     * @param count       maximum number of order modifications returned
+     * @param withMessage whether the serialised order notification message is read as well
+     * @return a row for each order modification, holding its PK as a {@link Long}, its worldpay order code and, when requested, its
+     * serialised order notification message
+     */
+    List<List<Object>> findProcessedOrderModificationRowsBeforeDate(final Date date, final long afterPk, final int count, final boolean withMessage);
+
+    /**
+     * Deletes the order modifications with the given PKs with a single statement, without loading them as models. No remove
+     * interceptors are called.
+     *
+     * @param pks the PKs of the order modifications to delete
+     * @return the number of deleted order modifications
+     */
+    int removeOrderModifications(final List<Long> pks);
+
     /**
      * Finds existing modifications similar to the passed as parameter.
      *
@@ -42,4 +113,21 @@ public interface OrderModificationDao {
      * @return the list of {@link WorldpayOrderModificationModel}
      */
     List<WorldpayOrderModificationModel> findExistingModifications(final WorldpayOrderModificationModel worldpayOrderModificationModel);
+
+    /**
+     * Checks if an order modification was saved with the deduplication key
+     *
+     * @param deduplicationKey the key of the worldpay order code, payment transaction type and notification message
+     * @return true if at least one order modification has the deduplication key
+     */
+    boolean existsOrderModificationWithDeduplicationKey(final String deduplicationKey);
+
+    /**
+     * Finds the unprocessed order modifications of a worldpay order for a payment transaction type
+     *
+     * @param worldpayOrderCode      the worldpay order code
+     * @param paymentTransactionType the {@link PaymentTransactionType}
+     * @return the list of {@link WorldpayOrderModificationModel}
+     */
+    List<WorldpayOrderModificationModel> findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(final String worldpayOrderCode, final PaymentTransactionType paymentTransactionType);
 }
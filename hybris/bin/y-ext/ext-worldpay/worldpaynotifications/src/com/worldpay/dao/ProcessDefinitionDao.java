@@ -3,7 +3,9 @@ package com.worldpay.dao;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
 import de.hybris.platform.processengine.model.BusinessProcessModel;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Process Definition DAO interface.
@@ -19,4 +21,13 @@ public interface ProcessDefinitionDao {
      * @return list of {@link BusinessProcessModel}
      */
     List<BusinessProcessModel> findWaitingOrderProcesses(String orderCode, PaymentTransactionType paymentTransactionType);
+
+    /**
+     * Finds waiting processes for the event based on the payment transaction type of the given orders, with a single query.
+     *
+     * @param orderCodes             the order codes
+     * @param paymentTransactionType {@link PaymentTransactionType}
+     * @return the waiting {@link BusinessProcessModel}s by order code, with an empty list for the orders with no waiting process
+     */
+    Map<String, List<BusinessProcessModel>> findWaitingOrderProcessesByOrderCodes(Collection<String> orderCodes, PaymentTransactionType paymentTransactionType);
 }
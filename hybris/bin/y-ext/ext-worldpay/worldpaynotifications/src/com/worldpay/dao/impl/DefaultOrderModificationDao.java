@@ -2,25 +2,37 @@ package com.worldpay.dao.impl;
 
 import com.worldpay.dao.OrderModificationDao;
 import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
 import de.hybris.platform.servicelayer.internal.dao.AbstractItemDao;
 import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
 import de.hybris.platform.servicelayer.search.SearchResult;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.util.Utilities;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.jdbc.core.JdbcOperations;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel.TYPE;
 import static com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel._TYPECODE;
 import static de.hybris.platform.core.model.ItemModel.CREATIONTIME;
 import static de.hybris.platform.core.model.ItemModel.PK;
 import static de.hybris.platform.servicelayer.util.ServicesUtil.validateParameterNotNull;
+import static java.text.MessageFormat.format;
 
 /**
  * The default implementation of {@link OrderModificationDao} interface.
  */
 public class DefaultOrderModificationDao extends AbstractItemDao implements OrderModificationDao {
 
+    private JdbcOperations jdbcTemplate;
+    private TypeService typeService;
+
     protected static final String NOTIFIED = "notified";
     protected static final String PROCESSED = "processed";
     protected static final String DEFECTIVE = "defective";
@@ -29,6 +41,13 @@ public class DefaultOrderModificationDao extends AbstractItemDao implements Orde
     protected static final String MODIFICATION_TYPE = "modificationType";
     protected static final String DEFECTIVE_REASON = "defectiveReason";
     protected static final String MODIFICATION_CODE = "modificationCode";
+    protected static final String FIRST_PARTITION_KEY = "firstPartitionKey";
+    protected static final String LAST_PARTITION_KEY = "lastPartitionKey";
+    protected static final String PARTITION = "partition";
+    protected static final String PARTITION_COUNT = "partitionCount";
+    protected static final String LEASE_DATE = "leaseDate";
+    protected static final String AFTER_PK = "afterPk";
+    protected static final String DEDUPLICATION_KEY = "deduplicationKey";
 
     protected static final String PAYMENT_TRANSACTION_TYPE = "paymentTransactionType";
 
@@ -41,6 +60,35 @@ public class DefaultOrderModificationDao extends AbstractItemDao implements Orde
                     "where {pt.code} = ?" + PAYMENT_TRANSACTION_TYPE + "\n" +
                     "AND {wom." + WorldpayOrderModificationModel.PROCESSED + "} = ?" + PROCESSED;
 
+    protected static final String PARTITION_KEY_CONDITION =
+            "AND ({wom." + WorldpayOrderModificationModel.PARTITIONKEY + "} >= ?" + FIRST_PARTITION_KEY + "\n" +
+                    "AND {wom." + WorldpayOrderModificationModel.PARTITIONKEY + "} < ?" + LAST_PARTITION_KEY;
+
+    protected static final String UNPARTITIONED_CONDITION = "\nOR {wom." + WorldpayOrderModificationModel.PARTITIONKEY + "} IS NULL";
+
+    protected static final String ORDER_MODIFICATION_COUNT_QUERY =
+            "select count({wom." + PK + "})\n" +
+                    "from {" + _TYPECODE + " as wom}\n" +
+                    "where {wom." + WorldpayOrderModificationModel.PROCESSED + "} = ?" + PROCESSED + "\n";
+
+    protected static final String ORDER_MODIFICATION_OLDEST_QUERY =
+            "select min({wom." + CREATIONTIME + "})\n" +
+                    "from {" + _TYPECODE + " as wom}\n" +
+                    "where {wom." + WorldpayOrderModificationModel.PROCESSED + "} = ?" + PROCESSED + "\n";
+
+    protected static final String ORDER_MODIFICATION_PARTITION_QUERY =
+            "select {" + PK + "}\n" +
+                    "from {" + WorldpayOrderModificationPartitionModel._TYPECODE + "}\n" +
+                    "WHERE {" + WorldpayOrderModificationPartitionModel.PARTITION + "} = ?" + PARTITION;
+
+    protected static final String ORDER_MODIFICATION_PARTITION_LEASE_COUNT_QUERY =
+            "select count({" + PK + "})\n" +
+                    "from {" + WorldpayOrderModificationPartitionModel._TYPECODE + "}\n" +
+                    "WHERE {" + WorldpayOrderModificationPartitionModel.OWNER + "} IS NOT NULL\n" +
+                    "AND {" + WorldpayOrderModificationPartitionModel.LEASEEXPIRY + "} > ?" + LEASE_DATE + "\n" +
+                    "AND ({" + WorldpayOrderModificationPartitionModel.PARTITIONCOUNT + "} <> ?" + PARTITION_COUNT + "\n" +
+                    "OR {" + WorldpayOrderModificationPartitionModel.PARTITIONCOUNT + "} IS NULL)";
+
     protected static final String ORDER_MODIFICATION_NOTIFICATION_QUERY =
             "select {" + PK + "}\n" +
                     "from {" + _TYPECODE + "}\n" +
@@ -55,6 +103,38 @@ public class DefaultOrderModificationDao extends AbstractItemDao implements Orde
                     "AND {" + WorldpayOrderModificationModel.DEFECTIVE + "} = ?" + DEFECTIVE + "\n" +
                     "AND {" + CREATIONTIME + "} < ?" + BEFORE_DATE;
 
+    protected static final String ORDER_MODIFICATION_PURGE_QUERY =
+            "select {" + PK + "}, {" + WorldpayOrderModificationModel.WORLDPAYORDERCODE + "}\n" +
+                    "from {" + _TYPECODE + "}\n" +
+                    "WHERE {" + WorldpayOrderModificationModel.PROCESSED + "} = ?" + PROCESSED + "\n" +
+                    "AND {" + WorldpayOrderModificationModel.DEFECTIVE + "} = ?" + DEFECTIVE + "\n" +
+                    "AND {" + CREATIONTIME + "} < ?" + BEFORE_DATE + "\n" +
+                    "AND {" + PK + "} > ?" + AFTER_PK + "\n" +
+                    "ORDER BY {" + PK + "} ASC";
+
+    protected static final String ORDER_MODIFICATION_ARCHIVE_PURGE_QUERY =
+            "select {" + PK + "}, {" + WorldpayOrderModificationModel.WORLDPAYORDERCODE + "}, {" + WorldpayOrderModificationModel.ORDERNOTIFICATIONMESSAGE + "}\n" +
+                    "from {" + _TYPECODE + "}\n" +
+                    "WHERE {" + WorldpayOrderModificationModel.PROCESSED + "} = ?" + PROCESSED + "\n" +
+                    "AND {" + WorldpayOrderModificationModel.DEFECTIVE + "} = ?" + DEFECTIVE + "\n" +
+                    "AND {" + CREATIONTIME + "} < ?" + BEFORE_DATE + "\n" +
+                    "AND {" + PK + "} > ?" + AFTER_PK + "\n" +
+                    "ORDER BY {" + PK + "} ASC";
+
+    protected static final String ORDER_MODIFICATION_DELETE_STATEMENT = "DELETE FROM {0} WHERE PK IN ({1})";
+
+    protected static final String ORDER_MODIFICATION_DEDUPLICATION_QUERY =
+            "select {" + PK + "}\n" +
+                    "from {" + _TYPECODE + "}\n" +
+                    "WHERE {" + WorldpayOrderModificationModel.DEDUPLICATIONKEY + "} = ?" + DEDUPLICATION_KEY;
+
+    protected static final String UNPROCESSED_ORDER_MODIFICATIONS_BY_ORDER_CODE_QUERY =
+            "select {" + PK + "}\n" +
+                    "from {" + _TYPECODE + "}\n" +
+                    "WHERE {" + WorldpayOrderModificationModel.WORLDPAYORDERCODE + "} = ?" + WORLDPAY_ORDER_CODE + "\n" +
+                    "AND {" + TYPE + "} = ?" + MODIFICATION_TYPE + "\n" +
+                    "AND {" + WorldpayOrderModificationModel.PROCESSED + "} = ?" + PROCESSED;
+
     protected static final String EXISTING_DEFECTIVE_ORDER_MODIFICATION_QUERY =
             "select {" + PK + "}\n" +
                     "from {" + _TYPECODE + "}\n" +
@@ -78,6 +158,81 @@ public class DefaultOrderModificationDao extends AbstractItemDao implements Orde
         return result.getResult();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#findUnprocessedOrderModificationsByTypeAndPartitionKeys(PaymentTransactionType, int, int)
+     */
+    @Override
+    public List<WorldpayOrderModificationModel> findUnprocessedOrderModificationsByTypeAndPartitionKeys(final PaymentTransactionType paymentTransactionType,
+                                                                                                        final int firstPartitionKey, final int lastPartitionKey) {
+        validateParameterNotNull(paymentTransactionType, "Transaction type must not be null");
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(ORDER_MODIFICATION_PROCESS_QUERY + "\n" + getPartitionKeyCondition(firstPartitionKey));
+        query.addQueryParameter(PAYMENT_TRANSACTION_TYPE, paymentTransactionType.getCode());
+        query.addQueryParameter(PROCESSED, false);
+        addPartitionKeyParameters(query, firstPartitionKey, lastPartitionKey);
+        final SearchResult<WorldpayOrderModificationModel> result = search(query);
+        return result.getResult();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#countUnprocessedOrderModifications(int, int)
+     */
+    @Override
+    public int countUnprocessedOrderModifications(final int firstPartitionKey, final int lastPartitionKey) {
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(ORDER_MODIFICATION_COUNT_QUERY + getPartitionKeyCondition(firstPartitionKey));
+        query.addQueryParameter(PROCESSED, false);
+        addPartitionKeyParameters(query, firstPartitionKey, lastPartitionKey);
+        query.setResultClassList(Collections.singletonList(Integer.class));
+        final SearchResult<Integer> result = search(query);
+        return result.getResult().isEmpty() || result.getResult().get(0) == null ? 0 : result.getResult().get(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#findOldestUnprocessedOrderModificationDate(int, int)
+     */
+    @Override
+    public Date findOldestUnprocessedOrderModificationDate(final int firstPartitionKey, final int lastPartitionKey) {
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(ORDER_MODIFICATION_OLDEST_QUERY + getPartitionKeyCondition(firstPartitionKey));
+        query.addQueryParameter(PROCESSED, false);
+        addPartitionKeyParameters(query, firstPartitionKey, lastPartitionKey);
+        query.setResultClassList(Collections.singletonList(Date.class));
+        final SearchResult<Date> result = search(query);
+        return result.getResult().isEmpty() ? null : result.getResult().get(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#findOrderModificationPartition(int)
+     */
+    @Override
+    public WorldpayOrderModificationPartitionModel findOrderModificationPartition(final int partition) {
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(ORDER_MODIFICATION_PARTITION_QUERY);
+        query.addQueryParameter(PARTITION, partition);
+        final SearchResult<WorldpayOrderModificationPartitionModel> result = search(query);
+        return result.getResult().isEmpty() ? null : result.getResult().get(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#countOrderModificationPartitionLeasesWithOtherPartitionCount(int, Date)
+     */
+    @Override
+    public int countOrderModificationPartitionLeasesWithOtherPartitionCount(final int partitionCount, final Date date) {
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(ORDER_MODIFICATION_PARTITION_LEASE_COUNT_QUERY);
+        query.addQueryParameter(PARTITION_COUNT, partitionCount);
+        query.addQueryParameter(LEASE_DATE, date);
+        query.setResultClassList(Collections.singletonList(Integer.class));
+        final SearchResult<Integer> result = search(query);
+        return result.getResult().isEmpty() || result.getResult().get(0) == null ? 0 : result.getResult().get(0);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -110,6 +265,43 @@ public class DefaultOrderModificationDao extends AbstractItemDao implements Orde
         return result.getResult();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#findProcessedOrderModificationRowsBeforeDate(Date, long, int, boolean)
+     */
+    @Override
+    public List<List<Object>> findProcessedOrderModificationRowsBeforeDate(final Date date, final long afterPk, final int count, final boolean withMessage) {
+        validateParameterNotNull(date, "Date must not be null");
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(withMessage ? ORDER_MODIFICATION_ARCHIVE_PURGE_QUERY : ORDER_MODIFICATION_PURGE_QUERY);
+        query.addQueryParameter(BEFORE_DATE, date);
+        query.addQueryParameter(PROCESSED, true);
+        query.addQueryParameter(DEFECTIVE, false);
+        query.addQueryParameter(AFTER_PK, afterPk);
+        query.setResultClassList(withMessage ? Arrays.asList(Long.class, String.class, String.class) : Arrays.asList(Long.class, String.class));
+        query.setCount(count);
+        query.setNeedTotal(false);
+        final SearchResult<List<Object>> result = search(query);
+        return result.getResult();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#removeOrderModifications(List)
+     */
+    @Override
+    public int removeOrderModifications(final List<Long> pks) {
+        if (pks.isEmpty()) {
+            return 0;
+        }
+        final String table = typeService.getComposedTypeForCode(_TYPECODE).getTable();
+        final String placeholders = pks.stream().map(pk -> "?").collect(Collectors.joining(","));
+        final int removed = jdbcTemplate.update(format(ORDER_MODIFICATION_DELETE_STATEMENT, table, placeholders), pks.toArray());
+        pks.forEach(pk -> Utilities.invalidateCache(de.hybris.platform.core.PK.fromLong(pk)));
+        return removed;
+    }
+
     @Override
     public List<WorldpayOrderModificationModel> findExistingModifications(final WorldpayOrderModificationModel worldpayOrderModificationModel) {
         final FlexibleSearchQuery query = new FlexibleSearchQuery(EXISTING_DEFECTIVE_ORDER_MODIFICATION_QUERY);
@@ -121,4 +313,55 @@ public class DefaultOrderModificationDao extends AbstractItemDao implements Orde
         final SearchResult<WorldpayOrderModificationModel> result = search(query);
         return result.getResult();
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#existsOrderModificationWithDeduplicationKey(String)
+     */
+    @Override
+    public boolean existsOrderModificationWithDeduplicationKey(final String deduplicationKey) {
+        validateParameterNotNull(deduplicationKey, "Deduplication key must not be null");
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(ORDER_MODIFICATION_DEDUPLICATION_QUERY);
+        query.addQueryParameter(DEDUPLICATION_KEY, deduplicationKey);
+        query.setCount(1);
+        query.setNeedTotal(false);
+        final SearchResult<WorldpayOrderModificationModel> result = search(query);
+        return !result.getResult().isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see OrderModificationDao#findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(String, PaymentTransactionType)
+     */
+    @Override
+    public List<WorldpayOrderModificationModel> findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(final String worldpayOrderCode,
+                                                                                                          final PaymentTransactionType paymentTransactionType) {
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(UNPROCESSED_ORDER_MODIFICATIONS_BY_ORDER_CODE_QUERY);
+        query.addQueryParameter(WORLDPAY_ORDER_CODE, worldpayOrderCode);
+        query.addQueryParameter(MODIFICATION_TYPE, paymentTransactionType);
+        query.addQueryParameter(PROCESSED, false);
+        final SearchResult<WorldpayOrderModificationModel> result = search(query);
+        return result.getResult();
+    }
+
+    protected String getPartitionKeyCondition(final int firstPartitionKey) {
+        return PARTITION_KEY_CONDITION + (firstPartitionKey == 0 ? UNPARTITIONED_CONDITION : "") + ")";
+    }
+
+    protected void addPartitionKeyParameters(final FlexibleSearchQuery query, final int firstPartitionKey, final int lastPartitionKey) {
+        query.addQueryParameter(FIRST_PARTITION_KEY, firstPartitionKey);
+        query.addQueryParameter(LAST_PARTITION_KEY, lastPartitionKey);
+    }
+
+    @Required
+    public void setJdbcTemplate(final JdbcOperations jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Required
+    public void setTypeService(final TypeService typeService) {
+        this.typeService = typeService;
+    }
 }
@@ -10,7 +10,11 @@ import de.hybris.platform.servicelayer.internal.dao.AbstractItemDao;
 import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
 import de.hybris.platform.servicelayer.search.SearchResult;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static de.hybris.platform.servicelayer.util.ServicesUtil.validateParameterNotNull;
 
@@ -22,6 +26,7 @@ public class DefaultProcessDefinitionDao extends AbstractItemDao implements Proc
     protected static final String WAIT_ID_PREFIX = "waitFor_";
     protected static final String QUERY_PARAM_ORDER_CODE = "orderCode";
     protected static final String QUERY_PARAM_ACTION_TYPE = "actionType";
+    protected static final String QUERY_PARAM_ORDER_CODES = "orderCodes";
 
     protected static final String GET_BUSINESS_PROCESS_QUERY = "" +
             "SELECT x.PK FROM\n" +
@@ -36,6 +41,16 @@ public class DefaultProcessDefinitionDao extends AbstractItemDao implements Proc
             "AND {o." + OrderModel.CODE + "} = ?" + QUERY_PARAM_ORDER_CODE + "\n" +
             "}}) x";
 
+    protected static final String GET_BUSINESS_PROCESSES_BY_ORDER_CODES_QUERY = "" +
+            "select {op.PK}\n" +
+            "from {\n" +
+            "  " + OrderProcessModel._TYPECODE + " AS op  \n" +
+            "  JOIN " + ProcessTaskModel._TYPECODE + " AS pt ON {op.pk} = {pt." + ProcessTaskModel.PROCESS + "}  \n" +
+            "  JOIN " + OrderModel._TYPECODE + " as o ON {op." + OrderProcessModel.ORDER + "} = {o.PK} \n" +
+            "}\n" +
+            "WHERE {pt." + ProcessTaskModel.ACTION + "} = ?" + QUERY_PARAM_ACTION_TYPE + "\n" +
+            "AND {o." + OrderModel.CODE + "} IN (?" + QUERY_PARAM_ORDER_CODES + ")";
+
     /**
      * {@inheritDoc}
      *
@@ -53,4 +68,30 @@ public class DefaultProcessDefinitionDao extends AbstractItemDao implements Proc
 
         return searchResult.getResult();
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see ProcessDefinitionDao#findWaitingOrderProcessesByOrderCodes(Collection, PaymentTransactionType)
+     */
+    @Override
+    public Map<String, List<BusinessProcessModel>> findWaitingOrderProcessesByOrderCodes(final Collection<String> orderCodes, final PaymentTransactionType paymentTransactionType) {
+        validateParameterNotNull(paymentTransactionType, "Transaction type must not be null");
+        validateParameterNotNull(orderCodes, "Order codes must not be null");
+
+        final Map<String, List<BusinessProcessModel>> waitingProcesses = new HashMap<>();
+        orderCodes.forEach(orderCode -> waitingProcesses.put(orderCode, new ArrayList<>()));
+        if (orderCodes.isEmpty()) {
+            return waitingProcesses;
+        }
+
+        final FlexibleSearchQuery query = new FlexibleSearchQuery(GET_BUSINESS_PROCESSES_BY_ORDER_CODES_QUERY);
+        query.addQueryParameter(QUERY_PARAM_ACTION_TYPE, WAIT_ID_PREFIX + paymentTransactionType.getCode());
+        query.addQueryParameter(QUERY_PARAM_ORDER_CODES, orderCodes);
+        final SearchResult<OrderProcessModel> searchResult = getFlexibleSearchService().search(query);
+
+        searchResult.getResult().forEach(orderProcess ->
+                waitingProcesses.computeIfAbsent(orderProcess.getOrder().getCode(), orderCode -> new ArrayList<>()).add(orderProcess));
+        return waitingProcesses;
+    }
 }
@@ -0,0 +1,18 @@
+package com.worldpay.strategies;
+
+/**
+ * Callback notified by {@link WorldpayOrderModificationCleanUpStrategy#doBulkCleanUp(int, long, OrderModificationPurgeProgressListener)}
+ * after every chunk of order modifications deleted
+ */
+@FunctionalInterface
+public interface OrderModificationPurgeProgressListener {
+
+    /**
+     * Called once a chunk of order modifications was deleted and committed.
+     *
+     * @param lastPk     the PK of the last order modification of the chunk
+     * @param purgedRows the number of order modifications deleted in the chunk
+     * @return true to delete the next chunk, false to stop
+     */
+    boolean chunkPurged(final long lastPk, final int purgedRows);
+}
@@ -15,4 +15,14 @@ public interface WorldpayOrderModificationCleanUpStrategy {
      */
     void doCleanUp(int days);
 
+    /**
+     * Deletes the processed Worldpay Order Modifications created before specified time in chunks of PKs, without loading them as models.
+     *
+     * @param days     number of days to wait until the order modification is processed
+     * @param afterPk  only order modifications with a greater PK are deleted, to resume an interrupted clean up. 0 to delete them all
+     * @param listener notified after every chunk deleted
+     * @return the number of deleted order modifications
+     */
+    long doBulkCleanUp(int days, long afterPk, OrderModificationPurgeProgressListener listener);
+
 }
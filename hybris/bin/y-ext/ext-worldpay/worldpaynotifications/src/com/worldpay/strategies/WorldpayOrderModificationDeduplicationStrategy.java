@@ -0,0 +1,57 @@
+package com.worldpay.strategies;
+
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import de.hybris.platform.payment.enums.PaymentTransactionType;
+
+/**
+ * Worldpay Order Modification Deduplication Strategy interface.
+ * The strategy recognises the notifications retried by Worldpay before they are saved, and marks the unprocessed order modifications
+ * superseded by a newer notification of the same type as processed.
+ */
+public interface WorldpayOrderModificationDeduplicationStrategy {
+
+    /**
+     * Builds the key identifying a notification and its retries from the fields received from Worldpay
+     *
+     * @param worldpayOrderCode        the worldpay order code
+     * @param paymentTransactionType   the {@link PaymentTransactionType} of the notification
+     * @param orderNotificationMessage the notification message
+     * @return the deduplication key, or {@code null} when the deduplication is disabled
+     */
+    String getDeduplicationKey(final String worldpayOrderCode, final PaymentTransactionType paymentTransactionType, final OrderNotificationMessage orderNotificationMessage);
+
+    /**
+     * Checks if an order modification with the deduplication key was already saved or is being saved on this node, and otherwise
+     * claims the key, so a copy of the notification received meanwhile is a duplicate. The key has to be released with
+     * {@link #releaseDeduplicationKey(String)} when the order modification is not saved
+     *
+     * @param deduplicationKey the deduplication key
+     * @return true if the notification is a duplicate and must not be saved
+     */
+    boolean isDuplicate(final String deduplicationKey);
+
+    /**
+     * Checks, once saving the order modification failed, if an order modification with the deduplication key was saved meanwhile by
+     * another node, in which case the notification is a duplicate
+     *
+     * @param deduplicationKey the deduplication key
+     * @return true if the notification is a duplicate
+     */
+    boolean isSavedConcurrently(final String deduplicationKey);
+
+    /**
+     * Releases the deduplication key claimed by {@link #isDuplicate(String)} for an order modification that could not be saved
+     *
+     * @param deduplicationKey the deduplication key
+     */
+    void releaseDeduplicationKey(final String deduplicationKey);
+
+    /**
+     * Records the saved order modification as seen, and marks the unprocessed order modifications it supersedes as processed, or the
+     * order modification itself when a newer notification of the same type is still unprocessed
+     *
+     * @param worldpayOrderModificationModel the saved order modification
+     */
+    void registerOrderModification(final WorldpayOrderModificationModel worldpayOrderModificationModel);
+}
@@ -0,0 +1,27 @@
+package com.worldpay.strategies;
+
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+
+/**
+ * Worldpay Order Modification Dispatch Strategy interface.
+ * The strategy hands newly saved {@link WorldpayOrderModificationModel} to background workers, so they are processed as soon as the
+ * notification is received instead of waiting for the next run of the order modification cronjob.
+ */
+public interface WorldpayOrderModificationDispatchStrategy {
+
+    /**
+     * Checks if order modifications are processed as soon as they are received
+     *
+     * @return {@code true} if immediate processing is enabled
+     */
+    boolean isImmediateProcessingEnabled();
+
+    /**
+     * Queues the {@link WorldpayOrderModificationModel} for immediate processing. Modifications that are not dispatched, or that could not
+     * be processed yet, are left for the order modification cronjob.
+     *
+     * @param worldpayOrderModificationModel the saved order modification
+     * @return {@code true} if the order modification was queued
+     */
+    boolean dispatch(final WorldpayOrderModificationModel worldpayOrderModificationModel);
+}
@@ -0,0 +1,21 @@
+package com.worldpay.strategies;
+
+import com.worldpay.core.event.OrderModificationEvent;
+import com.worldpay.service.notification.OrderNotificationMessage;
+
+/**
+ * Worldpay Order Modification Event Routing Strategy interface.
+ * The strategy chooses the cluster node that saves the order notifications received from Worldpay: the node that received the
+ * notification, the nodes of a node group dedicated to payments, or a node chosen by worldpay order code, so the notifications of an
+ * order are always saved by the same node.
+ */
+public interface WorldpayOrderModificationEventRoutingStrategy {
+
+    /**
+     * Creates the event to publish for an order notification, routed to the node that saves it
+     *
+     * @param orderNotificationMessage the {@link OrderNotificationMessage} received from Worldpay
+     * @return the event to publish
+     */
+    OrderModificationEvent createOrderModificationEvent(final OrderNotificationMessage orderNotificationMessage);
+}
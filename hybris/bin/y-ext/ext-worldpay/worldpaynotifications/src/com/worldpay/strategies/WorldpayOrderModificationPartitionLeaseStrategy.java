@@ -0,0 +1,36 @@
+package com.worldpay.strategies;
+
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
+
+/**
+ * Worldpay Order Modification Partition Lease Strategy interface.
+ * The strategy hands out time limited leases on the partitions of the order modifications, so a partition is only processed by one cluster
+ * node and worker at a time. The leases and the lag of every partition are stored in {@link WorldpayOrderModificationPartitionModel}.
+ */
+public interface WorldpayOrderModificationPartitionLeaseStrategy {
+
+    /**
+     * Acquires the lease on the partition, or renews it when already held by the owner.
+     *
+     * @param partition the partition
+     * @param owner     identifier of the cluster node and worker claiming the partition
+     * @return {@code true} if the owner holds the lease, {@code false} if another owner holds a lease that did not expire yet
+     */
+    boolean acquireLease(final int partition, final String owner);
+
+    /**
+     * Releases the lease on the partition, if held by the owner, and records the time the partition was processed.
+     *
+     * @param partition the partition
+     * @param owner     identifier of the cluster node and worker holding the lease
+     */
+    void releaseLease(final int partition, final String owner);
+
+    /**
+     * Records the number of unprocessed order modifications of the partition and the age of the oldest one.
+     *
+     * @param partition the partition
+     * @return the partition with its updated lag
+     */
+    WorldpayOrderModificationPartitionModel updateLag(final int partition);
+}
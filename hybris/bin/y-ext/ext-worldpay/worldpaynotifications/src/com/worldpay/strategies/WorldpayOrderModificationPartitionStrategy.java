@@ -0,0 +1,45 @@
+package com.worldpay.strategies;
+
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+
+/**
+ * Worldpay Order Modification Partition Strategy interface.
+ * The strategy splits the {@link WorldpayOrderModificationModel} into partitions by worldpay order code, so all the modifications of an order
+ * are processed by the same worker and in order, while different partitions are processed in parallel.
+ * <p>
+ * Each modification stores a partition key, a hash of its worldpay order code. Every partition owns a contiguous range of partition keys,
+ * so the number of partitions can be changed without updating the stored modifications.
+ */
+public interface WorldpayOrderModificationPartitionStrategy {
+
+    /**
+     * Calculates the partition key of the modifications of an order
+     *
+     * @param worldpayOrderCode the worldpay order code of the modification
+     * @return the partition key, between 0 and the partition key space
+     */
+    int getPartitionKey(final String worldpayOrderCode);
+
+    /**
+     * @return the number of partitions the order modifications are split into
+     */
+    int getPartitionCount();
+
+    /**
+     * @param partitionKey the partition key of a modification, or null for modifications saved without one
+     * @return the partition owning the partition key. Modifications without a partition key belong to the first partition
+     */
+    int getPartition(final Integer partitionKey);
+
+    /**
+     * @param partition the partition, between 0 and {@link #getPartitionCount()}
+     * @return the first partition key of the partition, inclusive
+     */
+    int getFirstPartitionKey(final int partition);
+
+    /**
+     * @param partition the partition, between 0 and {@link #getPartitionCount()}
+     * @return the last partition key of the partition, exclusive
+     */
+    int getLastPartitionKey(final int partition);
+}
@@ -17,4 +17,21 @@ public interface WorldpayOrderModificationProcessStrategy {
      * @return {@code true} if the operation was successful
      */
     boolean processOrderModificationMessages(final PaymentTransactionType paymentTransactionType);
+
+    /**
+     * Processes the {@link WorldpayOrderModificationModel} for the given payment transaction type that belong to a partition.
+     *
+     * @param paymentTransactionType {@link PaymentTransactionType}
+     * @param partition              the partition, as defined by the {@link WorldpayOrderModificationPartitionStrategy}
+     * @return {@code true} if the operation was successful
+     */
+    boolean processOrderModificationMessages(final PaymentTransactionType paymentTransactionType, final int partition);
+
+    /**
+     * Processes a single {@link WorldpayOrderModificationModel}, as soon as it is received. Modifications already processed are ignored.
+     *
+     * @param worldpayOrderModificationModel the order modification
+     * @return {@code true} if the operation was successful
+     */
+    boolean processOrderModification(final WorldpayOrderModificationModel worldpayOrderModificationModel);
 }
@@ -0,0 +1,35 @@
+package com.worldpay.strategies;
+
+import java.io.IOException;
+
+/**
+ * Worldpay Order Notification Ingress Strategy interface.
+ * The strategy stores the order notifications received from Worldpay in a durable log, so they can be acknowledged before they are
+ * parsed and saved as order modifications. The notifications in the log are processed in the background, and the ones left over by a
+ * shutdown or a crash are processed when the node starts again.
+ */
+public interface WorldpayOrderNotificationIngressStrategy {
+
+    /**
+     * Checks if order notifications are acknowledged as soon as they are stored in the log
+     *
+     * @return {@code true} if asynchronous acknowledgement is enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Appends the order notification to the log. Notifications that are not accepted have to be processed by the caller.
+     *
+     * @param body the order notification as received from Worldpay
+     * @return {@code true} if the notification was stored and can be acknowledged
+     */
+    boolean accept(final byte[] body);
+
+    /**
+     * Appends the order notifications of the dead letter directory of this node to the log again, and removes them from the directory
+     *
+     * @return the number of notifications appended
+     * @throws IOException when the log or the dead letters cannot be read or written
+     */
+    int replayDeadLetters() throws IOException;
+}
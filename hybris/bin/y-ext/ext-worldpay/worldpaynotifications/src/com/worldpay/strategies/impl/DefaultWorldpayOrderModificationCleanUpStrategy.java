@@ -1,15 +1,32 @@
 package com.worldpay.strategies.impl;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.worldpay.dao.OrderModificationDao;
+import com.worldpay.strategies.OrderModificationPurgeProgressListener;
 import com.worldpay.strategies.WorldpayOrderModificationCleanUpStrategy;
 import com.worldpay.util.WorldpayUtil;
 import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.model.ModelService;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Default implementation of the {@link WorldpayOrderModificationCleanUpStrategy}.
@@ -17,13 +34,27 @@ import java.util.List;
  * Retrieves all processed Order Modifications created before the certain amount of time
  * and removes them from the database.
  * </p>
+ * <p>
+ * The bulk clean up reads the order modifications in chunks of {@code worldpay.ordermodification.cleanup.chunk.size} PKs and deletes each
+ * chunk with a single statement in its own transaction. When {@code worldpay.ordermodification.cleanup.archive.directory} is set, the
+ * worldpay order code and notification message of every chunk are appended to a gzipped file in that directory before it is deleted. Otherwise the
+ * notification messages are not read at all.
+ * </p>
  */
 public class DefaultWorldpayOrderModificationCleanUpStrategy implements WorldpayOrderModificationCleanUpStrategy {
 
     private static final Logger LOG = Logger.getLogger(DefaultWorldpayOrderModificationCleanUpStrategy.class);
 
+    protected static final String WORLDPAY_ORDERMODIFICATION_CLEANUP_CHUNK_SIZE = "worldpay.ordermodification.cleanup.chunk.size";
+    protected static final String WORLDPAY_ORDERMODIFICATION_CLEANUP_ARCHIVE_DIRECTORY = "worldpay.ordermodification.cleanup.archive.directory";
+
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final Gson GSON = new Gson();
+
     private ModelService modelService;
     private OrderModificationDao orderModificationDao;
+    private ConfigurationService configurationService;
+    private TransactionOperations transactionTemplate;
 
     /**
      * {@inheritDoc}
@@ -39,6 +70,81 @@ public class DefaultWorldpayOrderModificationCleanUpStrategy implements Worldpay
         });
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see WorldpayOrderModificationCleanUpStrategy#doBulkCleanUp(int, long, OrderModificationPurgeProgressListener)
+     */
+    @Override
+    public long doBulkCleanUp(final int days, final long afterPk, final OrderModificationPurgeProgressListener listener) {
+        final Configuration configuration = configurationService.getConfiguration();
+        final int chunkSize = Math.max(1, configuration.getInt(WORLDPAY_ORDERMODIFICATION_CLEANUP_CHUNK_SIZE, DEFAULT_CHUNK_SIZE));
+        final String archiveDirectory = configuration.getString(WORLDPAY_ORDERMODIFICATION_CLEANUP_ARCHIVE_DIRECTORY);
+        final boolean archived = StringUtils.isNotBlank(archiveDirectory);
+        final Date beforeDate = WorldpayUtil.createDateInPast(days);
+
+        long lastPk = afterPk;
+        long purgedRows = 0;
+        Writer archive = null;
+        try {
+            List<List<Object>> rows = getOrderModificationDao().findProcessedOrderModificationRowsBeforeDate(beforeDate, lastPk, chunkSize, archived);
+            while (!rows.isEmpty()) {
+                if (archived) {
+                    archive = archive == null ? createArchive(archiveDirectory) : archive;
+                    archiveRows(archive, rows);
+                }
+                final List<Long> pks = rows.stream().map(row -> (Long) row.get(0)).collect(Collectors.toList());
+                final int purged = transactionTemplate.execute(transactionStatus -> getOrderModificationDao().removeOrderModifications(pks));
+                purgedRows += purged;
+                lastPk = pks.get(pks.size() - 1);
+                if (!listener.chunkPurged(lastPk, purged) || rows.size() < chunkSize) {
+                    break;
+                }
+                rows = getOrderModificationDao().findProcessedOrderModificationRowsBeforeDate(beforeDate, lastPk, chunkSize, archived);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException(MessageFormat.format("Unable to archive the order modifications after PK [{0}], they were not deleted", String.valueOf(lastPk)), e);
+        } finally {
+            closeArchive(archive);
+        }
+        return purgedRows;
+    }
+
+    protected Writer createArchive(final String archiveDirectory) throws IOException {
+        final File directory = new File(archiveDirectory);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(MessageFormat.format("Unable to create the archive directory [{0}]", archiveDirectory));
+        }
+        final File file = new File(directory, "worldpayordermodifications-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()) + ".json.gz");
+        LOG.info(MessageFormat.format("Archiving the deleted order modifications to [{0}]", file.getAbsolutePath()));
+        return new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), true), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a json line for every order modification of the chunk, and flushes them to the file before the chunk is deleted.
+     */
+    protected void archiveRows(final Writer archive, final List<List<Object>> rows) throws IOException {
+        for (final List<Object> row : rows) {
+            final JsonObject line = new JsonObject();
+            line.addProperty("pk", (Long) row.get(0));
+            line.addProperty(WorldpayOrderModificationModel.WORLDPAYORDERCODE, (String) row.get(1));
+            line.addProperty(WorldpayOrderModificationModel.ORDERNOTIFICATIONMESSAGE, (String) row.get(2));
+            archive.write(GSON.toJson(line));
+            archive.write('\n');
+        }
+        archive.flush();
+    }
+
+    private void closeArchive(final Writer archive) {
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (final IOException e) {
+                LOG.error("Unable to close the order modification archive", e);
+            }
+        }
+    }
+
     public ModelService getModelService() {
         return modelService;
     }
@@ -56,4 +162,14 @@ public class DefaultWorldpayOrderModificationCleanUpStrategy implements Worldpay
     public void setOrderModificationDao(OrderModificationDao orderModificationDao) {
         this.orderModificationDao = orderModificationDao;
     }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setTransactionTemplate(final TransactionOperations transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
 }
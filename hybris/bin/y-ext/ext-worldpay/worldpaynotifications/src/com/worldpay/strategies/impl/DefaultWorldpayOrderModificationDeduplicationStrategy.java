@@ -0,0 +1,293 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.dao.OrderModificationDao;
+import com.worldpay.service.model.AccountTransaction;
+import com.worldpay.service.model.Amount;
+import com.worldpay.service.model.Date;
+import com.worldpay.service.model.JournalReply;
+import com.worldpay.service.model.PaymentReply;
+import com.worldpay.service.model.WebformRefundReply;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.strategies.WorldpayOrderModificationDeduplicationStrategy;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import de.hybris.platform.payment.enums.PaymentTransactionType;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Default implementation of the {@link WorldpayOrderModificationDeduplicationStrategy}.
+ * <p>
+ * The deduplication key is the worldpay order code, the payment transaction type and a SHA-256 digest of the fields Worldpay sends
+ * in the notification: merchant code, journal type, booking date, account transactions, payment amount, status and references, and
+ * webform refund id, status and amount. It does not depend on the serialised message, so it is stable across serialiser formats and
+ * versions. A key is claimed in a bounded cache of {@code worldpay.ordermodification.dedup.cache.size} entries of this node, evicting
+ * the oldest, before the order modification is saved, and the keys not cached are checked in the database. Lookups in the cache do
+ * not lock. The deduplication key is unique in the database, so of the copies received at the same time on different nodes, only
+ * the first one is saved and the others are recognised as duplicates when their save fails. No key is computed when the
+ * deduplication is disabled.
+ * </p>
+ * <p>
+ * Of the unprocessed order modifications of one of the {@code supersedingTransactionTypes} for the same worldpay order, only the one
+ * with the latest journal booking date has to be processed. When a new one is saved, the ones booked strictly before it are marked as
+ * processed and superseded, and so is the new one when another was booked strictly after it, as a late retry of an older notification
+ * must not win over a newer one. Order modifications without a booking date, or booked at the same time, are all processed.
+ * </p>
+ */
+@ManagedResource(description = "Worldpay order modification deduplication")
+public class DefaultWorldpayOrderModificationDeduplicationStrategy implements WorldpayOrderModificationDeduplicationStrategy {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayOrderModificationDeduplicationStrategy.class);
+
+    protected static final String WORLDPAY_ORDERMODIFICATION_DEDUP_ENABLED = "worldpay.ordermodification.dedup.enabled";
+    protected static final String WORLDPAY_ORDERMODIFICATION_DEDUP_CACHE_SIZE = "worldpay.ordermodification.dedup.cache.size";
+
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final String KEY_SEPARATOR = ":";
+    private static final char FIELD_SEPARATOR = '|';
+
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong supersededModifications = new AtomicLong();
+    private final Map<String, Boolean> seenKeys = new ConcurrentHashMap<>();
+    private final Queue<String> seenKeysInsertionOrder = new ConcurrentLinkedQueue<>();
+
+    private OrderModificationDao orderModificationDao;
+    private ModelService modelService;
+    private ConfigurationService configurationService;
+    private Set<PaymentTransactionType> supersedingTransactionTypes;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDeduplicationKey(final String worldpayOrderCode, final PaymentTransactionType paymentTransactionType, final OrderNotificationMessage orderNotificationMessage) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(getNotificationFields(orderNotificationMessage).getBytes(StandardCharsets.UTF_8));
+            return worldpayOrderCode + KEY_SEPARATOR + paymentTransactionType.getCode() + KEY_SEPARATOR + Hex.encodeHexString(digest);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+        }
+    }
+
+    protected String getNotificationFields(final OrderNotificationMessage orderNotificationMessage) {
+        final StringBuilder fields = new StringBuilder();
+        append(fields, orderNotificationMessage.getMerchantCode());
+        final JournalReply journalReply = orderNotificationMessage.getJournalReply();
+        if (journalReply != null) {
+            append(fields, journalReply.getJournalType());
+            appendDate(fields, journalReply.getBookingDate());
+            if (journalReply.getAccountTransactions() != null) {
+                for (final AccountTransaction accountTransaction : journalReply.getAccountTransactions()) {
+                    append(fields, accountTransaction.getAccountType());
+                    append(fields, accountTransaction.getBatchId());
+                    appendAmount(fields, accountTransaction.getAmount());
+                }
+            }
+        }
+        final PaymentReply paymentReply = orderNotificationMessage.getPaymentReply();
+        if (paymentReply != null) {
+            append(fields, paymentReply.getAuthStatus());
+            appendAmount(fields, paymentReply.getAmount());
+            append(fields, paymentReply.getReturnCode());
+            append(fields, paymentReply.getAuthorisationId());
+            append(fields, paymentReply.getRefundReference());
+        }
+        final WebformRefundReply webformRefundReply = orderNotificationMessage.getWebformRefundReply();
+        if (webformRefundReply != null) {
+            append(fields, webformRefundReply.getRefundId());
+            append(fields, webformRefundReply.getWebformStatus());
+            appendAmount(fields, webformRefundReply.getAmount());
+        }
+        return fields.toString();
+    }
+
+    private void appendDate(final StringBuilder fields, final Date date) {
+        if (date != null) {
+            append(fields, date.getYear());
+            append(fields, date.getMonth());
+            append(fields, date.getDayOfMonth());
+            append(fields, date.getHour());
+            append(fields, date.getMinute());
+            append(fields, date.getSecond());
+        } else {
+            append(fields, null);
+        }
+    }
+
+    private void appendAmount(final StringBuilder fields, final Amount amount) {
+        if (amount != null) {
+            append(fields, amount.getValue());
+            append(fields, amount.getCurrencyCode());
+            append(fields, amount.getExponent());
+            append(fields, amount.getDebitCreditIndicator());
+        } else {
+            append(fields, null);
+        }
+    }
+
+    private void append(final StringBuilder fields, final Object field) {
+        fields.append(Objects.toString(field, "")).append(FIELD_SEPARATOR);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDuplicate(final String deduplicationKey) {
+        if (deduplicationKey == null || !isEnabled()) {
+            return false;
+        }
+        final boolean duplicate = !addSeenKey(deduplicationKey) || orderModificationDao.existsOrderModificationWithDeduplicationKey(deduplicationKey);
+        if (duplicate) {
+            LOG.info(format("Ignoring notification [{0}], it was already received. {1} duplicates ignored", deduplicationKey, duplicates.incrementAndGet()));
+        }
+        return duplicate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSavedConcurrently(final String deduplicationKey) {
+        if (deduplicationKey == null || !orderModificationDao.existsOrderModificationWithDeduplicationKey(deduplicationKey)) {
+            return false;
+        }
+        LOG.info(format("Ignoring notification [{0}], it was saved concurrently by another node. {1} duplicates ignored", deduplicationKey, duplicates.incrementAndGet()));
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void releaseDeduplicationKey(final String deduplicationKey) {
+        if (deduplicationKey != null && seenKeys.remove(deduplicationKey) != null) {
+            seenKeysInsertionOrder.remove(deduplicationKey);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerOrderModification(final WorldpayOrderModificationModel worldpayOrderModificationModel) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (worldpayOrderModificationModel.getDeduplicationKey() != null) {
+            addSeenKey(worldpayOrderModificationModel.getDeduplicationKey());
+        }
+        if (supersedingTransactionTypes.contains(worldpayOrderModificationModel.getType())) {
+            markSupersededOrderModifications(worldpayOrderModificationModel);
+        }
+    }
+
+    protected void markSupersededOrderModifications(final WorldpayOrderModificationModel worldpayOrderModificationModel) {
+        final java.util.Date bookingDate = worldpayOrderModificationModel.getBookingDate();
+        if (bookingDate == null) {
+            return;
+        }
+        boolean newerReceived = false;
+        for (final WorldpayOrderModificationModel orderModification : orderModificationDao.findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(
+                worldpayOrderModificationModel.getWorldpayOrderCode(), worldpayOrderModificationModel.getType())) {
+            final java.util.Date otherBookingDate = orderModification.getBookingDate();
+            if (orderModification.equals(worldpayOrderModificationModel) || otherBookingDate == null) {
+                continue;
+            }
+            if (otherBookingDate.before(bookingDate)) {
+                markSuperseded(orderModification, worldpayOrderModificationModel);
+            } else if (otherBookingDate.after(bookingDate) && !newerReceived) {
+                markSuperseded(worldpayOrderModificationModel, orderModification);
+                newerReceived = true;
+            }
+        }
+    }
+
+    protected void markSuperseded(final WorldpayOrderModificationModel orderModification, final WorldpayOrderModificationModel newerOrderModification) {
+        LOG.info(format("Order modification [{0}] for worldpay order [{1}] is superseded by [{2}], marking it as processed. {3} order modifications superseded",
+                orderModification.getCode(), orderModification.getWorldpayOrderCode(), newerOrderModification.getCode(), supersededModifications.incrementAndGet()));
+        orderModification.setProcessed(Boolean.TRUE);
+        orderModification.setSuperseded(Boolean.TRUE);
+        modelService.save(orderModification);
+    }
+
+    protected boolean isEnabled() {
+        return configurationService.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_DEDUP_ENABLED, true);
+    }
+
+    /**
+     * Adds the key to the cache, evicting the oldest keys
+     *
+     * @return {@code false} when the key was already cached
+     */
+    protected boolean addSeenKey(final String deduplicationKey) {
+        if (seenKeys.putIfAbsent(deduplicationKey, Boolean.TRUE) != null) {
+            return false;
+        }
+        seenKeysInsertionOrder.add(deduplicationKey);
+        final int cacheSize = Math.max(1, configurationService.getConfiguration().getInt(WORLDPAY_ORDERMODIFICATION_DEDUP_CACHE_SIZE, DEFAULT_CACHE_SIZE));
+        while (seenKeys.size() > cacheSize) {
+            final String oldestKey = seenKeysInsertionOrder.poll();
+            if (oldestKey == null) {
+                break;
+            }
+            seenKeys.remove(oldestKey);
+        }
+        return true;
+    }
+
+    @ManagedAttribute(description = "Number of notifications ignored as duplicates")
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    @ManagedAttribute(description = "Number of unprocessed order modifications superseded by a newer notification")
+    public long getSupersededModifications() {
+        return supersededModifications.get();
+    }
+
+    @ManagedAttribute(description = "Number of deduplication keys cached on this node")
+    public int getCachedKeys() {
+        return seenKeys.size();
+    }
+
+    @Required
+    public void setOrderModificationDao(final OrderModificationDao orderModificationDao) {
+        this.orderModificationDao = orderModificationDao;
+    }
+
+    @Required
+    public void setModelService(final ModelService modelService) {
+        this.modelService = modelService;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setSupersedingTransactionTypes(final Set<PaymentTransactionType> supersedingTransactionTypes) {
+        this.supersedingTransactionTypes = supersedingTransactionTypes;
+    }
+}
@@ -0,0 +1,181 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.strategies.WorldpayOrderModificationDispatchStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationProcessStrategy;
+import com.worldpay.util.WorldpayThreadFactory;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Default implementation of the {@link WorldpayOrderModificationDispatchStrategy} interface.
+ * <p>
+ * Immediate processing is enabled with {@code worldpay.ordermodification.immediate.enabled}. Order modifications are processed by
+ * {@code worldpay.ordermodification.immediate.workers} single threaded workers, each with a queue of
+ * {@code worldpay.ordermodification.immediate.queue.capacity} modifications. The worker is chosen by the partition key of the
+ * modification, a hash of its worldpay order code, so the modifications of an order are processed one after the other on a node while
+ * the modifications of different orders are spread over all the workers. When the queue of a worker is full the modification is left
+ * for the order modification cronjob, which keeps sweeping every modification that was not processed.
+ * </p>
+ * <p>
+ * Workers do not lease partitions: the modification is claimed in a short transaction before it is processed, so a modification also
+ * picked up by the cronjob or by another node is processed once.
+ * </p>
+ */
+public class DefaultWorldpayOrderModificationDispatchStrategy implements WorldpayOrderModificationDispatchStrategy, DisposableBean {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayOrderModificationDispatchStrategy.class);
+
+    protected static final String WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED = "worldpay.ordermodification.immediate.enabled";
+    protected static final String WORLDPAY_ORDERMODIFICATION_IMMEDIATE_WORKERS = "worldpay.ordermodification.immediate.workers";
+    protected static final String WORLDPAY_ORDERMODIFICATION_IMMEDIATE_QUEUE_CAPACITY = "worldpay.ordermodification.immediate.queue.capacity";
+
+    private static final int DEFAULT_WORKERS = 4;
+    private static final int DEFAULT_QUEUE_CAPACITY = 500;
+
+    private volatile ExecutorService[] workers;
+
+    private WorldpayOrderModificationProcessStrategy worldpayOrderModificationProcessStrategy;
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy;
+    private ModelService modelService;
+    private SessionService sessionService;
+    private UserService userService;
+    private ConfigurationService configurationService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isImmediateProcessingEnabled() {
+        return configurationService.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean dispatch(final WorldpayOrderModificationModel worldpayOrderModificationModel) {
+        if (!isImmediateProcessingEnabled()) {
+            return false;
+        }
+        final PK pk = worldpayOrderModificationModel.getPk();
+        final String worldpayOrderCode = worldpayOrderModificationModel.getWorldpayOrderCode();
+        final Integer partitionKey = worldpayOrderModificationModel.getPartitionKey();
+        final int workerKey = partitionKey != null ? partitionKey : worldpayOrderModificationPartitionStrategy.getPartitionKey(worldpayOrderCode);
+        try {
+            getWorker(workerKey).execute(() -> processInLocalView(pk, worldpayOrderCode));
+            return true;
+        } catch (final RejectedExecutionException e) {
+            LOG.warn(format("Order modification queue is full, leaving the modification for worldpay order code [{0}] to the cronjob", worldpayOrderCode));
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        final ExecutorService[] executors = workers;
+        if (executors != null) {
+            for (final ExecutorService executor : executors) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    protected void processInLocalView(final PK pk, final String worldpayOrderCode) {
+        try {
+            sessionService.executeInLocalView(new SessionExecutionBody() {
+                @Override
+                public void executeWithoutResult() {
+                    final WorldpayOrderModificationModel worldpayOrderModificationModel = modelService.get(pk);
+                    worldpayOrderModificationProcessStrategy.processOrderModification(worldpayOrderModificationModel);
+                }
+            }, userService.getAdminUser());
+        } catch (final RuntimeException e) {
+            LOG.error(format("Failed to process the order modification for worldpay order code [{0}], leaving it to the cronjob", worldpayOrderCode), e);
+        }
+    }
+
+    protected ExecutorService getWorker(final int partitionKey) {
+        final ExecutorService[] executors = getWorkers();
+        return executors[Math.floorMod(partitionKey, executors.length)];
+    }
+
+    private ExecutorService[] getWorkers() {
+        ExecutorService[] executors = workers;
+        if (executors == null) {
+            synchronized (this) {
+                executors = workers;
+                if (executors == null) {
+                    executors = createWorkers();
+                    workers = executors;
+                }
+            }
+        }
+        return executors;
+    }
+
+    /**
+     * Creates the single threaded workers. Their queues are bounded so a slow order processing never holds on to more than
+     * {@code worldpay.ordermodification.immediate.queue.capacity} modifications per worker.
+     */
+    protected ExecutorService[] createWorkers() {
+        final Configuration configuration = configurationService.getConfiguration();
+        final int workerCount = Math.max(1, configuration.getInt(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_WORKERS, DEFAULT_WORKERS));
+        final int queueCapacity = Math.max(1, configuration.getInt(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY));
+        final ThreadFactory threadFactory = new WorldpayThreadFactory("worldpay-ordermodification-immediate");
+        final ExecutorService[] executors = new ExecutorService[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                    threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        }
+        return executors;
+    }
+
+    @Required
+    public void setWorldpayOrderModificationProcessStrategy(final WorldpayOrderModificationProcessStrategy worldpayOrderModificationProcessStrategy) {
+        this.worldpayOrderModificationProcessStrategy = worldpayOrderModificationProcessStrategy;
+    }
+
+    @Required
+    public void setWorldpayOrderModificationPartitionStrategy(final WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy) {
+        this.worldpayOrderModificationPartitionStrategy = worldpayOrderModificationPartitionStrategy;
+    }
+
+    @Required
+    public void setModelService(final ModelService modelService) {
+        this.modelService = modelService;
+    }
+
+    @Required
+    public void setSessionService(final SessionService sessionService) {
+        this.sessionService = sessionService;
+    }
+
+    @Required
+    public void setUserService(final UserService userService) {
+        this.userService = userService;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+}
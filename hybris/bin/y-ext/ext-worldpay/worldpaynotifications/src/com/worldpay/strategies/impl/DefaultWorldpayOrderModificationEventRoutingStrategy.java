@@ -0,0 +1,154 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.core.event.ClusterAwareOrderModificationEvent;
+import com.worldpay.core.event.OrderModificationEvent;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.strategies.WorldpayOrderModificationEventRoutingStrategy;
+import com.worldpay.strategies.WorldpayOrderNotificationIngressStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
+import de.hybris.platform.cluster.PingBroadcastHandler;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.Arrays;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Default implementation of the {@link WorldpayOrderModificationEventRoutingStrategy} interface.
+ * <p>
+ * The routing is set with {@code worldpay.ordermodification.event.routing}:
+ * <ul>
+ * <li>{@code local}: the node that received the notification saves it, before the response is sent to Worldpay.</li>
+ * <li>{@code group}: one node of the node group {@code worldpay.ordermodification.event.routing.group} saves it, chosen by the
+ * partition key of the worldpay order code among the nodes listed in {@code worldpay.ordermodification.event.routing.nodes} that
+ * pinged the cluster within {@code worldpay.ordermodification.event.routing.node.timeout} milliseconds. The listed nodes have to be
+ * the nodes of the group: a single node saves each notification, as the deduplication of the order modifications does not recognise
+ * copies saved at the same time by several nodes.</li>
+ * <li>{@code hash}: one of the nodes listed in {@code worldpay.ordermodification.event.routing.nodes} saves it, chosen by the
+ * partition key of the worldpay order code. The notification is saved locally when that node has not pinged the cluster within
+ * {@code worldpay.ordermodification.event.routing.node.timeout} milliseconds.</li>
+ * </ul>
+ * Routed events are sent through the cluster without any acknowledgement, so they are saved after the response is sent to Worldpay,
+ * which does not send them again, and are lost if the target node drops them or goes down before saving them. The notification
+ * ingress log only consumes a notification once it is saved, which a routed event cannot confirm, so the notifications are always
+ * saved locally while {@code worldpay.notification.ingress.enabled} is set. The node group or node list has to be kept in line with
+ * the nodes of the cluster. The routing falls back to {@code local} when it is not configured properly.
+ * </p>
+ */
+public class DefaultWorldpayOrderModificationEventRoutingStrategy implements WorldpayOrderModificationEventRoutingStrategy {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayOrderModificationEventRoutingStrategy.class);
+
+    protected static final String WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING = "worldpay.ordermodification.event.routing";
+    protected static final String WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP = "worldpay.ordermodification.event.routing.group";
+    protected static final String WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES = "worldpay.ordermodification.event.routing.nodes";
+    protected static final String WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODE_TIMEOUT = "worldpay.ordermodification.event.routing.node.timeout";
+    protected static final String ROUTING_LOCAL = "local";
+    protected static final String ROUTING_GROUP = "group";
+    protected static final String ROUTING_HASH = "hash";
+
+    private static final long DEFAULT_NODE_TIMEOUT = 90000L;
+
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy;
+    private WorldpayOrderNotificationIngressStrategy worldpayOrderNotificationIngressStrategy;
+    private ConfigurationService configurationService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderModificationEvent createOrderModificationEvent(final OrderNotificationMessage orderNotificationMessage) {
+        final Configuration configuration = configurationService.getConfiguration();
+        final String routing = configuration.getString(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING, ROUTING_LOCAL);
+        if (ROUTING_LOCAL.equalsIgnoreCase(routing)) {
+            return new OrderModificationEvent(orderNotificationMessage);
+        }
+        if (worldpayOrderNotificationIngressStrategy.isEnabled()) {
+            LOG.warn(format("Order modification event routing [{0}] is not supported with the notification ingress log enabled, saving the order notification locally", routing));
+        } else if (ROUTING_GROUP.equalsIgnoreCase(routing)) {
+            final String group = configuration.getString(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP);
+            if (StringUtils.isNotBlank(group)) {
+                final long timeout = configuration.getLong(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODE_TIMEOUT, DEFAULT_NODE_TIMEOUT);
+                final int[] liveNodes = Arrays.stream(getNodes(configuration)).filter(node -> isNodeAlive(node, timeout)).toArray();
+                if (liveNodes.length > 0) {
+                    return ClusterAwareOrderModificationEvent.forNodeGroup(orderNotificationMessage, group.trim(), getNode(liveNodes, orderNotificationMessage));
+                }
+                LOG.warn(format("No cluster node of property [{0}] is alive, saving the order notification for worldpay order [{1}] locally",
+                        WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES, orderNotificationMessage.getOrderCode()));
+            } else {
+                LOG.warn(format("Property [{0}] is not set, saving the order notification locally", WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP));
+            }
+        } else if (ROUTING_HASH.equalsIgnoreCase(routing)) {
+            final int[] nodes = getNodes(configuration);
+            if (nodes.length > 0) {
+                final int node = getNode(nodes, orderNotificationMessage);
+                if (isNodeAlive(node, configuration.getLong(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODE_TIMEOUT, DEFAULT_NODE_TIMEOUT))) {
+                    return ClusterAwareOrderModificationEvent.forNode(orderNotificationMessage, node);
+                }
+                LOG.warn(format("Cluster node [{0}] is not alive, saving the order notification for worldpay order [{1}] locally", node, orderNotificationMessage.getOrderCode()));
+            } else {
+                LOG.warn(format("Property [{0}] is not set, saving the order notification locally", WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES));
+            }
+        } else {
+            LOG.warn(format("Unknown order modification event routing [{0}], saving the order notification locally", routing));
+        }
+        return new OrderModificationEvent(orderNotificationMessage);
+    }
+
+    /**
+     * Chooses the node of the notification by the partition key of its worldpay order code
+     */
+    protected int getNode(final int[] nodes, final OrderNotificationMessage orderNotificationMessage) {
+        final int partitionKey = worldpayOrderModificationPartitionStrategy.getPartitionKey(orderNotificationMessage.getOrderCode());
+        return nodes[Math.floorMod(partitionKey, nodes.length)];
+    }
+
+    /**
+     * The nodes are sorted, so every node sends the notifications of an order to the same node whatever the order they are listed in.
+     */
+    protected int[] getNodes(final Configuration configuration) {
+        final String nodes = configuration.getString(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES, "");
+        try {
+            return Arrays.stream(StringUtils.split(nodes, ", "))
+                    .mapToInt(Integer::parseInt)
+                    .distinct()
+                    .sorted()
+                    .toArray();
+        } catch (final NumberFormatException e) {
+            LOG.warn(format("Invalid cluster ids [{0}] in property [{1}]", nodes, WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES));
+            return new int[0];
+        }
+    }
+
+    /**
+     * Checks the node is this node, or pinged the cluster within the timeout.
+     */
+    protected boolean isNodeAlive(final int clusterId, final long timeout) {
+        if (clusterId == Registry.getClusterID()) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        return PingBroadcastHandler.getInstance().getNodes().stream()
+                .anyMatch(nodeInfo -> nodeInfo.getNodeID() == clusterId && now - nodeInfo.getLastPingTS() <= timeout);
+    }
+
+    @Required
+    public void setWorldpayOrderModificationPartitionStrategy(final WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy) {
+        this.worldpayOrderModificationPartitionStrategy = worldpayOrderModificationPartitionStrategy;
+    }
+
+    @Required
+    public void setWorldpayOrderNotificationIngressStrategy(final WorldpayOrderNotificationIngressStrategy worldpayOrderNotificationIngressStrategy) {
+        this.worldpayOrderNotificationIngressStrategy = worldpayOrderNotificationIngressStrategy;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+}
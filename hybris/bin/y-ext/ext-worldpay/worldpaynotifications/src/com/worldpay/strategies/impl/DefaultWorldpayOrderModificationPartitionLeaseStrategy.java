@@ -0,0 +1,162 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.dao.OrderModificationDao;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionLeaseStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
+import de.hybris.platform.jalo.Item;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.exceptions.ModelSavingException;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.tx.Transaction;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.Date;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Default implementation of the {@link WorldpayOrderModificationPartitionLeaseStrategy} interface.
+ * <p>
+ * Leases last {@code worldpay.ordermodification.partition.lease.duration} milliseconds. The {@link WorldpayOrderModificationPartitionModel} is
+ * locked in the database while a lease is checked and updated, so two cluster nodes can never hold the same partition.
+ * </p>
+ * <p>
+ * Each lease records the number of partitions of its owner. While {@code worldpay.ordermodification.partitions} differs between the
+ * nodes, for example during a rolling change of the property, the same partition number covers different partition keys on each node.
+ * A node therefore does not claim any partition while a lease taken with another number of partitions is live.
+ * </p>
+ */
+public class DefaultWorldpayOrderModificationPartitionLeaseStrategy implements WorldpayOrderModificationPartitionLeaseStrategy {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayOrderModificationPartitionLeaseStrategy.class);
+
+    protected static final String WORLDPAY_ORDERMODIFICATION_PARTITION_LEASE_DURATION = "worldpay.ordermodification.partition.lease.duration";
+    private static final long DEFAULT_LEASE_DURATION = 600000L;
+
+    private OrderModificationDao orderModificationDao;
+    private ModelService modelService;
+    private ConfigurationService configurationService;
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy;
+    private TransactionOperations transactionTemplate;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acquireLease(final int partition, final String owner) {
+        final long leaseDuration = configurationService.getConfiguration().getLong(WORLDPAY_ORDERMODIFICATION_PARTITION_LEASE_DURATION, DEFAULT_LEASE_DURATION);
+        try {
+            return transactionTemplate.execute(transactionStatus -> {
+                final WorldpayOrderModificationPartitionModel partitionModel = getLockedPartition(partition);
+                final Date now = new Date();
+                if (isLeasedToAnotherOwner(partitionModel, owner, now)) {
+                    LOG.debug(format("Partition [{0}] is leased to [{1}] until [{2}]", partition, partitionModel.getOwner(), partitionModel.getLeaseExpiry()));
+                    return false;
+                }
+                final int partitionCount = worldpayOrderModificationPartitionStrategy.getPartitionCount();
+                if (orderModificationDao.countOrderModificationPartitionLeasesWithOtherPartitionCount(partitionCount, now) > 0) {
+                    LOG.warn(format("Partition [{0}] not claimed by [{1}]: partitions are leased by owners splitting the order modifications into "
+                            + "another number of partitions than [{2}]", partition, owner, partitionCount));
+                    return false;
+                }
+                partitionModel.setOwner(owner);
+                partitionModel.setPartitionCount(partitionCount);
+                partitionModel.setLeaseExpiry(new Date(now.getTime() + leaseDuration));
+                modelService.save(partitionModel);
+                return true;
+            });
+        } catch (final ModelSavingException e) {
+            LOG.debug(format("Partition [{0}] was created concurrently by another owner", partition), e);
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void releaseLease(final int partition, final String owner) {
+        transactionTemplate.execute(transactionStatus -> {
+            final WorldpayOrderModificationPartitionModel partitionModel = getLockedPartition(partition);
+            if (owner.equals(partitionModel.getOwner())) {
+                partitionModel.setOwner(null);
+                partitionModel.setLeaseExpiry(null);
+                partitionModel.setLastProcessed(new Date());
+                modelService.save(partitionModel);
+            } else {
+                LOG.warn(format("Lease on partition [{0}] expired before [{1}] finished processing it", partition, owner));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WorldpayOrderModificationPartitionModel updateLag(final int partition) {
+        final int firstPartitionKey = worldpayOrderModificationPartitionStrategy.getFirstPartitionKey(partition);
+        final int lastPartitionKey = worldpayOrderModificationPartitionStrategy.getLastPartitionKey(partition);
+        final Date oldestUnprocessed = orderModificationDao.findOldestUnprocessedOrderModificationDate(firstPartitionKey, lastPartitionKey);
+
+        final WorldpayOrderModificationPartitionModel partitionModel = orderModificationDao.findOrderModificationPartition(partition);
+        partitionModel.setBacklog(orderModificationDao.countUnprocessedOrderModifications(firstPartitionKey, lastPartitionKey));
+        partitionModel.setLag(oldestUnprocessed == null ? 0L : Math.max(0L, System.currentTimeMillis() - oldestUnprocessed.getTime()));
+        modelService.save(partitionModel);
+        return partitionModel;
+    }
+
+    /**
+     * Returns the partition locked for the current transaction, creating it the first time it is claimed. If two nodes create the same
+     * partition at the same time, the unique index on the partition makes one of them fail.
+     */
+    protected WorldpayOrderModificationPartitionModel getLockedPartition(final int partition) {
+        WorldpayOrderModificationPartitionModel partitionModel = orderModificationDao.findOrderModificationPartition(partition);
+        if (partitionModel == null) {
+            partitionModel = modelService.create(WorldpayOrderModificationPartitionModel.class);
+            partitionModel.setPartition(partition);
+            modelService.save(partitionModel);
+        } else {
+            lock(partitionModel);
+            modelService.refresh(partitionModel);
+        }
+        return partitionModel;
+    }
+
+    protected void lock(final WorldpayOrderModificationPartitionModel partitionModel) {
+        Transaction.current().lock((Item) modelService.getSource(partitionModel));
+    }
+
+    protected boolean isLeasedToAnotherOwner(final WorldpayOrderModificationPartitionModel partitionModel, final String owner, final Date now) {
+        return partitionModel.getOwner() != null && !owner.equals(partitionModel.getOwner())
+                && partitionModel.getLeaseExpiry() != null && partitionModel.getLeaseExpiry().after(now);
+    }
+
+    @Required
+    public void setOrderModificationDao(final OrderModificationDao orderModificationDao) {
+        this.orderModificationDao = orderModificationDao;
+    }
+
+    @Required
+    public void setModelService(final ModelService modelService) {
+        this.modelService = modelService;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setWorldpayOrderModificationPartitionStrategy(final WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy) {
+        this.worldpayOrderModificationPartitionStrategy = worldpayOrderModificationPartitionStrategy;
+    }
+
+    @Required
+    public void setTransactionTemplate(final TransactionOperations transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
+}
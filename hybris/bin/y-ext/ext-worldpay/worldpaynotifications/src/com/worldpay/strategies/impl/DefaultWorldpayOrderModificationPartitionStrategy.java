@@ -0,0 +1,82 @@
+package com.worldpay.strategies.impl;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Default implementation of the {@link WorldpayOrderModificationPartitionStrategy} interface.
+ * <p>
+ * Partition keys are the murmur3 hash of the worldpay order code modulo {@link #PARTITION_KEY_SPACE}. The number of partitions is read
+ * from {@code worldpay.ordermodification.partitions}.
+ * </p>
+ */
+public class DefaultWorldpayOrderModificationPartitionStrategy implements WorldpayOrderModificationPartitionStrategy {
+
+    protected static final String WORLDPAY_ORDERMODIFICATION_PARTITIONS = "worldpay.ordermodification.partitions";
+    protected static final int PARTITION_KEY_SPACE = 1024;
+
+    private static final int DEFAULT_PARTITIONS = 1;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    private ConfigurationService configurationService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPartitionKey(final String worldpayOrderCode) {
+        return Math.floorMod(HASH_FUNCTION.hashString(worldpayOrderCode, StandardCharsets.UTF_8).asInt(), PARTITION_KEY_SPACE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPartitionCount() {
+        final int partitions = configurationService.getConfiguration().getInt(WORLDPAY_ORDERMODIFICATION_PARTITIONS, DEFAULT_PARTITIONS);
+        return Math.min(PARTITION_KEY_SPACE, Math.max(1, partitions));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPartition(final Integer partitionKey) {
+        if (partitionKey == null) {
+            return 0;
+        }
+        final int partitionCount = getPartitionCount();
+        int partition = partitionKey * partitionCount / PARTITION_KEY_SPACE;
+        // The partition bounds are rounded down, so the key may fall at the start of the next partition
+        while (partitionKey >= (partition + 1) * PARTITION_KEY_SPACE / partitionCount) {
+            partition++;
+        }
+        return partition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFirstPartitionKey(final int partition) {
+        return partition * PARTITION_KEY_SPACE / getPartitionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getLastPartitionKey(final int partition) {
+        return (partition + 1) * PARTITION_KEY_SPACE / getPartitionCount();
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+}
@@ -5,26 +5,39 @@ import com.worldpay.dao.OrderModificationDao;
 import com.worldpay.dao.ProcessDefinitionDao;
 import com.worldpay.service.model.token.TokenReply;
 import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
 import com.worldpay.strategies.WorldpayOrderModificationProcessStrategy;
 import com.worldpay.strategies.WorldpayOrderModificationRefundProcessStrategy;
 import com.worldpay.strategy.WorldpayAuthenticatedShopperIdStrategy;
+import com.worldpay.transaction.WorldpayPaymentStateCache;
 import com.worldpay.transaction.WorldpayPaymentTransactionService;
 import com.worldpay.util.OrderModificationSerialiser;
+import com.worldpay.util.WorldpayLatencyHistogram;
 import com.worldpay.worldpaynotifications.enums.DefectiveReason;
 import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
 import de.hybris.platform.core.model.order.AbstractOrderModel;
 import de.hybris.platform.core.model.order.CartModel;
 import de.hybris.platform.core.model.order.OrderModel;
+import de.hybris.platform.jalo.Item;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.processengine.BusinessProcessService;
 import de.hybris.platform.processengine.model.BusinessProcessModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.tx.Transaction;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.worldpay.worldpaynotifications.enums.DefectiveReason.*;
 import static de.hybris.platform.payment.enums.PaymentTransactionType.*;
@@ -37,11 +50,34 @@ import static java.text.MessageFormat.format;
  * If it was, the order modification is processed.
  * In case of an error, a defective {@link WorldpayOrderModificationModel} is saved.
  * </p>
+ * <p>
+ * Each order modification is claimed before it is processed: it is locked and read again in a short transaction, and marked as claimed
+ * for {@code worldpay.ordermodification.claim.timeout} milliseconds. A modification picked up by the cronjob and by an immediate worker
+ * at the same time is therefore processed once: the second one skips it as processed or claimed. The modification is processed outside
+ * the claim transaction, so a notification processor that fails only rolls back its own work. The modification is then marked as
+ * defective in a transaction of its own, and the next modifications are still processed. A claim left by a node that stopped expires
+ * after the timeout. When order modifications are processed as soon as they are received, the cronjob leaves the ones received in the last
+ * {@code worldpay.ordermodification.immediate.sweeper.delay} milliseconds to the immediate processing. The time between receiving and
+ * processing an order modification is recorded in the {@link WorldpayLatencyHistogram}.
+ * </p>
+ * <p>
+ * The order modifications are processed in batches of {@code worldpay.ordermodification.batch.size}. The payment transactions and
+ * waiting order processes of a batch are read with one query each before it is processed, instead of once per order modification.
+ * Each batch is processed in a run of the {@link WorldpayPaymentStateCache}, so the payment state of an order that receives several
+ * modifications is read once and shared with the notification processors.
+ * </p>
  */
 public class DefaultWorldpayOrderModificationProcessStrategy implements WorldpayOrderModificationProcessStrategy {
 
     private static final Logger LOG = Logger.getLogger(DefaultWorldpayOrderModificationProcessStrategy.class);
 
+    protected static final String WORLDPAY_ORDERMODIFICATION_IMMEDIATE_SWEEPER_DELAY = "worldpay.ordermodification.immediate.sweeper.delay";
+    protected static final String WORLDPAY_ORDERMODIFICATION_BATCH_SIZE = "worldpay.ordermodification.batch.size";
+    protected static final String WORLDPAY_ORDERMODIFICATION_CLAIM_TIMEOUT = "worldpay.ordermodification.claim.timeout";
+    private static final long DEFAULT_SWEEPER_DELAY = 60000L;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_CLAIM_TIMEOUT = 600000L;
+
     private OrderModificationDao orderModificationDao;
     private ProcessDefinitionDao processDefinitionDao;
     private ModelService modelService;
@@ -52,6 +88,11 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
     private Set nonTriggeringOrderStatuses;
     private WorldpayAuthenticatedShopperIdStrategy worldpayAuthenticatedShopperIdStrategy;
     private WorldpayOrderModificationRefundProcessStrategy worldpayOrderModificationRefundProcessStrategy;
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy;
+    private ConfigurationService configurationService;
+    private WorldpayLatencyHistogram worldpayOrderModificationLatencyHistogram;
+    private WorldpayPaymentStateCache worldpayPaymentStateCache;
+    private TransactionOperations transactionTemplate;
 
     /**
      * {@inheritDoc}
@@ -60,31 +101,167 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
      */
     @Override
     public boolean processOrderModificationMessages(final PaymentTransactionType paymentTransactionType) {
-        boolean success = true;
-        final List<WorldpayOrderModificationModel> orderModificationsByType = orderModificationDao.findUnprocessedOrderModificationsByType(paymentTransactionType);
+        return processOrderModifications(paymentTransactionType, getOrderModificationsToSweep(orderModificationDao.findUnprocessedOrderModificationsByType(paymentTransactionType)));
+    }
 
-        for (final WorldpayOrderModificationModel orderModificationModel : orderModificationsByType) {
-            final String worldpayOrderCode = orderModificationModel.getWorldpayOrderCode();
-            if (CANCEL.equals(paymentTransactionType)) {
-                LOG.info(format("Marking order modification with [{0}] transaction for refused worldpayOrder [{1}] as processed", paymentTransactionType, worldpayOrderCode));
+    /**
+     * {@inheritDoc}
+     *
+     * @see WorldpayOrderModificationProcessStrategy#processOrderModificationMessages(PaymentTransactionType, int)
+     */
+    @Override
+    public boolean processOrderModificationMessages(final PaymentTransactionType paymentTransactionType, final int partition) {
+        final int firstPartitionKey = worldpayOrderModificationPartitionStrategy.getFirstPartitionKey(partition);
+        final int lastPartitionKey = worldpayOrderModificationPartitionStrategy.getLastPartitionKey(partition);
+        return processOrderModifications(paymentTransactionType, getOrderModificationsToSweep(
+                orderModificationDao.findUnprocessedOrderModificationsByTypeAndPartitionKeys(paymentTransactionType, firstPartitionKey, lastPartitionKey)));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see WorldpayOrderModificationProcessStrategy#processOrderModification(WorldpayOrderModificationModel)
+     */
+    @Override
+    public boolean processOrderModification(final WorldpayOrderModificationModel orderModificationModel) {
+        return processOrderModifications(orderModificationModel.getType(), Collections.singletonList(orderModificationModel));
+    }
+
+    /**
+     * Leaves the order modifications received recently to the immediate processing, so the cronjob rarely competes with a worker for the
+     * same modification. A modification still queued or in progress after the sweeper delay is swept as well, which is why every
+     * modification is claimed before it is processed.
+     */
+    protected List<WorldpayOrderModificationModel> getOrderModificationsToSweep(final List<WorldpayOrderModificationModel> orderModifications) {
+        if (!configurationService.getConfiguration().getBoolean(DefaultWorldpayOrderModificationDispatchStrategy.WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED, false)) {
+            return orderModifications;
+        }
+        final long sweepBefore = System.currentTimeMillis()
+                - configurationService.getConfiguration().getLong(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_SWEEPER_DELAY, DEFAULT_SWEEPER_DELAY);
+        return orderModifications.stream()
+                .filter(modification -> modification.getCreationtime() == null || modification.getCreationtime().getTime() < sweepBefore)
+                .collect(Collectors.toList());
+    }
+
+    protected boolean processOrderModifications(final PaymentTransactionType paymentTransactionType, final List<WorldpayOrderModificationModel> orderModificationsByType) {
+        boolean success = true;
+        if (CANCEL.equals(paymentTransactionType)) {
+            for (final WorldpayOrderModificationModel orderModificationModel : orderModificationsByType) {
+                LOG.info(format("Marking order modification with [{0}] transaction for refused worldpayOrder [{1}] as processed", paymentTransactionType, orderModificationModel.getWorldpayOrderCode()));
                 setNonDefectiveAndProcessed(orderModificationModel);
-            } else {
-                success = precessOrderModificationsMessagesNotCanceled(paymentTransactionType, orderModificationModel, worldpayOrderCode);
+            }
+            return success;
+        }
+        final int batchSize = Math.max(1, configurationService.getConfiguration().getInt(WORLDPAY_ORDERMODIFICATION_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+        for (int from = 0; from < orderModificationsByType.size(); from += batchSize) {
+            final List<WorldpayOrderModificationModel> orderModifications = orderModificationsByType.subList(from, Math.min(orderModificationsByType.size(), from + batchSize));
+            try (WorldpayPaymentStateCache.Run ignored = worldpayPaymentStateCache.openRun()) {
+                final OrderModificationBatch batch = createBatch(paymentTransactionType, orderModifications);
+                for (final WorldpayOrderModificationModel orderModificationModel : orderModifications) {
+                    try {
+                        success &= processClaimedOrderModification(paymentTransactionType, orderModificationModel, batch);
+                    } catch (final RuntimeException exception) {
+                        LOG.error(format("Failed to process the order modification for worldpay order code [{0}], continuing with the next one",
+                                orderModificationModel.getWorldpayOrderCode()), exception);
+                        success = false;
+                    }
+                }
             }
         }
         return success;
     }
 
-    protected boolean precessOrderModificationsMessagesNotCanceled(final PaymentTransactionType paymentTransactionType, final WorldpayOrderModificationModel orderModificationModel, final String worldpayOrderCode) {
+    /**
+     * Processes the order modification once it is claimed, and releases the claim. Modifications already processed or claimed by another
+     * worker or node are skipped.
+     */
+    protected boolean processClaimedOrderModification(final PaymentTransactionType paymentTransactionType, final WorldpayOrderModificationModel orderModificationModel,
+                                                      final OrderModificationBatch batch) {
+        if (!claimOrderModification(orderModificationModel)) {
+            LOG.debug(format("Order modification for worldpay order code [{0}] was already processed or is being processed", orderModificationModel.getWorldpayOrderCode()));
+            return true;
+        }
+        try {
+            return precessOrderModificationsMessagesNotCanceled(paymentTransactionType, orderModificationModel, orderModificationModel.getWorldpayOrderCode(), batch);
+        } catch (final RuntimeException exception) {
+            setProcessingError(orderModificationModel, exception);
+            return false;
+        } finally {
+            releaseClaim(orderModificationModel);
+        }
+    }
+
+    /**
+     * Locks the order modification in a transaction of its own and reads it again, as the model may have been loaded before another
+     * worker or node processed it. The order modification is then claimed until the claim timeout, unless it is processed or claimed.
+     *
+     * @return {@code true} if the order modification was claimed
+     */
+    protected boolean claimOrderModification(final WorldpayOrderModificationModel orderModificationModel) {
+        final long claimTimeout = configurationService.getConfiguration().getLong(WORLDPAY_ORDERMODIFICATION_CLAIM_TIMEOUT, DEFAULT_CLAIM_TIMEOUT);
+        return Boolean.TRUE.equals(transactionTemplate.execute(transactionStatus -> {
+            lock(orderModificationModel);
+            modelService.refresh(orderModificationModel);
+            final long now = System.currentTimeMillis();
+            final Date claimExpiry = orderModificationModel.getClaimExpiry();
+            if (Boolean.TRUE.equals(orderModificationModel.getProcessed()) || (claimExpiry != null && claimExpiry.getTime() > now)) {
+                return false;
+            }
+            saveClaim(orderModificationModel, new Date(now + claimTimeout));
+            return true;
+        }));
+    }
+
+    protected void releaseClaim(final WorldpayOrderModificationModel orderModificationModel) {
+        if (orderModificationModel.getClaimExpiry() != null) {
+            saveClaim(orderModificationModel, null);
+        }
+    }
+
+    protected void saveClaim(final WorldpayOrderModificationModel orderModificationModel, final Date claimExpiry) {
+        orderModificationModel.setClaimExpiry(claimExpiry);
+        modelService.save(orderModificationModel);
+    }
+
+    protected void lock(final WorldpayOrderModificationModel orderModificationModel) {
+        Transaction.current().lock((Item) modelService.getSource(orderModificationModel));
+    }
+
+    /**
+     * Reads the payment transactions of the order modifications, and the processes of their orders waiting for the payment transaction
+     * type when the order modifications trigger an event, with one query each.
+     */
+    protected OrderModificationBatch createBatch(final PaymentTransactionType paymentTransactionType, final List<WorldpayOrderModificationModel> orderModifications) {
+        final Set<String> worldpayOrderCodes = orderModifications.stream()
+                .map(WorldpayOrderModificationModel::getWorldpayOrderCode)
+                .collect(Collectors.toSet());
+        final Map<String, PaymentTransactionModel> paymentTransactions = new HashMap<>(worldpayPaymentTransactionService.getPaymentTransactionsFromCodes(worldpayOrderCodes));
+        final Map<String, List<BusinessProcessModel>> waitingProcesses = new HashMap<>();
+        if (!REFUND_FOLLOW_ON.equals(paymentTransactionType) && !SETTLED.equals(paymentTransactionType)) {
+            final Set<String> orderCodes = paymentTransactions.values().stream()
+                    .filter(Objects::nonNull)
+                    .map(PaymentTransactionModel::getOrder)
+                    .filter(OrderModel.class::isInstance)
+                    .map(AbstractOrderModel::getCode)
+                    .collect(Collectors.toSet());
+            if (!orderCodes.isEmpty()) {
+                waitingProcesses.putAll(processDefinitionDao.findWaitingOrderProcessesByOrderCodes(orderCodes, paymentTransactionType));
+            }
+        }
+        return new OrderModificationBatch(paymentTransactionType, paymentTransactions, waitingProcesses);
+    }
+
+    protected boolean precessOrderModificationsMessagesNotCanceled(final PaymentTransactionType paymentTransactionType, final WorldpayOrderModificationModel orderModificationModel,
+                                                                   final String worldpayOrderCode, final OrderModificationBatch batch) {
         boolean success = true;
-        final PaymentTransactionModel paymentTransactionModel = worldpayPaymentTransactionService.getPaymentTransactionFromCode(worldpayOrderCode);
+        final PaymentTransactionModel paymentTransactionModel = getPaymentTransaction(worldpayOrderCode, batch);
         if (paymentTransactionModel != null) {
             if (AUTHORIZATION.equals(paymentTransactionType)) {
                 markAsProcessedIfEntryIsNotPending(paymentTransactionType, orderModificationModel, paymentTransactionModel);
             }
             final AbstractOrderModel abstractOrderModel = paymentTransactionModel.getOrder();
             if (abstractOrderModel instanceof OrderModel) {
-                success = processOrderModificationNotification(paymentTransactionType, orderModificationModel, worldpayOrderCode, (OrderModel) abstractOrderModel);
+                success = processOrderModificationNotification(paymentTransactionType, orderModificationModel, worldpayOrderCode, (OrderModel) abstractOrderModel, batch);
             } else if (abstractOrderModel instanceof CartModel) {
                 LOG.warn(format("Worldpay Order Code [{0}] related to a Cart. Skipping processing modification message.", worldpayOrderCode));
             }
@@ -95,24 +272,54 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
         return success;
     }
 
+    /**
+     * Codes that were not resolved with the batch, because they matched more than one payment transaction, are looked up on their own.
+     */
+    protected PaymentTransactionModel getPaymentTransaction(final String worldpayOrderCode, final OrderModificationBatch batch) {
+        if (batch.paymentTransactions.containsKey(worldpayOrderCode)) {
+            return batch.paymentTransactions.get(worldpayOrderCode);
+        }
+        return worldpayPaymentTransactionService.getPaymentTransactionFromCode(worldpayOrderCode);
+    }
+
+    /**
+     * The waiting processes of an order are read again once an event was triggered on them, as they may no longer be waiting.
+     */
+    protected List<BusinessProcessModel> getWaitingOrderProcesses(final String orderCode, final PaymentTransactionType paymentTransactionType, final OrderModificationBatch batch) {
+        if (paymentTransactionType.equals(batch.paymentTransactionType) && batch.waitingProcesses.containsKey(orderCode)) {
+            return batch.waitingProcesses.get(orderCode);
+        }
+        return processDefinitionDao.findWaitingOrderProcesses(orderCode, paymentTransactionType);
+    }
+
     protected boolean processOrderModificationNotification(final PaymentTransactionType paymentTransactionType, final WorldpayOrderModificationModel orderModificationModel,
-                                                           final String worldpayOrderCode, final OrderModel abstractOrderModel) {
+                                                           final String worldpayOrderCode, final OrderModel abstractOrderModel, final OrderModificationBatch batch) {
         boolean success = true;
         LOG.info(format("Found order for Worldpay Order Code [{0}]. Processing modification message.", worldpayOrderCode));
         try {
             if (worldpayPaymentTransactionService.isPreviousTransactionCompleted(worldpayOrderCode, paymentTransactionType, abstractOrderModel)) {
-                processMessage(paymentTransactionType, orderModificationModel, abstractOrderModel);
+                processMessage(paymentTransactionType, orderModificationModel, abstractOrderModel, batch);
             } else {
                 LOG.info(format("The previous transaction for [{0}] is still pending in worldpayOrder [{1}]", paymentTransactionType, worldpayOrderCode));
             }
         } catch (final Exception exception) {
-            setDefectiveReason(orderModificationModel, PROCESSING_ERROR);
-            setDefectiveModification(orderModificationModel, exception, true);
+            setProcessingError(orderModificationModel, exception);
             success = false;
         }
         return success;
     }
 
+    /**
+     * Marks the order modification as defective in a transaction of its own, so the marking is kept whatever the processor rolled back
+     */
+    protected void setProcessingError(final WorldpayOrderModificationModel orderModificationModel, final Exception exception) {
+        transactionTemplate.execute(transactionStatus -> {
+            setDefectiveReason(orderModificationModel, PROCESSING_ERROR);
+            setDefectiveModification(orderModificationModel, exception, true);
+            return null;
+        });
+    }
+
     protected void markAsProcessedIfEntryIsNotPending(final PaymentTransactionType paymentTransactionType,
                                                       final WorldpayOrderModificationModel orderModificationModel,
                                                       final PaymentTransactionModel paymentTransactionModel) {
@@ -124,6 +331,9 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
         modification.setProcessed(Boolean.TRUE);
         modification.setDefective(Boolean.FALSE);
         modelService.save(modification);
+        if (modification.getCreationtime() != null) {
+            worldpayOrderModificationLatencyHistogram.record(System.currentTimeMillis() - modification.getCreationtime().getTime());
+        }
     }
 
     protected void setDefectiveModification(final WorldpayOrderModificationModel orderModificationModel, final Exception exception, final boolean processed) {
@@ -135,36 +345,39 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
         }
     }
 
-    protected void processMessage(final PaymentTransactionType paymentTransactionTypeFromCronJob, final WorldpayOrderModificationModel orderModificationModel, final OrderModel orderModel) {
+    protected void processMessage(final PaymentTransactionType paymentTransactionTypeFromCronJob, final WorldpayOrderModificationModel orderModificationModel,
+                                  final OrderModel orderModel, final OrderModificationBatch batch) {
         final OrderNotificationMessage notificationMessage = orderModificationSerialiser.deserialise(orderModificationModel.getOrderNotificationMessage());
         if (REFUND_FOLLOW_ON.equals(paymentTransactionTypeFromCronJob)) {
             if (worldpayOrderModificationRefundProcessStrategy.processRefundFollowOn(orderModel, notificationMessage)) {
-                processOrderModification(orderModificationModel, notificationMessage);
+                processOrderModification(orderModificationModel, notificationMessage, batch);
             } else {
                 setDefectiveModification(orderModificationModel, null, true);
             }
         } else if (SETTLED.equals(paymentTransactionTypeFromCronJob)) {
-            processOrderModification(orderModificationModel, notificationMessage);
+            processOrderModification(orderModificationModel, notificationMessage, batch);
         } else {
-            processNotification(paymentTransactionTypeFromCronJob, orderModificationModel, orderModel, notificationMessage);
+            processNotification(paymentTransactionTypeFromCronJob, orderModificationModel, orderModel, notificationMessage, batch);
         }
     }
 
     protected void processNotification(final PaymentTransactionType paymentTransactionTypeFromCronJob,
                                        final WorldpayOrderModificationModel orderModificationModel,
                                        final OrderModel orderModel,
-                                       final OrderNotificationMessage notificationMessage) {
+                                       final OrderNotificationMessage notificationMessage,
+                                       final OrderModificationBatch batch) {
         PaymentTransactionType paymentTransactionType = paymentTransactionTypeFromCronJob;
         if (CANCEL.equals(paymentTransactionTypeFromCronJob)) {
             // Rejected payments expect the order to be in a waitFor_AUTHORIZATION state
             paymentTransactionType = AUTHORIZATION;
         }
-        final List<BusinessProcessModel> businessProcessModels = processDefinitionDao.findWaitingOrderProcesses(orderModel.getCode(), paymentTransactionType);
+        final List<BusinessProcessModel> businessProcessModels = getWaitingOrderProcesses(orderModel.getCode(), paymentTransactionType, batch);
         if (businessProcessModels.size() == 1) {
             if (notificationIsValid(notificationMessage, orderModel)) {
-                processOrderModification(orderModificationModel, notificationMessage);
+                processOrderModification(orderModificationModel, notificationMessage, batch);
                 if (!nonTriggeringOrderStatuses.contains(orderModel.getStatus())) {
                     triggerOrderProcessEvent(paymentTransactionType, businessProcessModels.get(0));
+                    batch.waitingProcesses.remove(orderModel.getCode());
                 }
             } else {
                 setDefectiveReason(orderModificationModel, INVALID_AUTHENTICATED_SHOPPER_ID);
@@ -203,8 +416,9 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
         return tokenAuthenticatedShopperId == null || tokenAuthenticatedShopperId.equals(worldpayAuthenticatedShopperIdStrategy.getAuthenticatedShopperId(orderModel.getUser()));
     }
 
-    protected void processOrderModification(final WorldpayOrderModificationModel orderModificationModel, final OrderNotificationMessage notificationMessage) {
-        orderNotificationService.processOrderNotificationMessage(notificationMessage);
+    protected void processOrderModification(final WorldpayOrderModificationModel orderModificationModel, final OrderNotificationMessage notificationMessage,
+                                            final OrderModificationBatch batch) {
+        orderNotificationService.processOrderNotificationMessage(notificationMessage, getPaymentTransaction(orderModificationModel.getWorldpayOrderCode(), batch));
         setNonDefectiveAndProcessed(orderModificationModel);
     }
 
@@ -217,6 +431,23 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
         return businessProcessModels.getCode() + "_" + paymentTransactionType;
     }
 
+    /**
+     * The payment transactions by worldpay order code and the waiting order processes by order code read for a batch of order
+     * modifications of the same payment transaction type
+     */
+    protected static class OrderModificationBatch {
+        private final PaymentTransactionType paymentTransactionType;
+        private final Map<String, PaymentTransactionModel> paymentTransactions;
+        private final Map<String, List<BusinessProcessModel>> waitingProcesses;
+
+        protected OrderModificationBatch(final PaymentTransactionType paymentTransactionType, final Map<String, PaymentTransactionModel> paymentTransactions,
+                                         final Map<String, List<BusinessProcessModel>> waitingProcesses) {
+            this.paymentTransactionType = paymentTransactionType;
+            this.paymentTransactions = paymentTransactions;
+            this.waitingProcesses = waitingProcesses;
+        }
+    }
+
     @Required
     public void setOrderModificationDao(OrderModificationDao orderModificationDao) {
         this.orderModificationDao = orderModificationDao;
@@ -266,4 +497,29 @@ public class DefaultWorldpayOrderModificationProcessStrategy implements Worldpay
     public void setWorldpayOrderModificationRefundProcessStrategy(final WorldpayOrderModificationRefundProcessStrategy worldpayOrderModificationRefundProcessStrategy) {
         this.worldpayOrderModificationRefundProcessStrategy = worldpayOrderModificationRefundProcessStrategy;
     }
+
+    @Required
+    public void setWorldpayOrderModificationPartitionStrategy(final WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy) {
+        this.worldpayOrderModificationPartitionStrategy = worldpayOrderModificationPartitionStrategy;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setWorldpayOrderModificationLatencyHistogram(final WorldpayLatencyHistogram worldpayOrderModificationLatencyHistogram) {
+        this.worldpayOrderModificationLatencyHistogram = worldpayOrderModificationLatencyHistogram;
+    }
+
+    @Required
+    public void setWorldpayPaymentStateCache(final WorldpayPaymentStateCache worldpayPaymentStateCache) {
+        this.worldpayPaymentStateCache = worldpayPaymentStateCache;
+    }
+
+    @Required
+    public void setTransactionTemplate(final TransactionOperations transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
 }
@@ -0,0 +1,464 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.core.event.OrderModificationEvent;
+import com.worldpay.enums.order.AuthorisedStatus;
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.service.notification.OrderNotificationMessageParser;
+import com.worldpay.strategies.WorldpayOrderNotificationIngressStrategy;
+import com.worldpay.util.OrderNotificationIngressLog;
+import com.worldpay.util.WorldpayThreadFactory;
+import de.hybris.platform.core.Registry;
+import de.hybris.platform.core.Tenant;
+import de.hybris.platform.core.TenantListener;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.event.EventService;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Default implementation of the {@link WorldpayOrderNotificationIngressStrategy} interface.
+ * <p>
+ * Asynchronous acknowledgement is enabled with {@code worldpay.notification.ingress.enabled}. Notifications are appended to an
+ * {@link OrderNotificationIngressLog} in the {@code cluster.id} sub directory of {@code worldpay.notification.ingress.directory},
+ * and a single drainer thread parses them, in the order they were received, and publishes an {@link OrderModificationEvent} for the
+ * processable ones. The event is always published on this node, whatever {@code worldpay.ordermodification.event.routing} is, and a
+ * notification is consumed from the log only once its event was published, so a notification processed right before a crash is
+ * processed again on restart and coalesced by the order modification deduplication.
+ * </p>
+ * <p>
+ * Worldpay was already acknowledged for the notifications of the log, so a notification is only given up when it can never be
+ * processed: a notification that cannot be parsed, or a corrupted record, is copied to the dead letter directory of the log and
+ * skipped. When publishing fails, for instance while the database is unavailable, the drainer retries the same notification, waiting
+ * twice as long after each failure, from {@code worldpay.notification.ingress.poll.interval} up to
+ * {@code worldpay.notification.ingress.retry.max.interval} milliseconds. After {@code worldpay.notification.ingress.retry.max.attempts}
+ * failed attempts the notification is copied to the dead letter directory and skipped too, so a notification that can never be
+ * published does not hold back the ones received after it. The dead letters are appended to the log again by
+ * {@link #replayDeadLetters()}. Once the log holds {@code worldpay.notification.ingress.max.segments} segments, notifications are not
+ * accepted any more and the callback processes them itself until the drainer catches up.
+ * </p>
+ * <p>
+ * The notifications left over by the previous run are drained once the tenant is started, so they are not processed before the
+ * service layer is up.
+ * </p>
+ */
+public class DefaultWorldpayOrderNotificationIngressStrategy implements WorldpayOrderNotificationIngressStrategy, InitializingBean, DisposableBean, TenantListener {
+
+    private static final Logger LOG = Logger.getLogger(DefaultWorldpayOrderNotificationIngressStrategy.class);
+
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_ENABLED = "worldpay.notification.ingress.enabled";
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_DIRECTORY = "worldpay.notification.ingress.directory";
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_SEGMENT_SIZE = "worldpay.notification.ingress.segment.size";
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_MAX_SEGMENTS = "worldpay.notification.ingress.max.segments";
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_FSYNC = "worldpay.notification.ingress.fsync";
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_POLL_INTERVAL = "worldpay.notification.ingress.poll.interval";
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_INTERVAL = "worldpay.notification.ingress.retry.max.interval";
+    protected static final String WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_ATTEMPTS = "worldpay.notification.ingress.retry.max.attempts";
+    protected static final String CLUSTER_ID = "cluster.id";
+    protected static final String DRAINER_THREAD_NAME = "worldpay-notification-ingress-drainer";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_MAX_SEGMENTS = 64;
+    private static final long DEFAULT_POLL_INTERVAL = 1000L;
+    private static final long DEFAULT_RETRY_MAX_INTERVAL = 60000L;
+    private static final int DEFAULT_RETRY_MAX_ATTEMPTS = 20;
+
+    private final Semaphore appended = new Semaphore(0);
+    private final LongAdder acceptedNotifications = new LongAdder();
+    private final LongAdder rejectedNotifications = new LongAdder();
+    private final LongAdder drainedNotifications = new LongAdder();
+    private final LongAdder failedNotifications = new LongAdder();
+
+    private volatile OrderNotificationIngressLog ingressLog;
+    private volatile Thread drainer;
+    private volatile boolean running = true;
+    private volatile long lagMillis;
+    private volatile int attempts;
+    private String tenantId;
+
+    private OrderNotificationMessageParser orderNotificationMessageParser;
+    private EventService eventService;
+    private SessionService sessionService;
+    private UserService userService;
+    private ConfigurationService configurationService;
+    private Set<AuthorisedStatus> processableJournalTypeCodes;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEnabled() {
+        return configurationService.getConfiguration().getBoolean(WORLDPAY_NOTIFICATION_INGRESS_ENABLED, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final byte[] body) {
+        if (!isEnabled()) {
+            return false;
+        }
+        try {
+            if (getIngressLog().append(body)) {
+                acceptedNotifications.increment();
+                startDrainer();
+                appended.release();
+                return true;
+            }
+            LOG.warn("Order notification log is full, processing the notification on the request thread");
+        } catch (final IOException | RuntimeException e) {
+            LOG.error("Failed to append the order notification to the log, processing it on the request thread", e);
+        }
+        rejectedNotifications.increment();
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int replayDeadLetters() throws IOException {
+        final OrderNotificationIngressLog log = getIngressLog();
+        int replayed = 0;
+        for (final Path deadLetter : log.getDeadLetters()) {
+            if (!log.append(Files.readAllBytes(deadLetter))) {
+                LOG.warn("Order notification log is full, leaving the remaining dead letters");
+                break;
+            }
+            Files.delete(deadLetter);
+            replayed++;
+        }
+        if (replayed > 0) {
+            startDrainer();
+            appended.release();
+        }
+        LOG.info(format("Appended [{0}] dead letters to the order notification log", replayed));
+        return replayed;
+    }
+
+    /**
+     * Waits for the tenant to be started to drain the notifications left over by the previous run.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        final Tenant tenant = Registry.getCurrentTenantNoFallback();
+        tenantId = tenant != null ? tenant.getTenantID() : null;
+        registerTenantListener();
+    }
+
+    /**
+     * Starts draining the notifications left over by the previous run, even when asynchronous acknowledgement was disabled since.
+     */
+    @Override
+    public void afterTenantStartUp(final Tenant tenant) {
+        if (tenantId != null && !tenantId.equals(tenant.getTenantID())) {
+            return;
+        }
+        try {
+            if (isEnabled() || OrderNotificationIngressLog.hasSegments(getDirectory())) {
+                getIngressLog();
+                startDrainer();
+            }
+        } catch (final IOException | RuntimeException e) {
+            LOG.error("Failed to open the order notification log", e);
+        }
+    }
+
+    @Override
+    public void beforeTenantShutDown(final Tenant tenant) {
+        // The drainer is stopped when the bean is destroyed
+    }
+
+    @Override
+    public void afterSetActivateSession(final Tenant tenant) {
+        // Nothing to do
+    }
+
+    @Override
+    public void beforeUnsetActivateSession(final Tenant tenant) {
+        // Nothing to do
+    }
+
+    protected void registerTenantListener() {
+        Registry.registerTenantListener(this);
+    }
+
+    protected void unregisterTenantListener() {
+        Registry.unregisterTenantListener(this);
+    }
+
+    @Override
+    public void destroy() throws IOException, InterruptedException {
+        running = false;
+        unregisterTenantListener();
+        final Thread drainerThread = drainer;
+        if (drainerThread != null) {
+            drainerThread.interrupt();
+            drainerThread.join(getPollInterval());
+        }
+        final OrderNotificationIngressLog log = ingressLog;
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    protected void drainContinuously() {
+        final long pollInterval = getPollInterval();
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                if (attempts > 0) {
+                    TimeUnit.MILLISECONDS.sleep(getRetryInterval(pollInterval));
+                } else {
+                    appended.tryAcquire(pollInterval, TimeUnit.MILLISECONDS);
+                }
+                appended.drainPermits();
+                drain();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException | RuntimeException e) {
+                LOG.error("Failed to read the order notification log", e);
+            }
+        }
+    }
+
+    /**
+     * Processes the notifications of the log, stopping at the first one that has to be retried
+     *
+     * @return the number of notifications consumed from the log
+     */
+    protected int drain() throws IOException {
+        final OrderNotificationIngressLog log = getIngressLog();
+        int consumed = 0;
+        OrderNotificationIngressLog.Record record;
+        while (running && (record = log.peek()) != null) {
+            lagMillis = Math.max(0L, System.currentTimeMillis() - record.getTimestamp());
+            if (!processRecord(log, record)) {
+                return consumed;
+            }
+            log.commit(record);
+            consumed++;
+        }
+        lagMillis = 0L;
+        return consumed;
+    }
+
+    /**
+     * Processes a record of the log
+     *
+     * @return {@code false} when the record has to be retried
+     */
+    protected boolean processRecord(final OrderNotificationIngressLog log, final OrderNotificationIngressLog.Record record) throws IOException {
+        final OrderNotificationMessage orderNotificationMessage;
+        try {
+            orderNotificationMessage = orderNotificationMessageParser.parse(new ByteArrayInputStream(record.getBody()));
+        } catch (final WorldpayModelTransformationException e) {
+            final Path deadLetter = log.writeDeadLetter(record);
+            LOG.error(format("Notification message transformation error, moved the notification to [{0}]", deadLetter), e);
+            failedNotifications.increment();
+            return true;
+        }
+
+        try {
+            publishInLocalView(orderNotificationMessage);
+            attempts = 0;
+            drainedNotifications.increment();
+            return true;
+        } catch (final RuntimeException e) {
+            attempts++;
+            final int maxAttempts = configurationService.getConfiguration().getInt(WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_ATTEMPTS, DEFAULT_RETRY_MAX_ATTEMPTS);
+            if (maxAttempts > 0 && attempts >= maxAttempts) {
+                final Path deadLetter = log.writeDeadLetter(record);
+                LOG.error(format("Failed to process the notification for worldpay order code [{0}] after [{1}] attempts, moved the notification to [{2}]",
+                        orderNotificationMessage.getOrderCode(), attempts, deadLetter), e);
+                attempts = 0;
+                failedNotifications.increment();
+                return true;
+            }
+            LOG.warn(format("Failed to process the notification for worldpay order code [{0}], attempt [{1}], retrying in [{2}] ms",
+                    orderNotificationMessage.getOrderCode(), attempts, getRetryInterval(getPollInterval())), e);
+            return false;
+        }
+    }
+
+    /**
+     * The retry interval doubles after each failed attempt, up to the maximum interval
+     */
+    protected long getRetryInterval(final long pollInterval) {
+        final long maxInterval = Math.max(pollInterval, configurationService.getConfiguration().getLong(WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_INTERVAL, DEFAULT_RETRY_MAX_INTERVAL));
+        long interval = pollInterval;
+        for (int attempt = 1; attempt < attempts && interval < maxInterval; attempt++) {
+            interval *= 2;
+        }
+        return Math.min(maxInterval, interval);
+    }
+
+    protected void publishInLocalView(final OrderNotificationMessage orderNotificationMessage) {
+        if (!processableJournalTypeCodes.contains(orderNotificationMessage.getJournalReply().getJournalType())) {
+            return;
+        }
+        sessionService.executeInLocalView(new SessionExecutionBody() {
+            @Override
+            public void executeWithoutResult() {
+                eventService.publishEvent(new OrderModificationEvent(orderNotificationMessage));
+            }
+        }, userService.getAdminUser());
+    }
+
+    protected OrderNotificationIngressLog getIngressLog() throws IOException {
+        OrderNotificationIngressLog log = ingressLog;
+        if (log == null) {
+            synchronized (this) {
+                log = ingressLog;
+                if (log == null) {
+                    log = createIngressLog();
+                    ingressLog = log;
+                }
+            }
+        }
+        return log;
+    }
+
+    protected OrderNotificationIngressLog createIngressLog() throws IOException {
+        final Configuration configuration = configurationService.getConfiguration();
+        return new OrderNotificationIngressLog(getDirectory(),
+                Math.max(1024, configuration.getInt(WORLDPAY_NOTIFICATION_INGRESS_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE)),
+                configuration.getInt(WORLDPAY_NOTIFICATION_INGRESS_MAX_SEGMENTS, DEFAULT_MAX_SEGMENTS),
+                configuration.getBoolean(WORLDPAY_NOTIFICATION_INGRESS_FSYNC, true));
+    }
+
+    /**
+     * Every node has its own log, as the data directory may be shared by the nodes of the cluster.
+     */
+    protected Path getDirectory() {
+        final Configuration configuration = configurationService.getConfiguration();
+        final String directory = configuration.getString(WORLDPAY_NOTIFICATION_INGRESS_DIRECTORY);
+        if (StringUtils.isBlank(directory)) {
+            throw new IllegalStateException(format("Property [{0}] is not set", WORLDPAY_NOTIFICATION_INGRESS_DIRECTORY));
+        }
+        return Paths.get(directory, configuration.getString(CLUSTER_ID, "0"));
+    }
+
+    protected void startDrainer() {
+        if (drainer == null) {
+            synchronized (this) {
+                if (drainer == null && running) {
+                    final Thread drainerThread = new WorldpayThreadFactory(DRAINER_THREAD_NAME).newThread(this::drainContinuously);
+                    drainerThread.start();
+                    drainer = drainerThread;
+                }
+            }
+        }
+    }
+
+    private long getPollInterval() {
+        return Math.max(10L, configurationService.getConfiguration().getLong(WORLDPAY_NOTIFICATION_INGRESS_POLL_INTERVAL, DEFAULT_POLL_INTERVAL));
+    }
+
+    /**
+     * @return the number of notifications appended to the log and acknowledged at once
+     */
+    public long getAcceptedNotifications() {
+        return acceptedNotifications.sum();
+    }
+
+    /**
+     * @return the number of notifications left to the callback because the log was full or could not be written
+     */
+    public long getRejectedNotifications() {
+        return rejectedNotifications.sum();
+    }
+
+    /**
+     * @return the number of notifications of the log processed by the drainer
+     */
+    public long getDrainedNotifications() {
+        return drainedNotifications.sum();
+    }
+
+    /**
+     * @return the number of notifications of the log moved to the dead letters because they could not be parsed
+     */
+    public long getFailedNotifications() {
+        return failedNotifications.sum();
+    }
+
+    /**
+     * @return the number of notifications waiting in the log
+     */
+    public long getPendingNotifications() {
+        final OrderNotificationIngressLog log = ingressLog;
+        return log == null ? 0L : log.getPendingRecords();
+    }
+
+    /**
+     * @return the number of bytes waiting in the log
+     */
+    public long getPendingBytes() {
+        final OrderNotificationIngressLog log = ingressLog;
+        return log == null ? 0L : log.getPendingBytes();
+    }
+
+    /**
+     * @return the number of times the notification at the head of the log failed to be published so far
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the time the last notification read by the drainer waited in the log, in milliseconds, or 0 when the log is empty
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    @Required
+    public void setOrderNotificationMessageParser(final OrderNotificationMessageParser orderNotificationMessageParser) {
+        this.orderNotificationMessageParser = orderNotificationMessageParser;
+    }
+
+    @Required
+    public void setEventService(final EventService eventService) {
+        this.eventService = eventService;
+    }
+
+    @Required
+    public void setSessionService(final SessionService sessionService) {
+        this.sessionService = sessionService;
+    }
+
+    @Required
+    public void setUserService(final UserService userService) {
+        this.userService = userService;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    @Required
+    public void setProcessableJournalTypeCodes(final Set<AuthorisedStatus> processableJournalTypeCodes) {
+        this.processableJournalTypeCodes = processableJournalTypeCodes;
+    }
+}
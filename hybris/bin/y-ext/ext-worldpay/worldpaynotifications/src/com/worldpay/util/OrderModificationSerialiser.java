@@ -17,11 +17,11 @@ public interface OrderModificationSerialiser {
     String serialise(OrderNotificationMessage orderNotificationMessage);
 
     /**
-     * Deserialises the Order Notification Message.
+     * Deserialises the Order Notification Message, whatever the format it was serialised in.
      *
-     * @param json serialised {@link OrderNotificationMessage}
-     * @return deserialised {@link OrderNotificationMessage}
+     * @param serialisedMessage serialised {@link OrderNotificationMessage}
+     * @return deserialised {@link OrderNotificationMessage}, or null when the serialised message is null or empty
      */
-    OrderNotificationMessage deserialise(String json);
+    OrderNotificationMessage deserialise(String serialisedMessage);
 
 }
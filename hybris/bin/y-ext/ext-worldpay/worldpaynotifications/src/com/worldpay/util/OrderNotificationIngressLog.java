@@ -0,0 +1,482 @@
+package com.worldpay.util;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Durable append-only log of the order notifications received from Worldpay, waiting to be saved as order modifications.
+ * <p>
+ * The log is a sequence of segment files of a fixed size, memory mapped while they are written and read. Each record holds the
+ * length and CRC32 of the notification, the time it was received and the notification itself. The position of the first record
+ * not consumed yet is kept in a checkpoint file, and segments are deleted once all their records were consumed. When the log is
+ * opened, the records after the checkpoint are read again and a record torn by a crash is discarded along with what follows it in
+ * the segment.
+ * </p>
+ * <p>
+ * Records are consumed in the order they were appended, by a single reader. The methods are synchronized: they only copy memory,
+ * the notifications are processed outside of the log.
+ * </p>
+ */
+public class OrderNotificationIngressLog implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(OrderNotificationIngressLog.class);
+
+    /**
+     * Length, CRC32 and timestamp of each record
+     */
+    protected static final int HEADER_SIZE = 16;
+    protected static final String CHECKPOINT_FILE = "checkpoint";
+    protected static final String DEAD_LETTER_DIRECTORY = "dead-letters";
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int CHECKPOINT_SIZE = 12;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final boolean fsync;
+    private final FileChannel checkpointChannel;
+
+    private long writeSegment;
+    private int writeOffset;
+    private MappedByteBuffer writeBuffer;
+    private long readSegment;
+    private int readOffset;
+    private MappedByteBuffer readBuffer;
+    private long pendingRecords;
+
+    /**
+     * Opens the log in the directory, creating it when needed, and recovers the records appended before the last shutdown
+     *
+     * @param directory   the directory holding the segments and the checkpoint
+     * @param segmentSize the size in bytes of each segment, the largest record is {@link #HEADER_SIZE} bytes smaller
+     * @param maxSegments the number of segments after which appends are rejected
+     * @param fsync       whether every append and checkpoint is forced to the disk before returning
+     * @throws IOException when the directory cannot be read or written
+     */
+    public OrderNotificationIngressLog(final Path directory, final int segmentSize, final int maxSegments, final boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+    }
+
+    /**
+     * Appends a notification to the log
+     *
+     * @param body the notification
+     * @return {@code false} when the notification is empty, does not fit in a segment or the log already has the maximum number of
+     * segments. An empty record would be read as the end of its segment, losing the records appended after it
+     * @throws IOException when a new segment cannot be created
+     */
+    public synchronized boolean append(final byte[] body) throws IOException {
+        if (body.length == 0) {
+            LOG.warn("Empty notification, not appended to the log");
+            return false;
+        }
+        final int recordSize = HEADER_SIZE + body.length;
+        if (recordSize > segmentSize) {
+            LOG.warn(format("Notification of {0} bytes does not fit in a segment of {1} bytes", body.length, segmentSize));
+            return false;
+        }
+        if (writeOffset + recordSize > segmentSize) {
+            if (getSegmentCount() >= maxSegments) {
+                return false;
+            }
+            writeSegment++;
+            writeOffset = 0;
+            writeBuffer = mapSegment(writeSegment);
+        }
+
+        final ByteBuffer buffer = writeBuffer.duplicate();
+        buffer.position(writeOffset + 4);
+        buffer.putInt(checksum(body));
+        buffer.putLong(System.currentTimeMillis());
+        buffer.put(body);
+        writeBuffer.putInt(writeOffset, body.length);
+        if (fsync) {
+            writeBuffer.force();
+        }
+        writeOffset += recordSize;
+        pendingRecords++;
+        return true;
+    }
+
+    /**
+     * Reads the first record not consumed yet, without consuming it
+     *
+     * @return the record, or {@code null} when every record was consumed
+     * @throws IOException when a segment cannot be read
+     */
+    public synchronized Record peek() throws IOException {
+        while (readSegment < writeSegment || readOffset < writeOffset) {
+            final MappedByteBuffer buffer = getReadBuffer();
+            final int length = readOffset + HEADER_SIZE <= segmentSize ? buffer.getInt(readOffset) : 0;
+            if (length <= 0 || readOffset + HEADER_SIZE + length > segmentSize) {
+                if (readSegment < writeSegment) {
+                    moveToNextSegment();
+                    continue;
+                }
+                LOG.warn(format("Unexpected end of segment [{0}] at [{1}], skipping to the last appended record", readSegment, readOffset));
+                skipTo(writeOffset);
+                return null;
+            }
+
+            final ByteBuffer record = buffer.duplicate();
+            record.position(readOffset + 4);
+            final int crc = record.getInt();
+            final long timestamp = record.getLong();
+            final byte[] body = new byte[length];
+            record.get(body);
+            if (crc != checksum(body)) {
+                LOG.warn(format("Corrupted record in segment [{0}] at [{1}], skipping the rest of the segment", readSegment, readOffset));
+                writeCorruptedDeadLetter(new Record(readSegment, readOffset, readOffset + HEADER_SIZE + length, timestamp, body));
+                if (readSegment < writeSegment) {
+                    moveToNextSegment();
+                    continue;
+                }
+                skipTo(writeOffset);
+                return null;
+            }
+            return new Record(readSegment, readOffset, readOffset + HEADER_SIZE + length, timestamp, body);
+        }
+        return null;
+    }
+
+    /**
+     * Consumes the record, so it is not read again after a restart
+     *
+     * @param record the record returned by the last call to {@link #peek()}
+     * @throws IOException when the checkpoint cannot be written
+     */
+    public synchronized void commit(final Record record) throws IOException {
+        if (record.getSegment() != readSegment || record.getOffset() != readOffset) {
+            throw new IllegalStateException(format("Record at [{0}/{1}] is not the next record to consume", record.getSegment(), record.getOffset()));
+        }
+        readOffset = record.getNextOffset();
+        pendingRecords = Math.max(0, pendingRecords - 1);
+        writeCheckpoint();
+    }
+
+    /**
+     * Copies a record that could not be processed to the dead letter directory of the log
+     *
+     * @param record the record
+     * @return the file the record was written to
+     * @throws IOException when the file cannot be written
+     */
+    public Path writeDeadLetter(final Record record) throws IOException {
+        final Path deadLetterDirectory = Files.createDirectories(directory.resolve(DEAD_LETTER_DIRECTORY));
+        return Files.write(deadLetterDirectory.resolve(format("{0}-{1}-{2}.xml", String.valueOf(record.getTimestamp()),
+                String.valueOf(record.getSegment()), String.valueOf(record.getOffset()))), record.getBody());
+    }
+
+    /**
+     * Lists the records copied to the dead letter directory of the log, oldest first
+     *
+     * @return the dead letter files
+     * @throws IOException when the dead letter directory cannot be listed
+     */
+    public List<Path> getDeadLetters() throws IOException {
+        final Path deadLetterDirectory = directory.resolve(DEAD_LETTER_DIRECTORY);
+        final List<Path> deadLetters = new ArrayList<>();
+        if (Files.isDirectory(deadLetterDirectory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(deadLetterDirectory)) {
+                for (final Path file : files) {
+                    if (Files.isRegularFile(file)) {
+                        deadLetters.add(file);
+                    }
+                }
+            }
+        }
+        Collections.sort(deadLetters);
+        return deadLetters;
+    }
+
+    /**
+     * The bytes of a corrupted record are kept, as they may still hold a readable notification
+     */
+    private void writeCorruptedDeadLetter(final Record record) {
+        try {
+            LOG.warn(format("Copied the corrupted record to [{0}]", writeDeadLetter(record)));
+        } catch (final IOException e) {
+            LOG.error(format("Failed to copy the corrupted record in segment [{0}] at [{1}] to the dead letters", record.getSegment(), record.getOffset()), e);
+        }
+    }
+
+    /**
+     * @return the number of records appended and not consumed yet
+     */
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * @return the number of bytes appended and not consumed yet, including the unused space at the end of the segments
+     */
+    public synchronized long getPendingBytes() {
+        if (readSegment == writeSegment) {
+            return (long) writeOffset - readOffset;
+        }
+        return (long) segmentSize - readOffset + (writeSegment - readSegment - 1) * segmentSize + writeOffset;
+    }
+
+    /**
+     * @return the number of segments holding records not consumed yet
+     */
+    public synchronized int getSegmentCount() {
+        return (int) (writeSegment - readSegment + 1);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (fsync && writeBuffer != null) {
+            writeBuffer.force();
+        }
+        writeBuffer = null;
+        readBuffer = null;
+        checkpointChannel.close();
+    }
+
+    /**
+     * Checks if the directory holds segments, so a previous run left records that may not have been consumed
+     *
+     * @param directory the directory of the log
+     * @return {@code true} if the directory exists and holds segment files
+     * @throws IOException when the directory cannot be listed
+     */
+    public static boolean hasSegments(final Path directory) throws IOException {
+        return Files.isDirectory(directory) && !listSegments(directory).isEmpty();
+    }
+
+    protected void recover() throws IOException {
+        final List<Long> segments = listSegments(directory);
+        final ByteBuffer checkpoint = ByteBuffer.allocate(CHECKPOINT_SIZE);
+        if (checkpointChannel.read(checkpoint, 0) == CHECKPOINT_SIZE) {
+            checkpoint.flip();
+            readSegment = checkpoint.getLong();
+            readOffset = checkpoint.getInt();
+        } else {
+            readSegment = segments.isEmpty() ? 0L : segments.get(0);
+            readOffset = 0;
+        }
+
+        for (final Long segment : segments) {
+            if (segment < readSegment) {
+                deleteSegment(segment);
+            }
+        }
+        writeSegment = segments.isEmpty() ? readSegment : Math.max(readSegment, segments.get(segments.size() - 1));
+        writeBuffer = mapSegment(writeSegment);
+        writeOffset = findEndOfSegment(writeBuffer);
+        if (writeSegment == readSegment && readOffset > writeOffset) {
+            readOffset = writeOffset;
+        }
+        clear(writeBuffer, writeOffset);
+        pendingRecords = countPendingRecords();
+        writeCheckpoint();
+        if (pendingRecords > 0) {
+            LOG.info(format("Recovered [{0}] order notifications from [{1}]", pendingRecords, directory));
+        }
+    }
+
+    private long countPendingRecords() throws IOException {
+        long count = 0;
+        for (long segment = readSegment; segment <= writeSegment; segment++) {
+            final MappedByteBuffer buffer = segment == writeSegment ? writeBuffer : mapSegment(segment);
+            int offset = segment == readSegment ? readOffset : 0;
+            final int end = segment == writeSegment ? writeOffset : segmentSize;
+            while (offset + HEADER_SIZE <= end) {
+                final int length = buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER_SIZE + length > end) {
+                    break;
+                }
+                count++;
+                offset += HEADER_SIZE + length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the end of the last valid record of the segment. A record with an invalid length or checksum was torn by a crash
+     */
+    private int findEndOfSegment(final MappedByteBuffer buffer) {
+        int offset = 0;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            final int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            final ByteBuffer record = buffer.duplicate();
+            record.position(offset + 4);
+            final int crc = record.getInt();
+            record.position(offset + HEADER_SIZE);
+            final byte[] body = new byte[length];
+            record.get(body);
+            if (crc != checksum(body)) {
+                LOG.warn(format("Discarding the torn record at [{0}] in segment [{1}]", offset, writeSegment));
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private void clear(final MappedByteBuffer buffer, final int from) {
+        for (int offset = from; offset < segmentSize; offset++) {
+            if (buffer.get(offset) != 0) {
+                buffer.put(offset, (byte) 0);
+            }
+        }
+    }
+
+    private MappedByteBuffer getReadBuffer() throws IOException {
+        if (readSegment == writeSegment) {
+            return writeBuffer;
+        }
+        if (readBuffer == null) {
+            readBuffer = mapSegment(readSegment);
+        }
+        return readBuffer;
+    }
+
+    private void moveToNextSegment() throws IOException {
+        final long consumedSegment = readSegment;
+        readSegment++;
+        readOffset = 0;
+        readBuffer = null;
+        writeCheckpoint();
+        deleteSegment(consumedSegment);
+    }
+
+    private void skipTo(final int offset) throws IOException {
+        readOffset = offset;
+        pendingRecords = 0;
+        writeCheckpoint();
+    }
+
+    private void writeCheckpoint() throws IOException {
+        final ByteBuffer checkpoint = ByteBuffer.allocate(CHECKPOINT_SIZE);
+        checkpoint.putLong(readSegment);
+        checkpoint.putInt(readOffset);
+        checkpoint.flip();
+        checkpointChannel.write(checkpoint, 0);
+        if (fsync) {
+            checkpointChannel.force(false);
+        }
+    }
+
+    private MappedByteBuffer mapSegment(final long segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(getSegmentPath(segment).toFile(), "rw")) {
+            if (file.length() != segmentSize) {
+                file.setLength(segmentSize);
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * The mapping of a deleted segment is released by the garbage collector. File systems that do not allow deleting a mapped file
+     * keep the segment until the next start, where it is deleted as it is before the checkpoint.
+     */
+    private void deleteSegment(final long segment) {
+        try {
+            Files.deleteIfExists(getSegmentPath(segment));
+        } catch (final IOException e) {
+            LOG.debug(format("Segment [{0}] could not be deleted yet", segment), e);
+        }
+    }
+
+    private Path getSegmentPath(final long segment) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private static List<Long> listSegments(final Path directory) throws IOException {
+        final List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (final NumberFormatException e) {
+                    LOG.warn(format("Ignoring unexpected file [{0}] in the order notification log", file));
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int checksum(final byte[] body) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(body, 0, body.length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * A notification read from the log
+     */
+    public static class Record {
+        private final long segment;
+        private final int offset;
+        private final int nextOffset;
+        private final long timestamp;
+        private final byte[] body;
+
+        protected Record(final long segment, final int offset, final int nextOffset, final long timestamp, final byte[] body) {
+            this.segment = segment;
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.timestamp = timestamp;
+            this.body = body;
+        }
+
+        public long getSegment() {
+            return segment;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getNextOffset() {
+            return nextOffset;
+        }
+
+        /**
+         * @return the time the notification was appended, in milliseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.worldpay.util;
+
+import com.worldpay.service.notification.OrderNotificationMessage;
+
+/**
+ * Order Notification Message Format interface.
+ * A format is a way of storing an {@link OrderNotificationMessage} in a {@link com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel}.
+ * The {@link OrderModificationSerialiser} writes new messages in one format and reads the messages of every format.
+ */
+public interface OrderNotificationMessageFormat {
+
+    /**
+     * Returns the name the format is selected with
+     *
+     * @return the name of the format
+     */
+    String getName();
+
+    /**
+     * Checks if the serialised message was written in this format
+     *
+     * @param serialisedMessage the stored message
+     * @return {@code true} if the format can read the message
+     */
+    boolean canRead(String serialisedMessage);
+
+    /**
+     * Serialises the Order Notification Message.
+     *
+     * @param orderNotificationMessage {@link OrderNotificationMessage}
+     * @return serialised order notification message
+     */
+    String write(OrderNotificationMessage orderNotificationMessage);
+
+    /**
+     * Deserialises the Order Notification Message.
+     *
+     * @param serialisedMessage serialised {@link OrderNotificationMessage}
+     * @return deserialised {@link OrderNotificationMessage}
+     */
+    OrderNotificationMessage read(String serialisedMessage);
+}
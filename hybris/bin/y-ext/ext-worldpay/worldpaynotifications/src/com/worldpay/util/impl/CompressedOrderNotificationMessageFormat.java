@@ -0,0 +1,73 @@
+package com.worldpay.util.impl;
+
+import com.google.gson.Gson;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.util.OrderNotificationMessageFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link OrderNotificationMessageFormat} storing the message as gzipped compact json, base64 encoded to fit the text column. The stored
+ * message starts with a version marker, so the encoding can change without breaking the messages already stored.
+ */
+public class CompressedOrderNotificationMessageFormat implements OrderNotificationMessageFormat {
+
+    protected static final String NAME = "gzip";
+    protected static final String VERSION_MARKER = "gz1:";
+
+    private static final Gson GSON = new Gson();
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canRead(final String serialisedMessage) {
+        return serialisedMessage != null && serialisedMessage.startsWith(VERSION_MARKER);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String write(final OrderNotificationMessage orderNotificationMessage) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        try (final Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            GSON.toJson(orderNotificationMessage, writer);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to compress the order notification message", e);
+        }
+        return VERSION_MARKER + Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderNotificationMessage read(final String serialisedMessage) {
+        final byte[] bytes = Base64.getDecoder().decode(serialisedMessage.substring(VERSION_MARKER.length()));
+        try (final Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, OrderNotificationMessage.class);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to decompress the order notification message", e);
+        }
+    }
+}
@@ -1,26 +1,42 @@
 package com.worldpay.util.impl;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import com.worldpay.service.notification.OrderNotificationMessage;
 import com.worldpay.util.OrderModificationSerialiser;
+import com.worldpay.util.OrderNotificationMessageFormat;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Required;
 
-import java.lang.reflect.Type;
+import java.util.List;
+
+import static java.text.MessageFormat.format;
 
 /**
  * Default implementation of {@link OrderModificationSerialiser}.
+ * <p>
+ * New messages are written in the {@link OrderNotificationMessageFormat} named by {@code worldpay.ordermodification.serialiser.format},
+ * or in the first format when no format has that name. Stored messages are read by the first format that recognises them, so messages
+ * written in a previous format can still be processed.
+ * </p>
  */
 public class DefaultOrderModificationSerialiser implements OrderModificationSerialiser {
 
+    private static final Logger LOG = Logger.getLogger(DefaultOrderModificationSerialiser.class);
+
+    protected static final String WORLDPAY_ORDERMODIFICATION_SERIALISER_FORMAT = "worldpay.ordermodification.serialiser.format";
+
+    private List<OrderNotificationMessageFormat> orderNotificationMessageFormats;
+    private ConfigurationService configurationService;
+    private volatile String unknownFormatName;
+
     /**
      * {@inheritDoc}
      * @see OrderModificationSerialiser#serialise(OrderNotificationMessage)
      */
     @Override
     public String serialise(final OrderNotificationMessage orderNotificationMessage) {
-        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        return gson.toJson(orderNotificationMessage);
+        return getWriteFormat().write(orderNotificationMessage);
     }
 
     /**
@@ -28,10 +44,43 @@ public class DefaultOrderModificationSerialiser implements OrderModificationSeri
      * @see OrderModificationSerialiser#deserialise(String)
      */
     @Override
-    public OrderNotificationMessage deserialise(final String json) {
-        final Gson gson = new Gson();
-        final Type type = new TypeToken<OrderNotificationMessage>() {/**/
-        }.getType();
-        return gson.fromJson(json, type);
+    public OrderNotificationMessage deserialise(final String serialisedMessage) {
+        if (StringUtils.isBlank(serialisedMessage)) {
+            return null;
+        }
+        for (final OrderNotificationMessageFormat orderNotificationMessageFormat : orderNotificationMessageFormats) {
+            if (orderNotificationMessageFormat.canRead(serialisedMessage)) {
+                return orderNotificationMessageFormat.read(serialisedMessage);
+            }
+        }
+        throw new IllegalArgumentException("The order notification message is not stored in a known format");
+    }
+
+    /**
+     * An unknown format name is logged once, not for every message written with the default format.
+     */
+    protected OrderNotificationMessageFormat getWriteFormat() {
+        final String formatName = configurationService.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_SERIALISER_FORMAT);
+        for (final OrderNotificationMessageFormat orderNotificationMessageFormat : orderNotificationMessageFormats) {
+            if (orderNotificationMessageFormat.getName().equalsIgnoreCase(formatName)) {
+                return orderNotificationMessageFormat;
+            }
+        }
+        if (StringUtils.isNotBlank(formatName) && !formatName.equals(unknownFormatName)) {
+            unknownFormatName = formatName;
+            LOG.warn(format("Unknown order notification message format [{0}], using the default format [{1}]", formatName,
+                    orderNotificationMessageFormats.get(0).getName()));
+        }
+        return orderNotificationMessageFormats.get(0);
+    }
+
+    @Required
+    public void setOrderNotificationMessageFormats(final List<OrderNotificationMessageFormat> orderNotificationMessageFormats) {
+        this.orderNotificationMessageFormats = orderNotificationMessageFormats;
+    }
+
+    @Required
+    public void setConfigurationService(final ConfigurationService configurationService) {
+        this.configurationService = configurationService;
     }
 }
@@ -0,0 +1,49 @@
+package com.worldpay.util.impl;
+
+import com.google.gson.Gson;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.util.OrderNotificationMessageFormat;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * {@link OrderNotificationMessageFormat} storing the message as compact json. It also reads the pretty printed json stored by
+ * previous versions.
+ */
+public class JsonOrderNotificationMessageFormat implements OrderNotificationMessageFormat {
+
+    protected static final String NAME = "json";
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canRead(final String serialisedMessage) {
+        return StringUtils.trimToEmpty(serialisedMessage).startsWith("{");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String write(final OrderNotificationMessage orderNotificationMessage) {
+        return GSON.toJson(orderNotificationMessage);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OrderNotificationMessage read(final String serialisedMessage) {
+        return GSON.fromJson(serialisedMessage, OrderNotificationMessage.class);
+    }
+}
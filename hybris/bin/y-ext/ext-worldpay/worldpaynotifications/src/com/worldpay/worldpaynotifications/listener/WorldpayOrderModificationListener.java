@@ -3,16 +3,25 @@ package com.worldpay.worldpaynotifications.listener;
 import com.worldpay.core.event.OrderModificationEvent;
 import com.worldpay.core.services.WorldpayCartService;
 import com.worldpay.enums.order.AuthorisedStatus;
+import com.worldpay.service.model.JournalReply;
 import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.strategies.WorldpayOrderModificationDeduplicationStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationDispatchStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
 import com.worldpay.util.OrderModificationSerialiser;
 import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
 import de.hybris.platform.servicelayer.event.impl.AbstractEventListener;
+import de.hybris.platform.servicelayer.exceptions.ModelSavingException;
 import de.hybris.platform.servicelayer.model.ModelService;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Required;
 
 import java.text.MessageFormat;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
 import java.util.Map;
 
 import static com.worldpay.enums.order.AuthorisedStatus.REFUSED;
@@ -22,7 +31,8 @@ import static com.worldpay.enums.order.AuthorisedStatus.REFUSED;
  *
  * @see OrderModificationController
  * <p>
- * The listener save the order notification message for later processing
+ * The listener save the order notification message for later processing, and dispatches it for immediate processing when enabled.
+ * Notifications retried by Worldpay are recognised by the {@link WorldpayOrderModificationDeduplicationStrategy} and not saved again.
  */
 public class WorldpayOrderModificationListener extends AbstractEventListener<OrderModificationEvent> {
 
@@ -32,6 +42,9 @@ public class WorldpayOrderModificationListener extends AbstractEventListener<Ord
     private WorldpayCartService worldpayCartService;
     private Map<AuthorisedStatus, PaymentTransactionType> paymentTransactionTypeMap;
     private OrderModificationSerialiser orderModificationSerialiser;
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy;
+    private WorldpayOrderModificationDispatchStrategy worldpayOrderModificationDispatchStrategy;
+    private WorldpayOrderModificationDeduplicationStrategy worldpayOrderModificationDeduplicationStrategy;
 
     /**
      * {@inheritDoc}
@@ -61,12 +74,57 @@ public class WorldpayOrderModificationListener extends AbstractEventListener<Ord
 
     protected void saveOrderModification(OrderNotificationMessage orderNotificationMessage, PaymentTransactionType transactionType) {
         final String worldpayOrderCode = orderNotificationMessage.getOrderCode();
+        final String serialisedMessage = orderModificationSerialiser.serialise(orderNotificationMessage);
+        final String deduplicationKey = worldpayOrderModificationDeduplicationStrategy.getDeduplicationKey(worldpayOrderCode, transactionType, orderNotificationMessage);
+        if (worldpayOrderModificationDeduplicationStrategy.isDuplicate(deduplicationKey)) {
+            return;
+        }
         LOG.info(MessageFormat.format("Saving worldpayOrderModificationModel for worldpay order code: {0}", worldpayOrderCode));
         final WorldpayOrderModificationModel worldpayOrderModificationModel = modelService.create(WorldpayOrderModificationModel.class);
         worldpayOrderModificationModel.setType(transactionType);
         worldpayOrderModificationModel.setWorldpayOrderCode(worldpayOrderCode);
-        worldpayOrderModificationModel.setOrderNotificationMessage(orderModificationSerialiser.serialise(orderNotificationMessage));
-        modelService.save(worldpayOrderModificationModel);
+        worldpayOrderModificationModel.setPartitionKey(worldpayOrderModificationPartitionStrategy.getPartitionKey(worldpayOrderCode));
+        worldpayOrderModificationModel.setOrderNotificationMessage(serialisedMessage);
+        worldpayOrderModificationModel.setDeduplicationKey(deduplicationKey);
+        worldpayOrderModificationModel.setBookingDate(getBookingDate(orderNotificationMessage));
+        try {
+            modelService.save(worldpayOrderModificationModel);
+        } catch (final ModelSavingException e) {
+            modelService.detach(worldpayOrderModificationModel);
+            if (worldpayOrderModificationDeduplicationStrategy.isSavedConcurrently(deduplicationKey)) {
+                LOG.debug(MessageFormat.format("Order modification for worldpay order code: {0} was saved concurrently", worldpayOrderCode), e);
+                return;
+            }
+            worldpayOrderModificationDeduplicationStrategy.releaseDeduplicationKey(deduplicationKey);
+            throw e;
+        }
+        worldpayOrderModificationDeduplicationStrategy.registerOrderModification(worldpayOrderModificationModel);
+        worldpayOrderModificationDispatchStrategy.dispatch(worldpayOrderModificationModel);
+    }
+
+    /**
+     * Converts the journal booking date of the notification, sent by Worldpay in GMT, missing time fields counting as 0
+     *
+     * @return the booking date, or {@code null} when the notification has none or it cannot be read
+     */
+    protected Date getBookingDate(final OrderNotificationMessage orderNotificationMessage) {
+        final JournalReply journalReply = orderNotificationMessage.getJournalReply();
+        final com.worldpay.service.model.Date bookingDate = journalReply != null ? journalReply.getBookingDate() : null;
+        if (bookingDate == null) {
+            return null;
+        }
+        try {
+            return Date.from(LocalDateTime.of(Integer.parseInt(bookingDate.getYear()), Integer.parseInt(bookingDate.getMonth()),
+                    Integer.parseInt(bookingDate.getDayOfMonth()), parseTimeField(bookingDate.getHour()), parseTimeField(bookingDate.getMinute()),
+                    parseTimeField(bookingDate.getSecond())).toInstant(ZoneOffset.UTC));
+        } catch (final NumberFormatException | DateTimeException e) {
+            LOG.warn(MessageFormat.format("Invalid booking date [{0}] for worldpay order code: {1}", bookingDate, orderNotificationMessage.getOrderCode()));
+            return null;
+        }
+    }
+
+    private int parseTimeField(final String timeField) {
+        return timeField == null || timeField.isEmpty() ? 0 : Integer.parseInt(timeField);
     }
 
     @Required
@@ -88,4 +146,19 @@ public class WorldpayOrderModificationListener extends AbstractEventListener<Ord
     public void setWorldpayCartService(WorldpayCartService worldpayCartService) {
         this.worldpayCartService = worldpayCartService;
     }
+
+    @Required
+    public void setWorldpayOrderModificationPartitionStrategy(final WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategy) {
+        this.worldpayOrderModificationPartitionStrategy = worldpayOrderModificationPartitionStrategy;
+    }
+
+    @Required
+    public void setWorldpayOrderModificationDispatchStrategy(final WorldpayOrderModificationDispatchStrategy worldpayOrderModificationDispatchStrategy) {
+        this.worldpayOrderModificationDispatchStrategy = worldpayOrderModificationDispatchStrategy;
+    }
+
+    @Required
+    public void setWorldpayOrderModificationDeduplicationStrategy(final WorldpayOrderModificationDeduplicationStrategy worldpayOrderModificationDeduplicationStrategy) {
+        this.worldpayOrderModificationDeduplicationStrategy = worldpayOrderModificationDeduplicationStrategy;
+    }
 }
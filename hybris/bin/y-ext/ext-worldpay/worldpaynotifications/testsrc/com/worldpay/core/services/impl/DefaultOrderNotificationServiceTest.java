@@ -67,4 +67,14 @@ public class DefaultOrderNotificationServiceTest {
         verify(worldpayPaymentTransactionDaoMock).findPaymentTransactionByRequestIdFromOrdersOnly(ORDER_CODE);
         verify(orderNotificationProcessorStrategyMock).processNotificationMessage(paymentTransactionModelMock, orderNotificationMessageMock);
     }
+
+    @Test
+    public void processOrderNotificationMessageShouldUseTheGivenPaymentTransaction() {
+        when(orderNotificationMessageMock.getJournalReply().getJournalType()).thenReturn(AUTHORISED);
+
+        testObj.processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+
+        verify(worldpayPaymentTransactionDaoMock, never()).findPaymentTransactionByRequestIdFromOrdersOnly(anyString());
+        verify(orderNotificationProcessorStrategyMock).processNotificationMessage(paymentTransactionModelMock, orderNotificationMessageMock);
+    }
 }
@@ -1,20 +1,28 @@
 package com.worldpay.cronjob;
 
+import com.worldpay.core.dao.PaymentTransactionPageProcessor;
 import com.worldpay.core.dao.WorldpayPaymentTransactionDao;
 import com.worldpay.transaction.WorldpayPaymentTransactionService;
+import com.worldpay.worldpaynotifications.model.APMOrderTimeoutCronJobModel;
 import de.hybris.bootstrap.annotations.UnitTest;
 import de.hybris.platform.core.model.order.OrderModel;
+import de.hybris.platform.core.model.user.EmployeeModel;
 import de.hybris.platform.cronjob.model.CronJobModel;
 import de.hybris.platform.orderprocessing.model.OrderProcessModel;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
 import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.processengine.BusinessProcessService;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.cronjob.PerformResult;
 import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
@@ -24,12 +32,28 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionOperations;
 
+import java.util.Arrays;
 import java.util.Collections;
 
+import static com.worldpay.cronjob.APMOrderTimeoutJobPerformable.WORLDPAY_APM_TIMEOUT_BATCH_CHUNK_SIZE;
+import static com.worldpay.cronjob.APMOrderTimeoutJobPerformable.WORLDPAY_APM_TIMEOUT_BATCH_ENABLED;
+import static com.worldpay.cronjob.APMOrderTimeoutJobPerformable.WORLDPAY_APM_TIMEOUT_BATCH_EVENT_CONCURRENCY;
+import static com.worldpay.cronjob.APMOrderTimeoutJobPerformable.WORLDPAY_APM_TIMEOUT_PAGE_SIZE;
+import static de.hybris.platform.cronjob.enums.CronJobResult.FAILURE;
 import static de.hybris.platform.cronjob.enums.CronJobResult.SUCCESS;
+import static de.hybris.platform.cronjob.enums.CronJobStatus.ABORTED;
 import static de.hybris.platform.cronjob.enums.CronJobStatus.FINISHED;
 import static de.hybris.platform.payment.dto.TransactionStatus.REVIEW;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -38,6 +62,7 @@ import static org.mockito.Mockito.when;
 public class APMOrderTimeoutJobPerformableTest {
 
     public static final String ORDER_PROCESS_CODE = "orderProcessCode";
+    private static final int PAGE_SIZE = 50;
 
     @InjectMocks
     @Spy
@@ -63,6 +88,18 @@ public class APMOrderTimeoutJobPerformableTest {
     private TransactionStatus transactionStatusMock;
     @Mock
     private ModelService modelServiceMock;
+    @Mock (answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private SessionService sessionServiceMock;
+    @Mock
+    private UserService userServiceMock;
+    @Mock
+    private EmployeeModel adminUserMock;
+    @Mock
+    private APMOrderTimeoutCronJobModel apmOrderTimeoutCronJobModelMock;
+    @Mock
+    private PaymentTransactionModel otherPaymentTransactionModelMock;
 
     private TransactionOperations transactionOperationsMock = new TransactionOperations() {
         @Override
@@ -75,7 +112,9 @@ public class APMOrderTimeoutJobPerformableTest {
     public void setUp() throws Exception {
         testObj.setTransactionTemplate(transactionOperationsMock);
         when(paymentTransactionModelMock.getOrder()).thenReturn(orderModelMock);
-        when(worldpayPaymentTransactionDaoMock.findCancellablePendingAPMPaymentTransactions()).thenReturn(Collections.singletonList(paymentTransactionModelMock));
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_APM_TIMEOUT_PAGE_SIZE), anyInt())).thenReturn(PAGE_SIZE);
+        doAnswer(invocation -> ((PaymentTransactionPageProcessor) invocation.getArguments()[1]).process(Collections.singletonList(paymentTransactionModelMock)))
+                .when(worldpayPaymentTransactionDaoMock).processCancellablePendingAPMPaymentTransactions(eq(PAGE_SIZE), any(PaymentTransactionPageProcessor.class));
         when(orderModelMock.getOrderProcess()).thenReturn(Collections.singletonList(orderProcessModelMock));
         when(orderProcessModelMock.getCode()).thenReturn(ORDER_PROCESS_CODE);
         when(paymentTransactionModelMock.getEntries()).thenReturn(Collections.singletonList(paymentTransactionEntryModelMock));
@@ -90,7 +129,77 @@ public class APMOrderTimeoutJobPerformableTest {
 
         verify(worldpayPaymentTransactionServiceMock).updateEntriesStatus(Collections.singletonList(paymentTransactionEntryModelMock), REVIEW.name());
         verify(modelServiceMock).save(paymentTransactionModelMock);
-        verify(worldpayPaymentTransactionDaoMock).findCancellablePendingAPMPaymentTransactions();
+        verify(worldpayPaymentTransactionDaoMock).processCancellablePendingAPMPaymentTransactions(eq(PAGE_SIZE), any(PaymentTransactionPageProcessor.class));
         verify(businessProcessServiceMock).triggerEvent(ORDER_PROCESS_CODE + "_" + PaymentTransactionType.AUTHORIZATION);
     }
+
+    @Test
+    public void testPerformShouldUpdateTheEntriesOfAChunkInASingleSaveWhenBatched() {
+        enableBatchedSweep();
+
+        final PerformResult result = testObj.perform(apmOrderTimeoutCronJobModelMock);
+
+        assertEquals(SUCCESS, result.getResult());
+        assertEquals(FINISHED, result.getStatus());
+        verify(worldpayPaymentTransactionServiceMock).updateEntriesStatus(Arrays.asList(paymentTransactionEntryModelMock, paymentTransactionEntryModelMock), REVIEW.name());
+        verify(modelServiceMock).saveAll(Arrays.asList(paymentTransactionModelMock, otherPaymentTransactionModelMock));
+        verify(businessProcessServiceMock, times(2)).triggerEvent(ORDER_PROCESS_CODE + "_" + PaymentTransactionType.AUTHORIZATION);
+    }
+
+    @Test
+    public void testPerformShouldSaveTheProgressOnTheCronJobWhenBatched() {
+        enableBatchedSweep();
+
+        testObj.perform(apmOrderTimeoutCronJobModelMock);
+
+        verify(apmOrderTimeoutCronJobModelMock).setTimedOutTransactions(2);
+        verify(apmOrderTimeoutCronJobModelMock).setTimeoutEventsTriggered(2);
+        verify(apmOrderTimeoutCronJobModelMock).setTimeoutFailures(0);
+        verify(modelServiceMock).save(apmOrderTimeoutCronJobModelMock);
+    }
+
+    @Test
+    public void testPerformShouldNotTriggerEventsOfAFailedChunkAndReturnFailureWhenBatched() {
+        enableBatchedSweep();
+        doThrow(new IllegalStateException()).when(worldpayPaymentTransactionServiceMock).updateEntriesStatus(anyListOf(PaymentTransactionEntryModel.class), eq(REVIEW.name()));
+
+        final PerformResult result = testObj.perform(apmOrderTimeoutCronJobModelMock);
+
+        assertEquals(FAILURE, result.getResult());
+        verify(businessProcessServiceMock, never()).triggerEvent(any(String.class));
+        verify(apmOrderTimeoutCronJobModelMock).setTimeoutFailures(2);
+    }
+
+    @Test
+    public void testPerformShouldStopWhenAbortIsRequestedWhenBatched() {
+        enableBatchedSweep();
+        when(apmOrderTimeoutCronJobModelMock.getRequestAbort()).thenReturn(Boolean.TRUE);
+
+        final PerformResult result = testObj.perform(apmOrderTimeoutCronJobModelMock);
+
+        assertEquals(ABORTED, result.getStatus());
+    }
+
+    @Test
+    public void testPerformShouldStopWhenAbortIsRequested() {
+        when(cronJobModelMock.getRequestAbort()).thenReturn(Boolean.TRUE);
+
+        final PerformResult result = testObj.perform(cronJobModelMock);
+
+        assertEquals(ABORTED, result.getStatus());
+        verify(cronJobModelMock).setRequestAbort(null);
+    }
+
+    private void enableBatchedSweep() {
+        when(configurationServiceMock.getConfiguration().getBoolean(eq(WORLDPAY_APM_TIMEOUT_BATCH_ENABLED), anyBoolean())).thenReturn(true);
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_APM_TIMEOUT_BATCH_CHUNK_SIZE), anyInt())).thenReturn(PAGE_SIZE);
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_APM_TIMEOUT_BATCH_EVENT_CONCURRENCY), anyInt())).thenReturn(1);
+        when(otherPaymentTransactionModelMock.getOrder()).thenReturn(orderModelMock);
+        when(otherPaymentTransactionModelMock.getEntries()).thenReturn(Collections.singletonList(paymentTransactionEntryModelMock));
+        doAnswer(invocation -> ((PaymentTransactionPageProcessor) invocation.getArguments()[1]).process(Arrays.asList(paymentTransactionModelMock, otherPaymentTransactionModelMock)))
+                .when(worldpayPaymentTransactionDaoMock).processCancellablePendingAPMPaymentTransactions(eq(PAGE_SIZE), any(PaymentTransactionPageProcessor.class));
+        when(userServiceMock.getAdminUser()).thenReturn(adminUserMock);
+        doAnswer(invocation -> ((SessionExecutionBody) invocation.getArguments()[0]).execute())
+                .when(sessionServiceMock).executeInLocalView(any(SessionExecutionBody.class), eq(adminUserMock));
+    }
 }
\ No newline at end of file
@@ -2,15 +2,36 @@ package com.worldpay.cronjob;
 
 import com.worldpay.strategies.WorldpayOrderModificationCleanUpStrategy;
 import com.worldpay.worldpaynotifications.model.CleanUpProcessedOrderModificationsCronJobModel;
+import com.worldpay.strategies.OrderModificationPurgeProgressListener;
 import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.cronjob.PerformResult;
+import de.hybris.platform.servicelayer.model.ModelService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import static com.worldpay.cronjob.OrderModificationCleanUpJobPerformable.WORLDPAY_ORDERMODIFICATION_CLEANUP_BULK_ENABLED;
+import static de.hybris.platform.cronjob.enums.CronJobResult.ERROR;
+import static de.hybris.platform.cronjob.enums.CronJobResult.SUCCESS;
+import static de.hybris.platform.cronjob.enums.CronJobResult.UNKNOWN;
+import static de.hybris.platform.cronjob.enums.CronJobStatus.ABORTED;
+import static de.hybris.platform.cronjob.enums.CronJobStatus.FINISHED;
+import static java.lang.Boolean.TRUE;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @UnitTest
 @RunWith(MockitoJUnitRunner.class)
@@ -22,11 +43,68 @@ public class OrderModificationCleanUpJobPerformableTest {
     private WorldpayOrderModificationCleanUpStrategy worldpayOrderModificationCleanUpStrategy;
     @Mock
     private CleanUpProcessedOrderModificationsCronJobModel cleanUpProcessedOrderModificationsCronJobModelMock;
+    @Mock(answer = RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private ModelService modelServiceMock;
+    @Captor
+    private ArgumentCaptor<OrderModificationPurgeProgressListener> listenerCaptor;
 
     @Test
     public void performShouldRunTheImplementedStrategyJob() {
         testObj.perform(cleanUpProcessedOrderModificationsCronJobModelMock);
 
         verify(worldpayOrderModificationCleanUpStrategy).doCleanUp(anyInt());
+        verify(worldpayOrderModificationCleanUpStrategy, never()).doBulkCleanUp(anyInt(), anyLong(), any());
+    }
+
+    @Test
+    public void performShouldResumeTheBulkCleanUpFromTheCheckpointAndClearItWhenFinished() {
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_CLEANUP_BULK_ENABLED, false)).thenReturn(TRUE);
+        when(cleanUpProcessedOrderModificationsCronJobModelMock.getDaysToWaitBeforeDeletion()).thenReturn(5);
+        when(cleanUpProcessedOrderModificationsCronJobModelMock.getPurgeCheckpoint()).thenReturn(100L);
+        when(worldpayOrderModificationCleanUpStrategy.doBulkCleanUp(eq(5), eq(100L), listenerCaptor.capture())).thenAnswer(invocation -> {
+            listenerCaptor.getValue().chunkPurged(200L, 50);
+            return 50L;
+        });
+
+        final PerformResult result = testObj.perform(cleanUpProcessedOrderModificationsCronJobModelMock);
+
+        assertEquals(SUCCESS, result.getResult());
+        assertEquals(FINISHED, result.getStatus());
+        verify(cleanUpProcessedOrderModificationsCronJobModelMock).setPurgeCheckpoint(200L);
+        verify(cleanUpProcessedOrderModificationsCronJobModelMock).setPurgeCheckpoint(null);
+        verify(cleanUpProcessedOrderModificationsCronJobModelMock, times(2)).setPurgedRows(50L);
+        verify(worldpayOrderModificationCleanUpStrategy, never()).doCleanUp(anyInt());
+    }
+
+    @Test
+    public void performShouldKeepTheCheckpointWhenTheBulkCleanUpFails() {
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_CLEANUP_BULK_ENABLED, false)).thenReturn(TRUE);
+        when(cleanUpProcessedOrderModificationsCronJobModelMock.getDaysToWaitBeforeDeletion()).thenReturn(5);
+        when(worldpayOrderModificationCleanUpStrategy.doBulkCleanUp(eq(5), eq(0L), any())).thenThrow(new IllegalStateException());
+
+        final PerformResult result = testObj.perform(cleanUpProcessedOrderModificationsCronJobModelMock);
+
+        assertEquals(ERROR, result.getResult());
+        verify(cleanUpProcessedOrderModificationsCronJobModelMock, never()).setPurgeCheckpoint(null);
+    }
+
+    @Test
+    public void performShouldStopAtTheCheckpointWhenAbortRequested() {
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_CLEANUP_BULK_ENABLED, false)).thenReturn(TRUE);
+        when(cleanUpProcessedOrderModificationsCronJobModelMock.getDaysToWaitBeforeDeletion()).thenReturn(5);
+        when(cleanUpProcessedOrderModificationsCronJobModelMock.getRequestAbort()).thenReturn(TRUE);
+        when(worldpayOrderModificationCleanUpStrategy.doBulkCleanUp(eq(5), eq(0L), listenerCaptor.capture())).thenAnswer(invocation -> {
+            assertEquals(false, listenerCaptor.getValue().chunkPurged(200L, 50));
+            return 50L;
+        });
+
+        final PerformResult result = testObj.perform(cleanUpProcessedOrderModificationsCronJobModelMock);
+
+        assertEquals(UNKNOWN, result.getResult());
+        assertEquals(ABORTED, result.getStatus());
+        verify(cleanUpProcessedOrderModificationsCronJobModelMock).setPurgeCheckpoint(200L);
+        verify(cleanUpProcessedOrderModificationsCronJobModelMock, never()).setPurgeCheckpoint(null);
     }
 }
@@ -1,15 +1,20 @@
 package com.worldpay.cronjob;
 
+import com.worldpay.strategies.WorldpayOrderModificationPartitionLeaseStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
 import com.worldpay.strategies.WorldpayOrderModificationProcessStrategy;
 import com.worldpay.worldpaynotifications.model.OrderModificationCronJobModel;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
 import de.hybris.bootstrap.annotations.UnitTest;
 import de.hybris.platform.cronjob.enums.CronJobResult;
 import de.hybris.platform.cronjob.enums.CronJobStatus;
 import de.hybris.platform.payment.enums.PaymentTransactionType;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.cronjob.PerformResult;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -18,14 +23,22 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static de.hybris.platform.payment.enums.PaymentTransactionType.*;
+import static com.worldpay.cronjob.OrderModificationProcessorJobPerformable.WORLDPAY_ORDERMODIFICATION_PARTITION_WORKERS;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @UnitTest
 @RunWith(MockitoJUnitRunner.class)
 public class OrderModificationProcessorJobPerformableTest {
+
+    private static final int PARTITIONS = 2;
     
     @InjectMocks
     private OrderModificationProcessorJobPerformable testObj = new OrderModificationProcessorJobPerformable();
@@ -34,6 +47,14 @@ public class OrderModificationProcessorJobPerformableTest {
     private OrderModificationCronJobModel cronJobModelMock;
     @Mock
     private WorldpayOrderModificationProcessStrategy worldpayOrderModificationProcessStrategyMock;
+    @Mock
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategyMock;
+    @Mock
+    private WorldpayOrderModificationPartitionLeaseStrategy worldpayOrderModificationPartitionLeaseStrategyMock;
+    @Mock (answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private WorldpayOrderModificationPartitionModel partitionModelMock;
     
     private Set<PaymentTransactionType> paymentTransactionTypes = new HashSet<>();
     
@@ -42,6 +63,7 @@ public class OrderModificationProcessorJobPerformableTest {
         paymentTransactionTypes.add(AUTHORIZATION);
         paymentTransactionTypes.add(CAPTURE);
         paymentTransactionTypes.add(CANCEL);
+        when(worldpayOrderModificationPartitionStrategyMock.getPartitionCount()).thenReturn(1);
     }
 
     @Test
@@ -73,5 +95,55 @@ public class OrderModificationProcessorJobPerformableTest {
         verify(worldpayOrderModificationProcessStrategyMock).processOrderModificationMessages(CAPTURE);
         verify(worldpayOrderModificationProcessStrategyMock).processOrderModificationMessages(CANCEL);
     }
-    
+
+    @Test
+    public void performShouldProcessEveryLeasedPartitionWhenPartitioned() {
+        givenPartitions();
+        when(worldpayOrderModificationPartitionLeaseStrategyMock.acquireLease(anyInt(), anyString())).thenReturn(true);
+
+        final PerformResult result = testObj.perform(cronJobModelMock);
+
+        assertEquals(CronJobResult.SUCCESS, result.getResult());
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            verify(worldpayOrderModificationPartitionLeaseStrategyMock).updateLag(partition);
+            verify(worldpayOrderModificationProcessStrategyMock).processOrderModificationMessages(AUTHORIZATION, partition);
+            verify(worldpayOrderModificationProcessStrategyMock).processOrderModificationMessages(CAPTURE, partition);
+            verify(worldpayOrderModificationPartitionLeaseStrategyMock).releaseLease(eq(partition), anyString());
+        }
+        verify(worldpayOrderModificationProcessStrategyMock, never()).processOrderModificationMessages(any(PaymentTransactionType.class));
+    }
+
+    @Test
+    public void performShouldSkipPartitionsLeasedByAnotherOwner() {
+        givenPartitions();
+        when(worldpayOrderModificationPartitionLeaseStrategyMock.acquireLease(eq(0), anyString())).thenReturn(true);
+        when(worldpayOrderModificationPartitionLeaseStrategyMock.acquireLease(eq(1), anyString())).thenReturn(false);
+
+        final PerformResult result = testObj.perform(cronJobModelMock);
+
+        assertEquals(CronJobResult.SUCCESS, result.getResult());
+        verify(worldpayOrderModificationProcessStrategyMock).processOrderModificationMessages(CAPTURE, 0);
+        verify(worldpayOrderModificationProcessStrategyMock, never()).processOrderModificationMessages(CAPTURE, 1);
+        verify(worldpayOrderModificationPartitionLeaseStrategyMock, never()).releaseLease(eq(1), anyString());
+    }
+
+    @Test
+    public void performShouldMarkErrorAndReleaseLeaseWhenPartitionFails() {
+        givenPartitions();
+        when(worldpayOrderModificationPartitionLeaseStrategyMock.acquireLease(anyInt(), anyString())).thenReturn(true);
+        when(worldpayOrderModificationProcessStrategyMock.processOrderModificationMessages(CAPTURE, 1)).thenReturn(false);
+
+        final PerformResult result = testObj.perform(cronJobModelMock);
+
+        assertEquals(CronJobResult.ERROR, result.getResult());
+        verify(worldpayOrderModificationPartitionLeaseStrategyMock).releaseLease(eq(1), anyString());
+    }
+
+    private void givenPartitions() {
+        when(cronJobModelMock.getTypeOfPaymentTransactionToProcessSet()).thenReturn(new HashSet<>(asList(AUTHORIZATION, CAPTURE)));
+        when(worldpayOrderModificationPartitionStrategyMock.getPartitionCount()).thenReturn(PARTITIONS);
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_ORDERMODIFICATION_PARTITION_WORKERS), anyInt())).thenReturn(1);
+        when(worldpayOrderModificationPartitionLeaseStrategyMock.updateLag(anyInt())).thenReturn(partitionModelMock);
+        when(worldpayOrderModificationProcessStrategyMock.processOrderModificationMessages(any(PaymentTransactionType.class), anyInt())).thenReturn(true);
+    }
 }
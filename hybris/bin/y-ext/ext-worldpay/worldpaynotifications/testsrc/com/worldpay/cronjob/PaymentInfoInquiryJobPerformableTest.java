@@ -1,5 +1,7 @@
 package com.worldpay.cronjob;
 
+import com.google.common.collect.Lists;
+import com.worldpay.core.dao.PaymentTransactionPageProcessor;
 import com.worldpay.core.dao.WorldpayPaymentTransactionDao;
 import com.worldpay.core.services.OrderInquiryService;
 import com.worldpay.exception.WorldpayException;
@@ -7,29 +9,41 @@ import com.worldpay.merchant.WorldpayMerchantInfoService;
 import com.worldpay.service.model.MerchantInfo;
 import com.worldpay.service.response.OrderInquiryServiceResponse;
 import com.worldpay.strategies.PaymentTransactionRejectionStrategy;
+import com.worldpay.worldpaynotifications.model.PaymentInfoInquiryCronJobModel;
 import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
 import de.hybris.platform.cronjob.model.CronJobModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.cronjob.PerformResult;
+import de.hybris.platform.servicelayer.model.ModelService;
 import org.apache.commons.configuration.Configuration;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.worldpay.cronjob.PaymentInfoInquiryJobPerformable.WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT;
 import static com.worldpay.cronjob.PaymentInfoInquiryJobPerformable.WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT;
+import static com.worldpay.cronjob.PaymentInfoInquiryJobPerformable.WORLDPAY_PAYMENTINFO_INQUIRY_CHECKPOINT_INTERVAL;
+import static com.worldpay.cronjob.PaymentInfoInquiryJobPerformable.WORLDPAY_PAYMENTINFO_INQUIRY_CONCURRENCY;
 import static de.hybris.platform.cronjob.enums.CronJobResult.FAILURE;
 import static de.hybris.platform.cronjob.enums.CronJobResult.SUCCESS;
+import static de.hybris.platform.cronjob.enums.CronJobStatus.ABORTED;
 import static de.hybris.platform.cronjob.enums.CronJobStatus.FINISHED;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 @UnitTest
@@ -37,10 +51,15 @@ import static org.mockito.Mockito.*;
 public class PaymentInfoInquiryJobPerformableTest {
 
     private static final String REQUEST_TOKEN_APM = "requestTokenAPM";
+    private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
+    private static final String FIRST_WORLDPAY_ORDER_CODE = "firstWorldpayOrderCode";
+    private static final String SECOND_WORLDPAY_ORDER_CODE = "secondWorldpayOrderCode";
     private static final String EXCEPTION_MESSAGE = "exceptionMessage";
     private static final int WAIT_TIME = 15;
     private static final int BLANKET_TIMEOUT_DAYS = 5;
     public static final String SITE_UID = "siteUid";
+    private static final long FIRST_PK = 1L;
+    private static final long SECOND_PK = 2L;
 
     @InjectMocks
     private PaymentInfoInquiryJobPerformable testObj;
@@ -64,17 +83,26 @@ public class PaymentInfoInquiryJobPerformableTest {
     private PaymentTransactionRejectionStrategy paymentTransactionRejectionStrategyMock;
     @Mock
     private Configuration configurationMock;
+    @Mock
+    private ModelService modelServiceMock;
+    @Mock
+    private PaymentInfoInquiryCronJobModel paymentInfoInquiryCronJobModelMock;
+    @Mock
+    private PaymentTransactionModel firstPaymentTransactionModelMock;
+    @Mock
+    private PaymentTransactionModel secondPaymentTransactionModelMock;
 
     @Before
     public void setUp() throws Exception {
         when(configurationServiceMock.getConfiguration()).thenReturn(configurationMock);
         when(configurationMock.getInt(WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT, WAIT_TIME)).thenReturn(WAIT_TIME);
         when(configurationMock.getInt(WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT, BLANKET_TIMEOUT_DAYS)).thenReturn(BLANKET_TIMEOUT_DAYS);
-        when(worldpayPaymentTransactionDaoMock.findPendingPaymentTransactions(WAIT_TIME)).thenReturn(Collections.singletonList(paymentTransactionModelMock));
-        when(orderInquiryServiceMock.inquirePaymentTransaction(merchantInfoMock, paymentTransactionModelMock)).thenReturn(orderInquiryServiceResponseMock);
+        givenPendingPaymentTransactions(paymentTransactionModelMock);
+        when(orderInquiryServiceMock.inquirePaymentTransaction(merchantInfoMock, WORLDPAY_ORDER_CODE)).thenReturn(orderInquiryServiceResponseMock);
         when(paymentTransactionModelMock.getOrder().getSite().getUid()).thenReturn(SITE_UID);
         when(worldpayMerchantInfoServiceMock.getMerchantInfoFromTransaction(paymentTransactionModelMock)).thenReturn(merchantInfoMock);
         when(paymentTransactionModelMock.getRequestToken()).thenReturn(REQUEST_TOKEN_APM);
+        when(paymentTransactionModelMock.getRequestId()).thenReturn(WORLDPAY_ORDER_CODE);
         when(paymentTransactionModelMock.getCreationtime()).thenReturn(DateTime.now().toDate());
     }
 
@@ -86,9 +114,9 @@ public class PaymentInfoInquiryJobPerformableTest {
         assertEquals(SUCCESS, result.getResult());
         assertEquals(FINISHED, result.getStatus());
 
-        verify(worldpayPaymentTransactionDaoMock).findPendingPaymentTransactions(WAIT_TIME);
+        verify(worldpayPaymentTransactionDaoMock).processPendingPaymentTransactions(eq(WAIT_TIME), eq(0L), anyInt(), any(PaymentTransactionPageProcessor.class));
         verify(worldpayMerchantInfoServiceMock).getMerchantInfoFromTransaction(paymentTransactionModelMock);
-        verify(orderInquiryServiceMock).inquirePaymentTransaction(merchantInfoMock, paymentTransactionModelMock);
+        verify(orderInquiryServiceMock).inquirePaymentTransaction(merchantInfoMock, WORLDPAY_ORDER_CODE);
         verify(orderInquiryServiceMock).processOrderInquiryServiceResponse(paymentTransactionModelMock, orderInquiryServiceResponseMock);
         verify(configurationMock).getInt(WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT, WAIT_TIME);
         verify(configurationMock).getInt(WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT, BLANKET_TIMEOUT_DAYS);
@@ -97,16 +125,16 @@ public class PaymentInfoInquiryJobPerformableTest {
 
     @Test
     public void performShouldBreakWhenWorldpayExceptionThrown() throws Exception {
-        when(orderInquiryServiceMock.inquirePaymentTransaction(merchantInfoMock, paymentTransactionModelMock)).thenThrow(new WorldpayException(EXCEPTION_MESSAGE));
+        when(orderInquiryServiceMock.inquirePaymentTransaction(merchantInfoMock, WORLDPAY_ORDER_CODE)).thenThrow(new WorldpayException(EXCEPTION_MESSAGE));
 
         final PerformResult result = testObj.perform(cronjobModelMock);
 
         assertEquals(FAILURE, result.getResult());
         assertEquals(FINISHED, result.getStatus());
 
-        verify(worldpayPaymentTransactionDaoMock).findPendingPaymentTransactions(WAIT_TIME);
+        verify(worldpayPaymentTransactionDaoMock).processPendingPaymentTransactions(eq(WAIT_TIME), eq(0L), anyInt(), any(PaymentTransactionPageProcessor.class));
         verify(worldpayMerchantInfoServiceMock).getMerchantInfoFromTransaction(paymentTransactionModelMock);
-        verify(orderInquiryServiceMock).inquirePaymentTransaction(merchantInfoMock, paymentTransactionModelMock);
+        verify(orderInquiryServiceMock).inquirePaymentTransaction(merchantInfoMock, WORLDPAY_ORDER_CODE);
         verify(orderInquiryServiceMock, never()).processOrderInquiryServiceResponse(paymentTransactionModelMock, orderInquiryServiceResponseMock);
         verify(configurationMock).getInt(WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT, WAIT_TIME);
         verify(configurationMock).getInt(WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT, BLANKET_TIMEOUT_DAYS);
@@ -122,12 +150,120 @@ public class PaymentInfoInquiryJobPerformableTest {
         assertEquals(SUCCESS, result.getResult());
         assertEquals(FINISHED, result.getStatus());
 
-        verify(worldpayPaymentTransactionDaoMock).findPendingPaymentTransactions(WAIT_TIME);
+        verify(worldpayPaymentTransactionDaoMock).processPendingPaymentTransactions(eq(WAIT_TIME), eq(0L), anyInt(), any(PaymentTransactionPageProcessor.class));
         verify(paymentTransactionModelMock).getCreationtime();
         verify(configurationMock).getInt(WORLDPAY_APM_MINUTES_BEFORE_INQUIRING_TIMEOUT, WAIT_TIME);
         verify(configurationMock).getInt(WORLDPAY_APM_DAYS_BEFORE_STOP_INQUIRING_TIMEOUT, BLANKET_TIMEOUT_DAYS);
-        verify(orderInquiryServiceMock, never()).inquirePaymentTransaction(merchantInfoMock, paymentTransactionModelMock);
+        verify(orderInquiryServiceMock, never()).inquirePaymentTransaction(merchantInfoMock, WORLDPAY_ORDER_CODE);
         verify(orderInquiryServiceMock, never()).processOrderInquiryServiceResponse(paymentTransactionModelMock, orderInquiryServiceResponseMock);
         verify(paymentTransactionRejectionStrategyMock).executeRejection(paymentTransactionModelMock);
     }
+
+    @Test
+    public void performShouldContinueWithNextTransactionWhenInquiryFails() throws Exception {
+        setUpTransactions();
+        when(orderInquiryServiceMock.inquirePaymentTransaction(merchantInfoMock, FIRST_WORLDPAY_ORDER_CODE)).thenThrow(new WorldpayException(EXCEPTION_MESSAGE));
+
+        final PerformResult result = testObj.perform(cronjobModelMock);
+
+        assertEquals(FAILURE, result.getResult());
+        assertEquals(FINISHED, result.getStatus());
+        verify(orderInquiryServiceMock, never()).processOrderInquiryServiceResponse(firstPaymentTransactionModelMock, orderInquiryServiceResponseMock);
+        verify(orderInquiryServiceMock).processOrderInquiryServiceResponse(secondPaymentTransactionModelMock, orderInquiryServiceResponseMock);
+        verify(modelServiceMock, never()).save(any());
+    }
+
+    @Test
+    public void performShouldInquireAllTransactionsWhenRunningConcurrently() throws Exception {
+        setUpTransactions();
+        when(configurationMock.getInt(eq(WORLDPAY_PAYMENTINFO_INQUIRY_CONCURRENCY), anyInt())).thenReturn(4);
+
+        final PerformResult result = testObj.perform(cronjobModelMock);
+
+        assertEquals(SUCCESS, result.getResult());
+        verify(orderInquiryServiceMock).processOrderInquiryServiceResponse(firstPaymentTransactionModelMock, orderInquiryServiceResponseMock);
+        verify(orderInquiryServiceMock).processOrderInquiryServiceResponse(secondPaymentTransactionModelMock, orderInquiryServiceResponseMock);
+        verify(orderInquiryServiceMock, never()).inquirePaymentTransaction(any(MerchantInfo.class), any(PaymentTransactionModel.class));
+    }
+
+    @Test
+    public void performShouldCheckpointEveryChunkAndClearCheckpointWhenFinished() throws Exception {
+        setUpTransactions();
+        when(configurationMock.getInt(eq(WORLDPAY_PAYMENTINFO_INQUIRY_CHECKPOINT_INTERVAL), anyInt())).thenReturn(1);
+
+        final PerformResult result = testObj.perform(paymentInfoInquiryCronJobModelMock);
+
+        assertEquals(SUCCESS, result.getResult());
+        final InOrder inOrder = inOrder(paymentInfoInquiryCronJobModelMock);
+        inOrder.verify(paymentInfoInquiryCronJobModelMock).setInquiryCheckpoint(FIRST_PK);
+        inOrder.verify(paymentInfoInquiryCronJobModelMock).setInquiryCheckpoint(SECOND_PK);
+        inOrder.verify(paymentInfoInquiryCronJobModelMock).setInquiryCheckpoint(null);
+        verify(paymentInfoInquiryCronJobModelMock, atLeastOnce()).setInquiriesSent(2);
+        verify(paymentInfoInquiryCronJobModelMock, atLeastOnce()).setInquiryFailures(0);
+        verify(paymentInfoInquiryCronJobModelMock, atLeastOnce()).setInquiriesPerSecond(anyDouble());
+        verify(modelServiceMock, times(3)).save(paymentInfoInquiryCronJobModelMock);
+    }
+
+    @Test
+    public void performShouldResumeAfterCheckpoint() throws Exception {
+        setUpTransactions();
+        when(paymentInfoInquiryCronJobModelMock.getInquiryCheckpoint()).thenReturn(FIRST_PK);
+
+        final PerformResult result = testObj.perform(paymentInfoInquiryCronJobModelMock);
+
+        assertEquals(SUCCESS, result.getResult());
+        verify(worldpayPaymentTransactionDaoMock).processPendingPaymentTransactions(eq(WAIT_TIME), eq(FIRST_PK), anyInt(), any(PaymentTransactionPageProcessor.class));
+    }
+
+    @Test
+    public void performShouldStopAtCheckpointWhenAbortRequested() throws Exception {
+        setUpTransactions();
+        when(configurationMock.getInt(eq(WORLDPAY_PAYMENTINFO_INQUIRY_CHECKPOINT_INTERVAL), anyInt())).thenReturn(1);
+        when(paymentInfoInquiryCronJobModelMock.getRequestAbort()).thenReturn(Boolean.TRUE);
+
+        final PerformResult result = testObj.perform(paymentInfoInquiryCronJobModelMock);
+
+        assertEquals(ABORTED, result.getStatus());
+        verify(paymentInfoInquiryCronJobModelMock).setInquiryCheckpoint(FIRST_PK);
+        verify(orderInquiryServiceMock, never()).inquirePaymentTransaction(merchantInfoMock, SECOND_WORLDPAY_ORDER_CODE);
+    }
+
+    @Test
+    public void performShouldStopWhenAbortRequestedOnAPlainCronJob() throws Exception {
+        setUpTransactions();
+        when(configurationMock.getInt(eq(WORLDPAY_PAYMENTINFO_INQUIRY_CHECKPOINT_INTERVAL), anyInt())).thenReturn(1);
+        when(cronjobModelMock.getRequestAbort()).thenReturn(Boolean.TRUE);
+
+        final PerformResult result = testObj.perform(cronjobModelMock);
+
+        assertEquals(ABORTED, result.getStatus());
+        verify(cronjobModelMock).setRequestAbort(null);
+        verify(orderInquiryServiceMock, never()).inquirePaymentTransaction(merchantInfoMock, SECOND_WORLDPAY_ORDER_CODE);
+    }
+
+    private void setUpTransactions() throws WorldpayException {
+        givenPendingPaymentTransactions(firstPaymentTransactionModelMock, secondPaymentTransactionModelMock);
+        when(firstPaymentTransactionModelMock.getRequestId()).thenReturn(FIRST_WORLDPAY_ORDER_CODE);
+        when(secondPaymentTransactionModelMock.getRequestId()).thenReturn(SECOND_WORLDPAY_ORDER_CODE);
+        for (final PaymentTransactionModel paymentTransaction : Arrays.asList(firstPaymentTransactionModelMock, secondPaymentTransactionModelMock)) {
+            when(paymentTransaction.getCreationtime()).thenReturn(DateTime.now().toDate());
+            when(worldpayMerchantInfoServiceMock.getMerchantInfoFromTransaction(paymentTransaction)).thenReturn(merchantInfoMock);
+            when(orderInquiryServiceMock.inquirePaymentTransaction(merchantInfoMock, paymentTransaction.getRequestId())).thenReturn(orderInquiryServiceResponseMock);
+        }
+        when(firstPaymentTransactionModelMock.getPk()).thenReturn(PK.fromLong(FIRST_PK));
+        when(secondPaymentTransactionModelMock.getPk()).thenReturn(PK.fromLong(SECOND_PK));
+    }
+
+    private void givenPendingPaymentTransactions(final PaymentTransactionModel... paymentTransactions) {
+        doAnswer(invocation -> {
+            final int pageSize = (int) invocation.getArguments()[2];
+            final PaymentTransactionPageProcessor pageProcessor = (PaymentTransactionPageProcessor) invocation.getArguments()[3];
+            for (final List<PaymentTransactionModel> page : Lists.partition(Arrays.asList(paymentTransactions), pageSize)) {
+                if (!pageProcessor.process(page)) {
+                    break;
+                }
+            }
+            return null;
+        }).when(worldpayPaymentTransactionDaoMock).processPendingPaymentTransactions(eq(WAIT_TIME), anyLong(), anyInt(), any(PaymentTransactionPageProcessor.class));
+    }
 }
@@ -0,0 +1,272 @@
+package com.worldpay.dao.impl;
+
+import com.worldpay.util.WorldpayLatencyHistogram;
+import com.worldpay.worldpaynotifications.enums.DefectiveReason;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
+import de.hybris.bootstrap.annotations.PerformanceTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.servicelayer.ServicelayerTransactionalTest;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
+import de.hybris.platform.servicelayer.search.FlexibleSearchService;
+import de.hybris.platform.servicelayer.search.TranslationResult;
+import de.hybris.platform.servicelayer.type.TypeService;
+import de.hybris.platform.util.Config;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.worldpay.dao.impl.DefaultOrderModificationDao.*;
+import static com.worldpay.util.WorldpayUtil.createDateInPast;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.AUTHORIZATION;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.CAPTURE;
+import static java.text.MessageFormat.format;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Seeds a large set of order modifications and checks that every {@link DefaultOrderModificationDao} query on them is resolved
+ * through an index and stays under a latency budget.
+ * <p>
+ * The number of seeded order modifications, the number of measured executions of each query and the p95 budget in milliseconds
+ * can be changed with the {@code worldpay.ordermodification.queryplan.rows}, {@code .executions} and {@code .budget} system properties.
+ * The budget is compared to the p95 estimated by a {@link WorldpayLatencyHistogram}, so it should be one of its bucket bounds.
+ * The query plans are only checked on HSQLDB, the latency budget on every database.
+ * </p>
+ */
+@PerformanceTest
+public class DefaultOrderModificationDaoQueryPlanPerformanceTest extends ServicelayerTransactionalTest {
+
+    private static final Logger LOG = Logger.getLogger(DefaultOrderModificationDaoQueryPlanPerformanceTest.class);
+
+    private static final int ROWS = Integer.getInteger("worldpay.ordermodification.queryplan.rows", 20000);
+    private static final int EXECUTIONS = Integer.getInteger("worldpay.ordermodification.queryplan.executions", 50);
+    private static final long BUDGET_MILLIS = Long.getLong("worldpay.ordermodification.queryplan.budget", 250L);
+    private static final int BATCH_SIZE = 1000;
+    private static final int PENDING_EVERY = 100;
+    private static final int DAYS_TO_WAIT = 10;
+    private static final int PARTITIONS = 1024;
+
+    private DefaultOrderModificationDao testObj = new DefaultOrderModificationDao();
+
+    @Resource
+    private ModelService modelService;
+    @Resource
+    private FlexibleSearchService flexibleSearchService;
+    @Resource
+    private TypeService typeService;
+    @Resource
+    private DataSource dataSource;
+
+    private WorldpayOrderModificationModel defectiveOrderModification;
+
+    @Before
+    public void setUp() {
+        testObj.setFlexibleSearchService(flexibleSearchService);
+        seedOrderModifications();
+        seedPartitions();
+    }
+
+    @Test
+    public void unprocessedByTypeQueryShouldUseAnIndex() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PAYMENT_TRANSACTION_TYPE, AUTHORIZATION.getCode());
+        parameters.put(PROCESSED, false);
+
+        assertUsesIndex(ORDER_MODIFICATION_PROCESS_QUERY, parameters);
+        assertWithinBudget("findUnprocessedOrderModificationsByType", () -> testObj.findUnprocessedOrderModificationsByType(AUTHORIZATION));
+    }
+
+    @Test
+    public void unprocessedByTypeAndPartitionQueryShouldUseAnIndex() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PAYMENT_TRANSACTION_TYPE, CAPTURE.getCode());
+        parameters.put(PROCESSED, false);
+        parameters.put(FIRST_PARTITION_KEY, 256);
+        parameters.put(LAST_PARTITION_KEY, 512);
+
+        assertUsesIndex(ORDER_MODIFICATION_PROCESS_QUERY + "\n" + PARTITION_KEY_CONDITION + ")", parameters);
+        assertWithinBudget("findUnprocessedOrderModificationsByTypeAndPartitionKeys", () -> testObj.findUnprocessedOrderModificationsByTypeAndPartitionKeys(CAPTURE, 256, 512));
+    }
+
+    @Test
+    public void unprocessedByTypeAndFirstPartitionQueryShouldUseAnIndex() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PAYMENT_TRANSACTION_TYPE, CAPTURE.getCode());
+        parameters.put(PROCESSED, false);
+        parameters.put(FIRST_PARTITION_KEY, 0);
+        parameters.put(LAST_PARTITION_KEY, 256);
+
+        assertUsesIndex(ORDER_MODIFICATION_PROCESS_QUERY + "\n" + PARTITION_KEY_CONDITION + UNPARTITIONED_CONDITION + ")", parameters);
+        assertWithinBudget("findUnprocessedOrderModificationsByTypeAndFirstPartitionKeys", () -> testObj.findUnprocessedOrderModificationsByTypeAndPartitionKeys(CAPTURE, 0, 256));
+    }
+
+    @Test
+    public void partitionLeaseCountQueryShouldUseAnIndex() {
+        final Date now = new Date();
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PARTITION_COUNT, PARTITIONS);
+        parameters.put(LEASE_DATE, now);
+
+        assertUsesIndex(ORDER_MODIFICATION_PARTITION_LEASE_COUNT_QUERY, parameters, WorldpayOrderModificationPartitionModel._TYPECODE);
+        assertWithinBudget("countOrderModificationPartitionLeasesWithOtherPartitionCount",
+                () -> singletonList(testObj.countOrderModificationPartitionLeasesWithOtherPartitionCount(PARTITIONS, now)));
+    }
+
+    @Test
+    public void unprocessedAndNotNotifiedQueryShouldUseAnIndex() {
+        final Date beforeDate = new Date();
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PROCESSED, false);
+        parameters.put(NOTIFIED, false);
+        parameters.put(BEFORE_DATE, beforeDate);
+
+        assertUsesIndex(ORDER_MODIFICATION_NOTIFICATION_QUERY, parameters);
+        assertWithinBudget("findUnprocessedAndNotNotifiedOrderModificationsBeforeDate", () -> testObj.findUnprocessedAndNotNotifiedOrderModificationsBeforeDate(beforeDate));
+    }
+
+    @Test
+    public void processedBeforeDateQueryShouldUseAnIndex() {
+        final Date beforeDate = createDateInPast(DAYS_TO_WAIT);
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PROCESSED, true);
+        parameters.put(DEFECTIVE, false);
+        parameters.put(BEFORE_DATE, beforeDate);
+
+        assertUsesIndex(ORDER_MODIFICATION_CLEAN_UP_QUERY, parameters);
+        assertWithinBudget("findProcessedOrderModificationsBeforeDate", () -> testObj.findProcessedOrderModificationsBeforeDate(beforeDate));
+    }
+
+    @Test
+    public void processedRowsBeforeDateQueryShouldUseAnIndex() {
+        final Date beforeDate = createDateInPast(DAYS_TO_WAIT);
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PROCESSED, true);
+        parameters.put(DEFECTIVE, false);
+        parameters.put(BEFORE_DATE, beforeDate);
+        parameters.put(AFTER_PK, 0L);
+
+        assertUsesIndex(ORDER_MODIFICATION_PURGE_QUERY, parameters);
+        assertWithinBudget("findProcessedOrderModificationRowsBeforeDate", () -> testObj.findProcessedOrderModificationRowsBeforeDate(beforeDate, 0L, BATCH_SIZE, false));
+    }
+
+    @Test
+    public void existingDefectiveModificationsQueryShouldUseAnIndex() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(WORLDPAY_ORDER_CODE, defectiveOrderModification.getWorldpayOrderCode());
+        parameters.put(MODIFICATION_TYPE, defectiveOrderModification.getType());
+        parameters.put(DEFECTIVE_REASON, defectiveOrderModification.getDefectiveReason());
+        parameters.put(MODIFICATION_CODE, defectiveOrderModification.getCode());
+
+        assertUsesIndex(EXISTING_DEFECTIVE_ORDER_MODIFICATION_QUERY, parameters);
+        assertWithinBudget("findExistingModifications", () -> testObj.findExistingModifications(defectiveOrderModification));
+    }
+
+    /**
+     * Most order modifications are processed and recent, as in production. One in {@link #PENDING_EVERY} is unprocessed, old, defective
+     * or was saved before the partition key was introduced.
+     */
+    private void seedOrderModifications() {
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            final WorldpayOrderModificationModel orderModification = modelService.create(WorldpayOrderModificationModel.class);
+            orderModification.setCode("queryPlanModification" + i);
+            orderModification.setWorldpayOrderCode("queryPlanOrder" + i / 4);
+            orderModification.setType(i % 2 == 0 ? AUTHORIZATION : CAPTURE);
+            orderModification.setPartitionKey(i % PENDING_EVERY == 3 ? null : i % PARTITIONS);
+            orderModification.setOrderNotificationMessage("{}");
+            orderModification.setProcessed(i % PENDING_EVERY != 0);
+            orderModification.setNotified(i % (PENDING_EVERY * 2) != 0);
+            orderModification.setDefective(i % PENDING_EVERY == 1);
+            orderModification.setDefectiveReason(i % PENDING_EVERY == 1 ? DefectiveReason.PROCESSING_ERROR : DefectiveReason.NOT_APPLICABLE);
+            orderModification.setCreationtime(createDateInPast(i % PENDING_EVERY == 2 ? DAYS_TO_WAIT * 2 : 1));
+            if (i == 1) {
+                defectiveOrderModification = orderModification;
+            }
+            if ((i + 1) % BATCH_SIZE == 0 || i == ROWS - 1) {
+                modelService.saveAll();
+                modelService.detachAll();
+            }
+        }
+        LOG.info(format("Seeded {0} order modifications in {1} ms", ROWS, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * One lease per partition, most of them expired. The live leases are split between the current and a previous partition count.
+     */
+    private void seedPartitions() {
+        for (int i = 0; i < PARTITIONS; i++) {
+            final WorldpayOrderModificationPartitionModel partition = modelService.create(WorldpayOrderModificationPartitionModel.class);
+            partition.setPartition(i);
+            partition.setOwner(i % 2 == 0 ? "queryPlanNode" + i % 4 : null);
+            partition.setLeaseExpiry(new Date(System.currentTimeMillis() + (i % PENDING_EVERY == 0 ? 1 : -1) * TimeUnit.HOURS.toMillis(1)));
+            partition.setPartitionCount(i % 3 == 0 ? PARTITIONS / 2 : PARTITIONS);
+        }
+        modelService.saveAll();
+        modelService.detachAll();
+    }
+
+    private void assertUsesIndex(final String query, final Map<String, Object> parameters) {
+        assertUsesIndex(query, parameters, WorldpayOrderModificationModel._TYPECODE);
+    }
+
+    /**
+     * Asks HSQLDB for the plan of the translated query and fails when the table of the given type is read with a full scan.
+     */
+    private void assertUsesIndex(final String query, final Map<String, Object> parameters, final String typeCode) {
+        assumeTrue("Query plans are only checked on HSQLDB", Config.isHSQLDBUsed());
+        final FlexibleSearchQuery flexibleSearchQuery = new FlexibleSearchQuery(query, parameters);
+        final TranslationResult translationResult = flexibleSearchService.translate(flexibleSearchQuery);
+        final List<Object> sqlParameters = new ArrayList<>();
+        for (final Object parameter : translationResult.getSQLQueryParameters()) {
+            sqlParameters.add(parameter instanceof PK ? ((PK) parameter).getLongValue() : parameter);
+        }
+        final String plan = String.join("\n", new JdbcTemplate(dataSource).queryForList("EXPLAIN PLAN FOR " + translationResult.getSQLQuery(), String.class, sqlParameters.toArray()));
+        final String tableAccess = getTableAccess(plan, typeService.getComposedTypeForCode(typeCode).getTable());
+        LOG.info(format("Plan of query [{0}]:\n{1}", query, plan));
+
+        assertFalse(format("{0} table is not accessed by the query [{1}]", typeCode, query), tableAccess.isEmpty());
+        assertFalse(format("Query [{0}] reads the {1} table with a full scan:\n{2}", query, typeCode, plan), tableAccess.contains("access=FULL SCAN"));
+    }
+
+    /**
+     * Returns the part of the plan describing how the given table is read, from its {@code table=} line to the next range variable
+     */
+    private String getTableAccess(final String plan, final String table) {
+        final String upperCasePlan = plan.toUpperCase();
+        final int start = upperCasePlan.indexOf("TABLE=" + table.toUpperCase());
+        if (start < 0) {
+            return "";
+        }
+        final int end = upperCasePlan.indexOf("[RANGE VARIABLE", start);
+        return plan.substring(start, end < 0 ? plan.length() : end);
+    }
+
+    private void assertWithinBudget(final String name, final Supplier<List<?>> query) {
+        final WorldpayLatencyHistogram histogram = new WorldpayLatencyHistogram(name);
+        query.get();
+        for (int i = 0; i < EXECUTIONS; i++) {
+            final long start = System.nanoTime();
+            query.get();
+            histogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        LOG.info(histogram);
+
+        assertTrue(format("p95 of {0} is {1} ms, above the budget of {2} ms", name, histogram.getPercentileMillis(95), BUDGET_MILLIS),
+                histogram.getPercentileMillis(95) <= BUDGET_MILLIS);
+    }
+}
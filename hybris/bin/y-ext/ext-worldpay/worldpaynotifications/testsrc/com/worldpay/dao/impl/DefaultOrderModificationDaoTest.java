@@ -95,4 +95,120 @@ public class DefaultOrderModificationDaoTest {
         assertEquals(true, queryArgumentCaptorValue.getQueryParameters().get(PROCESSED));
         assertEquals(false, queryArgumentCaptorValue.getQueryParameters().get(DEFECTIVE));
     }
+
+    @Test
+    public void testFindProcessedOrderModificationRowsBeforeDateReadsAChunkAfterThePk() {
+        final Date myDate = new Date();
+        testObj.findProcessedOrderModificationRowsBeforeDate(myDate, 1234L, 500, false);
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(ORDER_MODIFICATION_PURGE_QUERY, queryArgumentCaptorValue.getQuery());
+        assertEquals(myDate, queryArgumentCaptorValue.getQueryParameters().get(BEFORE_DATE));
+        assertEquals(true, queryArgumentCaptorValue.getQueryParameters().get(PROCESSED));
+        assertEquals(false, queryArgumentCaptorValue.getQueryParameters().get(DEFECTIVE));
+        assertEquals(1234L, queryArgumentCaptorValue.getQueryParameters().get(AFTER_PK));
+        assertEquals(500, queryArgumentCaptorValue.getCount());
+        assertFalse(queryArgumentCaptorValue.isNeedTotal());
+    }
+
+    @Test
+    public void testFindProcessedOrderModificationRowsBeforeDateReadsTheMessageOnlyWhenRequested() {
+        testObj.findProcessedOrderModificationRowsBeforeDate(new Date(), 1234L, 500, true);
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(ORDER_MODIFICATION_ARCHIVE_PURGE_QUERY, queryArgumentCaptorValue.getQuery());
+        assertEquals(3, queryArgumentCaptorValue.getResultClassList().size());
+    }
+
+    @Test
+    public void testExistsOrderModificationWithDeduplicationKeyReadsASingleRow() {
+        assertTrue(testObj.existsOrderModificationWithDeduplicationKey("deduplicationKey"));
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(ORDER_MODIFICATION_DEDUPLICATION_QUERY, queryArgumentCaptorValue.getQuery());
+        assertEquals("deduplicationKey", queryArgumentCaptorValue.getQueryParameters().get(DEDUPLICATION_KEY));
+        assertEquals(1, queryArgumentCaptorValue.getCount());
+    }
+
+    @Test
+    public void testFindUnprocessedOrderModificationsByWorldpayOrderCodeAndType() {
+        final List<WorldpayOrderModificationModel> result = testObj.findUnprocessedOrderModificationsByWorldpayOrderCodeAndType("worldpayOrderCode", AUTHORIZATION);
+
+        assertSame(worldpayOrderModificationModelMock, result.get(0));
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(UNPROCESSED_ORDER_MODIFICATIONS_BY_ORDER_CODE_QUERY, queryArgumentCaptorValue.getQuery());
+        assertEquals("worldpayOrderCode", queryArgumentCaptorValue.getQueryParameters().get(WORLDPAY_ORDER_CODE));
+        assertEquals(AUTHORIZATION, queryArgumentCaptorValue.getQueryParameters().get(MODIFICATION_TYPE));
+        assertEquals(false, queryArgumentCaptorValue.getQueryParameters().get(PROCESSED));
+    }
+
+    @Test
+    public void testRemoveOrderModificationsDoesNothingWithoutPks() {
+        assertEquals(0, testObj.removeOrderModifications(Collections.emptyList()));
+    }
+
+    @Test
+    public void testFindUnprocessedOrderModificationsByTypeAndPartitionKeysIncludesUnpartitionedModificationsInFirstPartition() {
+        final List<WorldpayOrderModificationModel> result = testObj.findUnprocessedOrderModificationsByTypeAndPartitionKeys(AUTHORIZATION, 0, 256);
+
+        assertSame(worldpayOrderModificationModelMock, result.get(0));
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(ORDER_MODIFICATION_PROCESS_QUERY + "\n" + PARTITION_KEY_CONDITION + UNPARTITIONED_CONDITION + ")", queryArgumentCaptorValue.getQuery());
+        assertEquals(AUTHORIZATION.getCode(), queryArgumentCaptorValue.getQueryParameters().get(PAYMENT_TRANSACTION_TYPE));
+        assertEquals(false, queryArgumentCaptorValue.getQueryParameters().get(PROCESSED));
+        assertEquals(0, queryArgumentCaptorValue.getQueryParameters().get(FIRST_PARTITION_KEY));
+        assertEquals(256, queryArgumentCaptorValue.getQueryParameters().get(LAST_PARTITION_KEY));
+    }
+
+    @Test
+    public void testFindUnprocessedOrderModificationsByTypeAndPartitionKeysOnlyQueriesTheKeyRange() {
+        testObj.findUnprocessedOrderModificationsByTypeAndPartitionKeys(AUTHORIZATION, 256, 512);
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(ORDER_MODIFICATION_PROCESS_QUERY + "\n" + PARTITION_KEY_CONDITION + ")", queryArgumentCaptorValue.getQuery());
+        assertEquals(256, queryArgumentCaptorValue.getQueryParameters().get(FIRST_PARTITION_KEY));
+        assertEquals(512, queryArgumentCaptorValue.getQueryParameters().get(LAST_PARTITION_KEY));
+    }
+
+    @Test
+    public void testFindOrderModificationPartitionReturnsNullWhenNotFound() {
+        when(searchResultMock.getResult()).thenReturn(Collections.emptyList());
+
+        assertNull(testObj.findOrderModificationPartition(3));
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(ORDER_MODIFICATION_PARTITION_QUERY, queryArgumentCaptorValue.getQuery());
+        assertEquals(3, queryArgumentCaptorValue.getQueryParameters().get(PARTITION));
+    }
+
+    @Test
+    public void testCountOrderModificationPartitionLeasesWithOtherPartitionCount() {
+        final Date now = new Date();
+        when(searchResultMock.getResult()).thenReturn(Collections.singletonList(2));
+
+        assertEquals(2, testObj.countOrderModificationPartitionLeasesWithOtherPartitionCount(4, now));
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(ORDER_MODIFICATION_PARTITION_LEASE_COUNT_QUERY, queryArgumentCaptorValue.getQuery());
+        assertEquals(4, queryArgumentCaptorValue.getQueryParameters().get(PARTITION_COUNT));
+        assertEquals(now, queryArgumentCaptorValue.getQueryParameters().get(LEASE_DATE));
+    }
 }
@@ -2,6 +2,8 @@ package com.worldpay.dao.impl;
 
 import com.worldpay.dao.ProcessDefinitionDao;
 import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.model.order.OrderModel;
+import de.hybris.platform.orderprocessing.model.OrderProcessModel;
 import de.hybris.platform.processengine.model.BusinessProcessModel;
 import de.hybris.platform.servicelayer.search.FlexibleSearchQuery;
 import de.hybris.platform.servicelayer.search.FlexibleSearchService;
@@ -15,8 +17,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static com.worldpay.dao.impl.DefaultProcessDefinitionDao.*;
 import static de.hybris.platform.payment.enums.PaymentTransactionType.AUTHORIZATION;
@@ -38,6 +42,10 @@ public class DefaultProcessDefinitionDaoTest {
     private SearchResult searchResultMock;
     @Mock
     private BusinessProcessModel businessProcessModelMock;
+    @Mock
+    private OrderProcessModel orderProcessModelMock;
+    @Mock
+    private OrderModel orderModelMock;
     @Captor
     private ArgumentCaptor<FlexibleSearchQuery> queryArgumentCaptor;
 
@@ -62,4 +70,24 @@ public class DefaultProcessDefinitionDaoTest {
         assertEquals(WAIT_ID_PREFIX + AUTHORIZATION.getCode(), queryArgumentCaptorValue.getQueryParameters().get(QUERY_PARAM_ACTION_TYPE));
         assertEquals(ORDER_CODE, queryArgumentCaptorValue.getQueryParameters().get(QUERY_PARAM_ORDER_CODE));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFindWaitingProcessesByOrderCodesGroupsTheProcessesByOrder() {
+        final List<String> orderCodes = Arrays.asList(ORDER_CODE, "anotherOrderCode");
+        when(searchResultMock.getResult()).thenReturn(Collections.singletonList(orderProcessModelMock));
+        when(orderProcessModelMock.getOrder()).thenReturn(orderModelMock);
+        when(orderModelMock.getCode()).thenReturn(ORDER_CODE);
+
+        final Map<String, List<BusinessProcessModel>> result = testObj.findWaitingOrderProcessesByOrderCodes(orderCodes, AUTHORIZATION);
+
+        assertEquals(Collections.singletonList(orderProcessModelMock), result.get(ORDER_CODE));
+        assertTrue(result.get("anotherOrderCode").isEmpty());
+
+        verify(flexibleSearchServiceMock).search(queryArgumentCaptor.capture());
+        final FlexibleSearchQuery queryArgumentCaptorValue = queryArgumentCaptor.getValue();
+
+        assertEquals(GET_BUSINESS_PROCESSES_BY_ORDER_CODES_QUERY, queryArgumentCaptorValue.getQuery());
+        assertEquals(WAIT_ID_PREFIX + AUTHORIZATION.getCode(), queryArgumentCaptorValue.getQueryParameters().get(QUERY_PARAM_ACTION_TYPE));
+        assertEquals(orderCodes, queryArgumentCaptorValue.getQueryParameters().get(QUERY_PARAM_ORDER_CODES));
+    }
+}
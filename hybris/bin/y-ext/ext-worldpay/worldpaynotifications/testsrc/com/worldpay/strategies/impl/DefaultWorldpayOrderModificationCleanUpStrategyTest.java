@@ -1,20 +1,35 @@
 package com.worldpay.strategies.impl;
 
 import com.worldpay.dao.OrderModificationDao;
-import com.worldpay.strategies.impl.DefaultWorldpayOrderModificationCleanUpStrategy;
+import com.worldpay.strategies.OrderModificationPurgeProgressListener;
 import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
 import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.model.ModelService;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationCleanUpStrategy.WORLDPAY_ORDERMODIFICATION_CLEANUP_ARCHIVE_DIRECTORY;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationCleanUpStrategy.WORLDPAY_ORDERMODIFICATION_CLEANUP_CHUNK_SIZE;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.*;
 
 @UnitTest
@@ -29,6 +44,27 @@ public class DefaultWorldpayOrderModificationCleanUpStrategyTest {
     private WorldpayOrderModificationModel orderModificationMock;
     @Mock
     private OrderModificationDao orderModificationDaoMock;
+    @Mock(answer = RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private TransactionStatus transactionStatusMock;
+    @Mock
+    private OrderModificationPurgeProgressListener listenerMock;
+    @Spy
+    private TransactionOperations transactionTemplate = new TransactionOperations() {
+        @Override
+        public <T> T execute(final TransactionCallback<T> action) {
+            return action.doInTransaction(transactionStatusMock);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_ORDERMODIFICATION_CLEANUP_CHUNK_SIZE, 1000)).thenReturn(2);
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_CLEANUP_ARCHIVE_DIRECTORY)).thenReturn("");
+        when(orderModificationDaoMock.removeOrderModifications(any())).thenAnswer(invocation -> ((List) invocation.getArguments()[0]).size());
+        when(listenerMock.chunkPurged(anyLong(), anyInt())).thenReturn(true);
+    }
 
     @Test
     public void removeProcessOrderModificationsIfAnyAreFound() {
@@ -47,4 +83,47 @@ public class DefaultWorldpayOrderModificationCleanUpStrategyTest {
 
         verify(modelServiceMock, never()).remove(any(WorldpayOrderModificationModel.class));
     }
+
+    @Test
+    public void doBulkCleanUpShouldDeleteChunksUntilAChunkIsNotFull() {
+        when(orderModificationDaoMock.findProcessedOrderModificationRowsBeforeDate(any(Date.class), eq(10L), eq(2), eq(false))).thenReturn(Arrays.asList(createRow(11L), createRow(12L)));
+        when(orderModificationDaoMock.findProcessedOrderModificationRowsBeforeDate(any(Date.class), eq(12L), eq(2), eq(false))).thenReturn(Collections.singletonList(createRow(13L)));
+
+        final long result = testObj.doBulkCleanUp(5, 10L, listenerMock);
+
+        assertEquals(3L, result);
+        verify(orderModificationDaoMock).removeOrderModifications(Arrays.asList(11L, 12L));
+        verify(orderModificationDaoMock).removeOrderModifications(Collections.singletonList(13L));
+        verify(listenerMock).chunkPurged(12L, 2);
+        verify(listenerMock).chunkPurged(13L, 1);
+        verify(orderModificationDaoMock, never()).findProcessedOrderModificationRowsBeforeDate(any(Date.class), eq(13L), anyInt(), anyBoolean());
+        verify(transactionTemplate, times(2)).execute(any());
+    }
+
+    @Test
+    public void doBulkCleanUpShouldStopWhenTheListenerAsksTo() {
+        when(orderModificationDaoMock.findProcessedOrderModificationRowsBeforeDate(any(Date.class), eq(0L), eq(2), eq(false))).thenReturn(Arrays.asList(createRow(1L), createRow(2L)));
+        when(listenerMock.chunkPurged(2L, 2)).thenReturn(false);
+
+        final long result = testObj.doBulkCleanUp(5, 0L, listenerMock);
+
+        assertEquals(2L, result);
+        verify(orderModificationDaoMock, never()).findProcessedOrderModificationRowsBeforeDate(any(Date.class), eq(2L), anyInt(), anyBoolean());
+        verify(modelServiceMock, never()).remove(any());
+    }
+
+    @Test
+    public void doBulkCleanUpShouldDoNothingIfNoRowsAreFound() {
+        when(orderModificationDaoMock.findProcessedOrderModificationRowsBeforeDate(any(Date.class), eq(0L), eq(2), eq(false))).thenReturn(Collections.emptyList());
+
+        final long result = testObj.doBulkCleanUp(5, 0L, listenerMock);
+
+        assertEquals(0L, result);
+        verify(orderModificationDaoMock, never()).removeOrderModifications(any());
+        verifyZeroInteractions(listenerMock);
+    }
+
+    private List<Object> createRow(final long pk) {
+        return Arrays.asList(pk, "orderCode" + pk, "{}");
+    }
 }
@@ -0,0 +1,236 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.dao.OrderModificationDao;
+import com.worldpay.enums.order.AuthorisedStatus;
+import com.worldpay.service.model.AccountTransaction;
+import com.worldpay.service.model.Amount;
+import com.worldpay.service.model.JournalReply;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.payment.enums.PaymentTransactionType;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Date;
+
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationDeduplicationStrategy.WORLDPAY_ORDERMODIFICATION_DEDUP_CACHE_SIZE;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationDeduplicationStrategy.WORLDPAY_ORDERMODIFICATION_DEDUP_ENABLED;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.AUTHORIZATION;
+import static de.hybris.platform.payment.enums.PaymentTransactionType.CAPTURE;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayOrderModificationDeduplicationStrategyTest {
+
+    private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
+    private static final String MERCHANT_CODE = "merchantCode";
+    private static final String DEDUPLICATION_KEY = "deduplicationKey";
+    private static final Date BOOKING_DATE = new Date(1500000000000L);
+    private static final Date EARLIER_BOOKING_DATE = new Date(1400000000000L);
+    private static final Date LATER_BOOKING_DATE = new Date(1600000000000L);
+
+    @InjectMocks
+    private DefaultWorldpayOrderModificationDeduplicationStrategy testObj;
+
+    @Mock
+    private OrderModificationDao orderModificationDaoMock;
+    @Mock
+    private ModelService modelServiceMock;
+    @Mock(answer = RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private WorldpayOrderModificationModel orderModificationModelMock, previousOrderModificationModelMock;
+    @Mock
+    private OrderNotificationMessage orderNotificationMessageMock, otherOrderNotificationMessageMock;
+    @Mock
+    private JournalReply journalReplyMock;
+    @Mock
+    private AccountTransaction accountTransactionMock;
+    @Mock
+    private Amount amountMock;
+
+    @Before
+    public void setUp() {
+        testObj.setSupersedingTransactionTypes(singleton(AUTHORIZATION));
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_DEDUP_ENABLED, true)).thenReturn(true);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_ORDERMODIFICATION_DEDUP_CACHE_SIZE, 10000)).thenReturn(1);
+        when(orderModificationModelMock.getWorldpayOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(orderModificationModelMock.getDeduplicationKey()).thenReturn(DEDUPLICATION_KEY);
+        when(orderModificationModelMock.getType()).thenReturn(AUTHORIZATION);
+        when(orderModificationModelMock.getBookingDate()).thenReturn(BOOKING_DATE);
+    }
+
+    @Test
+    public void getDeduplicationKeyShouldOnlyMatchTheSameOrderTypeAndNotificationFields() {
+        when(orderNotificationMessageMock.getMerchantCode()).thenReturn(MERCHANT_CODE);
+        when(orderNotificationMessageMock.getJournalReply()).thenReturn(journalReplyMock);
+        when(journalReplyMock.getJournalType()).thenReturn(AuthorisedStatus.AUTHORISED);
+        when(otherOrderNotificationMessageMock.getMerchantCode()).thenReturn(MERCHANT_CODE);
+        when(otherOrderNotificationMessageMock.getJournalReply()).thenReturn(journalReplyMock);
+
+        final String key = testObj.getDeduplicationKey(WORLDPAY_ORDER_CODE, AUTHORIZATION, orderNotificationMessageMock);
+
+        assertEquals(key, testObj.getDeduplicationKey(WORLDPAY_ORDER_CODE, AUTHORIZATION, otherOrderNotificationMessageMock));
+        assertTrue(key.startsWith(WORLDPAY_ORDER_CODE + ":" + AUTHORIZATION.getCode() + ":"));
+        assertNotEquals(key, testObj.getDeduplicationKey(WORLDPAY_ORDER_CODE, CAPTURE, orderNotificationMessageMock));
+
+        when(journalReplyMock.getAccountTransactions()).thenReturn(singletonList(accountTransactionMock));
+        when(accountTransactionMock.getAmount()).thenReturn(amountMock);
+        when(amountMock.getValue()).thenReturn("1000");
+
+        assertNotEquals(key, testObj.getDeduplicationKey(WORLDPAY_ORDER_CODE, AUTHORIZATION, orderNotificationMessageMock));
+    }
+
+    @Test
+    public void isDuplicateShouldCheckTheDatabaseForKeysNotSeenOnThisNode() {
+        when(orderModificationDaoMock.existsOrderModificationWithDeduplicationKey(DEDUPLICATION_KEY)).thenReturn(true);
+
+        assertTrue(testObj.isDuplicate(DEDUPLICATION_KEY));
+        assertEquals(1L, testObj.getDuplicates());
+    }
+
+    @Test
+    public void isDuplicateShouldNotQueryTheDatabaseForKeysRegisteredOnThisNode() {
+        testObj.registerOrderModification(orderModificationModelMock);
+
+        assertTrue(testObj.isDuplicate(DEDUPLICATION_KEY));
+        verify(orderModificationDaoMock, never()).existsOrderModificationWithDeduplicationKey(anyString());
+    }
+
+    @Test
+    public void isDuplicateShouldEvictTheOldestKeys() {
+        final WorldpayOrderModificationModel otherOrderModificationModelMock = mock(WorldpayOrderModificationModel.class);
+        when(otherOrderModificationModelMock.getDeduplicationKey()).thenReturn("otherDeduplicationKey");
+        when(otherOrderModificationModelMock.getType()).thenReturn(CAPTURE);
+        testObj.registerOrderModification(orderModificationModelMock);
+        testObj.registerOrderModification(otherOrderModificationModelMock);
+
+        assertFalse(testObj.isDuplicate(DEDUPLICATION_KEY));
+        verify(orderModificationDaoMock).existsOrderModificationWithDeduplicationKey(DEDUPLICATION_KEY);
+    }
+
+    @Test
+    public void isDuplicateShouldClaimTheKeySoAConcurrentCopyIsADuplicate() {
+        assertFalse(testObj.isDuplicate(DEDUPLICATION_KEY));
+        assertTrue(testObj.isDuplicate(DEDUPLICATION_KEY));
+
+        verify(orderModificationDaoMock).existsOrderModificationWithDeduplicationKey(DEDUPLICATION_KEY);
+        assertEquals(1L, testObj.getDuplicates());
+    }
+
+    @Test
+    public void releaseDeduplicationKeyShouldReleaseTheClaimedKey() {
+        testObj.isDuplicate(DEDUPLICATION_KEY);
+        testObj.releaseDeduplicationKey(DEDUPLICATION_KEY);
+
+        assertFalse(testObj.isDuplicate(DEDUPLICATION_KEY));
+        assertEquals(1, testObj.getCachedKeys());
+    }
+
+    @Test
+    public void isSavedConcurrentlyShouldBeTrueWhenTheKeyIsInTheDatabase() {
+        when(orderModificationDaoMock.existsOrderModificationWithDeduplicationKey(DEDUPLICATION_KEY)).thenReturn(true);
+
+        assertTrue(testObj.isSavedConcurrently(DEDUPLICATION_KEY));
+        assertFalse(testObj.isSavedConcurrently(null));
+        assertEquals(1L, testObj.getDuplicates());
+    }
+
+    @Test
+    public void getDeduplicationKeyShouldReturnNullWhenDisabled() {
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_DEDUP_ENABLED, true)).thenReturn(false);
+
+        assertNull(testObj.getDeduplicationKey(WORLDPAY_ORDER_CODE, AUTHORIZATION, orderNotificationMessageMock));
+        verify(orderNotificationMessageMock, never()).getJournalReply();
+    }
+
+    @Test
+    public void isDuplicateShouldReturnFalseWhenDisabled() {
+        when(configurationServiceMock.getConfiguration().getBoolean(WORLDPAY_ORDERMODIFICATION_DEDUP_ENABLED, true)).thenReturn(false);
+        when(orderModificationDaoMock.existsOrderModificationWithDeduplicationKey(DEDUPLICATION_KEY)).thenReturn(true);
+
+        assertFalse(testObj.isDuplicate(DEDUPLICATION_KEY));
+    }
+
+    @Test
+    public void registerOrderModificationShouldMarkPreviousUnprocessedModificationsOfSupersedingTypesAsProcessed() {
+        when(previousOrderModificationModelMock.getBookingDate()).thenReturn(EARLIER_BOOKING_DATE);
+        when(orderModificationDaoMock.findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(WORLDPAY_ORDER_CODE, AUTHORIZATION))
+                .thenReturn(asList(previousOrderModificationModelMock, orderModificationModelMock));
+
+        testObj.registerOrderModification(orderModificationModelMock);
+
+        verify(previousOrderModificationModelMock).setProcessed(Boolean.TRUE);
+        verify(previousOrderModificationModelMock).setSuperseded(Boolean.TRUE);
+        verify(modelServiceMock).save(previousOrderModificationModelMock);
+        verify(modelServiceMock, never()).save(orderModificationModelMock);
+        assertEquals(1L, testObj.getSupersededModifications());
+    }
+
+    @Test
+    public void registerOrderModificationShouldSupersedeTheNewModificationWhenANewerNotificationWasReceivedFirst() {
+        when(previousOrderModificationModelMock.getBookingDate()).thenReturn(LATER_BOOKING_DATE);
+        when(orderModificationDaoMock.findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(WORLDPAY_ORDER_CODE, AUTHORIZATION))
+                .thenReturn(asList(previousOrderModificationModelMock, orderModificationModelMock));
+
+        testObj.registerOrderModification(orderModificationModelMock);
+
+        verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
+        verify(orderModificationModelMock).setSuperseded(Boolean.TRUE);
+        verify(modelServiceMock).save(orderModificationModelMock);
+        verify(previousOrderModificationModelMock, never()).setProcessed(anyBoolean());
+        verify(modelServiceMock, never()).save(previousOrderModificationModelMock);
+        assertEquals(1L, testObj.getSupersededModifications());
+    }
+
+    @Test
+    public void registerOrderModificationShouldNotSupersedeModificationsBookedAtTheSameTimeOrWithoutBookingDate() {
+        final WorldpayOrderModificationModel undatedOrderModificationModelMock = mock(WorldpayOrderModificationModel.class);
+        when(previousOrderModificationModelMock.getBookingDate()).thenReturn(BOOKING_DATE);
+        when(orderModificationDaoMock.findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(WORLDPAY_ORDER_CODE, AUTHORIZATION))
+                .thenReturn(asList(previousOrderModificationModelMock, undatedOrderModificationModelMock, orderModificationModelMock));
+
+        testObj.registerOrderModification(orderModificationModelMock);
+
+        verifyZeroInteractions(modelServiceMock);
+        assertEquals(0L, testObj.getSupersededModifications());
+    }
+
+    @Test
+    public void registerOrderModificationShouldNotSupersedeWhenTheNewModificationHasNoBookingDate() {
+        when(orderModificationModelMock.getBookingDate()).thenReturn(null);
+
+        testObj.registerOrderModification(orderModificationModelMock);
+
+        verify(orderModificationDaoMock, never()).findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(anyString(), any(PaymentTransactionType.class));
+        verifyZeroInteractions(modelServiceMock);
+    }
+
+    @Test
+    public void registerOrderModificationShouldNotSupersedeOtherTypes() {
+        when(orderModificationModelMock.getType()).thenReturn(CAPTURE);
+
+        testObj.registerOrderModification(orderModificationModelMock);
+
+        verify(orderModificationDaoMock, never()).findUnprocessedOrderModificationsByWorldpayOrderCodeAndType(anyString(), any(PaymentTransactionType.class));
+        verifyZeroInteractions(modelServiceMock);
+    }
+}
@@ -0,0 +1,145 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
+import com.worldpay.strategies.WorldpayOrderModificationProcessStrategy;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.PK;
+import de.hybris.platform.core.model.user.EmployeeModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationDispatchStrategy.WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayOrderModificationDispatchStrategyTest {
+
+    private static final PK MODIFICATION_PK = PK.fromLong(1L);
+    private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
+    private static final int PARTITION_KEY = 301;
+
+    @Spy
+    @InjectMocks
+    private DefaultWorldpayOrderModificationDispatchStrategy testObj;
+
+    @Mock
+    private WorldpayOrderModificationProcessStrategy worldpayOrderModificationProcessStrategyMock;
+    @Mock
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategyMock;
+    @Mock
+    private ModelService modelServiceMock;
+    @Mock
+    private SessionService sessionServiceMock;
+    @Mock
+    private UserService userServiceMock;
+    @Mock (answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private WorldpayOrderModificationModel worldpayOrderModificationModelMock;
+    @Mock
+    private ExecutorService workerMock, otherWorkerMock;
+    @Mock
+    private EmployeeModel adminUserMock;
+
+    @Before
+    public void setUp() {
+        when(configurationServiceMock.getConfiguration().getBoolean(eq(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED), anyBoolean())).thenReturn(true);
+        when(worldpayOrderModificationModelMock.getPk()).thenReturn(MODIFICATION_PK);
+        when(worldpayOrderModificationModelMock.getWorldpayOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(worldpayOrderModificationModelMock.getPartitionKey()).thenReturn(PARTITION_KEY);
+        when(modelServiceMock.get(MODIFICATION_PK)).thenReturn(worldpayOrderModificationModelMock);
+        when(userServiceMock.getAdminUser()).thenReturn(adminUserMock);
+        doReturn(new ExecutorService[]{otherWorkerMock, workerMock}).when(testObj).createWorkers();
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(workerMock).execute(any(Runnable.class));
+        doAnswer(invocation -> ((SessionExecutionBody) invocation.getArguments()[0]).execute())
+                .when(sessionServiceMock).executeInLocalView(any(SessionExecutionBody.class), eq(adminUserMock));
+    }
+
+    @Test
+    public void dispatchShouldProcessTheOrderModificationOnAWorker() {
+        final boolean result = testObj.dispatch(worldpayOrderModificationModelMock);
+
+        assertTrue(result);
+        verify(worldpayOrderModificationProcessStrategyMock).processOrderModification(worldpayOrderModificationModelMock);
+    }
+
+    @Test
+    public void dispatchShouldChooseTheWorkerByThePartitionKeyOfTheModification() {
+        testObj.dispatch(worldpayOrderModificationModelMock);
+
+        verify(workerMock).execute(any(Runnable.class));
+        verify(otherWorkerMock, never()).execute(any(Runnable.class));
+        verify(worldpayOrderModificationPartitionStrategyMock, never()).getPartitionKey(anyString());
+    }
+
+    @Test
+    public void dispatchShouldHashTheWorldpayOrderCodeWhenTheModificationHasNoPartitionKey() {
+        when(worldpayOrderModificationModelMock.getPartitionKey()).thenReturn(null);
+        when(worldpayOrderModificationPartitionStrategyMock.getPartitionKey(WORLDPAY_ORDER_CODE)).thenReturn(PARTITION_KEY - 1);
+
+        testObj.dispatch(worldpayOrderModificationModelMock);
+
+        verify(otherWorkerMock).execute(any(Runnable.class));
+        verify(workerMock, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void dispatchShouldDoNothingWhenImmediateProcessingIsDisabled() {
+        when(configurationServiceMock.getConfiguration().getBoolean(eq(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED), anyBoolean())).thenReturn(false);
+
+        final boolean result = testObj.dispatch(worldpayOrderModificationModelMock);
+
+        assertFalse(result);
+        verify(workerMock, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void dispatchShouldLeaveTheModificationToTheCronjobWhenTheQueueIsFull() {
+        doThrow(new RejectedExecutionException()).when(workerMock).execute(any(Runnable.class));
+
+        final boolean result = testObj.dispatch(worldpayOrderModificationModelMock);
+
+        assertFalse(result);
+        verify(worldpayOrderModificationProcessStrategyMock, never()).processOrderModification(worldpayOrderModificationModelMock);
+    }
+
+    @Test
+    public void dispatchShouldNotPropagateProcessingErrors() {
+        when(worldpayOrderModificationProcessStrategyMock.processOrderModification(worldpayOrderModificationModelMock)).thenThrow(new IllegalStateException());
+
+        final boolean result = testObj.dispatch(worldpayOrderModificationModelMock);
+
+        assertTrue(result);
+        verify(worldpayOrderModificationProcessStrategyMock).processOrderModification(worldpayOrderModificationModelMock);
+    }
+}
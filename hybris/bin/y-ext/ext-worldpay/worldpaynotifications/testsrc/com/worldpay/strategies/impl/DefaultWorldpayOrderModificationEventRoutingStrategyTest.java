@@ -0,0 +1,159 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.core.event.ClusterAwareOrderModificationEvent;
+import com.worldpay.core.event.OrderModificationEvent;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
+import com.worldpay.strategies.WorldpayOrderNotificationIngressStrategy;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationEventRoutingStrategy.WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationEventRoutingStrategy.WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationEventRoutingStrategy.WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayOrderModificationEventRoutingStrategyTest {
+
+    private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
+
+    @Spy
+    @InjectMocks
+    private DefaultWorldpayOrderModificationEventRoutingStrategy testObj;
+
+    @Mock
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategyMock;
+    @Mock
+    private WorldpayOrderNotificationIngressStrategy worldpayOrderNotificationIngressStrategyMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private OrderNotificationMessage orderNotificationMessageMock;
+
+    @Before
+    public void setUp() {
+        when(orderNotificationMessageMock.getOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(worldpayOrderModificationPartitionStrategyMock.getPartitionKey(WORLDPAY_ORDER_CODE)).thenReturn(5);
+    }
+
+    @Test
+    public void createOrderModificationEventShouldCreateALocalEventByDefault() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("local");
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertFalse(result instanceof ClusterAwareOrderModificationEvent);
+        assertSame(orderNotificationMessageMock, result.getOrderNotificationMessage());
+    }
+
+    @Test
+    public void createOrderModificationEventShouldRouteTheEventToASingleLiveNodeOfTheNodeGroup() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("group");
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP)).thenReturn("payments");
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES), anyString())).thenReturn("1,2,3");
+        doReturn(true).when(testObj).isNodeAlive(anyInt(), anyLong());
+        doReturn(false).when(testObj).isNodeAlive(eq(3), anyLong());
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertTrue(result instanceof ClusterAwareOrderModificationEvent);
+        assertEquals("payments", ((ClusterAwareOrderModificationEvent) result).getTargetNodeGroup());
+        assertEquals(Integer.valueOf(2), ((ClusterAwareOrderModificationEvent) result).getTargetNodeId());
+    }
+
+    @Test
+    public void createOrderModificationEventShouldCreateALocalEventWhenNoNodeOfTheNodeGroupIsAlive() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("group");
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP)).thenReturn("payments");
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES), anyString())).thenReturn("1,2");
+        doReturn(false).when(testObj).isNodeAlive(anyInt(), anyLong());
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertFalse(result instanceof ClusterAwareOrderModificationEvent);
+    }
+
+    @Test
+    public void createOrderModificationEventShouldCreateALocalEventWhenTheIngressLogIsEnabled() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("group");
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP)).thenReturn("payments");
+        when(worldpayOrderNotificationIngressStrategyMock.isEnabled()).thenReturn(true);
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertFalse(result instanceof ClusterAwareOrderModificationEvent);
+        assertSame(orderNotificationMessageMock, result.getOrderNotificationMessage());
+    }
+
+    @Test
+    public void createOrderModificationEventShouldCreateALocalEventWhenTheNodeGroupIsNotSet() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("group");
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_GROUP)).thenReturn(" ");
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertFalse(result instanceof ClusterAwareOrderModificationEvent);
+    }
+
+    @Test
+    public void createOrderModificationEventShouldRouteTheEventToTheNodeOfThePartitionKey() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("hash");
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES), anyString())).thenReturn("3, 1,2");
+        doReturn(true).when(testObj).isNodeAlive(eq(3), anyLong());
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertTrue(result instanceof ClusterAwareOrderModificationEvent);
+        assertEquals(Integer.valueOf(3), ((ClusterAwareOrderModificationEvent) result).getTargetNodeId());
+    }
+
+    @Test
+    public void createOrderModificationEventShouldCreateALocalEventWhenTheNodeOfThePartitionKeyIsNotAlive() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("hash");
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES), anyString())).thenReturn("3, 1,2");
+        doReturn(false).when(testObj).isNodeAlive(eq(3), anyLong());
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertFalse(result instanceof ClusterAwareOrderModificationEvent);
+        assertSame(orderNotificationMessageMock, result.getOrderNotificationMessage());
+    }
+
+    @Test
+    public void createOrderModificationEventShouldCreateALocalEventWhenTheNodesAreInvalid() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("hash");
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING_NODES), anyString())).thenReturn("node1");
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertFalse(result instanceof ClusterAwareOrderModificationEvent);
+    }
+
+    @Test
+    public void createOrderModificationEventShouldCreateALocalEventForAnUnknownRouting() {
+        when(configurationServiceMock.getConfiguration().getString(eq(WORLDPAY_ORDERMODIFICATION_EVENT_ROUTING), anyString())).thenReturn("random");
+
+        final OrderModificationEvent result = testObj.createOrderModificationEvent(orderNotificationMessageMock);
+
+        assertFalse(result instanceof ClusterAwareOrderModificationEvent);
+    }
+}
@@ -0,0 +1,170 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.dao.OrderModificationDao;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
+import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationPartitionModel;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.model.ModelService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.Date;
+
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationPartitionLeaseStrategy.WORLDPAY_ORDERMODIFICATION_PARTITION_LEASE_DURATION;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayOrderModificationPartitionLeaseStrategyTest {
+
+    private static final int PARTITION = 2;
+    private static final int FIRST_PARTITION_KEY = 512;
+    private static final int LAST_PARTITION_KEY = 768;
+    private static final String OWNER = "0/worker-1";
+    private static final String OTHER_OWNER = "1/worker-1";
+    private static final long LEASE_DURATION = 60000L;
+    private static final int PARTITION_COUNT = 4;
+
+    @Spy
+    @InjectMocks
+    private DefaultWorldpayOrderModificationPartitionLeaseStrategy testObj;
+
+    @Mock
+    private OrderModificationDao orderModificationDaoMock;
+    @Mock
+    private ModelService modelServiceMock;
+    @Mock (answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategyMock;
+    @Mock
+    private WorldpayOrderModificationPartitionModel partitionModelMock;
+    @Mock
+    private TransactionStatus transactionStatusMock;
+
+    private TransactionOperations transactionOperationsMock = new TransactionOperations() {
+        @Override
+        public <T> T execute(final TransactionCallback<T> transactionCallback) throws TransactionException {
+            return transactionCallback.doInTransaction(transactionStatusMock);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        testObj.setTransactionTemplate(transactionOperationsMock);
+        doNothing().when(testObj).lock(partitionModelMock);
+        when(configurationServiceMock.getConfiguration().getLong(eq(WORLDPAY_ORDERMODIFICATION_PARTITION_LEASE_DURATION), anyLong())).thenReturn(LEASE_DURATION);
+        when(orderModificationDaoMock.findOrderModificationPartition(PARTITION)).thenReturn(partitionModelMock);
+        when(worldpayOrderModificationPartitionStrategyMock.getPartitionCount()).thenReturn(PARTITION_COUNT);
+    }
+
+    @Test
+    public void acquireLeaseShouldCreateThePartitionTheFirstTimeItIsClaimed() {
+        when(orderModificationDaoMock.findOrderModificationPartition(PARTITION)).thenReturn(null);
+        when(modelServiceMock.create(WorldpayOrderModificationPartitionModel.class)).thenReturn(partitionModelMock);
+
+        assertTrue(testObj.acquireLease(PARTITION, OWNER));
+
+        verify(partitionModelMock).setPartition(PARTITION);
+        verify(partitionModelMock).setOwner(OWNER);
+        verify(partitionModelMock).setLeaseExpiry(any(Date.class));
+        verify(testObj, never()).lock(partitionModelMock);
+    }
+
+    @Test
+    public void acquireLeaseShouldLockAndClaimAFreePartition() {
+        assertTrue(testObj.acquireLease(PARTITION, OWNER));
+
+        verify(testObj).lock(partitionModelMock);
+        verify(modelServiceMock).refresh(partitionModelMock);
+        verify(partitionModelMock).setOwner(OWNER);
+        verify(partitionModelMock).setPartitionCount(PARTITION_COUNT);
+        verify(modelServiceMock).save(partitionModelMock);
+    }
+
+    @Test
+    public void acquireLeaseShouldFailWhileAPartitionIsLeasedWithAnotherPartitionCount() {
+        when(orderModificationDaoMock.countOrderModificationPartitionLeasesWithOtherPartitionCount(eq(PARTITION_COUNT), any(Date.class))).thenReturn(1);
+
+        assertFalse(testObj.acquireLease(PARTITION, OWNER));
+
+        verify(partitionModelMock, never()).setOwner(OWNER);
+        verify(modelServiceMock, never()).save(partitionModelMock);
+    }
+
+    @Test
+    public void acquireLeaseShouldFailWhenLeasedToAnotherOwner() {
+        when(partitionModelMock.getOwner()).thenReturn(OTHER_OWNER);
+        when(partitionModelMock.getLeaseExpiry()).thenReturn(new Date(System.currentTimeMillis() + LEASE_DURATION));
+
+        assertFalse(testObj.acquireLease(PARTITION, OWNER));
+
+        verify(partitionModelMock, never()).setOwner(OWNER);
+        verify(modelServiceMock, never()).save(partitionModelMock);
+    }
+
+    @Test
+    public void acquireLeaseShouldTakeOverAnExpiredLease() {
+        when(partitionModelMock.getOwner()).thenReturn(OTHER_OWNER);
+        when(partitionModelMock.getLeaseExpiry()).thenReturn(new Date(System.currentTimeMillis() - 1));
+
+        assertTrue(testObj.acquireLease(PARTITION, OWNER));
+
+        verify(partitionModelMock).setOwner(OWNER);
+    }
+
+    @Test
+    public void releaseLeaseShouldClearTheOwner() {
+        when(partitionModelMock.getOwner()).thenReturn(OWNER);
+
+        testObj.releaseLease(PARTITION, OWNER);
+
+        verify(partitionModelMock).setOwner(null);
+        verify(partitionModelMock).setLeaseExpiry(null);
+        verify(partitionModelMock).setLastProcessed(any(Date.class));
+        verify(modelServiceMock).save(partitionModelMock);
+    }
+
+    @Test
+    public void releaseLeaseShouldNotClearTheLeaseOfAnotherOwner() {
+        when(partitionModelMock.getOwner()).thenReturn(OTHER_OWNER);
+
+        testObj.releaseLease(PARTITION, OWNER);
+
+        verify(partitionModelMock, never()).setOwner(null);
+        verify(modelServiceMock, never()).save(partitionModelMock);
+    }
+
+    @Test
+    public void updateLagShouldStoreBacklogAndLag() {
+        when(worldpayOrderModificationPartitionStrategyMock.getFirstPartitionKey(PARTITION)).thenReturn(FIRST_PARTITION_KEY);
+        when(worldpayOrderModificationPartitionStrategyMock.getLastPartitionKey(PARTITION)).thenReturn(LAST_PARTITION_KEY);
+        when(orderModificationDaoMock.countUnprocessedOrderModifications(FIRST_PARTITION_KEY, LAST_PARTITION_KEY)).thenReturn(5);
+        when(orderModificationDaoMock.findOldestUnprocessedOrderModificationDate(FIRST_PARTITION_KEY, LAST_PARTITION_KEY)).thenReturn(null);
+
+        testObj.updateLag(PARTITION);
+
+        verify(partitionModelMock).setBacklog(5);
+        verify(partitionModelMock).setLag(0L);
+        verify(modelServiceMock).save(partitionModelMock);
+    }
+}
@@ -0,0 +1,84 @@
+package com.worldpay.strategies.impl;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationPartitionStrategy.PARTITION_KEY_SPACE;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationPartitionStrategy.WORLDPAY_ORDERMODIFICATION_PARTITIONS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayOrderModificationPartitionStrategyTest {
+
+    private static final String WORLDPAY_ORDER_CODE = "00000001-1500000000000";
+    private static final int PARTITIONS = 3;
+
+    @InjectMocks
+    private DefaultWorldpayOrderModificationPartitionStrategy testObj;
+
+    @Mock (answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+
+    @Before
+    public void setUp() {
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_ORDERMODIFICATION_PARTITIONS), anyInt())).thenReturn(PARTITIONS);
+    }
+
+    @Test
+    public void getPartitionKeyShouldBeStableAndWithinTheKeySpace() {
+        final int partitionKey = testObj.getPartitionKey(WORLDPAY_ORDER_CODE);
+
+        assertEquals(partitionKey, testObj.getPartitionKey(WORLDPAY_ORDER_CODE));
+        assertTrue(partitionKey >= 0 && partitionKey < PARTITION_KEY_SPACE);
+    }
+
+    @Test
+    public void partitionsShouldCoverTheWholeKeySpaceWithoutGaps() {
+        assertEquals(0, testObj.getFirstPartitionKey(0));
+        for (int partition = 1; partition < PARTITIONS; partition++) {
+            assertEquals(testObj.getLastPartitionKey(partition - 1), testObj.getFirstPartitionKey(partition));
+        }
+        assertEquals(PARTITION_KEY_SPACE, testObj.getLastPartitionKey(PARTITIONS - 1));
+    }
+
+    @Test
+    public void getPartitionShouldReturnThePartitionOwningTheKey() {
+        for (int partitionKey = 0; partitionKey < PARTITION_KEY_SPACE; partitionKey++) {
+            final int partition = testObj.getPartition(partitionKey);
+
+            assertTrue(testObj.getFirstPartitionKey(partition) <= partitionKey);
+            assertTrue(partitionKey < testObj.getLastPartitionKey(partition));
+        }
+    }
+
+    @Test
+    public void getPartitionShouldReturnTheFirstPartitionForModificationsWithoutKey() {
+        assertEquals(0, testObj.getPartition(null));
+    }
+
+    @Test
+    public void getPartitionCountShouldBeAtLeastOne() {
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_ORDERMODIFICATION_PARTITIONS), anyInt())).thenReturn(0);
+
+        assertEquals(1, testObj.getPartitionCount());
+    }
+
+    @Test
+    public void getPartitionCountShouldNotExceedTheKeySpace() {
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_ORDERMODIFICATION_PARTITIONS), anyInt())).thenReturn(PARTITION_KEY_SPACE + 1);
+
+        assertEquals(PARTITION_KEY_SPACE, testObj.getPartitionCount());
+    }
+}
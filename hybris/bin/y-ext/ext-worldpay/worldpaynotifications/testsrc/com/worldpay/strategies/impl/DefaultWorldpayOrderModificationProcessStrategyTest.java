@@ -5,10 +5,13 @@ import com.worldpay.dao.OrderModificationDao;
 import com.worldpay.dao.ProcessDefinitionDao;
 import com.worldpay.service.model.token.TokenReply;
 import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.strategies.WorldpayOrderModificationPartitionStrategy;
 import com.worldpay.strategies.WorldpayOrderModificationRefundProcessStrategy;
 import com.worldpay.strategy.WorldpayAuthenticatedShopperIdStrategy;
+import com.worldpay.transaction.WorldpayPaymentStateCache;
 import com.worldpay.transaction.WorldpayPaymentTransactionService;
 import com.worldpay.util.OrderModificationSerialiser;
+import com.worldpay.util.WorldpayLatencyHistogram;
 import com.worldpay.worldpaynotifications.enums.DefectiveReason;
 import com.worldpay.worldpaynotifications.model.WorldpayOrderModificationModel;
 import de.hybris.bootstrap.annotations.UnitTest;
@@ -21,24 +24,37 @@ import de.hybris.platform.payment.model.PaymentTransactionEntryModel;
 import de.hybris.platform.payment.model.PaymentTransactionModel;
 import de.hybris.platform.processengine.BusinessProcessService;
 import de.hybris.platform.processengine.model.BusinessProcessModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
 import de.hybris.platform.servicelayer.model.ModelService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
 
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Set;
 
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationDispatchStrategy.WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationProcessStrategy.WORLDPAY_ORDERMODIFICATION_BATCH_SIZE;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderModificationProcessStrategy.WORLDPAY_ORDERMODIFICATION_IMMEDIATE_SWEEPER_DELAY;
 import static com.worldpay.worldpaynotifications.enums.DefectiveReason.*;
 import static de.hybris.platform.core.enums.OrderStatus.CANCELLED;
 import static de.hybris.platform.core.enums.OrderStatus.FRAUD_CHECKED;
 import static de.hybris.platform.payment.enums.PaymentTransactionType.*;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -49,15 +65,21 @@ import static org.mockito.Mockito.*;
 public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
     private static final int DEFECTIVE_COUNT = 2;
+    private static final int PARTITION = 3;
+    private static final int FIRST_PARTITION_KEY = 192;
+    private static final int LAST_PARTITION_KEY = 256;
     private static final String ORDER_CODE = "orderCode";
     private static final String EXCEPTION_MESSAGE = "exceptionMessage";
     private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
+    private static final String ANOTHER_WORLDPAY_ORDER_CODE = "anotherWorldpayOrderCode";
     private static final String AUTHORISE_PROCESS_CODE = "authoriseProcessCode";
     private static final String SERIALIZED_JSON_STRING = "Serialized json string";
     private static final String CAPTURE_BPM_PROCESS_CODE = "captureBMPProcessCode";
     private static final String AUTHENTICATED_SHOPPER_ID = "authenticatedShopperId";
     private static final String TOKEN_REPLY_AUTHENTICATED_SHOPPER_ID = "tokenReplyAuthenticatedShopperId";
+    private static final long SWEEPER_DELAY = 60000L;
 
+    @Spy
     @InjectMocks
     private DefaultWorldpayOrderModificationProcessStrategy testObj;
 
@@ -66,7 +88,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
     @Mock
     private ProcessDefinitionDao processDefinitionDaoMock;
     @Mock
-    private WorldpayOrderModificationModel orderModificationModelMock, existingOrderModificationModelMock, anotherExistingOrderModificationModelMock;
+    private WorldpayOrderModificationModel orderModificationModelMock, anotherOrderModificationModelMock, existingOrderModificationModelMock, anotherExistingOrderModificationModelMock;
     @Mock
     private ModelService modelServiceMock;
     @Mock
@@ -74,7 +96,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
     @Mock
     private BusinessProcessService businessProcessServiceMock;
     @Mock
-    private PaymentTransactionModel paymentTransactionModelMock;
+    private PaymentTransactionModel paymentTransactionModelMock, anotherPaymentTransactionModelMock;
     @Mock
     private OrderModel orderModelMock;
     @Mock
@@ -99,6 +121,25 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
     private WorldpayAuthenticatedShopperIdStrategy worldpayAuthenticatedShopperIdStrategyMock;
     @Mock
     private WorldpayOrderModificationRefundProcessStrategy worldpayOrderModificationRefundProcessStrategyMock;
+    @Mock
+    private WorldpayOrderModificationPartitionStrategy worldpayOrderModificationPartitionStrategyMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private WorldpayLatencyHistogram worldpayOrderModificationLatencyHistogramMock;
+    @Mock
+    private WorldpayPaymentStateCache worldpayPaymentStateCacheMock;
+    @Mock
+    private WorldpayPaymentStateCache.Run paymentStateCacheRunMock;
+    @Mock
+    private TransactionStatus transactionStatusMock;
+
+    private TransactionOperations transactionOperationsMock = new TransactionOperations() {
+        @Override
+        public <T> T execute(final TransactionCallback<T> transactionCallback) throws TransactionException {
+            return transactionCallback.doInTransaction(transactionStatusMock);
+        }
+    };
 
     @Before
     public void setUp() {
@@ -121,6 +162,173 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
         when(worldpayAuthenticatedShopperIdStrategyMock.getAuthenticatedShopperId(customerModelMock)).thenReturn(AUTHENTICATED_SHOPPER_ID);
         when(tokenReplyMock.getAuthenticatedShopperID()).thenReturn(TOKEN_REPLY_AUTHENTICATED_SHOPPER_ID);
         when(orderNotificationMessageMock.getTokenReply()).thenReturn(null);
+        when(worldpayPaymentStateCacheMock.openRun()).thenReturn(paymentStateCacheRunMock);
+        testObj.setTransactionTemplate(transactionOperationsMock);
+        doNothing().when(testObj).lock(any(WorldpayOrderModificationModel.class));
+        doNothing().when(testObj).saveClaim(any(WorldpayOrderModificationModel.class), any(Date.class));
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldOnlyProcessModificationsOfThePartition() {
+        when(worldpayOrderModificationPartitionStrategyMock.getFirstPartitionKey(PARTITION)).thenReturn(FIRST_PARTITION_KEY);
+        when(worldpayOrderModificationPartitionStrategyMock.getLastPartitionKey(PARTITION)).thenReturn(LAST_PARTITION_KEY);
+        when(orderModificationDaoMock.findUnprocessedOrderModificationsByTypeAndPartitionKeys(CAPTURE, FIRST_PARTITION_KEY, LAST_PARTITION_KEY)).thenReturn(singletonList(orderModificationModelMock));
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+
+        final boolean result = testObj.processOrderModificationMessages(CAPTURE, PARTITION);
+
+        assertTrue(result);
+        verify(orderModificationDaoMock, never()).findUnprocessedOrderModificationsByType(CAPTURE);
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+        verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
+    }
+
+    @Test
+    public void processOrderModificationShouldProcessASingleModificationAndRecordItsLatency() {
+        when(orderModificationModelMock.getType()).thenReturn(CAPTURE);
+        when(orderModificationModelMock.getCreationtime()).thenReturn(new Date());
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+
+        final boolean result = testObj.processOrderModification(orderModificationModelMock);
+
+        assertTrue(result);
+        verify(orderModificationDaoMock, never()).findUnprocessedOrderModificationsByType(CAPTURE);
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+        verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
+        verify(worldpayOrderModificationLatencyHistogramMock).record(anyLong());
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldProcessEachBatchInAPaymentStateCacheRun() {
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+
+        testObj.processOrderModificationMessages(CAPTURE);
+
+        final InOrder inOrder = inOrder(worldpayPaymentStateCacheMock, worldpayPaymentTransactionServiceMock, paymentStateCacheRunMock);
+        inOrder.verify(worldpayPaymentStateCacheMock).openRun();
+        inOrder.verify(worldpayPaymentTransactionServiceMock).isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock);
+        inOrder.verify(paymentStateCacheRunMock).close();
+    }
+
+    @Test
+    public void processOrderModificationShouldIgnoreAlreadyProcessedModifications() {
+        when(orderModificationModelMock.getProcessed()).thenReturn(Boolean.TRUE);
+
+        final boolean result = testObj.processOrderModification(orderModificationModelMock);
+
+        assertTrue(result);
+        verify(testObj).lock(orderModificationModelMock);
+        verify(modelServiceMock).refresh(orderModificationModelMock);
+        verify(worldpayPaymentTransactionServiceMock, never()).getPaymentTransactionFromCode(WORLDPAY_ORDER_CODE);
+        verify(modelServiceMock, never()).save(orderModificationModelMock);
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldSkipModificationsProcessedSinceTheyWereRead() {
+        doAnswer(invocation -> {
+            when(orderModificationModelMock.getProcessed()).thenReturn(Boolean.TRUE);
+            return null;
+        }).when(modelServiceMock).refresh(orderModificationModelMock);
+
+        final boolean result = testObj.processOrderModificationMessages(CAPTURE);
+
+        assertTrue(result);
+        verify(testObj).lock(orderModificationModelMock);
+        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+        verify(modelServiceMock, never()).save(orderModificationModelMock);
+    }
+
+    @Test
+    public void processOrderModificationShouldClaimTheModificationAndReleaseItOnceProcessed() {
+        when(orderModificationModelMock.getType()).thenReturn(CAPTURE);
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+        doAnswer(invocation -> {
+            when(orderModificationModelMock.getClaimExpiry()).thenReturn((Date) invocation.getArguments()[1]);
+            return null;
+        }).when(testObj).saveClaim(eq(orderModificationModelMock), any(Date.class));
+
+        testObj.processOrderModification(orderModificationModelMock);
+
+        final InOrder inOrder = inOrder(testObj, orderNotificationServiceMock);
+        inOrder.verify(testObj).saveClaim(eq(orderModificationModelMock), any(Date.class));
+        inOrder.verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+        inOrder.verify(testObj).saveClaim(orderModificationModelMock, null);
+    }
+
+    @Test
+    public void processOrderModificationShouldSkipModificationsClaimedByAnotherWorker() {
+        when(orderModificationModelMock.getType()).thenReturn(CAPTURE);
+        when(orderModificationModelMock.getClaimExpiry()).thenReturn(new Date(System.currentTimeMillis() + SWEEPER_DELAY));
+
+        final boolean result = testObj.processOrderModification(orderModificationModelMock);
+
+        assertTrue(result);
+        verify(worldpayPaymentTransactionServiceMock, never()).getPaymentTransactionFromCode(WORLDPAY_ORDER_CODE);
+        verify(testObj, never()).saveClaim(eq(orderModificationModelMock), any(Date.class));
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldMarkTheModificationDefectiveAndContinueWhenTheProcessorFails() {
+        givenTwoCaptureModifications();
+        doThrow(new IllegalStateException(EXCEPTION_MESSAGE)).when(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+
+        final boolean result = testObj.processOrderModificationMessages(CAPTURE);
+
+        assertFalse(result);
+        verify(orderModificationModelMock).setDefective(Boolean.TRUE);
+        verify(orderModificationModelMock).setDefectiveReason(PROCESSING_ERROR);
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, anotherPaymentTransactionModelMock);
+        verify(anotherOrderModificationModelMock).setProcessed(Boolean.TRUE);
+        verify(anotherOrderModificationModelMock, never()).setDefective(Boolean.TRUE);
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldMarkTheModificationDefectiveAndContinueWhenItCannotBeProcessed() {
+        givenTwoCaptureModifications();
+        when(worldpayPaymentTransactionServiceMock.getPaymentTransactionFromCode(WORLDPAY_ORDER_CODE)).thenThrow(new IllegalStateException(EXCEPTION_MESSAGE));
+
+        final boolean result = testObj.processOrderModificationMessages(CAPTURE);
+
+        assertFalse(result);
+        verify(orderModificationModelMock).setDefective(Boolean.TRUE);
+        verify(orderModificationModelMock).setDefectiveReason(PROCESSING_ERROR);
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, anotherPaymentTransactionModelMock);
+        verify(anotherOrderModificationModelMock).setProcessed(Boolean.TRUE);
+    }
+
+    private void givenTwoCaptureModifications() {
+        when(orderModificationDaoMock.findUnprocessedOrderModificationsByType(CAPTURE)).thenReturn(asList(orderModificationModelMock, anotherOrderModificationModelMock));
+        when(anotherOrderModificationModelMock.getWorldpayOrderCode()).thenReturn(ANOTHER_WORLDPAY_ORDER_CODE);
+        when(anotherOrderModificationModelMock.getOrderNotificationMessage()).thenReturn(SERIALIZED_JSON_STRING);
+        when(anotherPaymentTransactionModelMock.getOrder()).thenReturn(orderModelMock);
+        when(worldpayPaymentTransactionServiceMock.getPaymentTransactionFromCode(ANOTHER_WORLDPAY_ORDER_CODE)).thenReturn(anotherPaymentTransactionModelMock);
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(ANOTHER_WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldLeaveRecentModificationsToImmediateProcessing() {
+        when(configurationServiceMock.getConfiguration().getBoolean(eq(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED), anyBoolean())).thenReturn(true);
+        when(configurationServiceMock.getConfiguration().getLong(eq(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_SWEEPER_DELAY), anyLong())).thenReturn(SWEEPER_DELAY);
+        when(orderModificationModelMock.getCreationtime()).thenReturn(new Date());
+
+        final boolean result = testObj.processOrderModificationMessages(CAPTURE);
+
+        assertTrue(result);
+        verify(worldpayPaymentTransactionServiceMock, never()).getPaymentTransactionFromCode(WORLDPAY_ORDER_CODE);
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldSweepModificationsOlderThanTheSweeperDelay() {
+        when(configurationServiceMock.getConfiguration().getBoolean(eq(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_ENABLED), anyBoolean())).thenReturn(true);
+        when(configurationServiceMock.getConfiguration().getLong(eq(WORLDPAY_ORDERMODIFICATION_IMMEDIATE_SWEEPER_DELAY), anyLong())).thenReturn(SWEEPER_DELAY);
+        when(orderModificationModelMock.getCreationtime()).thenReturn(new Date(System.currentTimeMillis() - 2 * SWEEPER_DELAY));
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+
+        final boolean result = testObj.processOrderModificationMessages(CAPTURE);
+
+        assertTrue(result);
+        verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
     }
 
     @Test
@@ -130,7 +338,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
         final boolean result = testObj.processOrderModificationMessages(CAPTURE);
 
         assertTrue(result);
-        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock);
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
         verify(businessProcessServiceMock).triggerEvent(CAPTURE_BPM_PROCESS_CODE + "_" + CAPTURE.getCode());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock, never()).setDefective(Boolean.TRUE);
@@ -143,7 +351,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         final boolean result = testObj.processOrderModificationMessages(SETTLED);
 
-        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock);
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
         verify(businessProcessServiceMock, never()).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock, never()).setDefective(Boolean.TRUE);
@@ -239,7 +447,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
     @Test
     public void processOrderModificationMessageShouldSetOrderModificationAsDefectWhenAnyExceptionIsThrown() {
-        doThrow(new NullPointerException(EXCEPTION_MESSAGE)).when(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class));//NOPMD
+        doThrow(new NullPointerException(EXCEPTION_MESSAGE)).when(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));//NOPMD
         when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, AUTHORIZATION, orderModelMock)).thenReturn(Boolean.TRUE);
 
         when(orderModificationDaoMock.findExistingModifications(orderModificationModelMock)).thenReturn(singletonList(existingOrderModificationModelMock));
@@ -283,7 +491,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(modelServiceMock).save(orderModificationModelMock);
-        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(orderNotificationMessageMock);
+        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
     }
 
     @Test
@@ -297,7 +505,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock, never()).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock).setDefective(Boolean.TRUE);
@@ -315,7 +523,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock, never()).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock).setDefective(Boolean.TRUE);
@@ -334,7 +542,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock).setDefective(Boolean.FALSE);
@@ -353,7 +561,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock, never()).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock).setDefective(Boolean.TRUE);
@@ -372,7 +580,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock, never()).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock).setDefective(Boolean.TRUE);
@@ -391,7 +599,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock, never()).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock, never()).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock).setDefective(Boolean.TRUE);
@@ -434,7 +642,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock, never()).setDefective(Boolean.TRUE);
@@ -450,7 +658,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(AUTHORIZATION);
 
-        verify(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class));
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(any(OrderNotificationMessage.class), any(PaymentTransactionModel.class));
         verify(businessProcessServiceMock).triggerEvent(anyString());
         verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
         verify(orderModificationModelMock, never()).setDefective(Boolean.TRUE);
@@ -464,7 +672,7 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
 
         testObj.processOrderModificationMessages(REFUND_FOLLOW_ON);
 
-        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock);
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
         verify(orderModificationModelMock).setProcessed(true);
         verify(modelServiceMock).save(orderModificationModelMock);
 
@@ -481,4 +689,49 @@ public class DefaultWorldpayOrderModificationProcessStrategyTest {
         verify(orderModificationModelMock).setProcessed(true);
         verify(modelServiceMock).save(orderModificationModelMock);
     }
+
+    @Test
+    public void processOrderModificationMessagesShouldResolveTheBatchWithASingleQueryForTransactionsAndProcesses() {
+        when(worldpayPaymentTransactionServiceMock.getPaymentTransactionsFromCodes(singleton(WORLDPAY_ORDER_CODE))).thenReturn(singletonMap(WORLDPAY_ORDER_CODE, paymentTransactionModelMock));
+        when(processDefinitionDaoMock.findWaitingOrderProcessesByOrderCodes(singleton(ORDER_CODE), CAPTURE)).thenReturn(singletonMap(ORDER_CODE, singletonList(captureWaitingProcessMock)));
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+
+        testObj.processOrderModificationMessages(CAPTURE);
+
+        verify(worldpayPaymentTransactionServiceMock, never()).getPaymentTransactionFromCode(anyString());
+        verify(processDefinitionDaoMock, never()).findWaitingOrderProcesses(anyString(), any(PaymentTransactionType.class));
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+        verify(businessProcessServiceMock).triggerEvent(CAPTURE_BPM_PROCESS_CODE + "_" + CAPTURE);
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldReadTheWaitingProcessesAgainOnceAnEventWasTriggered() {
+        when(orderModificationDaoMock.findUnprocessedOrderModificationsByType(CAPTURE)).thenReturn(asList(orderModificationModelMock, anotherOrderModificationModelMock));
+        when(anotherOrderModificationModelMock.getWorldpayOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(anotherOrderModificationModelMock.getOrderNotificationMessage()).thenReturn(SERIALIZED_JSON_STRING);
+        when(configurationServiceMock.getConfiguration().getInt(WORLDPAY_ORDERMODIFICATION_BATCH_SIZE, 100)).thenReturn(100);
+        when(worldpayPaymentTransactionServiceMock.getPaymentTransactionsFromCodes(singleton(WORLDPAY_ORDER_CODE))).thenReturn(singletonMap(WORLDPAY_ORDER_CODE, paymentTransactionModelMock));
+        when(processDefinitionDaoMock.findWaitingOrderProcessesByOrderCodes(singleton(ORDER_CODE), CAPTURE)).thenReturn(singletonMap(ORDER_CODE, singletonList(captureWaitingProcessMock)));
+        when(processDefinitionDaoMock.findWaitingOrderProcesses(ORDER_CODE, CAPTURE)).thenReturn(emptyList());
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, CAPTURE, orderModelMock)).thenReturn(true);
+
+        testObj.processOrderModificationMessages(CAPTURE);
+
+        verify(worldpayPaymentTransactionServiceMock).getPaymentTransactionsFromCodes(singleton(WORLDPAY_ORDER_CODE));
+        verify(processDefinitionDaoMock).findWaitingOrderProcesses(ORDER_CODE, CAPTURE);
+        verify(businessProcessServiceMock).triggerEvent(CAPTURE_BPM_PROCESS_CODE + "_" + CAPTURE);
+        verify(orderModificationModelMock).setProcessed(Boolean.TRUE);
+        verify(anotherOrderModificationModelMock, never()).setProcessed(Boolean.TRUE);
+    }
+
+    @Test
+    public void processOrderModificationMessagesShouldNotReadWaitingProcessesForSettledModifications() {
+        when(worldpayPaymentTransactionServiceMock.getPaymentTransactionsFromCodes(singleton(WORLDPAY_ORDER_CODE))).thenReturn(singletonMap(WORLDPAY_ORDER_CODE, paymentTransactionModelMock));
+        when(worldpayPaymentTransactionServiceMock.isPreviousTransactionCompleted(WORLDPAY_ORDER_CODE, SETTLED, orderModelMock)).thenReturn(true);
+
+        testObj.processOrderModificationMessages(SETTLED);
+
+        verify(processDefinitionDaoMock, never()).findWaitingOrderProcessesByOrderCodes(anyCollectionOf(String.class), any(PaymentTransactionType.class));
+        verify(orderNotificationServiceMock).processOrderNotificationMessage(orderNotificationMessageMock, paymentTransactionModelMock);
+    }
 }
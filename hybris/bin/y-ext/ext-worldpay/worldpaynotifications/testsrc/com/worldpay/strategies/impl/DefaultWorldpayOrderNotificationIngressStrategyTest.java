@@ -0,0 +1,287 @@
+package com.worldpay.strategies.impl;
+
+import com.worldpay.core.event.OrderModificationEvent;
+import com.worldpay.enums.order.AuthorisedStatus;
+import com.worldpay.exception.WorldpayModelTransformationException;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.service.notification.OrderNotificationMessageParser;
+import com.worldpay.util.OrderNotificationIngressLog;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.core.model.user.EmployeeModel;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import de.hybris.platform.servicelayer.event.EventService;
+import de.hybris.platform.servicelayer.event.events.AbstractEvent;
+import de.hybris.platform.servicelayer.session.SessionExecutionBody;
+import de.hybris.platform.servicelayer.session.SessionService;
+import de.hybris.platform.servicelayer.user.UserService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static com.worldpay.enums.order.AuthorisedStatus.AUTHORISED;
+import static com.worldpay.enums.order.AuthorisedStatus.CHARGED_BACK;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderNotificationIngressStrategy.WORLDPAY_NOTIFICATION_INGRESS_ENABLED;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderNotificationIngressStrategy.WORLDPAY_NOTIFICATION_INGRESS_POLL_INTERVAL;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderNotificationIngressStrategy.WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_ATTEMPTS;
+import static com.worldpay.strategies.impl.DefaultWorldpayOrderNotificationIngressStrategy.WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_INTERVAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Answers.RETURNS_DEEP_STUBS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultWorldpayOrderNotificationIngressStrategyTest {
+
+    private static final byte[] NOTIFICATION = "<paymentService/>".getBytes();
+    private static final String WORLDPAY_ORDER_CODE = "worldpayOrderCode";
+    private static final long POLL_INTERVAL = 100L;
+    private static final long RETRY_MAX_INTERVAL = 500L;
+    private static final int RETRY_MAX_ATTEMPTS = 5;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Spy
+    @InjectMocks
+    private DefaultWorldpayOrderNotificationIngressStrategy testObj;
+
+    @Mock
+    private OrderNotificationMessageParser orderNotificationMessageParserMock;
+    @Mock
+    private EventService eventServiceMock;
+    @Mock
+    private SessionService sessionServiceMock;
+    @Mock
+    private UserService userServiceMock;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+    @Mock
+    private OrderNotificationIngressLog ingressLogMock;
+    @Mock
+    private OrderNotificationIngressLog.Record recordMock;
+    @Mock(answer = RETURNS_DEEP_STUBS)
+    private OrderNotificationMessage orderNotificationMessageMock;
+    @Mock
+    private EmployeeModel adminUserMock;
+    @Captor
+    private ArgumentCaptor<OrderModificationEvent> orderModificationEventArgumentCaptor;
+
+    @Before
+    public void setUp() throws Exception {
+        testObj.setProcessableJournalTypeCodes(Collections.<AuthorisedStatus>singleton(AUTHORISED));
+        when(configurationServiceMock.getConfiguration().getBoolean(eq(WORLDPAY_NOTIFICATION_INGRESS_ENABLED), anyBoolean())).thenReturn(true);
+        when(configurationServiceMock.getConfiguration().getLong(eq(WORLDPAY_NOTIFICATION_INGRESS_POLL_INTERVAL), anyLong())).thenReturn(POLL_INTERVAL);
+        when(configurationServiceMock.getConfiguration().getLong(eq(WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_INTERVAL), anyLong())).thenReturn(RETRY_MAX_INTERVAL);
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_ATTEMPTS), anyInt())).thenReturn(RETRY_MAX_ATTEMPTS);
+        doReturn(ingressLogMock).when(testObj).getIngressLog();
+        doNothing().when(testObj).startDrainer();
+        when(ingressLogMock.peek()).thenReturn(recordMock, (OrderNotificationIngressLog.Record) null);
+        when(recordMock.getBody()).thenReturn(NOTIFICATION);
+        when(recordMock.getTimestamp()).thenReturn(System.currentTimeMillis());
+        when(orderNotificationMessageParserMock.parse(any(InputStream.class))).thenReturn(orderNotificationMessageMock);
+        when(orderNotificationMessageMock.getOrderCode()).thenReturn(WORLDPAY_ORDER_CODE);
+        when(orderNotificationMessageMock.getJournalReply().getJournalType()).thenReturn(AUTHORISED);
+        when(userServiceMock.getAdminUser()).thenReturn(adminUserMock);
+        doAnswer(invocation -> ((SessionExecutionBody) invocation.getArguments()[0]).execute())
+                .when(sessionServiceMock).executeInLocalView(any(SessionExecutionBody.class), eq(adminUserMock));
+    }
+
+    @Test
+    public void acceptShouldAppendTheNotificationToTheLog() throws IOException {
+        when(ingressLogMock.append(NOTIFICATION)).thenReturn(true);
+
+        assertTrue(testObj.accept(NOTIFICATION));
+
+        verify(testObj).startDrainer();
+        assertEquals(1L, testObj.getAcceptedNotifications());
+    }
+
+    @Test
+    public void acceptShouldRejectTheNotificationWhenTheLogIsFull() throws IOException {
+        when(ingressLogMock.append(NOTIFICATION)).thenReturn(false);
+
+        assertFalse(testObj.accept(NOTIFICATION));
+
+        assertEquals(1L, testObj.getRejectedNotifications());
+    }
+
+    @Test
+    public void acceptShouldRejectTheNotificationWhenTheLogCannotBeWritten() throws IOException {
+        when(ingressLogMock.append(NOTIFICATION)).thenThrow(new IOException("disk full"));
+
+        assertFalse(testObj.accept(NOTIFICATION));
+
+        assertEquals(1L, testObj.getRejectedNotifications());
+    }
+
+    @Test
+    public void acceptShouldRejectTheNotificationWhenDisabled() throws IOException {
+        when(configurationServiceMock.getConfiguration().getBoolean(eq(WORLDPAY_NOTIFICATION_INGRESS_ENABLED), anyBoolean())).thenReturn(false);
+
+        assertFalse(testObj.accept(NOTIFICATION));
+
+        verify(ingressLogMock, never()).append(any(byte[].class));
+    }
+
+    @Test
+    public void drainShouldPublishTheEventAndCommitTheRecord() throws IOException {
+        assertEquals(1, testObj.drain());
+
+        verify(eventServiceMock).publishEvent(orderModificationEventArgumentCaptor.capture());
+        assertEquals(orderNotificationMessageMock, orderModificationEventArgumentCaptor.getValue().getOrderNotificationMessage());
+        verify(ingressLogMock).commit(recordMock);
+        assertEquals(1L, testObj.getDrainedNotifications());
+        assertEquals(0L, testObj.getLagMillis());
+    }
+
+    @Test
+    public void drainShouldCommitTheRecordWithoutPublishingWhenTheJournalTypeIsNotProcessable() throws IOException {
+        when(orderNotificationMessageMock.getJournalReply().getJournalType()).thenReturn(CHARGED_BACK);
+
+        assertEquals(1, testObj.drain());
+
+        verify(eventServiceMock, never()).publishEvent(any(AbstractEvent.class));
+        verify(ingressLogMock).commit(recordMock);
+    }
+
+    @Test
+    public void drainShouldMoveTheRecordToTheDeadLettersWhenItCannotBeParsed() throws Exception {
+        when(orderNotificationMessageParserMock.parse(any(InputStream.class))).thenThrow(new WorldpayModelTransformationException("invalid"));
+        when(ingressLogMock.writeDeadLetter(recordMock)).thenReturn(Paths.get("dead-letters", "notification.xml"));
+
+        assertEquals(1, testObj.drain());
+
+        verify(eventServiceMock, never()).publishEvent(any(AbstractEvent.class));
+        verify(ingressLogMock).writeDeadLetter(recordMock);
+        verify(ingressLogMock).commit(recordMock);
+        assertEquals(1L, testObj.getFailedNotifications());
+    }
+
+    @Test
+    public void drainShouldKeepTheRecordWhenPublishingFails() throws IOException {
+        doThrow(new IllegalStateException("database unavailable")).when(eventServiceMock).publishEvent(any(AbstractEvent.class));
+
+        assertEquals(0, testObj.drain());
+
+        verify(ingressLogMock, never()).commit(recordMock);
+        verify(ingressLogMock, never()).writeDeadLetter(recordMock);
+    }
+
+    @Test
+    public void drainShouldMoveTheRecordToTheDeadLettersAfterTheLastAttempt() throws IOException {
+        doThrow(new NullPointerException()).when(eventServiceMock).publishEvent(any(AbstractEvent.class));
+        when(ingressLogMock.peek()).thenReturn(recordMock, recordMock, recordMock, recordMock, recordMock, null);
+        when(ingressLogMock.writeDeadLetter(recordMock)).thenReturn(Paths.get("dead-letters", "notification.xml"));
+
+        for (int attempt = 1; attempt < RETRY_MAX_ATTEMPTS; attempt++) {
+            assertEquals(0, testObj.drain());
+        }
+        verify(ingressLogMock, never()).writeDeadLetter(recordMock);
+
+        assertEquals(1, testObj.drain());
+
+        verify(ingressLogMock).writeDeadLetter(recordMock);
+        verify(ingressLogMock).commit(recordMock);
+        assertEquals(0, testObj.getAttempts());
+        assertEquals(1L, testObj.getFailedNotifications());
+    }
+
+    @Test
+    public void drainShouldRetryTheRecordWithoutLimitWhenTheMaxAttemptsIsNotSet() throws IOException {
+        doThrow(new IllegalStateException("database unavailable")).when(eventServiceMock).publishEvent(any(AbstractEvent.class));
+        when(ingressLogMock.peek()).thenReturn(recordMock);
+        when(configurationServiceMock.getConfiguration().getInt(eq(WORLDPAY_NOTIFICATION_INGRESS_RETRY_MAX_ATTEMPTS), anyInt())).thenReturn(0);
+
+        for (int attempt = 0; attempt < 20; attempt++) {
+            assertEquals(0, testObj.drain());
+        }
+
+        verify(ingressLogMock, never()).commit(recordMock);
+        verify(ingressLogMock, never()).writeDeadLetter(recordMock);
+        assertEquals(20, testObj.getAttempts());
+        assertEquals(0L, testObj.getFailedNotifications());
+    }
+
+    @Test
+    public void drainShouldResetTheAttemptsOncePublishingSucceeds() throws IOException {
+        doThrow(new IllegalStateException("database unavailable")).doNothing().when(eventServiceMock).publishEvent(any(AbstractEvent.class));
+        when(ingressLogMock.peek()).thenReturn(recordMock, recordMock, null);
+
+        assertEquals(0, testObj.drain());
+        assertEquals(1, testObj.drain());
+
+        verify(ingressLogMock).commit(recordMock);
+        assertEquals(0, testObj.getAttempts());
+    }
+
+    @Test
+    public void getRetryIntervalShouldDoubleAfterEachAttemptUpToTheMaximum() throws IOException {
+        doThrow(new IllegalStateException("database unavailable")).when(eventServiceMock).publishEvent(any(AbstractEvent.class));
+        when(ingressLogMock.peek()).thenReturn(recordMock);
+
+        testObj.drain();
+        assertEquals(POLL_INTERVAL, testObj.getRetryInterval(POLL_INTERVAL));
+        testObj.drain();
+        assertEquals(2 * POLL_INTERVAL, testObj.getRetryInterval(POLL_INTERVAL));
+        testObj.drain();
+        assertEquals(4 * POLL_INTERVAL, testObj.getRetryInterval(POLL_INTERVAL));
+        testObj.drain();
+        assertEquals(RETRY_MAX_INTERVAL, testObj.getRetryInterval(POLL_INTERVAL));
+    }
+
+    @Test
+    public void replayDeadLettersShouldAppendTheDeadLettersToTheLogAndDeleteThem() throws IOException {
+        final Path deadLetter = temporaryFolder.newFile("0-0.xml").toPath();
+        Files.write(deadLetter, NOTIFICATION);
+        when(ingressLogMock.getDeadLetters()).thenReturn(Collections.singletonList(deadLetter));
+        when(ingressLogMock.append(NOTIFICATION)).thenReturn(true);
+
+        assertEquals(1, testObj.replayDeadLetters());
+
+        verify(ingressLogMock).append(NOTIFICATION);
+        assertFalse(Files.exists(deadLetter));
+        verify(testObj).startDrainer();
+    }
+
+    @Test
+    public void replayDeadLettersShouldKeepTheDeadLettersWhenTheLogIsFull() throws IOException {
+        final Path deadLetter = temporaryFolder.newFile("0-0.xml").toPath();
+        Files.write(deadLetter, NOTIFICATION);
+        when(ingressLogMock.getDeadLetters()).thenReturn(Collections.singletonList(deadLetter));
+        when(ingressLogMock.append(NOTIFICATION)).thenReturn(false);
+
+        assertEquals(0, testObj.replayDeadLetters());
+
+        assertTrue(Files.exists(deadLetter));
+        verify(testObj, never()).startDrainer();
+    }
+}
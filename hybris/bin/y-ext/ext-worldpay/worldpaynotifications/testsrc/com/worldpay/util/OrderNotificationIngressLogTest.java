@@ -0,0 +1,211 @@
+package com.worldpay.util;
+
+import de.hybris.bootstrap.annotations.UnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static com.worldpay.util.OrderNotificationIngressLog.HEADER_SIZE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@UnitTest
+public class OrderNotificationIngressLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int MAX_SEGMENTS = 3;
+    private static final byte[] FIRST_NOTIFICATION = "<paymentService>first</paymentService>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SECOND_NOTIFICATION = "<paymentService>second</paymentService>".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private OrderNotificationIngressLog testObj;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.getRoot().toPath().resolve("ingress");
+        testObj = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        testObj.close();
+    }
+
+    @Test
+    public void peekShouldReturnTheRecordsInTheOrderTheyWereAppended() throws IOException {
+        assertTrue(testObj.append(FIRST_NOTIFICATION));
+        assertTrue(testObj.append(SECOND_NOTIFICATION));
+
+        final OrderNotificationIngressLog.Record first = testObj.peek();
+        assertArrayEquals(FIRST_NOTIFICATION, first.getBody());
+        assertArrayEquals(FIRST_NOTIFICATION, testObj.peek().getBody());
+        testObj.commit(first);
+        final OrderNotificationIngressLog.Record second = testObj.peek();
+        assertArrayEquals(SECOND_NOTIFICATION, second.getBody());
+        testObj.commit(second);
+
+        assertNull(testObj.peek());
+        assertEquals(0L, testObj.getPendingRecords());
+        assertEquals(0L, testObj.getPendingBytes());
+    }
+
+    @Test
+    public void openShouldReplayTheRecordsThatWereNotCommitted() throws IOException {
+        testObj.append(FIRST_NOTIFICATION);
+        testObj.append(SECOND_NOTIFICATION);
+        testObj.commit(testObj.peek());
+        testObj.close();
+
+        testObj = open();
+
+        assertEquals(1L, testObj.getPendingRecords());
+        assertArrayEquals(SECOND_NOTIFICATION, testObj.peek().getBody());
+    }
+
+    @Test
+    public void appendShouldStartANewSegmentAndPeekShouldDeleteTheConsumedOne() throws IOException {
+        final byte[] notification = new byte[SEGMENT_SIZE / 2];
+        testObj.append(notification);
+        testObj.append(notification);
+
+        assertEquals(2, testObj.getSegmentCount());
+        testObj.commit(testObj.peek());
+        testObj.commit(testObj.peek());
+        assertNull(testObj.peek());
+
+        assertEquals(1, testObj.getSegmentCount());
+        assertEquals(1L, countSegmentFiles());
+    }
+
+    @Test
+    public void appendShouldRejectTheRecordWhenTheLogIsFull() throws IOException {
+        final byte[] notification = new byte[SEGMENT_SIZE / 2];
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            assertTrue(testObj.append(notification));
+        }
+
+        assertFalse(testObj.append(notification));
+        assertEquals(MAX_SEGMENTS, testObj.getPendingRecords());
+
+        testObj.commit(testObj.peek());
+        testObj.peek();
+        assertTrue(testObj.append(notification));
+    }
+
+    @Test
+    public void appendShouldRejectARecordLargerThanASegment() throws IOException {
+        assertFalse(testObj.append(new byte[SEGMENT_SIZE]));
+    }
+
+    @Test
+    public void appendShouldRejectAnEmptyRecordAndKeepTheRecordsAppendedAfterIt() throws IOException {
+        assertTrue(testObj.append(FIRST_NOTIFICATION));
+        assertFalse(testObj.append(new byte[0]));
+        assertTrue(testObj.append(SECOND_NOTIFICATION));
+        testObj.close();
+
+        testObj = open();
+
+        assertEquals(2L, testObj.getPendingRecords());
+        final OrderNotificationIngressLog.Record first = testObj.peek();
+        assertArrayEquals(FIRST_NOTIFICATION, first.getBody());
+        testObj.commit(first);
+        assertArrayEquals(SECOND_NOTIFICATION, testObj.peek().getBody());
+    }
+
+    @Test
+    public void openShouldDiscardATornRecord() throws IOException {
+        testObj.append(FIRST_NOTIFICATION);
+        testObj.append(SECOND_NOTIFICATION);
+        testObj.close();
+        try (RandomAccessFile segment = new RandomAccessFile(getSegmentFile().toFile(), "rw")) {
+            segment.seek(HEADER_SIZE + FIRST_NOTIFICATION.length + HEADER_SIZE);
+            segment.write('x');
+        }
+
+        testObj = open();
+
+        assertEquals(1L, testObj.getPendingRecords());
+        testObj.commit(testObj.peek());
+        assertNull(testObj.peek());
+        assertTrue(testObj.append(SECOND_NOTIFICATION));
+        assertArrayEquals(SECOND_NOTIFICATION, testObj.peek().getBody());
+    }
+
+    @Test
+    public void writeDeadLetterShouldCopyTheRecordToTheDeadLetterDirectory() throws IOException {
+        testObj.append(FIRST_NOTIFICATION);
+
+        final Path deadLetter = testObj.writeDeadLetter(testObj.peek());
+
+        assertEquals(directory.resolve(OrderNotificationIngressLog.DEAD_LETTER_DIRECTORY), deadLetter.getParent());
+        assertArrayEquals(FIRST_NOTIFICATION, Files.readAllBytes(deadLetter));
+    }
+
+    @Test
+    public void peekShouldCopyACorruptedRecordToTheDeadLetterDirectory() throws IOException {
+        testObj.append(FIRST_NOTIFICATION);
+        testObj.append(SECOND_NOTIFICATION);
+        try (RandomAccessFile segment = new RandomAccessFile(getSegmentFile().toFile(), "rw")) {
+            segment.seek(HEADER_SIZE + FIRST_NOTIFICATION.length + HEADER_SIZE);
+            segment.write('x');
+        }
+
+        testObj.commit(testObj.peek());
+
+        assertNull(testObj.peek());
+        assertEquals(1, testObj.getDeadLetters().size());
+        assertEquals(SECOND_NOTIFICATION.length, Files.readAllBytes(testObj.getDeadLetters().get(0)).length);
+    }
+
+    @Test
+    public void getDeadLettersShouldListTheDeadLettersOldestFirst() throws IOException {
+        assertTrue(testObj.getDeadLetters().isEmpty());
+        testObj.append(FIRST_NOTIFICATION);
+        testObj.append(SECOND_NOTIFICATION);
+        final OrderNotificationIngressLog.Record first = testObj.peek();
+        final Path firstDeadLetter = testObj.writeDeadLetter(first);
+        testObj.commit(first);
+        final Path secondDeadLetter = testObj.writeDeadLetter(testObj.peek());
+
+        assertEquals(Arrays.asList(firstDeadLetter, secondDeadLetter), testObj.getDeadLetters());
+    }
+
+    @Test
+    public void hasSegmentsShouldBeFalseForAMissingDirectory() throws IOException {
+        assertTrue(OrderNotificationIngressLog.hasSegments(directory));
+        assertFalse(OrderNotificationIngressLog.hasSegments(directory.resolve("missing")));
+    }
+
+    private OrderNotificationIngressLog open() throws IOException {
+        return new OrderNotificationIngressLog(directory, SEGMENT_SIZE, MAX_SEGMENTS, true);
+    }
+
+    private long countSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).count();
+        }
+    }
+
+    private Path getSegmentFile() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).findFirst().orElseThrow(IllegalStateException::new);
+        }
+    }
+}
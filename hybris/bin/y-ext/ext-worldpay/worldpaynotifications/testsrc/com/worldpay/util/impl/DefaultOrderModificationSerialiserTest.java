@@ -0,0 +1,152 @@
+package com.worldpay.util.impl;
+
+import com.google.gson.GsonBuilder;
+import com.worldpay.service.model.AccountTransaction;
+import com.worldpay.service.model.Amount;
+import com.worldpay.service.model.Date;
+import com.worldpay.service.model.JournalReply;
+import com.worldpay.service.model.PaymentReply;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.util.OrderNotificationMessageFormat;
+import de.hybris.bootstrap.annotations.UnitTest;
+import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Answers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+
+import static com.worldpay.enums.order.AuthorisedStatus.AUTHORISED;
+import static com.worldpay.service.model.DebitCreditIndicator.CREDIT;
+import static com.worldpay.util.impl.DefaultOrderModificationSerialiser.WORLDPAY_ORDERMODIFICATION_SERIALISER_FORMAT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@UnitTest
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultOrderModificationSerialiserTest {
+
+    private static final String ORDER_CODE = "orderCode";
+    private static final String MERCHANT_CODE = "MERCHANT1ECOM";
+
+    @InjectMocks
+    private DefaultOrderModificationSerialiser testObj;
+
+    @Mock (answer = Answers.RETURNS_DEEP_STUBS)
+    private ConfigurationService configurationServiceMock;
+
+    private OrderNotificationMessage orderNotificationMessage;
+
+    @Before
+    public void setUp() {
+        testObj.setOrderNotificationMessageFormats(Arrays.<OrderNotificationMessageFormat>asList(new JsonOrderNotificationMessageFormat(), new CompressedOrderNotificationMessageFormat()));
+        orderNotificationMessage = createOrderNotificationMessage();
+    }
+
+    @Test
+    public void serialiseShouldWriteCompactJsonByDefault() {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_SERIALISER_FORMAT)).thenReturn(null);
+
+        final String result = testObj.serialise(orderNotificationMessage);
+
+        assertTrue(result.startsWith("{"));
+        assertTrue(!result.contains("\n"));
+        assertRoundTrip(result);
+    }
+
+    @Test
+    public void serialiseShouldWriteTheConfiguredFormat() {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_SERIALISER_FORMAT)).thenReturn(CompressedOrderNotificationMessageFormat.NAME);
+
+        final String result = testObj.serialise(orderNotificationMessage);
+
+        assertTrue(result.startsWith(CompressedOrderNotificationMessageFormat.VERSION_MARKER));
+        assertRoundTrip(result);
+    }
+
+    @Test
+    public void deserialiseShouldReadPrettyPrintedJsonStoredByPreviousVersions() {
+        final String storedMessage = new GsonBuilder().setPrettyPrinting().create().toJson(orderNotificationMessage);
+
+        assertRoundTrip(storedMessage);
+    }
+
+    @Test
+    public void compressedFormatShouldBeSmallerThanPrettyPrintedJson() {
+        final String prettyPrinted = new GsonBuilder().setPrettyPrinting().create().toJson(orderNotificationMessage);
+        final String compact = new JsonOrderNotificationMessageFormat().write(orderNotificationMessage);
+        final String compressed = new CompressedOrderNotificationMessageFormat().write(orderNotificationMessage);
+
+        assertTrue(compact.length() < prettyPrinted.length());
+        assertTrue(compressed.length() < prettyPrinted.length());
+    }
+
+    @Test
+    public void deserialiseShouldReturnNullForMissingMessages() {
+        assertNull(testObj.deserialise(null));
+        assertNull(testObj.deserialise(""));
+    }
+
+    @Test
+    public void serialiseShouldUseTheDefaultFormatWhenTheConfiguredFormatIsUnknown() {
+        when(configurationServiceMock.getConfiguration().getString(WORLDPAY_ORDERMODIFICATION_SERIALISER_FORMAT)).thenReturn("unknown");
+
+        final String result = testObj.serialise(orderNotificationMessage);
+
+        assertTrue(result.startsWith("{"));
+        assertRoundTrip(result);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deserialiseShouldFailForUnknownFormats() {
+        testObj.deserialise("zz9:unknown");
+    }
+
+    private void assertRoundTrip(final String serialisedMessage) {
+        final OrderNotificationMessage result = testObj.deserialise(serialisedMessage);
+
+        assertEquals(ORDER_CODE, result.getOrderCode());
+        assertEquals(MERCHANT_CODE, result.getMerchantCode());
+        assertEquals(AUTHORISED, result.getJournalReply().getJournalType());
+        assertEquals("10000", result.getPaymentReply().getAmount().getValue());
+        assertEquals("84", result.getJournalReply().getAccountTransactions().get(0).getBatchId());
+    }
+
+    protected static OrderNotificationMessage createOrderNotificationMessage() {
+        final Amount amount = new Amount("10000", "GBP", "2", CREDIT);
+
+        final PaymentReply paymentReply = new PaymentReply();
+        paymentReply.setMethodCode("VISA-SSL");
+        paymentReply.setAmount(amount);
+        paymentReply.setAuthStatus(AUTHORISED);
+        paymentReply.setCvcResultDescription("NOT CHECKED BY ACQUIRER");
+        paymentReply.setBalanceAccountType("IN_PROCESS_AUTHORISED");
+        paymentReply.setBalanceAmount(amount);
+        paymentReply.setCardNumber("4444********1111");
+        paymentReply.setCardHolderName("aaa bbb");
+        paymentReply.setAuthorisationId("666");
+
+        final AccountTransaction accountTransaction = new AccountTransaction();
+        accountTransaction.setAccountType("IN_PROCESS_AUTHORISED");
+        accountTransaction.setBatchId("84");
+        accountTransaction.setAmount(amount);
+
+        final JournalReply journalReply = new JournalReply();
+        journalReply.setJournalType(AUTHORISED);
+        journalReply.setBookingDate(new Date("5", "6", "2015", "0", "0", "0"));
+        journalReply.addAccountTransaction(accountTransaction);
+
+        final OrderNotificationMessage orderNotificationMessage = new OrderNotificationMessage();
+        orderNotificationMessage.setOrderCode(ORDER_CODE);
+        orderNotificationMessage.setMerchantCode(MERCHANT_CODE);
+        orderNotificationMessage.setPaymentReply(paymentReply);
+        orderNotificationMessage.setJournalReply(journalReply);
+        return orderNotificationMessage;
+    }
+}
@@ -0,0 +1,110 @@
+package com.worldpay.util.impl;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.worldpay.service.model.AccountTransaction;
+import com.worldpay.service.model.Amount;
+import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.util.OrderNotificationMessageFormat;
+import com.worldpay.util.WorldpayBenchmark;
+import de.hybris.bootstrap.annotations.PerformanceTest;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import static com.worldpay.enums.order.AuthorisedStatus.CAPTURED;
+import static com.worldpay.service.model.DebitCreditIndicator.CREDIT;
+import static java.text.MessageFormat.format;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the stored size and the serialise and deserialise throughput of typical AUTHORISED and CAPTURED notifications in the
+ * pretty printed json written by previous versions against the {@link OrderNotificationMessageFormat} implementations. Only the
+ * stored size is asserted on, the throughput is logged.
+ */
+@PerformanceTest
+public class OrderNotificationMessageFormatPerformanceTest {
+
+    private static final Logger LOG = Logger.getLogger(OrderNotificationMessageFormatPerformanceTest.class);
+
+    private static final int WARM_UP_ITERATIONS = 5000;
+    private static final int MEASURED_ITERATIONS = 50000;
+
+    private OrderNotificationMessage authorisedMessage;
+    private OrderNotificationMessage capturedMessage;
+
+    @Before
+    public void setUp() {
+        authorisedMessage = DefaultOrderModificationSerialiserTest.createOrderNotificationMessage();
+        capturedMessage = DefaultOrderModificationSerialiserTest.createOrderNotificationMessage();
+        capturedMessage.getJournalReply().setJournalType(CAPTURED);
+        final AccountTransaction settledTransaction = new AccountTransaction();
+        settledTransaction.setAccountType("SETTLED_BIBIT_NET");
+        settledTransaction.setBatchId("85");
+        settledTransaction.setAmount(new Amount("9712", "GBP", "2", CREDIT));
+        capturedMessage.getJournalReply().addAccountTransaction(settledTransaction);
+    }
+
+    @Test
+    public void formatsShouldStoreSmallerMessagesThanPrettyPrintedJson() throws Exception {
+        final Measurement legacy = measure("legacy pretty json", this::writeLegacy, this::readLegacy);
+        final Measurement json = measure(new JsonOrderNotificationMessageFormat());
+        final Measurement compressed = measure(new CompressedOrderNotificationMessageFormat());
+
+        LOG.info(legacy);
+        LOG.info(json);
+        LOG.info(compressed);
+
+        assertTrue(json.averageSize < legacy.averageSize);
+        assertTrue(compressed.averageSize < legacy.averageSize);
+    }
+
+    private String writeLegacy(final OrderNotificationMessage orderNotificationMessage) {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(orderNotificationMessage);
+    }
+
+    private OrderNotificationMessage readLegacy(final String serialisedMessage) {
+        return new Gson().fromJson(serialisedMessage, new TypeToken<OrderNotificationMessage>() {/**/
+        }.getType());
+    }
+
+    private Measurement measure(final OrderNotificationMessageFormat orderNotificationMessageFormat) throws Exception {
+        return measure(orderNotificationMessageFormat.getName(), orderNotificationMessageFormat::write, orderNotificationMessageFormat::read);
+    }
+
+    private Measurement measure(final String name, final Function<OrderNotificationMessage, String> writer, final Function<String, OrderNotificationMessage> reader) throws Exception {
+        final String authorised = writer.apply(authorisedMessage);
+        final String captured = writer.apply(capturedMessage);
+        final WorldpayBenchmark.Measurement writes = WorldpayBenchmark.measure(WARM_UP_ITERATIONS, MEASURED_ITERATIONS, () -> {
+            writer.apply(authorisedMessage);
+            writer.apply(capturedMessage);
+        });
+        final WorldpayBenchmark.Measurement reads = WorldpayBenchmark.measure(WARM_UP_ITERATIONS, MEASURED_ITERATIONS, () -> {
+            reader.apply(authorised);
+            reader.apply(captured);
+        });
+        return new Measurement(name, (authorised.length() + captured.length()) / 2, writes, reads);
+    }
+
+    private static class Measurement {
+        private final String name;
+        private final int averageSize;
+        private final WorldpayBenchmark.Measurement writes;
+        private final WorldpayBenchmark.Measurement reads;
+
+        Measurement(final String name, final int averageSize, final WorldpayBenchmark.Measurement writes, final WorldpayBenchmark.Measurement reads) {
+            this.name = name;
+            this.averageSize = averageSize;
+            this.writes = writes;
+            this.reads = reads;
+        }
+
+        @Override
+        public String toString() {
+            return format("{0}: {1} chars, serialise the authorised and captured messages {2}, deserialise them {3}", name, averageSize, writes, reads);
+        }
+    }
+}
@@ -2,12 +2,13 @@ package com.worldpay.worldpaynotifications.controllers.order.notification;
 
 import com.worldpay.core.event.OrderModificationEvent;
 import com.worldpay.enums.order.AuthorisedStatus;
-import com.worldpay.internal.model.PaymentService;
-import com.worldpay.service.marshalling.impl.DefaultPaymentServiceMarshaller;
+import com.worldpay.exception.WorldpayModelTransformationException;
 import com.worldpay.service.notification.OrderNotificationMessage;
+import com.worldpay.service.notification.OrderNotificationMessageParser;
+import com.worldpay.strategies.WorldpayOrderModificationEventRoutingStrategy;
+import com.worldpay.strategies.WorldpayOrderNotificationIngressStrategy;
 import com.worldpay.worldpaynotifications.controller.order.notification.OrderModificationController;
 import de.hybris.bootstrap.annotations.UnitTest;
-import de.hybris.platform.servicelayer.dto.converter.Converter;
 import de.hybris.platform.servicelayer.event.EventService;
 import de.hybris.platform.servicelayer.event.events.AbstractEvent;
 import org.junit.Before;
@@ -19,14 +20,21 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Set;
 
 import static com.worldpay.enums.order.AuthorisedStatus.AUTHORISED;
 import static com.worldpay.enums.order.AuthorisedStatus.CAPTURED;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Answers.RETURNS_DEEP_STUBS;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
@@ -38,44 +46,48 @@ public class OrderModificationControllerTest {
 
     private static final AuthorisedStatus JOURNAL_TYPE_NOT_HANDLED = AuthorisedStatus.CHARGED_BACK;
     private static final AuthorisedStatus JOURNAL_TYPE_HANDLED = AUTHORISED;
+    private static final byte[] NOTIFICATION = "<paymentService/>".getBytes(StandardCharsets.UTF_8);
 
     @InjectMocks
     private OrderModificationController testObj;
 
     @Mock
     private HttpServletRequest requestMock;
+    @Mock
+    private HttpServletResponse responseMock;
     @Mock(answer = RETURNS_DEEP_STUBS)
     private OrderNotificationMessage orderNotificationMessageMock;
-    @Mock(name = "orderNotificationRequestConverter")
-    private Converter<PaymentService, OrderNotificationMessage> orderNotificationRequestConverterMock;
+    @Mock
+    private OrderNotificationMessageParser orderNotificationMessageParserMock;
     @Mock
     private ServletInputStream requestInputStreamMock;
     @Mock
     private EventService eventServiceMock;
     @Mock
-    private PaymentService paymentServiceMock;
+    private WorldpayOrderNotificationIngressStrategy worldpayOrderNotificationIngressStrategyMock;
     @Mock
-    private DefaultPaymentServiceMarshaller paymentServiceMarshallerMock;
+    private WorldpayOrderModificationEventRoutingStrategy worldpayOrderModificationEventRoutingStrategyMock;
     @Captor
     private ArgumentCaptor<OrderModificationEvent> orderModificationEventArgumentCaptor;
 
     @Before
     public void setUp() throws Exception {
-        when(paymentServiceMarshallerMock.unmarshal(requestInputStreamMock)).thenReturn(paymentServiceMock);
+        when(orderNotificationMessageParserMock.parse(requestInputStreamMock)).thenReturn(orderNotificationMessageMock);
         final Set<AuthorisedStatus> processableJournalTypeCodes = new HashSet<>();
         processableJournalTypeCodes.add(AUTHORISED);
         processableJournalTypeCodes.add(CAPTURED);
         testObj.setProcessableJournalTypeCodes(processableJournalTypeCodes);
 
         when(requestMock.getInputStream()).thenReturn(requestInputStreamMock);
+        when(worldpayOrderModificationEventRoutingStrategyMock.createOrderModificationEvent(any(OrderNotificationMessage.class)))
+                .thenAnswer(invocation -> new OrderModificationEvent((OrderNotificationMessage) invocation.getArguments()[0]));
     }
 
     @Test
     public void processOrderNotificationShouldNotProcessTheNotificationIfNotificationNotProcessable() {
-        when(orderNotificationRequestConverterMock.convert(paymentServiceMock)).thenReturn(orderNotificationMessageMock);
         when(orderNotificationMessageMock.getJournalReply().getJournalType()).thenReturn(JOURNAL_TYPE_NOT_HANDLED);
 
-        final String result = testObj.processOrderNotification(requestMock);
+        final String result = testObj.processOrderNotification(requestMock, responseMock);
 
         assertEquals(WORLDPAY_RESPONSE_OK_VIEW, result);
         verify(eventServiceMock, never()).publishEvent(any(AbstractEvent.class));
@@ -83,15 +95,95 @@ public class OrderModificationControllerTest {
 
     @Test
     public void processOrderNotificationShouldProcessNotificationIfNotificationIsProcessable() {
-        when(orderNotificationRequestConverterMock.convert(paymentServiceMock)).thenReturn(orderNotificationMessageMock);
         when(orderNotificationMessageMock.getJournalReply().getJournalType()).thenReturn(JOURNAL_TYPE_HANDLED);
 
-        final String result = testObj.processOrderNotification(requestMock);
+        final String result = testObj.processOrderNotification(requestMock, responseMock);
 
         assertEquals(WORLDPAY_RESPONSE_OK_VIEW, result);
         verify(eventServiceMock).publishEvent(orderModificationEventArgumentCaptor.capture());
 
         final OrderModificationEvent orderModificationEvent = orderModificationEventArgumentCaptor.getValue();
         assertEquals(orderNotificationMessageMock, orderModificationEvent.getOrderNotificationMessage());
+        verify(worldpayOrderModificationEventRoutingStrategyMock).createOrderModificationEvent(orderNotificationMessageMock);
+    }
+
+    @Test
+    public void processOrderNotificationShouldNotProcessTheNotificationIfItCannotBeParsed() throws Exception {
+        when(orderNotificationMessageParserMock.parse(requestInputStreamMock)).thenThrow(new WorldpayModelTransformationException("invalid"));
+
+        final String result = testObj.processOrderNotification(requestMock, responseMock);
+
+        assertEquals(WORLDPAY_RESPONSE_OK_VIEW, result);
+        verify(eventServiceMock, never()).publishEvent(any(AbstractEvent.class));
+    }
+
+    @Test
+    public void processOrderNotificationShouldAcknowledgeTheNotificationWhenTheIngressStrategyAcceptsIt() throws Exception {
+        when(requestMock.getInputStream()).thenReturn(new DelegatingServletInputStream(NOTIFICATION));
+        when(worldpayOrderNotificationIngressStrategyMock.isEnabled()).thenReturn(true);
+        when(worldpayOrderNotificationIngressStrategyMock.accept(NOTIFICATION)).thenReturn(true);
+
+        final String result = testObj.processOrderNotification(requestMock, responseMock);
+
+        assertEquals(WORLDPAY_RESPONSE_OK_VIEW, result);
+        verify(worldpayOrderNotificationIngressStrategyMock).accept(NOTIFICATION);
+        verify(orderNotificationMessageParserMock, never()).parse(any(InputStream.class));
+        verify(eventServiceMock, never()).publishEvent(any(AbstractEvent.class));
+    }
+
+    @Test
+    public void processOrderNotificationShouldProcessTheNotificationWhenTheIngressStrategyRejectsIt() throws Exception {
+        when(requestMock.getInputStream()).thenReturn(new DelegatingServletInputStream(NOTIFICATION));
+        when(worldpayOrderNotificationIngressStrategyMock.isEnabled()).thenReturn(true);
+        when(worldpayOrderNotificationIngressStrategyMock.accept(NOTIFICATION)).thenReturn(false);
+        when(orderNotificationMessageParserMock.parse(any(InputStream.class))).thenReturn(orderNotificationMessageMock);
+        when(orderNotificationMessageMock.getJournalReply().getJournalType()).thenReturn(JOURNAL_TYPE_HANDLED);
+
+        final String result = testObj.processOrderNotification(requestMock, responseMock);
+
+        assertEquals(WORLDPAY_RESPONSE_OK_VIEW, result);
+        verify(eventServiceMock).publishEvent(orderModificationEventArgumentCaptor.capture());
+        assertEquals(orderNotificationMessageMock, orderModificationEventArgumentCaptor.getValue().getOrderNotificationMessage());
+    }
+
+    @Test
+    public void processOrderNotificationShouldAnswerABadRequestWhenTheNotificationIsEmpty() throws Exception {
+        when(requestMock.getInputStream()).thenReturn(new DelegatingServletInputStream(new byte[0]));
+        when(worldpayOrderNotificationIngressStrategyMock.isEnabled()).thenReturn(true);
+
+        final String result = testObj.processOrderNotification(requestMock, responseMock);
+
+        assertNull(result);
+        verify(responseMock).sendError(HttpServletResponse.SC_BAD_REQUEST);
+        verify(worldpayOrderNotificationIngressStrategyMock, never()).accept(any(byte[].class));
+        verify(eventServiceMock, never()).publishEvent(any(AbstractEvent.class));
+    }
+
+    private static class DelegatingServletInputStream extends ServletInputStream {
+        private final ByteArrayInputStream delegate;
+
+        private DelegatingServletInputStream(final byte[] body) {
+            this.delegate = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate.read();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(final ReadListener readListener) {
+            throw new UnsupportedOperationException();
+        }
     }
 }
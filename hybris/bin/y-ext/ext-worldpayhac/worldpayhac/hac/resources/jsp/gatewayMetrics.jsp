@@ -0,0 +1,90 @@
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
+<html>
+	<head>
+		<title>Worldpay</title>
+	</head>
+	<body>
+		<div class="prepend-top span-17 colborder" id="content">
+			<div class="marginLeft" id="inner">
+				<h2>Latency per stage (&micro;s)</h2>
+
+				<table>
+					<thead>
+						<tr>
+							<th>Request</th>
+							<th>Merchant</th>
+							<th>Stage</th>
+							<th>Count</th>
+							<th>Average</th>
+							<th>p50</th>
+							<th>p95</th>
+							<th>p99</th>
+							<th>Max</th>
+						</tr>
+					</thead>
+					<tbody>
+						<c:forEach items="${gatewayMetrics}" var="metrics">
+							<c:forEach items="${metrics.latencyHistograms}" var="histogram">
+								<tr>
+									<td>${metrics.requestType}</td>
+									<td>${metrics.merchantCode}</td>
+									<td>${histogram.name}</td>
+									<td>${histogram.count}</td>
+									<td><fmt:formatNumber value="${histogram.average}" maxFractionDigits="0"/></td>
+									<td>${histogram.getPercentile(50)}</td>
+									<td>${histogram.getPercentile(95)}</td>
+									<td>${histogram.getPercentile(99)}</td>
+									<td>${histogram.max}</td>
+								</tr>
+							</c:forEach>
+						</c:forEach>
+					</tbody>
+				</table>
+
+				<h2>Errors</h2>
+
+				<table>
+					<thead>
+						<tr>
+							<th>Request</th>
+							<th>Merchant</th>
+							<th>Calls</th>
+							<th>Error responses</th>
+							<th>Error codes</th>
+							<th>Failures</th>
+							<th>Exceptions</th>
+						</tr>
+					</thead>
+					<tbody>
+						<c:forEach items="${gatewayMetrics}" var="metrics">
+							<tr>
+								<td>${metrics.requestType}</td>
+								<td>${metrics.merchantCode}</td>
+								<td>${metrics.calls}</td>
+								<td>${metrics.errorResponses}</td>
+								<td>
+									<c:forEach items="${metrics.errorCodes}" var="errorCode">
+										<div>${errorCode.key}: ${errorCode.value}</div>
+									</c:forEach>
+								</td>
+								<td>${metrics.failures}</td>
+								<td>
+									<c:forEach items="${metrics.exceptions}" var="exception">
+										<div>${exception.key}: ${exception.value}</div>
+									</c:forEach>
+								</td>
+							</tr>
+						</c:forEach>
+					</tbody>
+				</table>
+			</div>
+		</div>
+		<div class="prepend-top span-6 last" id="sidebar">
+			<button type="button" id="resetGatewayMetricsSidebar" onclick="location.href='/worldpayhac/gatewaymetrics/reset'" >Reset metrics</button>
+			<c:if test="${reset}" >
+				<div>The gateway metrics were reset</div>
+			</c:if>
+		</div>
+	</body>
+</html>
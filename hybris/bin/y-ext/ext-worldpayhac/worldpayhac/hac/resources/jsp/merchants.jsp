@@ -0,0 +1,61 @@
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<html>
+	<head>
+		<title>Worldpay</title>
+	</head>
+	<body>
+		<div class="prepend-top span-17 colborder" id="content">
+			<div class="marginLeft" id="inner">
+				<h2>Merchants</h2>
+
+				<table>
+					<thead>
+						<tr>
+							<th>Merchant code</th>
+							<th>Installation id</th>
+							<th>Mac validation</th>
+						</tr>
+					</thead>
+					<tbody>
+						<c:forEach items="${merchants}" var="merchant">
+							<tr>
+								<td>${merchant.code}</td>
+								<td>${merchant.installationId}</td>
+								<td>${merchant.macValidation}</td>
+							</tr>
+						</c:forEach>
+					</tbody>
+				</table>
+
+				<h2>Merchants by site</h2>
+
+				<table>
+					<thead>
+						<tr>
+							<th>Site</th>
+							<th>Channel</th>
+							<th>Merchant code</th>
+						</tr>
+					</thead>
+					<tbody>
+						<c:forEach items="${siteMerchants}" var="site">
+							<c:forEach items="${site.value}" var="channel">
+								<tr>
+									<td>${empty site.key ? '-' : site.key}</td>
+									<td>${channel.key}</td>
+									<td>${channel.value.code}</td>
+								</tr>
+							</c:forEach>
+						</c:forEach>
+					</tbody>
+				</table>
+			</div>
+		</div>
+		<div class="prepend-top span-6 last" id="sidebar">
+			<button type="button" id="invalidateMerchantsSidebar" onclick="location.href='/worldpayhac/merchants/invalidate'" >Rebuild merchant registry</button>
+			<c:if test="${invalidated}" >
+				<div>The merchant registry was rebuilt from the current configuration</div>
+			</c:if>
+		</div>
+	</body>
+</html>
@@ -0,0 +1,39 @@
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<html>
+	<head>
+		<title>Worldpay</title>
+	</head>
+	<body>
+		<div class="prepend-top span-17 colborder" id="content">
+			<div class="marginLeft" id="inner">
+				<c:forEach items="${metrics}" var="mbean">
+					<h2>${mbean.key}</h2>
+
+					<table>
+						<thead>
+							<tr>
+								<th>Attribute</th>
+								<th>Value</th>
+							</tr>
+						</thead>
+						<tbody>
+							<c:forEach items="${mbean.value}" var="attribute">
+								<tr>
+									<td>${attribute.key}</td>
+									<td>
+										<c:forEach items="${attribute.value}" var="line">
+											<div><c:out value="${line}"/></div>
+										</c:forEach>
+									</td>
+								</tr>
+							</c:forEach>
+						</tbody>
+					</table>
+				</c:forEach>
+			</div>
+		</div>
+		<div class="prepend-top span-6 last" id="sidebar">
+			<div>Metrics published over JMX under the com.worldpay domain</div>
+		</div>
+	</body>
+</html>
@@ -0,0 +1,101 @@
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<html>
+	<head>
+		<title>Worldpay</title>
+	</head>
+	<body>
+		<div class="prepend-top span-17 colborder" id="content">
+			<div class="marginLeft" id="inner">
+				<h2>Circuit breakers</h2>
+
+				<table>
+					<thead>
+						<tr>
+							<th>Merchant</th>
+							<th>Request type</th>
+							<th>State</th>
+							<th>Failure rate (%)</th>
+							<th>Successful</th>
+							<th>Failed</th>
+							<th>Rejected</th>
+						</tr>
+					</thead>
+					<tbody>
+						<c:forEach items="${circuitBreakers}" var="circuitBreaker">
+							<tr>
+								<td>${circuitBreaker.merchantCode}</td>
+								<td>${circuitBreaker.requestType}</td>
+								<td>${circuitBreaker.state}</td>
+								<td>${circuitBreaker.failureRate lt 0 ? '-' : circuitBreaker.failureRate}</td>
+								<td>${circuitBreaker.successfulCalls}</td>
+								<td>${circuitBreaker.failedCalls}</td>
+								<td>${circuitBreaker.notPermittedCalls}</td>
+							</tr>
+						</c:forEach>
+					</tbody>
+				</table>
+
+				<h2>Bulkheads</h2>
+
+				<table>
+					<thead>
+						<tr>
+							<th>Merchant</th>
+							<th>Request type</th>
+							<th>In flight</th>
+							<th>Maximum</th>
+							<th>Rejected</th>
+						</tr>
+					</thead>
+					<tbody>
+						<c:forEach items="${bulkheads}" var="bulkhead">
+							<tr>
+								<td>${bulkhead.merchantCode}</td>
+								<td>${bulkhead.requestType}</td>
+								<td>${bulkhead.callsInFlight}</td>
+								<td>${bulkhead.maxConcurrentCalls}</td>
+								<td>${bulkhead.rejectedCalls}</td>
+							</tr>
+						</c:forEach>
+					</tbody>
+				</table>
+
+				<h2>State transitions</h2>
+
+				<table>
+					<thead>
+						<tr>
+							<th>Time</th>
+							<th>Merchant</th>
+							<th>Request type</th>
+							<th>From</th>
+							<th>To</th>
+							<th>Reason</th>
+						</tr>
+					</thead>
+					<tbody>
+						<c:forEach items="${stateTransitions}" var="stateTransition">
+							<tr>
+								<td>${stateTransition.time}</td>
+								<td>${stateTransition.merchantCode}</td>
+								<td>${stateTransition.requestType}</td>
+								<td>${stateTransition.fromState}</td>
+								<td>${stateTransition.toState}</td>
+								<td>${stateTransition.reason}</td>
+							</tr>
+						</c:forEach>
+					</tbody>
+				</table>
+			</div>
+		</div>
+		<div class="prepend-top span-6 last" id="sidebar">
+			<form method="post" action="<c:url value="/worldpayhac/resilience/reset"/>">
+				<input type="hidden" name="${_csrf.parameterName}" value="${_csrf.token}"/>
+				<button type="submit" id="resetResilienceSidebar">Close all circuit breakers</button>
+			</form>
+			<c:if test="${reset}" >
+				<div>All circuit breakers were closed</div>
+			</c:if>
+		</div>
+	</body>
+</html>
@@ -1,8 +1,12 @@
 package de.hybris.platform.hac.controller;
 
+import com.worldpay.merchant.WorldpayMerchantRegistry;
+import com.worldpay.service.http.WorldpayResilienceRegistry;
+import com.worldpay.service.metrics.WorldpayGatewayMetricsRegistry;
 import com.worldpay.support.WorldpaySupportEmailService;
 import com.worldpay.support.WorldpaySupportService;
 import de.hybris.platform.servicelayer.config.ConfigurationService;
+import org.springframework.jmx.support.JmxUtils;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -10,6 +14,17 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import javax.annotation.Resource;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 
 /**
@@ -20,6 +35,7 @@ import javax.annotation.Resource;
 public class WorldpayHACController
 {
 	protected static final String WORLDPAY_SUPPORT_EMAIL_CONFIG_KEY = "worldpay.support.email.address";
+	protected static final String WORLDPAY_MBEANS = "com.worldpay:*";
 
 	@Resource
 	private WorldpaySupportEmailService worldpaySupportEmailService;
@@ -27,6 +43,12 @@ public class WorldpayHACController
 	private WorldpaySupportService worldpaySupportService;
 	@Resource
 	private ConfigurationService configurationService;
+	@Resource
+	private WorldpayResilienceRegistry worldpayResilienceRegistry;
+	@Resource
+	private WorldpayGatewayMetricsRegistry worldpayGatewayMetricsRegistry;
+	@Resource
+	private WorldpayMerchantRegistry worldpayMerchantRegistry;
 
 	@RequestMapping(value = "/supportemail", method = RequestMethod.GET)
 	public String supportEmail(final Model model)
@@ -47,4 +69,88 @@ public class WorldpayHACController
 
 		return "redirect:/worldpayhac/supportemail/";
 	}
+
+	@RequestMapping(value = "/resilience", method = RequestMethod.GET)
+	public String resilience(final Model model)
+	{
+		model.addAttribute("circuitBreakers", worldpayResilienceRegistry.getCircuitBreakers());
+		model.addAttribute("bulkheads", worldpayResilienceRegistry.getBulkheads());
+		model.addAttribute("stateTransitions", worldpayResilienceRegistry.getStateTransitions());
+		return "resilience";
+	}
+
+	@RequestMapping(value = "/resilience/reset", method = RequestMethod.POST)
+	public String resetResilience(final RedirectAttributes attributes)
+	{
+		worldpayResilienceRegistry.reset();
+
+		attributes.addFlashAttribute("reset", true);
+
+		return "redirect:/worldpayhac/resilience/";
+	}
+
+	@RequestMapping(value = "/gatewaymetrics", method = RequestMethod.GET)
+	public String gatewayMetrics(final Model model)
+	{
+		model.addAttribute("gatewayMetrics", worldpayGatewayMetricsRegistry.getGatewayMetrics());
+		return "gatewayMetrics";
+	}
+
+	@RequestMapping(value = "/gatewaymetrics/reset", method = RequestMethod.GET)
+	public String resetGatewayMetrics(final RedirectAttributes attributes)
+	{
+		worldpayGatewayMetricsRegistry.reset();
+
+		attributes.addFlashAttribute("reset", true);
+
+		return "redirect:/worldpayhac/gatewaymetrics/";
+	}
+
+	@RequestMapping(value = "/merchants", method = RequestMethod.GET)
+	public String merchants(final Model model)
+	{
+		model.addAttribute("merchants", worldpayMerchantRegistry.getMerchants());
+		model.addAttribute("siteMerchants", worldpayMerchantRegistry.getSiteMerchants());
+		return "merchants";
+	}
+
+	@RequestMapping(value = "/merchants/invalidate", method = RequestMethod.GET)
+	public String invalidateMerchants(final RedirectAttributes attributes)
+	{
+		worldpayMerchantRegistry.invalidate();
+
+		attributes.addFlashAttribute("invalidated", true);
+
+		return "redirect:/worldpayhac/merchants/";
+	}
+
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET)
+	public String metrics(final Model model) throws JMException
+	{
+		final MBeanServer mBeanServer = JmxUtils.locateMBeanServer();
+		final Map<String, Map<String, List<String>>> metrics = new LinkedHashMap<>();
+		for (final ObjectName name : new TreeSet<>(mBeanServer.queryNames(new ObjectName(WORLDPAY_MBEANS), null)))
+		{
+			final Map<String, List<String>> attributes = new TreeMap<>();
+			for (final MBeanAttributeInfo attribute : mBeanServer.getMBeanInfo(name).getAttributes())
+			{
+				if (attribute.isReadable())
+				{
+					attributes.put(attribute.getName(), toLines(mBeanServer.getAttribute(name, attribute.getName())));
+				}
+			}
+			metrics.put(name.getKeyPropertyListString(), attributes);
+		}
+		model.addAttribute("metrics", metrics);
+		return "metrics";
+	}
+
+	protected List<String> toLines(final Object value)
+	{
+		if (value instanceof String[])
+		{
+			return Arrays.asList((String[]) value);
+		}
+		return Collections.singletonList(String.valueOf(value));
+	}
 }